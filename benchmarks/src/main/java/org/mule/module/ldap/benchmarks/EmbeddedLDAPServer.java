@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.security.ldap.server.ApacheDSContainer;
+
+/**
+ * Embedded ApacheDS server (the same one used by the functional tests) seeded with a generated
+ * LDIF file that contains <i>entries</i> users under ou=people.
+ * 
+ * @author mariano
+ */
+public class EmbeddedLDAPServer
+{
+    public static final String ROOT_DN = "dc=mulesoft,dc=org";
+    public static final String PEOPLE_DN = "ou=people," + ROOT_DN;
+    public static final String ADMIN_DN = "uid=admin," + PEOPLE_DN;
+    public static final String ADMIN_PASSWORD = "admin";
+
+    private final int port;
+    private final int entries;
+    private final File workingDirectory;
+    private File ldif;
+    private ApacheDSContainer server;
+
+    /**
+     * @param port
+     * @param entries Amount of users to generate.
+     */
+    public EmbeddedLDAPServer(int port, int entries)
+    {
+        this.port = port;
+        this.entries = entries;
+        this.workingDirectory = new File(System.getProperty("java.io.tmpdir") + File.separator + "ldap-connector-benchmark-server-" + port);
+    }
+
+    public void start() throws Exception
+    {
+        FileUtils.deleteDirectory(workingDirectory);
+        ldif = File.createTempFile("ldap-benchmark-", ".ldif");
+        writeLdif(ldif, entries);
+
+        server = new ApacheDSContainer(ROOT_DN, "file:" + ldif.getAbsolutePath());
+        server.setWorkingDirectory(workingDirectory);
+        server.setPort(port);
+        server.getService().setAllowAnonymousAccess(true);
+        server.getService().setShutdownHookEnabled(true);
+        server.afterPropertiesSet(); // This method calls start
+    }
+
+    public void stop() throws Exception
+    {
+        try
+        {
+            if (server != null)
+            {
+                server.stop();
+            }
+        }
+        finally
+        {
+            if (ldif != null)
+            {
+                ldif.delete();
+            }
+            FileUtils.deleteDirectory(workingDirectory);
+        }
+    }
+
+    public String getUrl()
+    {
+        return "ldap://localhost:" + port + "/";
+    }
+
+    public static String userDn(int index)
+    {
+        return "uid=user" + index + "," + PEOPLE_DN;
+    }
+
+    private static void writeLdif(File file, int entries) throws IOException
+    {
+        Writer out = new BufferedWriter(new FileWriter(file));
+        try
+        {
+            out.write("version: 1\n\n");
+            out.write("dn: ou=people," + ROOT_DN + "\nobjectclass: top\nobjectclass: organizationalUnit\nou: people\n\n");
+            out.write("dn: " + ADMIN_DN + "\nobjectclass: top\nobjectclass: person\nobjectclass: organizationalPerson\nobjectclass: inetOrgPerson\n");
+            out.write("cn: Administrator\nsn: Administrator\nuid: admin\nuserPassword: " + ADMIN_PASSWORD + "\n\n");
+            for (int i = 0; i < entries; i++)
+            {
+                out.write("dn: " + userDn(i) + "\n");
+                out.write("objectclass: top\nobjectclass: person\nobjectclass: organizationalPerson\nobjectclass: inetOrgPerson\n");
+                out.write("cn: User " + i + "\nsn: " + i + "\nuid: user" + i + "\nuserPassword: user" + i + "\n");
+                out.write("mail: user" + i + "@mulesoft.org\ntelephoneNumber: +1 555 " + (1000000 + i) + "\n");
+                out.write("description: Generated user number " + i + " for benchmarks\n\n");
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
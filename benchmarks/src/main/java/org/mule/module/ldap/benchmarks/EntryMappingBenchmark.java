@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.jndi.LDAPJNDIUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of mapping entries: from JNDI attributes to {@link LDAPEntry} (converting all the
+ * attributes or only the one that is read) and from {@link LDAPEntry} to {@link Map} and LDIF.
+ * It does not need a LDAP server.
+ * 
+ * @author mariano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryMappingBenchmark
+{
+    @Param({"8", "64"})
+    public int attributes;
+
+    @Param({"1", "16"})
+    public int valuesPerAttribute;
+
+    private String dn;
+    private Attributes jndiAttributes;
+    private LDAPEntry entry;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        dn = EmbeddedLDAPServer.userDn(1);
+        jndiAttributes = new BasicAttributes(true);
+        for (int i = 0; i < attributes; i++)
+        {
+            BasicAttribute attribute = new BasicAttribute("attribute" + i);
+            for (int j = 0; j < valuesPerAttribute; j++)
+            {
+                attribute.add("value " + j + " of attribute " + i);
+            }
+            jndiAttributes.put(attribute);
+        }
+        entry = LDAPJNDIUtils.buildEntry(dn, jndiAttributes);
+    }
+
+    @Benchmark
+    public LDAPEntry buildEntry() throws Exception
+    {
+        return LDAPJNDIUtils.buildEntry(dn, jndiAttributes);
+    }
+
+    /*
+     * Lazy entries consume the JNDI attributes they wrap, so both variants read a copy of them.
+     */
+    @Benchmark
+    public Object buildEntryAndReadOneAttribute() throws Exception
+    {
+        return LDAPJNDIUtils.buildEntry(dn, (Attributes) jndiAttributes.clone()).getAttribute("attribute0").getValue();
+    }
+
+    @Benchmark
+    public Object buildLazyEntryAndReadOneAttribute() throws Exception
+    {
+        return LDAPJNDIUtils.buildLazyEntry(dn, (Attributes) jndiAttributes.clone()).getAttribute("attribute0").getValue();
+    }
+
+    @Benchmark
+    public Map<String, Object> toMap()
+    {
+        return entry.toMap();
+    }
+
+    @Benchmark
+    public String toLDIFString()
+    {
+        return entry.toLDIFString();
+    }
+}
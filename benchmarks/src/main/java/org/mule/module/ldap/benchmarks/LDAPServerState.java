@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mule.module.ldap.api.LDAPConnection;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark state holding an embedded LDAP server with <i>entries</i> users and a pooled
+ * connection bound as the administrator.
+ * 
+ * @author mariano
+ */
+@State(Scope.Benchmark)
+public class LDAPServerState
+{
+    @Param({"1000"})
+    public int entries;
+
+    @Param({"10389"})
+    public int port;
+
+    @Param({"5"})
+    public int poolSize;
+
+    public EmbeddedLDAPServer server;
+    public LDAPConnection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        server = new EmbeddedLDAPServer(port, entries);
+        server.start();
+
+        Map<String, String> conf = new HashMap<String, String>();
+        connection = LDAPConnection.getConnection("jndi", server.getUrl(), LDAPConnection.SIMPLE_AUTHENTICATION, 1, poolSize, 0, "ignore", conf);
+        connection.bind(EmbeddedLDAPServer.ADMIN_DN, EmbeddedLDAPServer.ADMIN_PASSWORD);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            if (connection != null)
+            {
+                connection.close();
+            }
+        }
+        finally
+        {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.module.ldap.api.LDAPEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of looking up a random entry by DN.
+ * 
+ * @author mariano
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LookupBenchmark
+{
+    @Benchmark
+    public LDAPEntry lookup(LDAPServerState state) throws Exception
+    {
+        return state.connection.lookup(EmbeddedLDAPServer.userDn(ThreadLocalRandom.current().nextInt(state.entries)));
+    }
+
+    @Benchmark
+    public LDAPEntry lookupAttributes(LDAPServerState state) throws Exception
+    {
+        return state.connection.lookup(EmbeddedLDAPServer.userDn(ThreadLocalRandom.current().nextInt(state.entries)), new String[] {"cn", "mail"});
+    }
+
+    @Benchmark
+    @Threads(4)
+    public LDAPEntry concurrentLookup(LDAPServerState state) throws Exception
+    {
+        return state.connection.lookup(EmbeddedLDAPServer.userDn(ThreadLocalRandom.current().nextInt(state.entries)));
+    }
+}
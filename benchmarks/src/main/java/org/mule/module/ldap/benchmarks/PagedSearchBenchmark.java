@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mule.module.ldap.api.LDAPResultSet;
+import org.mule.module.ldap.api.LDAPSearchControls;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of a paged search that reads all the generated users, for several page sizes.
+ * 
+ * @author mariano
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PagedSearchBenchmark
+{
+    @Param({"10", "100", "500"})
+    public int pageSize;
+
+    @Param({"0", "2"})
+    public int prefetchPages;
+
+    private LDAPSearchControls controls;
+
+    @Setup
+    public void setUp()
+    {
+        controls = new LDAPSearchControls();
+        controls.setScope(LDAPSearchControls.ONELEVEL_SCOPE);
+        controls.setPageSize(pageSize);
+        controls.setPrefetchPages(prefetchPages);
+    }
+
+    @Benchmark
+    public int pagedSearch(LDAPServerState state, Blackhole blackhole) throws Exception
+    {
+        LDAPResultSet result = state.connection.search(EmbeddedLDAPServer.PEOPLE_DN, "(objectClass=person)", controls);
+        int count = 0;
+        try
+        {
+            while (result.hasNext())
+            {
+                blackhole.consume(result.next());
+                count++;
+            }
+        }
+        finally
+        {
+            result.close();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPSingleValueEntryAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of adding new entries and modifying existing ones.
+ * 
+ * @author mariano
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WriteBenchmark
+{
+    private static final AtomicLong SEQUENCE = new AtomicLong(0);
+
+    @Benchmark
+    public void add(LDAPServerState state) throws Exception
+    {
+        state.connection.addEntry(newEntry(SEQUENCE.incrementAndGet()));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void concurrentAdd(LDAPServerState state) throws Exception
+    {
+        state.connection.addEntry(newEntry(SEQUENCE.incrementAndGet()));
+    }
+
+    @Benchmark
+    public void updateAttribute(LDAPServerState state) throws Exception
+    {
+        long next = SEQUENCE.incrementAndGet();
+        state.connection.updateAttribute(EmbeddedLDAPServer.userDn((int) (next % state.entries)), new LDAPSingleValueEntryAttribute("description", "Updated " + next));
+    }
+
+    private LDAPEntry newEntry(long index)
+    {
+        LDAPEntry entry = new LDAPEntry("uid=new" + index + "," + EmbeddedLDAPServer.PEOPLE_DN);
+        entry.addAttribute("uid", "new" + index);
+        entry.addAttribute("cn", "New User " + index);
+        entry.addAttribute("sn", String.valueOf(index));
+        entry.addAttribute("objectclass", new String[] {"top", "person", "organizationalPerson", "inetOrgPerson"});
+        return entry;
+    }
+}
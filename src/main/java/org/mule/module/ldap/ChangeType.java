@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import org.mule.module.ldap.api.LDAPChangeRecord;
+
+public enum ChangeType
+{
+    /**
+     * Add the entry
+     */
+    ADD(LDAPChangeRecord.ADD),
+    
+    /**
+     * Replace the attributes of the existing entry
+     */
+    MODIFY(LDAPChangeRecord.MODIFY),
+    
+    /**
+     * Delete the entry
+     */
+    DELETE(LDAPChangeRecord.DELETE);
+    
+    private int value;
+    
+    private ChangeType(int value)
+    {
+        this.value = value;
+    }
+    
+    public int getValue()
+    {
+        return this.value;
+    }
+}
@@ -8,10 +8,18 @@
 
 package org.mule.module.ldap;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
 import org.mule.api.ConnectionException;
@@ -23,6 +31,7 @@ import org.mule.api.annotations.Connector;
 import org.mule.api.annotations.Disconnect;
 import org.mule.api.annotations.InvalidateConnectionOn;
 import org.mule.api.annotations.Processor;
+import org.mule.api.annotations.Source;
 import org.mule.api.annotations.Transformer;
 import org.mule.api.annotations.ValidateConnection;
 import org.mule.api.annotations.display.FriendlyName;
@@ -34,13 +43,22 @@ import org.mule.api.callback.SourceCallback;
 import org.mule.module.ldap.api.AuthenticationException;
 import org.mule.module.ldap.api.CommunicationException;
 import org.mule.module.ldap.api.ContextNotEmptyException;
+import org.mule.module.ldap.api.LDAPAttributeValueIterator;
+import org.mule.module.ldap.api.LDAPChangeCheckpoint;
+import org.mule.module.ldap.api.LDAPChangeMonitor;
+import org.mule.module.ldap.api.LDAPChangeRecord;
+import org.mule.module.ldap.api.LDAPChangeResult;
 import org.mule.module.ldap.api.LDAPConnection;
 import org.mule.module.ldap.api.LDAPEntry;
 import org.mule.module.ldap.api.LDAPException;
 import org.mule.module.ldap.api.LDAPMultiValueEntryAttribute;
 import org.mule.module.ldap.api.LDAPResultSet;
+import org.mule.module.ldap.api.LDAPResultSetIterator;
 import org.mule.module.ldap.api.LDAPSearchControls;
 import org.mule.module.ldap.api.LDAPSingleValueEntryAttribute;
+import org.mule.module.ldap.api.LDIFImportResult;
+import org.mule.module.ldap.api.LDIFReader;
+import org.mule.module.ldap.api.LDIFWriter;
 import org.mule.module.ldap.api.NameNotFoundException;
 import org.mule.util.StringUtils;
 
@@ -49,13 +67,23 @@ import org.mule.util.StringUtils;
  * The LDAP Connector will allow to connect to any LDAP server and perform every LDAP operation:
  * <ul>
  *  <li><a href="#bind"><b>bind</b></a>: Authenticate against the LDAP server. This occurs automatically before each operation but can also be performed on request</li>
+ *  <li><a href="#verify-credentials"><b>verify credentials</b></a>: Check the password of a user over reusable connections, without changing the identity of the connector</li>
  *  <li><a href="#search"><b>search</b></a>: Perform a LDAP search in a base DN with a given filter</li>
+ *  <li><a href="#streaming-search"><b>streaming search</b></a>: Perform a LDAP search returning a lazy iterator over the results</li>
+ *  <li><a href="#monitor-changes"><b>monitor changes</b></a>: Process the changes of LDAP entries as the LDAP server notifies them</li>
+ *  <li><a href="#poll-changes"><b>poll changes</b></a>: Periodically process the LDAP entries changed since the last poll, resuming from a checkpoint file after restarts</li>
+ *  <li><a href="#partitioned-search"><b>partitioned search</b></a>: Perform a LDAP search split in partitions that are searched concurrently</li>
+ *  <li><a href="#export-ldif"><b>export LDIF</b></a>: Write the entries that match a search to a (optionally compressed) LDIF file</li>
  *  <li><a href="#lookup"><b>lookup</b></a>: Retrieve a unique LDAP entry</li>
+ *  <li><a href="#stream-attribute-values"><b>stream attribute values</b></a>: Iterate the values of a huge attribute reading them in ranges</li>
+ *  <li><a href="#group-membership"><b>group membership</b></a>: Retrieve the groups an entry belongs to, including nested groups</li>
  *  <li><a href="#add"><b>add</b></a>: Creates a new LDAP entry</li>
  *  <li><a href="#add-single-value-attribute"><b>add attribute/s</b></a>: Add specific attributes to an existing LDAP entry</li>
  *  <li><a href="#modify"><b>modify</b></a>: Update an existing LDAP entry</li>
  *  <li><a href="#modify-single-value-attribute"><b>modify attribute/s</b></a>: Update specific attributes of an existing LDAP entry</li>
  *  <li><a href="#delete"><b>delete</b></a>: Delete an existing LDAP entry</li>
+ *  <li><a href="#batch"><b>batch</b></a>: Apply many adds, modifications and deletes concurrently, reporting the result of each one</li>
+ *  <li><a href="#import-ldif"><b>import LDIF</b></a>: Apply the records of a (optionally compressed) LDIF file in parallel batches, writing the failed ones to a reject file</li>
  *  <li><a href="#delete-single-value-attribute"><b>delete attribute/s</b></a>: Delete specific attributes of an existing LDAP entry</li>
  * </ul>
  * <p/>
@@ -80,6 +108,11 @@ import org.mule.util.StringUtils;
  *    <li>ldaps://localhost:636/dc=mulesoft,dc=org</i>
  *    <li>ldaps://ldap.mulesoft.org/</i>
  * </ul>
+ * 
+ * Several servers holding the same entries (replicas) can be configured separating their URLs with spaces (for example
+ * <code>ldap://ldap1.mulesoft.org:389/ ldap://ldap2.mulesoft.org:389/</code>). In that case each server has its own connection pool, reads are
+ * balanced across the servers (see <b>Load Balancing</b>), writes are sent to the first server that is available (so the primary server should be
+ * listed first) and servers that cannot be reached are ejected until they pass a health check.
  *  </td>
  *  </tr>
  *  <tr>
@@ -97,7 +130,9 @@ import org.mule.util.StringUtils;
  *  <td><b>Initial Pool Size</b></td>
  *  <td>
  * The string representation of an integer that represents the number of connections per connection identity to create when initially
- * creating a connection for the identity. To disable pooling, just set this value to 0 (zero).
+ * creating a connection for the identity. These connections are kept open even if they are idle. To disable pooling, just set this value to 0 (zero).
+ * The initial connections are opened in parallel and validated with a root DSE read before the connection is used, and the time taken is logged
+ * (and published as <i>LastWarmUpTime</i> if statistics are enabled).
  *  </td>
  *  </tr>
  *  <tr>
@@ -115,6 +150,82 @@ import org.mule.util.StringUtils;
  *  </td>
  *  </tr>
  *  <tr>
+ *  <td><b>Pool Max Wait</b></td>
+ *  <td>
+ * The string representation of an integer that represents the number of milliseconds that an operation waits for a connection when all
+ * the connections in the pool are in use. When the wait times out the operation fails, so a flow never hangs on an exhausted pool. Defaults to
+ * 30000 (30 seconds). If the value is 0, this means to wait indefinitely.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Authentication Pool Size</b></td>
+ *  <td>
+ * The maximum number of connections used to verify credentials. These connections are opened the first time they are needed and
+ * reused afterwards, so each verification costs a bind instead of a new connection. They are closed after being idle for <i>Pool Timeout</i>
+ * milliseconds.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Load Balancing</b></td>
+ *  <td>
+ * How reads are balanced when several servers are configured:
+ * <ul>
+ *    <li><b>ROUND_ROBIN</b> (default): Each read is sent to the next available server.</li>
+ *    <li><b>LEAST_OUTSTANDING</b>: Each read is sent to the available server with less outstanding requests (borrowed connections, including open search results).</li>
+ * </ul>
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Health Check Interval</b></td>
+ *  <td>
+ * The number of milliseconds between the background checks of the servers when several servers are configured. Each check reads the root DSE of
+ * every server over a new connection, ejecting the servers that do not answer and re-admitting the ones that answer again. If the value is 0, then
+ * servers are only ejected when a connection to them fails and they are never re-admitted.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Cache TTL</b></td>
+ *  <td>
+ * The number of milliseconds that entries retrieved by lookup (or checked by exists) are cached. Entries are cached by DN and requested
+ * attributes in a cache shared by all the connections to the same LDAP server with the same identity, and they are removed from it when
+ * they are modified, renamed or deleted through any of those connections. Changes performed by other clients are only seen after the
+ * entry expires. If the value is 0 (default), then entries are not cached.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Cache Max Entries</b></td>
+ *  <td>
+ * The maximum number of cached entries. When it is reached, the least recently used entries are evicted.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Cache Max Bytes</b></td>
+ *  <td>
+ * The maximum estimated size in bytes of the cached entries. If the value is 0, then the size is not limited.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Cache Not Found</b></td>
+ *  <td>
+ * Whether lookups of entries that do not exist should also be cached (negative caching).
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Group Cache TTL</b></td>
+ *  <td>
+ * The number of milliseconds that the direct groups of each entry found by group membership are memoized, so the groups shared by many users
+ * are expanded only once. Changes to group memberships are only seen after they expire. If the value is 0 (default), then nothing is memoized.
+ *  </td>
+ *  </tr>
+ *  <tr>
+ *  <td><b>Statistics Name</b></td>
+ *  <td>
+ * If set, the count, errors (by exception type) and latency percentiles of each operation, the state of the connection pools and the pages fetched
+ * by paged searches are recorded and published as JMX MBeans in the <i>org.mule.module.ldap</i> domain with <i>config</i> set to this name. Several
+ * configurations can share the same name to aggregate their statistics.
+ *  </td>
+ *  </tr>
+ *  <tr>
  *  <td><b>Referral</b></td>
  *  <td>
  * Constant that holds the name of the environment property for specifying how referrals encountered by the service provider are to be processed.
@@ -160,6 +271,10 @@ import org.mule.util.StringUtils;
  * {@sample.config ../../../doc/mule-module-ldap.xml.sample ldap:config-2}
  * <p/>
  * {@sample.config ../../../doc/mule-module-ldap.xml.sample ldap:config-3}
+ * <p/>
+ * {@sample.config ../../../doc/mule-module-ldap.xml.sample ldap:config-4}
+ * <p/>
+ * {@sample.config ../../../doc/mule-module-ldap.xml.sample ldap:config-5}
  *
  * @author Mariano Capurro (MuleSoft, Inc.)
  */
@@ -168,9 +283,14 @@ import org.mule.util.StringUtils;
 public class LDAPConnector
 {
     private static final Logger LOGGER = Logger.getLogger(LDAPConnector.class);
+    private static final long CHANGE_POLL_TIMEOUT = 1000L;
+    private static final String CHANGE_TYPE_PROPERTY = "ldap.changeType";
+    private static final String DN_PROPERTY = "ldap.dn";
+    private static final String HIGH_WATER_MARK_PROPERTY = "ldap.highWaterMark";
     
     /**
-     * The connection URL to the LDAP server with the following syntax: <code>ldap[s]://hostname:port/base_dn</code>.
+     * The connection URL to the LDAP server with the following syntax: <code>ldap[s]://hostname:port/base_dn</code>. Several servers
+     * holding the same entries can be configured separating their URLs with spaces, the primary server first.
      */
     @Configurable
     @Placement(group = "Connection", order = 0)
@@ -215,6 +335,152 @@ public class LDAPConnector
     @Placement(group = "Pooling Configuration", order = 3)
     private long poolTimeout;
 
+    /**
+     * The string representation of an integer that represents the number of milliseconds that an operation waits for a connection when all
+     * the connections in the pool are in use. When the wait times out the operation fails, so a flow never hangs on an exhausted pool. Defaults to
+ * 30000 (30 seconds). If the value is 0, this means to wait indefinitely.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "30000")
+    @Placement(group = "Pooling Configuration", order = 4)
+    private long poolMaxWait;
+
+    /**
+     * The maximum number of connections used to verify credentials. They are opened when needed and reused by later verifications.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "5")
+    @Placement(group = "Pooling Configuration", order = 5)
+    private int authenticationPoolSize;
+
+    /**
+     * How reads are balanced when several servers are configured (ROUND_ROBIN or LEAST_OUTSTANDING).
+     */
+    @Configurable
+    @Optional
+    @Default(value = "ROUND_ROBIN")
+    @Placement(group = "Load Balancing", order = 1)
+    private LoadBalancing loadBalancing;
+
+    /**
+     * The number of milliseconds between the health checks of the servers when several servers are configured. If the value is 0, then
+     * servers that fail are never re-admitted.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "10000")
+    @Placement(group = "Load Balancing", order = 2)
+    private long healthCheckInterval;
+
+    /**
+     * The number of milliseconds that entries retrieved by lookup (or checked by exists) are cached. If the value is 0, then entries
+     * are not cached.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "0")
+    @Placement(group = "Cache Configuration", order = 1)
+    private long cacheTtl;
+
+    /**
+     * The maximum number of cached entries. When it is reached, the least recently used entries are evicted.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "1000")
+    @Placement(group = "Cache Configuration", order = 2)
+    private int cacheMaxEntries;
+
+    /**
+     * The maximum estimated size in bytes of the cached entries. If the value is 0, then the size is not limited.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "0")
+    @Placement(group = "Cache Configuration", order = 3)
+    private long cacheMaxBytes;
+
+    /**
+     * Whether lookups of entries that do not exist should also be cached.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "true")
+    @Placement(group = "Cache Configuration", order = 4)
+    private boolean cacheNotFound;
+
+    /**
+     * The number of milliseconds that the direct groups of each entry found by group membership are memoized. If the value is 0, then
+     * nothing is memoized.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "0")
+    @Placement(group = "Cache Configuration", order = 5)
+    private long groupCacheTtl;
+
+    /**
+     * The DN of a subtree whose entries are copied in memory to answer lookup, exists, search-one and search operations without
+     * reaching the LDAP server. Only searches with equality, presence and substring filters are answered from memory, any other
+     * read is performed on the server. If not set, all the reads are performed on the server.
+     */
+    @Configurable
+    @Optional
+    @Placement(group = "Replica", order = 1)
+    @FriendlyName("Replica Base DN")
+    private String replicaBaseDn;
+
+    /**
+     * The attributes of the replicated entries that are indexed, separated by spaces. Each one can be followed by <i>:hash</i> (default,
+     * used by equality filters) or <i>:sorted</i> (also used by substring filters like <i>(cn=John*)</i>). For example: <i>uid mail cn:sorted</i>.
+     */
+    @Configurable
+    @Optional
+    @Placement(group = "Replica", order = 2)
+    private String replicaIndexes;
+
+    /**
+     * The number of milliseconds between refreshes of the replica. Each refresh reads the entries changed since the previous one and
+     * the entries modified through the connector. Connections to the same server with the same identity share their replica, so it is
+     * refreshed once per interval.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "60000")
+    @Placement(group = "Replica", order = 3)
+    private long replicaRefreshInterval;
+
+    /**
+     * The number of milliseconds between comparisons of the replicated DNs with the DNs of the subtree, which find the entries deleted
+     * (or added without updating the high-water mark) by other clients. Each comparison reads the DN of every entry of the subtree. If the
+     * value is 0, then they are only compared when entries are renamed or subtrees deleted through the connector.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "3600000")
+    @Placement(group = "Replica", order = 5)
+    private long replicaReconcileInterval;
+
+    /**
+     * The attribute updated every time an entry changes, used to read only the changed entries when the replica is refreshed. Use
+     * <i>uSNChanged:integerOrderingMatch</i> for Active Directory.
+     */
+    @Configurable
+    @Optional
+    @Default(value = "modifyTimestamp")
+    @Placement(group = "Replica", order = 4)
+    private String replicaHighWaterMark;
+
+    /**
+     * Name used to publish the statistics of the operations performed with this configuration in JMX. If not set, statistics are not recorded.
+     */
+    @Configurable
+    @Optional
+    @Placement(group = "Statistics")
+    private String statisticsName;
+
     /**
      * Constant that holds the name of the environment property for specifying how referrals encountered by the service provider are to be processed (follow, ignore, throw).
      */
@@ -270,7 +536,7 @@ public class LDAPConnector
         {
             if(this.connection == null)
             {
-                this.connection = LDAPConnection.getConnection(type.toString(), getUrl(), authentication, getInitialPoolSize(), getMaxPoolSize(), getPoolTimeout(), getReferral().toString(), getExtendedConfiguration());
+                this.connection = LDAPConnection.getConnection(buildConnectionConfiguration(authentication));
             }
             
             if(LDAPConnection.NO_AUTHENTICATION.equals(authentication))
@@ -313,6 +579,43 @@ public class LDAPConnector
         }
     }
 
+    private Map<String, String> buildConnectionConfiguration(String authentication)
+    {
+        Map<String, String> conf = getExtendedConfiguration() != null ? new HashMap<String, String>(getExtendedConfiguration()) : new HashMap<String, String>();
+        conf.put(LDAPConnection.CONNECTION_TYPE_ATTR, type.toString());
+        conf.put(LDAPConnection.LDAP_URL_ATTR, getUrl());
+        conf.put(LDAPConnection.REFERRAL_ATTR, getReferral().toString());
+        conf.put(LDAPConnection.AUTHENTICATION_ATTR, authentication);
+        conf.put(LDAPConnection.INITIAL_POOL_CONNECTIONS_ATTR, String.valueOf(getInitialPoolSize()));
+        conf.put(LDAPConnection.MAX_POOL_CONNECTIONS_ATTR, String.valueOf(getMaxPoolSize()));
+        conf.put(LDAPConnection.POOL_TIMEOUT_ATTR, String.valueOf(getPoolTimeout()));
+        conf.put(LDAPConnection.POOL_MAX_WAIT_ATTR, String.valueOf(getPoolMaxWait()));
+        conf.put(LDAPConnection.AUTHENTICATION_POOL_SIZE_ATTR, String.valueOf(getAuthenticationPoolSize()));
+        conf.put(LDAPConnection.LOAD_BALANCING_ATTR, getLoadBalancing().toString());
+        conf.put(LDAPConnection.HEALTH_CHECK_INTERVAL_ATTR, String.valueOf(getHealthCheckInterval()));
+        conf.put(LDAPConnection.CACHE_TTL_ATTR, String.valueOf(getCacheTtl()));
+        conf.put(LDAPConnection.CACHE_MAX_ENTRIES_ATTR, String.valueOf(getCacheMaxEntries()));
+        conf.put(LDAPConnection.CACHE_MAX_BYTES_ATTR, String.valueOf(getCacheMaxBytes()));
+        conf.put(LDAPConnection.CACHE_NOT_FOUND_ATTR, String.valueOf(isCacheNotFound()));
+        conf.put(LDAPConnection.GROUP_CACHE_TTL_ATTR, String.valueOf(getGroupCacheTtl()));
+        if(StringUtils.isNotEmpty(getStatisticsName()))
+        {
+            conf.put(LDAPConnection.STATISTICS_NAME_ATTR, getStatisticsName());
+        }
+        if(StringUtils.isNotEmpty(getReplicaBaseDn()))
+        {
+            conf.put(LDAPConnection.REPLICA_BASE_DN_ATTR, getReplicaBaseDn());
+            if(StringUtils.isNotEmpty(getReplicaIndexes()))
+            {
+                conf.put(LDAPConnection.REPLICA_INDEXES_ATTR, getReplicaIndexes());
+            }
+            conf.put(LDAPConnection.REPLICA_REFRESH_INTERVAL_ATTR, String.valueOf(getReplicaRefreshInterval()));
+            conf.put(LDAPConnection.REPLICA_RECONCILE_INTERVAL_ATTR, String.valueOf(getReplicaReconcileInterval()));
+            conf.put(LDAPConnection.REPLICA_HIGH_WATER_MARK_ATTR, getReplicaHighWaterMark());
+        }
+        return conf;
+    }
+
     /**
      * Disconnect the current connection
      */
@@ -435,12 +738,41 @@ public class LDAPConnector
         return entry;
     }
     
+    /**
+     * Checks the password of a user with a LDAP simple bind. Unlike <a href="#bind"><b>bind</b></a>, the identity used by the other operations
+     * is not changed and no new connection is opened per check: binds are performed over a pool of connections that are bound back to the
+     * <i>config</i> identity after each check, so each login costs a bind round trip instead of a TCP (and TLS) connection setup.
+     * <p/>
+     * Empty passwords are always rejected, as most LDAP servers accept them as unauthenticated binds.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:verify-credentials}
+     * 
+     * @param dn The DN of the user (or user@domain if using Microsoft Active Directory).
+     * @param password The password of the user.
+     * @return true if the credentials are valid or false if they are not.
+     * @throws org.mule.module.ldap.api.LDAPException In case the credentials cannot be checked, mainly because of connectivity problems.
+     * @throws Exception In case there is any other error checking the credentials.
+     */
+    @Processor
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public boolean verifyCredentials(@FriendlyName("DN") String dn, String password) throws Exception
+    {
+        boolean valid = this.connection.verifyCredentials(dn, password);
+        
+        if(LOGGER.isInfoEnabled())
+        {
+            LOGGER.info("Credentials verification " + (valid ? "succeeded" : "failed") + " for user: " + dn);
+        }
+        
+        return valid;
+    }
+    
     /**
      * Retrieves an entry from the LDAP server base on its distinguished name (DN). DNs are the unique identifiers
      * of an LDAP entry, so this method will perform a search based on this ID and so return a single entry as result
      * or throw an exception if the DN is invalid or inexistent.
      * <p/>
-     * Use this operation over {@link LDAPConnector#searchOne(String, String, List, SearchScope, int, long, boolean)} when you know the DN of the object you want to
+     * Use this operation over {@link LDAPConnector#searchOne(String, String, List, SearchScope, int, long, boolean, List)} when you know the DN of the object you want to
      * retrieve.
      * <p/>
      * <h4>Lookup returning all attributes for the entry</h4>
@@ -499,45 +831,589 @@ public class LDAPConnector
      */
     @Processor
     @InvalidateConnectionOn(exception = CommunicationException.class)
-    public boolean exists(@FriendlyName("DN") String dn) throws Exception
+    public boolean exists(@FriendlyName("DN") String dn) throws Exception
+    {
+        try
+        {
+            return lookup(dn, null) != null;
+        }
+        catch(NameNotFoundException nnfe)
+        {
+            return false;
+        }
+    }
+    
+    /**
+     * Returns a lazy {@link java.util.Iterator} over the values of an attribute of a LDAP entry. Values are read from the LDAP server in ranges of
+     * <i>rangeSize</i> values using range retrieval (<i>member;range=0-999</i>), and the next range is requested only when the values of the current
+     * one were consumed. Use it to process attributes with too many values to hold them in memory (like the members of big groups) or that the
+     * LDAP server truncates when they are retrieved by lookup or search (like Active Directory does with more than <i>MaxValRange</i> values).
+     * <p/>
+     * If the LDAP server does not support range retrieval, then all the values are read at once.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:stream-attribute-values}
+     * 
+     * @param dn The DN of the LDAP entry.
+     * @param attributeName The name of the attribute, without options (for example <i>member</i>).
+     * @param rangeSize Amount of values requested at a time. If 0 or less, then the LDAP server decides the size of each range.
+     * @return A {@link LDAPAttributeValueIterator} over the values of the attribute. It is empty if the entry does not have the attribute.
+     * @throws Exception In case there is any error reading the first range of values.
+     */
+    @Processor
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public LDAPAttributeValueIterator streamAttributeValues(@FriendlyName("DN") String dn, String attributeName, @Optional @Default("1000") int rangeSize) throws Exception
+    {
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to stream values of " + attributeName + " from " + dn + " in ranges of " + rangeSize + " values");
+        }
+        
+        LDAPAttributeValueIterator values = this.connection.getAttributeValues(dn, attributeName, rangeSize);
+        try
+        {
+            // Reads the first range, so a missing entry fails here instead of while iterating
+            values.hasNext();
+        }
+        catch(IllegalStateException ex)
+        {
+            if(ex.getCause() instanceof LDAPException)
+            {
+                throw (LDAPException) ex.getCause();
+            }
+            throw ex;
+        }
+        return values;
+    }
+    
+    /**
+     * Returns the groups an LDAP entry (usually a user) belongs to, either directly or through nested groups. Groups are expanded breadth first:
+     * the groups of all the entries found in a nesting level are searched concurrently (up to the max pool size), so checking a membership nested
+     * five levels deep takes five rounds of searches instead of a search per group. Groups already found are not expanded again, so cycles between
+     * groups are supported.
+     * <p/>
+     * If <i>Group Cache TTL</i> is configured, then the direct groups of each entry are memoized and shared by later calls.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:group-membership}
+     * 
+     * @param dn The DN of the LDAP entry.
+     * @param groupsBaseDn The base DN under which the groups are searched.
+     * @param memberAttribute The attribute of the groups that holds the DNs of their members (for example <i>member</i> or <i>uniqueMember</i>).
+     * @param groupFilter A filter that the groups must match (for example <i>(objectClass=groupOfNames)</i>).
+     * @param maxDepth The maximum nesting level expanded. If 0 or less, all the levels are expanded.
+     * @return A {@link List} with the DNs of the groups, the direct groups first.
+     * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to search the groups.
+     * @throws org.mule.module.ldap.api.NameNotFoundException If the groups base DN doesn't exist.
+     * @throws org.mule.module.ldap.api.LDAPException In case there is any other exception, mainly related to connectivity problems or referrals.
+     * @throws Exception In case there is any other error resolving the groups.
+     */
+    @Processor
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public List<String> groupMembership(@Optional @Default("#[payload:]") @FriendlyName("DN") String dn, @FriendlyName("Groups Base DN") String groupsBaseDn, @Optional @Default("member") String memberAttribute, @Optional @Default("(objectClass=*)") String groupFilter, @Optional @Default("0") int maxDepth) throws Exception
+    {
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to resolve groups of " + dn + " under " + groupsBaseDn);
+        }
+        
+        List<String> groups = new ArrayList<String>(this.connection.getGroupMembership(dn, groupsBaseDn, memberAttribute, groupFilter, maxDepth));
+        
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("Resolved groups of " + dn + ": " + groups);
+        }
+        return groups;
+    }
+    
+    /**
+     * Performs a LDAP search returning a list with all the resulting LDAP entries.
+     * <p/>
+     * For queries returning large results it is recommended to use pagination (not all LDAP servers support this or are configured to support it).
+     * For that you need to provide a page size value that should be less or equal than max results (count limit). If you are getting a
+     * Sizelimit Exceeded exception then you should check that the authenticated user has enough privileges or the LDAP server is not
+     * limited by configuration.
+     * <p/>
+     * <h4>Returning all attributes for all persons that have Doe as surname</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-1}
+     * <p/>
+     * <h4>Returning username and fullname for the first 100 person entries</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-2}
+     * <p/>
+     * <h4>Search that receives all configuration attributes using Mule Expressions</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-3}
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-4}
+     * 
+     * @param baseDn The base DN of the LDAP search.
+     * @param filter A valid LDAP filter. The LDAP connector supports LDAP search filters as defined in RFC 2254. Some examples are:
+     *               <ul>
+     *                  <li>(objectClass=*): All objects.</li>
+     *                  <li>(&(objectClass=person)(!cn=andy)): All persons except for the one with common name (cn) "andy".</li>
+     *                  <li>(sn=sm*): All objects with a surname that starts with "sm".</li>
+     *                  <li>(&(objectClass=person)(|(sn=Smith)(sn=Johnson))): All persons with a surname equal to "Smith" or "Johnson".</li>
+     *               </ul>
+     * @param attributes A list of the attributes that should be returned in the result. If the attributes list is empty or null, then by default all
+     *        LDAP entry attributes are returned.
+     * @param scope The scope of the search. Valid attributes are:
+     *              <ul>
+     *                 <li><b>OBJECT</b>: This value is used to indicate searching only the entry at the base DN, resulting in only that entry
+     *                               being returned (keeping in mind that it also has to meet the search filter criteria!)</li>
+     *                 <li><b>ONE_LEVEL</b>: This value is used to indicate searching all entries one level under the base DN - but not including
+     *                               the base DN and not including any entries under that one level under the base DN. </li>
+     *                 <li><b>SUB_TREE</b>: This value is used to indicate searching of all entries at all levels under and including the specified base DN.</li>
+     *              </ul>
+     * @param timeout Search timeout in milliseconds. If the value is 0, this means to wait indefinitely. 
+     * @param maxResults The maximum number of entries that will be returned as a result of the search. 0 indicates that all entries will be returned. 
+     * @param returnObject Enables/disables returning objects returned as part of the result. If disabled, only the name and class of the object is returned.
+     *                     If enabled, the object will be returned. 
+     * @param pageSize If the LDAP server supports paging results set in this attribute the size of the page. If the pageSize is less or equals than 0, then paging will be disabled.
+     * @param filterArgs Values of the arguments of the filter, written as <i>{0}</i>, <i>{1}</i>, ... in place of assertion values (for example
+     *                   <i>(&(objectClass=person)(uid={0}))</i>). Each value is escaped, so it cannot change the structure of the filter, and the
+     *                   filter is parsed only once no matter how many times it is used. Byte arrays are escaped byte by byte and any other value is
+     *                   converted to a string.
+     * 
+     * @return A {@link java.util.List} of {@link LDAPEntry} objects with the results of the search. If the search throws no results, then this is an empty list.
+     * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to perform the search under the given base DN.
+     * @throws org.mule.module.ldap.api.NameNotFoundException If base DN is invalid (for example it doesn't exist)
+     * @throws org.mule.module.ldap.api.LDAPException In case there is any other exception, mainly related to connectivity problems or referrals.
+     * @throws Exception In case there is any other error performing the search.
+     */
+    @Processor
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public List<LDAPEntry> search(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional @Default("0") @Placement(group = "Search Controls") int pageSize, @Optional List<Object> filterArgs) throws Exception
+    {
+        LDAPResultSet result = null;
+        try
+        {
+            if(LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("About to search LDAP entries matching " + filter + " under: " + baseDn);
+            }
+            
+            LDAPSearchControls controls = new LDAPSearchControls();
+            if(attributes != null && attributes.size() > 0)
+            {
+                controls.setAttributesToReturn(attributes.toArray(new String[0]));
+            }
+            controls.setMaxResults(maxResults);
+            controls.setTimeout(timeout);
+            controls.setScope(scope.getValue());
+            controls.setReturnObject(returnObject);
+            controls.setPageSize(pageSize);
+            
+            result = search(baseDn, filter, filterArgs, controls);
+            
+            List<LDAPEntry> allEntries = result.getAllEntries();
+            
+            if(LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Retrieved " + allEntries.size() + " entries");
+            }
+            
+            return allEntries;        
+        }
+        finally
+        {
+            if(result != null)
+            {
+                result.close();
+            }
+        }
+    }
+    
+    /**
+     * Performs a LDAP search returning a lazy {@link java.util.Iterator} over the resulting LDAP entries instead of a list holding all of them.
+     * Results are retrieved from the LDAP server in pages of <i>pageSize</i> entries and the next page is requested only when the
+     * entries of the current one were consumed, so memory usage is proportional to the page size and not to the size of the result.
+     * <p/>
+     * The rest of the flow is executed with the iterator as payload. The LDAP connection used by the search is given back as soon as the
+     * iterator is exhausted or, if the flow does not traverse the whole result, once the rest of the flow finishes. Therefore the iterator
+     * should not be handed over to asynchronous processing.
+     * <p/>
+     * <h4>Processing all persons one LDAP entry at a time</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:streaming-search-1}
+     * 
+     * @param baseDn The base DN of the LDAP search.
+     * @param filter A valid LDAP filter. The LDAP connector supports LDAP search filters as defined in RFC 2254. Some examples are:
+     *               <ul>
+     *                  <li>(objectClass=*): All objects.</li>
+     *                  <li>(&(objectClass=person)(!cn=andy)): All persons except for the one with common name (cn) "andy".</li>
+     *                  <li>(sn=sm*): All objects with a surname that starts with "sm".</li>
+     *                  <li>(&(objectClass=person)(|(sn=Smith)(sn=Johnson))): All persons with a surname equal to "Smith" or "Johnson".</li>
+     *               </ul>
+     * @param attributes A list of the attributes that should be returned in the result. If the attributes list is empty or null, then by default all
+     *        LDAP entry attributes are returned.
+     * @param scope The scope of the search. Valid attributes are:
+     *              <ul>
+     *                 <li><b>OBJECT</b>: This value is used to indicate searching only the entry at the base DN, resulting in only that entry
+     *                               being returned (keeping in mind that it also has to meet the search filter criteria!)</li>
+     *                 <li><b>ONE_LEVEL</b>: This value is used to indicate searching all entries one level under the base DN - but not including
+     *                               the base DN and not including any entries under that one level under the base DN. </li>
+     *                 <li><b>SUB_TREE</b>: This value is used to indicate searching of all entries at all levels under and including the specified base DN.</li>
+     *              </ul>
+     * @param timeout Search timeout in milliseconds. If the value is 0, this means to wait indefinitely. 
+     * @param maxResults The maximum number of entries that will be returned as a result of the search. 0 indicates that all entries will be returned. 
+     * @param returnObject Enables/disables returning objects returned as part of the result. If disabled, only the name and class of the object is returned.
+     *                     If enabled, the object will be returned. 
+     * @param pageSize The size of the pages requested to the LDAP server. If the pageSize is less or equals than 0, then paging will be disabled and the
+     *                 LDAP server will send the results as fast as they are read.
+     * @param orderBy Comma separated list of the LDAP attributes used to sort results. Each attribute may be prefixed with <b>-</b> to sort in
+     *                descending order and followed by <b>:</b> and an ordering matching rule (for example: <i>sn,-cn:caseExactOrderingMatch</i>).
+     * @param prefetchPages If greater than 0 and paging is enabled, then up to this amount of pages are requested to the LDAP server in background while
+     *                      the current page is processed. If the flow is slower than the LDAP server, then no more pages are requested until the
+     *                      read ahead pages are processed.
+     * @param lazyAttributes If true, then the attributes of each entry are converted only when they are read. Use it to reduce the cost of searches that
+     *                       return many entries when the flow only reads a few attributes of each of them.
+     * @param callback Used to execute the rest of the flow with a {@link LDAPResultSetIterator} over the {@link LDAPEntry} objects that match the search.
+     * 
+     * @return The result of executing the rest of the flow.
+     * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to perform the search under the given base DN.
+     * @throws org.mule.module.ldap.api.NameNotFoundException If base DN is invalid (for example it doesn't exist)
+     * @throws org.mule.module.ldap.api.LDAPException In case there is any other exception, mainly related to connectivity problems or referrals.
+     * @throws Exception In case there is any other error performing the search.
+     */
+    @Processor(intercepting=true)
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public Object streamingSearch(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional @Default("100") @Placement(group = "Search Controls") int pageSize, @Optional @Default("") @Placement(group = "Search Controls") String orderBy, @Optional @Default("0") @Placement(group = "Search Controls") int prefetchPages, @Optional @Default("false") @Placement(group = "Search Controls") boolean lazyAttributes, SourceCallback callback) throws Exception
+    {
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to stream LDAP entries matching " + filter + " under: " + baseDn + " in pages of " + pageSize + " entries");
+        }
+        
+        LDAPSearchControls controls = new LDAPSearchControls();
+        if(attributes != null && attributes.size() > 0)
+        {
+            controls.setAttributesToReturn(attributes.toArray(new String[0]));
+        }
+        controls.setMaxResults(maxResults);
+        controls.setTimeout(timeout);
+        controls.setScope(scope.getValue());
+        controls.setReturnObject(returnObject);
+        controls.setPageSize(pageSize);
+        controls.setOrderBy(orderBy);
+        controls.setPrefetchPages(prefetchPages);
+        controls.setLazyAttributes(lazyAttributes);
+        
+        return processAndClose(new LDAPResultSetIterator(this.connection.search(baseDn, filter, controls)), callback);
+    }
+    
+    /**
+     * Executes the rest of the flow with a result set iterator as payload and closes it afterwards, so the LDAP connection it holds is
+     * given back even if the flow does not traverse it completely.
+     */
+    private Object processAndClose(LDAPResultSetIterator result, SourceCallback callback) throws Exception
+    {
+        try
+        {
+            return callback.process(result);
+        }
+        finally
+        {
+            if(!result.isClosed())
+            {
+                if(LOGGER.isDebugEnabled())
+                {
+                    LOGGER.debug("Closing result set after processing " + result.getCount() + " entries");
+                }
+                result.close();
+            }
+        }
+    }
+    
+    /**
+     * Listens to the changes of the LDAP entries under a base DN that match a filter, using a persistent search so the LDAP server pushes
+     * each change as soon as it happens instead of re-reading the entries periodically. The LDAP server must support the persistent search
+     * control (2.16.840.1.113730.3.4.3).
+     * <p/>
+     * Each change is processed as a {@link LDAPChangeRecord} with the entry as it is after the change (or only the DN if it was deleted, and
+     * also the previous DN if it was renamed). The <i>ldap.changeType</i> (add, modify, delete or modrdn) and <i>ldap.dn</i> inbound properties
+     * are also set.
+     * <p/>
+     * If the connection is lost, it is opened again and the entries created or modified while disconnected are processed as add or modify changes.
+     * Entries deleted or renamed while disconnected are not detected, and some changes may be processed twice.
+     * <p/>
+     * <h4>Processing the changes of all persons</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:monitor-changes}
+     * 
+     * @param baseDn The DN of the entry under which changes are monitored.
+     * @param filter A valid LDAP filter. Only changes of the entries that match it are processed.
+     * @param attributes A list of the attributes that should be returned in the changed entries. If the attributes list is empty or null, then by default all
+     *        LDAP entry attributes are returned.
+     * @param scope The scope of the monitored entries. Valid attributes are:
+     *              <ul>
+     *                 <li><b>OBJECT</b>: Only the entry at the base DN.</li>
+     *                 <li><b>ONE_LEVEL</b>: All entries one level under the base DN, not including the base DN.</li>
+     *                 <li><b>SUB_TREE</b>: All entries at all levels under and including the base DN.</li>
+     *              </ul>
+     * @param reconnectDelay Milliseconds to wait before opening the connection again if it is lost. The wait is doubled after each failed attempt, up to one minute.
+     * @param callback Used to process each change.
+     * @throws org.mule.module.ldap.api.LDAPException If the LDAP server does not support persistent searches or cannot be reached.
+     * @throws Exception In case there is any other error processing the changes.
+     */
+    @Source
+    public void monitorChanges(@FriendlyName("Base DN") String baseDn, @Optional @Default("(objectClass=*)") String filter, @Optional List<String> attributes, @Optional @Default("SUB_TREE") SearchScope scope, @Optional @Default("1000") long reconnectDelay, SourceCallback callback) throws Exception
+    {
+        LDAPSearchControls controls = new LDAPSearchControls();
+        if(attributes != null && attributes.size() > 0)
+        {
+            controls.setAttributesToReturn(attributes.toArray(new String[0]));
+        }
+        controls.setScope(scope.getValue());
+        
+        LDAPChangeMonitor monitor = this.connection.monitorChanges(baseDn, filter, controls, reconnectDelay);
+        try
+        {
+            while(!Thread.currentThread().isInterrupted())
+            {
+                LDAPChangeRecord change = monitor.poll(CHANGE_POLL_TIMEOUT);
+                if(change != null)
+                {
+                    if(LOGGER.isDebugEnabled())
+                    {
+                        LOGGER.debug("Processing " + change.getChangeTypeName() + " of " + change.getDn());
+                    }
+                    
+                    Map<String, Object> properties = new HashMap<String, Object>();
+                    properties.put(CHANGE_TYPE_PROPERTY, change.getChangeTypeName());
+                    properties.put(DN_PROPERTY, change.getDn());
+                    callback.process(change, properties);
+                }
+            }
+        }
+        catch(InterruptedException iex)
+        {
+            // Source stopped
+        }
+        finally
+        {
+            monitor.close();
+        }
+    }
+    
+    /**
+     * Polls the LDAP entries under a base DN that match a filter, processing only the entries changed since the previous poll. Use it to
+     * synchronize changes incrementally when the LDAP server does not support persistent searches.
+     * <p/>
+     * Changes are detected with a high-water mark: an attribute that the LDAP server updates every time an entry changes, like
+     * <i>modifyTimestamp</i>, <i>entryCSN</i> (OpenLDAP) or <i>uSNChanged</i> (Active Directory). Each poll searches the entries whose
+     * attribute is greater or equal than the greatest value processed, sorted by that attribute and retrieved in pages. The mark is stored
+     * in the checkpoint file after each page and when the poll ends, so after a restart only the entries changed since the last stored mark
+     * are processed. If there is no checkpoint file, then all the entries that match the filter are processed the first time.
+     * <p/>
+     * Each changed entry is processed as a {@link LDAPEntry} with the <i>ldap.dn</i> and <i>ldap.highWaterMark</i> inbound properties. If
+     * processing an entry fails, the poll stops and the entry is processed again in the next poll. Deleted entries cannot be detected.
+     * <p/>
+     * <h4>Processing the persons changed every minute</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:poll-changes}
+     * 
+     * @param baseDn The DN of the entry under which changes are searched.
+     * @param filter A valid LDAP filter. Only changes of the entries that match it are processed.
+     * @param attributes A list of the attributes that should be returned in the changed entries. If the attributes list is empty or null, then by default all
+     *        LDAP entry attributes are returned. The high-water mark attribute is always returned.
+     * @param scope The scope of the search. Valid attributes are:
+     *              <ul>
+     *                 <li><b>OBJECT</b>: Only the entry at the base DN.</li>
+     *                 <li><b>ONE_LEVEL</b>: All entries one level under the base DN, not including the base DN.</li>
+     *                 <li><b>SUB_TREE</b>: All entries at all levels under and including the base DN.</li>
+     *              </ul>
+     * @param highWaterMark The attribute used to detect changes, optionally followed by <b>:</b> and the ordering matching rule used to compare its
+     *                      values (for example <i>uSNChanged:integerOrderingMatch</i> to compare them as numbers).
+     * @param checkpointFile Path of the file where the high-water mark is stored. Each source must use its own file.
+     * @param pollingInterval Milliseconds to wait after a poll ends before starting the next one.
+     * @param pageSize The size of the pages requested to the LDAP server. The high-water mark is stored after processing each page.
+     * @param callback Used to process each changed entry.
+     * @throws org.mule.module.ldap.api.LDAPException If the checkpoint file holds the high-water mark of another attribute or cannot be read.
+     * @throws Exception In case there is any other error polling the changes.
+     */
+    @Source
+    public void pollChanges(@FriendlyName("Base DN") String baseDn, @Optional @Default("(objectClass=*)") String filter, @Optional List<String> attributes, @Optional @Default("SUB_TREE") SearchScope scope, @Optional @Default("modifyTimestamp") String highWaterMark, String checkpointFile, @Optional @Default("60000") long pollingInterval, @Optional @Default("100") int pageSize, SourceCallback callback) throws Exception
+    {
+        LDAPChangeCheckpoint checkpoint = new LDAPChangeCheckpoint(new File(checkpointFile), highWaterMark);
+        checkpoint.load();
+        LOGGER.info("Polling changes of " + filter + " under " + baseDn + " every " + pollingInterval + " ms. Last " + checkpoint.getAttributeName() + " processed: " + checkpoint.getValue());
+        
+        LDAPSearchControls controls = new LDAPSearchControls();
+        if(attributes != null && attributes.size() > 0)
+        {
+            List<String> attributesToReturn = new ArrayList<String>(attributes);
+            attributesToReturn.add(checkpoint.getAttributeName());
+            controls.setAttributesToReturn(attributesToReturn.toArray(new String[0]));
+        }
+        else
+        {
+            // Operational attributes like modifyTimestamp are only returned if requested
+            controls.setAttributesToReturn(new String[] {"*", checkpoint.getAttributeName()});
+        }
+        controls.setScope(scope.getValue());
+        controls.setPageSize(pageSize);
+        controls.setOrderBy(checkpoint.getOrderBy());
+        
+        try
+        {
+            while(!Thread.currentThread().isInterrupted())
+            {
+                try
+                {
+                    int changes = processChanges(baseDn, filter, controls, checkpoint, pageSize, callback);
+                    if(LOGGER.isDebugEnabled())
+                    {
+                        LOGGER.debug("Processed " + changes + " changed entries under " + baseDn + ". Last " + checkpoint.getAttributeName() + " processed: " + checkpoint.getValue());
+                    }
+                }
+                catch(LDAPException ex)
+                {
+                    LOGGER.warn("Could not poll changes under " + baseDn + ". Retrying in " + pollingInterval + " ms.", ex);
+                }
+                Thread.sleep(pollingInterval);
+            }
+        }
+        catch(InterruptedException iex)
+        {
+            // Source stopped
+        }
+    }
+    
+    private int processChanges(String baseDn, String filter, LDAPSearchControls controls, LDAPChangeCheckpoint checkpoint, int pageSize, SourceCallback callback) throws Exception
+    {
+        int changes = 0;
+        LDAPResultSet result = this.connection.search(baseDn, checkpoint.buildFilter(filter), controls);
+        try
+        {
+            while(result.hasNext() && !Thread.currentThread().isInterrupted())
+            {
+                LDAPEntry entry = result.next();
+                if(!checkpoint.isChanged(entry))
+                {
+                    continue;
+                }
+                
+                Map<String, Object> properties = new HashMap<String, Object>();
+                properties.put(DN_PROPERTY, entry.getDn());
+                properties.put(HIGH_WATER_MARK_PROPERTY, checkpoint.getValue(entry));
+                try
+                {
+                    callback.process(entry, properties);
+                }
+                catch(Exception ex)
+                {
+                    LOGGER.warn("Could not process changed entry " + entry.getDn() + ". It will be processed again in the next poll.", ex);
+                    break;
+                }
+                
+                checkpoint.advance(entry);
+                changes++;
+                if(pageSize > 0 && changes % pageSize == 0)
+                {
+                    checkpoint.store();
+                }
+            }
+        }
+        finally
+        {
+            result.close();
+            if(changes > 0)
+            {
+                checkpoint.store();
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * Performs a LDAP search split in several partitions that are searched concurrently, returning a lazy {@link java.util.Iterator} over the merged results.
+     * Use it to speed up searches over large directories, as each partition is a separate (and smaller) search that is performed using its own connection
+     * from the pool.
+     * <p/>
+     * There is a partition for each base DN and filter shard combination. If <i>partitionByChildren</i> is true and the scope is SUB_TREE, then the
+     * containers one level under each base DN (entries with entries under them) are searched first and each of their subtrees is searched as a separate
+     * partition. The rest of the entries one level under each base DN are searched as another partition.
+     * <p/>
+     * <h4>Searching each organizational unit in parallel</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:partitioned-search-1}
+     * <p/>
+     * <h4>Splitting a search by the first letter of the user id</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:partitioned-search-2}
+     * 
+     * @param baseDn The base DN of the LDAP search. Either this or <i>baseDns</i> should be set.
+     * @param baseDns The base DNs of the LDAP search. Each of them is searched as a separate partition.
+     * @param filter A valid LDAP filter. The LDAP connector supports LDAP search filters as defined in RFC 2254.
+     * @param filterShards Filters that split the entries matching <i>filter</i> in disjoint sets (for example uid=a*, uid=b*, ...). Each of them is
+     *                     searched as a separate partition using the filter <i>(&filter shard)</i>.
+     * @param attributes A list of the attributes that should be returned in the result. If the attributes list is empty or null, then by default all
+     *        LDAP entry attributes are returned.
+     * @param scope The scope of the search. Valid attributes are:
+     *              <ul>
+     *                 <li><b>OBJECT</b>: This value is used to indicate searching only the entry at the base DN, resulting in only that entry
+     *                               being returned (keeping in mind that it also has to meet the search filter criteria!)</li>
+     *                 <li><b>ONE_LEVEL</b>: This value is used to indicate searching all entries one level under the base DN - but not including
+     *                               the base DN and not including any entries under that one level under the base DN. </li>
+     *                 <li><b>SUB_TREE</b>: This value is used to indicate searching of all entries at all levels under and including the specified base DN.</li>
+     *              </ul>
+     * @param partitionByChildren If true and scope is SUB_TREE, then the subtree of each container one level under the base DNs is searched as a separate partition.
+     * @param parallelism Maximum amount of partitions searched at the same time. This is also the amount of threads used to search them.
+     * @param timeout Search timeout in milliseconds. If the value is 0, this means to wait indefinitely. 
+     * @param maxResults The maximum number of entries that will be returned as a result of the whole search. 0 indicates that all entries will be returned.
+     *                   Once the limit is reached, the partitions that are still running are cancelled.
+     * @param returnObject Enables/disables returning objects returned as part of the result. If disabled, only the name and class of the object is returned.
+     *                     If enabled, the object will be returned. 
+     * @param pageSize The size of the pages requested to the LDAP server by each partition. If the pageSize is less or equals than 0, then paging will be disabled.
+     * @param orderBy Comma separated list of the LDAP attributes used to sort results. Each attribute may be prefixed with <b>-</b> to sort in
+     *                descending order and followed by <b>:</b> and an ordering matching rule. Each partition is sorted on its own and the sorted
+     *                partitions are merged.
+     * @param callback Used to execute the rest of the flow with a {@link LDAPResultSetIterator} over the {@link LDAPEntry} objects that match the
+     *                 search in all the partitions. The iterator is closed once the rest of the flow finishes.
+     * 
+     * @return The result of executing the rest of the flow.
+     * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to perform the search under the given base DN.
+     * @throws org.mule.module.ldap.api.NameNotFoundException If base DN is invalid (for example it doesn't exist)
+     * @throws org.mule.module.ldap.api.LDAPException In case there is any other exception, mainly related to connectivity problems or referrals.
+     * @throws Exception In case there is any other error performing the search.
+     */
+    @Processor(intercepting=true)
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public Object partitionedSearch(@Optional @FriendlyName("Base DN") String baseDn, @Optional @FriendlyName("Base DNs") List<String> baseDns, String filter, @Optional List<String> filterShards, @Optional List<String> attributes, @Optional @Default("SUB_TREE") SearchScope scope, @Optional @Default("false") boolean partitionByChildren, @Optional @Default("4") int parallelism, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional @Default("100") @Placement(group = "Search Controls") int pageSize, @Optional @Default("") @Placement(group = "Search Controls") String orderBy, SourceCallback callback) throws Exception
     {
-        try
+        List<String> allBaseDns = new ArrayList<String>();
+        if(StringUtils.isNotBlank(baseDn))
         {
-            return lookup(dn, null) != null;
+            allBaseDns.add(baseDn);
         }
-        catch(NameNotFoundException nnfe)
+        if(baseDns != null)
         {
-            return false;
+            allBaseDns.addAll(baseDns);
+        }
+        
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to search LDAP entries matching " + filter + " under: " + allBaseDns + " partitioned by " + (filterShards != null ? filterShards : "base DN") + " with parallelism " + parallelism);
+        }
+        
+        LDAPSearchControls controls = new LDAPSearchControls();
+        if(attributes != null && attributes.size() > 0)
+        {
+            controls.setAttributesToReturn(attributes.toArray(new String[0]));
         }
+        controls.setMaxResults(maxResults);
+        controls.setTimeout(timeout);
+        controls.setScope(scope.getValue());
+        controls.setReturnObject(returnObject);
+        controls.setPageSize(pageSize);
+        controls.setOrderBy(orderBy);
+        
+        return processAndClose(new LDAPResultSetIterator(this.connection.partitionedSearch(allBaseDns, filter, filterShards, partitionByChildren, controls, parallelism)), callback);
     }
     
     /**
-     * Performs a LDAP search returning a list with all the resulting LDAP entries.
-     * <p/>
-     * For queries returning large results it is recommended to use pagination (not all LDAP servers support this or are configured to support it).
-     * For that you need to provide a page size value that should be less or equal than max results (count limit). If you are getting a
-     * Sizelimit Exceeded exception then you should check that the authenticated user has enough privileges or the LDAP server is not
-     * limited by configuration.
-     * <p/>
-     * <h4>Returning all attributes for all persons that have Doe as surname</h4>
-     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-1}
-     * <p/>
-     * <h4>Returning username and fullname for the first 100 person entries</h4>
-     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-2}
+     * Exports the LDAP entries that match a search to a file in LDIF format (RFC 2849). Entries are written as they are read from the LDAP server
+     * using a paged search, so exporting large directories does not require holding the entries in memory. Long lines are folded and binary values
+     * and values that are not safe strings are base 64 encoded.
      * <p/>
-     * <h4>Search that receives all configuration attributes using Mule Expressions</h4>
-     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:search-3}
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:export-ldif}
      * 
      * @param baseDn The base DN of the LDAP search.
-     * @param filter A valid LDAP filter. The LDAP connector supports LDAP search filters as defined in RFC 2254. Some examples are:
-     *               <ul>
-     *                  <li>(objectClass=*): All objects.</li>
-     *                  <li>(&(objectClass=person)(!cn=andy)): All persons except for the one with common name (cn) "andy".</li>
-     *                  <li>(sn=sm*): All objects with a surname that starts with "sm".</li>
-     *                  <li>(&(objectClass=person)(|(sn=Smith)(sn=Johnson))): All persons with a surname equal to "Smith" or "Johnson".</li>
-     *               </ul>
-     * @param attributes A list of the attributes that should be returned in the result. If the attributes list is empty or null, then by default all
-     *        LDAP entry attributes are returned.
+     * @param filter A valid LDAP filter. The LDAP connector supports LDAP search filters as defined in RFC 2254.
+     * @param file Path of the file where the LDIF is written. If the file exists it is overwritten.
+     * @param attributes A list of the attributes that should be exported. If the attributes list is empty or null, then by default all
+     *        LDAP entry attributes are exported.
      * @param scope The scope of the search. Valid attributes are:
      *              <ul>
      *                 <li><b>OBJECT</b>: This value is used to indicate searching only the entry at the base DN, resulting in only that entry
@@ -546,58 +1422,56 @@ public class LDAPConnector
      *                               the base DN and not including any entries under that one level under the base DN. </li>
      *                 <li><b>SUB_TREE</b>: This value is used to indicate searching of all entries at all levels under and including the specified base DN.</li>
      *              </ul>
+     * @param gzip If true, then the file is compressed using GZIP.
      * @param timeout Search timeout in milliseconds. If the value is 0, this means to wait indefinitely. 
-     * @param maxResults The maximum number of entries that will be returned as a result of the search. 0 indicates that all entries will be returned. 
-     * @param returnObject Enables/disables returning objects returned as part of the result. If disabled, only the name and class of the object is returned.
-     *                     If enabled, the object will be returned. 
-     * @param pageSize If the LDAP server supports paging results set in this attribute the size of the page. If the pageSize is less or equals than 0, then paging will be disabled.
-     * 
-     * @return A {@link java.util.List} of {@link LDAPEntry} objects with the results of the search. If the search throws no results, then this is an empty list.
+     * @param maxResults The maximum number of entries that will be exported. 0 indicates that all entries will be exported. 
+     * @param pageSize The size of the pages requested to the LDAP server. If the pageSize is less or equals than 0, then paging will be disabled.
+     * @param prefetchPages If greater than 0 and paging is enabled, then up to this amount of pages are requested to the LDAP server in background while
+     *                      the current page is written.
+     * @return The amount of entries exported.
      * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to perform the search under the given base DN.
      * @throws org.mule.module.ldap.api.NameNotFoundException If base DN is invalid (for example it doesn't exist)
      * @throws org.mule.module.ldap.api.LDAPException In case there is any other exception, mainly related to connectivity problems or referrals.
-     * @throws Exception In case there is any other error performing the search.
+     * @throws Exception In case there is any other error writing the file.
      */
     @Processor
     @InvalidateConnectionOn(exception = CommunicationException.class)
-    public List<LDAPEntry> search(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional @Default("0") @Placement(group = "Search Controls") int pageSize) throws Exception
+    public long exportLdif(@FriendlyName("Base DN") String baseDn, String filter, String file, @Optional List<String> attributes, @Optional @Default("SUB_TREE") SearchScope scope, @Optional @Default("false") boolean gzip, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("500") @Placement(group = "Search Controls") int pageSize, @Optional @Default("0") @Placement(group = "Search Controls") int prefetchPages) throws Exception
     {
-        LDAPResultSet result = null;
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to export LDAP entries matching " + filter + " under: " + baseDn + " to " + file);
+        }
+        
+        LDAPSearchControls controls = new LDAPSearchControls();
+        if(attributes != null && attributes.size() > 0)
+        {
+            controls.setAttributesToReturn(attributes.toArray(new String[0]));
+        }
+        controls.setMaxResults(maxResults);
+        controls.setTimeout(timeout);
+        controls.setScope(scope.getValue());
+        controls.setPageSize(pageSize);
+        controls.setPrefetchPages(prefetchPages);
+        
+        OutputStream out = new FileOutputStream(file);
         try
         {
-            if(LOGGER.isDebugEnabled())
-            {
-                LOGGER.debug("About to search LDAP entries matching " + filter + " under: " + baseDn);
-            }
-            
-            LDAPSearchControls controls = new LDAPSearchControls();
-            if(attributes != null && attributes.size() > 0)
+            if(gzip)
             {
-                controls.setAttributesToReturn(attributes.toArray(new String[0]));
+                out = new GZIPOutputStream(out, LDIFWriter.DEFAULT_BUFFER_SIZE);
             }
-            controls.setMaxResults(maxResults);
-            controls.setTimeout(timeout);
-            controls.setScope(scope.getValue());
-            controls.setReturnObject(returnObject);
-            controls.setPageSize(pageSize);
-            
-            result = this.connection.search(baseDn, filter, controls);
-            
-            List<LDAPEntry> allEntries = result.getAllEntries();
+            long exported = this.connection.exportLdif(baseDn, filter, controls, out);
             
-            if(LOGGER.isDebugEnabled())
+            if(LOGGER.isInfoEnabled())
             {
-                LOGGER.debug("Retrieved " + allEntries.size() + " entries");
+                LOGGER.info("Exported " + exported + " LDAP entries under " + baseDn + " to " + file);
             }
-            
-            return allEntries;        
+            return exported;
         }
         finally
         {
-            if(result != null)
-            {
-                result.close();
-            }
+            out.close();
         }
     }
     
@@ -616,6 +1490,9 @@ public class LDAPConnector
      * <p/>
      * <h4>Returning all persons in lists of 100 LDAP entries</h4>
      * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:paged-result-search-2}
+     * <p/>
+     * <h4>Returning a window of pages of persons sorted by uid</h4>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:paged-result-search-3}
      * 
      * @param baseDn The base DN of the LDAP search.
      * @param filter A valid LDAP filter. The LDAP connector supports LDAP search filters as defined in RFC 2254. Some examples are:
@@ -641,9 +1518,25 @@ public class LDAPConnector
      *                     If enabled, the object will be returned. 
      * @param pageSize If the LDAP server supports paging results set in this attribute the size of the page. If the pageSize is less or equals than 0, then paging will be disabled.
      * @param resultPageSize The size of the list this operation streams. If this value is less than 1, then it will be considered that the page size is 1.
-     * @param resultOffset Considering the results are paged in resultPageSize pages, then this is the first page that should be retrieved.
+     * @param resultOffset Considering the results are paged in resultPageSize pages, then this is the first page that should be retrieved. If <i>orderBy</i>
+     *                     is set and the LDAP server supports the virtual list view control, then only the requested pages are sent by the server. Otherwise
+     *                     the entries of the skipped pages are sent by the server with all the requested <i>attributes</i> and read but not converted (unless
+     *                     they are sorted by the connector, which needs to convert all of them), so that the requested pages are read by the same search.
+     *                     Prefetching starts after the skipped pages.
      * @param resultPageCount How many pages of size <i>resultPageSize</i> starting at <i>resultOffset</i> should be returned/processed. If zero (0) or less or if <i>resultPageCount</i> is greater than the total amount of pages, then all pages are returned.
-     * @param orderBy Name of the LDAP attribute used to sort results.
+     * @param orderBy Comma separated list of the LDAP attributes used to sort results. Each attribute may be prefixed with <b>-</b> to sort in
+     *                descending order and followed by <b>:</b> and an ordering matching rule (for example: <i>sn,-cn:caseExactOrderingMatch</i>).
+     *                Results are sorted by the LDAP server if it supports the server side sort control, otherwise they are sorted by the
+     *                connector using temporary files to avoid holding all the results in memory.
+     * @param prefetchPages If greater than 0 and paging is enabled, then up to this amount of pages are requested to the LDAP server in background while
+     *                      the current page is processed. If the flow is slower than the LDAP server, then no more pages are requested until the
+     *                      read ahead pages are processed.
+     * @param lazyAttributes If true, then the attributes of each entry are converted only when they are read. Use it to reduce the cost of searches that
+     *                       return many entries when the flow only reads a few attributes of each of them.
+     * @param filterArgs Values of the arguments of the filter, written as <i>{0}</i>, <i>{1}</i>, ... in place of assertion values (for example
+     *                   <i>(&(objectClass=person)(uid={0}))</i>). Each value is escaped, so it cannot change the structure of the filter, and the
+     *                   filter is parsed only once no matter how many times it is used. Byte arrays are escaped byte by byte and any other value is
+     *                   converted to a string.
      * @param callback Used to stream results
      * @return A list with individual results of executing the rest of flow with each results page.
      * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to perform the search under the given base DN.
@@ -653,7 +1546,7 @@ public class LDAPConnector
      */
     @Processor(intercepting=true)
     @InvalidateConnectionOn(exception = CommunicationException.class)
-    public List<Object> pagedResultSearch(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional @Default("0") @Placement(group = "Search Controls") int pageSize, @Optional @Default("1") @Placement(group = "Results Paging") int resultPageSize, @Optional @Default("0") @Placement(group = "Results Paging") int resultOffset, @Optional @Default("0") @Placement(group = "Results Paging") int resultPageCount, @Optional @Default("") @Placement(group = "Search Controls") String orderBy, SourceCallback callback) throws Exception
+    public List<Object> pagedResultSearch(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional @Default("0") @Placement(group = "Search Controls") int pageSize, @Optional @Default("1") @Placement(group = "Results Paging") int resultPageSize, @Optional @Default("0") @Placement(group = "Results Paging") int resultOffset, @Optional @Default("0") @Placement(group = "Results Paging") int resultPageCount, @Optional @Default("") @Placement(group = "Search Controls") String orderBy, @Optional @Default("0") @Placement(group = "Search Controls") int prefetchPages, @Optional @Default("false") @Placement(group = "Search Controls") boolean lazyAttributes, @Optional List<Object> filterArgs, SourceCallback callback) throws Exception
     {
         LDAPResultSet result = null;
         List<Object> flowResults = new ArrayList<Object>();
@@ -679,8 +1572,20 @@ public class LDAPConnector
             controls.setReturnObject(returnObject);
             controls.setPageSize(pageSize);
             controls.setOrderBy(orderBy);
+            controls.setPrefetchPages(prefetchPages);
+            controls.setLazyAttributes(lazyAttributes);
+            if(resultOffset > 0)
+            {
+                // The connection skips the entries of the first pages without building them
+                controls.setOffset((long) resultPageSize * resultOffset);
+                controls.setWindowSize((long) resultPageSize * resultPageCount);
+            }
             
-            result = this.connection.search(baseDn, filter, controls);
+            if(LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Offset is " + resultOffset + ". Skipping the first " + controls.getOffset() + " entries");
+            }
+            result = search(baseDn, filter, filterArgs, controls);
             
             LDAPEntry anEntry = null;
             int entryCount = 0, pageCount = 0;
@@ -688,12 +1593,6 @@ public class LDAPConnector
             
             if(resultPageSize == 1)
             {
-                if(LOGGER.isDebugEnabled())
-                {
-                    LOGGER.debug("Offest is " + resultOffset + ". Skipping the first " + resultOffset + " entries");
-                }
-                skipEntries(result, resultOffset);
-                
                 while(result.hasNext() && (resultPageCount == 0 || entryCount < resultPageCount))
                 {
                     entryCount++;
@@ -721,12 +1620,6 @@ public class LDAPConnector
             {
                 List<LDAPEntry> page;
                 
-                if(LOGGER.isDebugEnabled())
-                {
-                    LOGGER.debug("Offest is " + resultOffset + ". Skipping the first " + resultOffset + " pages of size " + resultPageSize);
-                }
-                skipEntries(result, resultPageSize * resultOffset);
-                
                 while(result.hasNext() && (resultPageCount == 0 || pageCount < resultPageCount))
                 {
                     page = new ArrayList<LDAPEntry>(resultPageSize);
@@ -774,23 +1667,15 @@ public class LDAPConnector
         }        
     }
 
-    /*
-     * LDAP doesn't support paging, so all results are always returned. In order to skip
-     * pages, the results should be ignored.
-     */
-    private void skipEntries(LDAPResultSet result, int totalEntriesToSkip) throws LDAPException
+    private LDAPResultSet search(String baseDn, String filter, List<Object> filterArgs, LDAPSearchControls controls) throws LDAPException
     {
-        if(result != null && totalEntriesToSkip > 0)
+        if(filterArgs != null && filterArgs.size() > 0)
         {
-            int count = 0;
-            while(result.hasNext() && count < totalEntriesToSkip)
-            {
-                count++;
-                result.next(); // skip
-            }
+            return this.connection.search(baseDn, filter, filterArgs.toArray(), controls);
         }
+        return this.connection.search(baseDn, filter, controls);
     }
-    
+
     /**
      * Performs a LDAP search that is supposed to return a unique result. If the search returns more than one result, then a
      * warn log message is generated and the first element of the result is returned.
@@ -822,6 +1707,10 @@ public class LDAPConnector
      * @param maxResults The maximum number of entries that will be returned as a result of the search. 0 indicates that all entries will be returned. 
      * @param returnObject Enables/disables returning objects returned as part of the result. If disabled, only the name and class of the object is returned.
      *                     If enabled, the object will be returned. 
+     * @param filterArgs Values of the arguments of the filter, written as <i>{0}</i>, <i>{1}</i>, ... in place of assertion values (for example
+     *                   <i>(&(objectClass=person)(uid={0}))</i>). Each value is escaped, so it cannot change the structure of the filter, and the
+     *                   filter is parsed only once no matter how many times it is used. Byte arrays are escaped byte by byte and any other value is
+     *                   converted to a string.
      * @return A {@link LDAPEntry} with the first element of the search result or null if there are no results.
      * @throws org.mule.module.ldap.api.NoPermissionException If the current binded user has no permissions to perform the search under the given base DN.
      * @throws org.mule.module.ldap.api.NameNotFoundException If base DN is invalid (for example it doesn't exist)
@@ -830,14 +1719,14 @@ public class LDAPConnector
      */
     @Processor
     @InvalidateConnectionOn(exception = CommunicationException.class)
-    public LDAPEntry searchOne(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject) throws Exception
+    public LDAPEntry searchOne(@FriendlyName("Base DN") String baseDn, String filter, @Optional List<String> attributes, @Optional @Default("ONE_LEVEL") SearchScope scope, @Optional @Default("0") @Placement(group = "Search Controls") int timeout, @Optional @Default("0") @Placement(group = "Search Controls") long maxResults, @Optional @Default("false") @Placement(group = "Search Controls") boolean returnObject, @Optional List<Object> filterArgs) throws Exception
     {
         if(LOGGER.isDebugEnabled())
         {
             LOGGER.debug("Searching entries under " + baseDn + " with filter " + filter);
         }
         
-        List<LDAPEntry> results = search(baseDn, filter, attributes, scope, timeout, maxResults, returnObject, 0);
+        List<LDAPEntry> results = search(baseDn, filter, attributes, scope, timeout, maxResults, returnObject, 0, filterArgs);
         
         if(results != null && results.size() > 1)
         {
@@ -1178,6 +2067,150 @@ public class LDAPConnector
             LOGGER.info("Renamed entry " + oldDn + " to " + newDn);
         }          
     }
+
+    /**
+     * Applies a batch of changes (adds, modifications, deletes and renames) using several connections at the same time. Each
+     * element of the list can be:
+     * <ul>
+     *    <li>A {@link LDAPChangeRecord}: the change is applied as is.</li>
+     *    <li>A {@link LDAPEntry} or a {@link Map} representing an entry (see {@link #mapToLdapEntry(Map)}): the entry is added,
+     *    modified or deleted depending on <i>entryChangeType</i>.</li>
+     *    <li>A {@link String}: the DN of an entry to delete (only if <i>entryChangeType</i> is DELETE).</li>
+     * </ul>
+     * A failing change does not stop the batch. Instead, this operation returns the result of each change in the same order as
+     * the changes. If a change failed, its result has the type of the exception (for example NameAlreadyBoundException) and
+     * its message.
+     * <p/>
+     * Changes to the same DN are applied in the order they appear in the list, but changes to different DNs may be applied in
+     * any order. If a change depends on another one (for example adding an entry under an entry added in the same batch), then
+     * use a parallelism of 1. The parallelism is also limited by the max pool size, and it is 1 if pooling is disabled.
+     * 
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:batch}
+     * 
+     * @param changes The changes to apply.
+     * @param entryChangeType What to do with the elements of the list that are entries (add, modify or delete them).
+     * @param parallelism Maximum amount of changes applied at the same time.
+     * @return A {@link List} of {@link LDAPChangeResult} with the result of each change.
+     * @throws org.mule.module.ldap.api.LDAPException If the batch was interrupted.
+     * @throws Exception If any element of the list cannot be converted to a change.
+     */
+    @Processor
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public List<LDAPChangeResult> batch(@Optional @Default("#[payload:]") @Placement(order = 1) List<Object> changes,
+                                        @Optional @Default("ADD") @Placement(order = 2) @FriendlyName("Entry Change Type") ChangeType entryChangeType,
+                                        @Optional @Default("1") @Placement(order = 3) int parallelism) throws Exception
+    {
+        List<LDAPChangeRecord> records = new ArrayList<LDAPChangeRecord>(changes.size());
+        for (Object change : changes)
+        {
+            records.add(toChangeRecord(change, entryChangeType));
+        }
+
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to apply " + records.size() + " changes with parallelism " + parallelism);
+        }
+        
+        List<LDAPChangeResult> results = this.connection.applyChanges(records, parallelism);
+        
+        if(LOGGER.isInfoEnabled())
+        {
+            int failed = 0;
+            for (LDAPChangeResult result : results)
+            {
+                failed += result.isSuccess() ? 0 : 1;
+            }
+            LOGGER.info("Applied " + results.size() + " changes (" + failed + " failed)");
+        }
+        
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private LDAPChangeRecord toChangeRecord(Object change, ChangeType entryChangeType) throws LDAPException
+    {
+        if (change instanceof LDAPChangeRecord)
+        {
+            return (LDAPChangeRecord) change;
+        }
+        else if (change instanceof LDAPEntry)
+        {
+            return new LDAPChangeRecord(entryChangeType.getValue(), (LDAPEntry) change);
+        }
+        else if (change instanceof Map)
+        {
+            return new LDAPChangeRecord(entryChangeType.getValue(), new LDAPEntry((Map<String, Object>) change));
+        }
+        else if (change instanceof String && entryChangeType == ChangeType.DELETE)
+        {
+            return LDAPChangeRecord.delete((String) change);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Cannot convert " + change + " to a change for entry change type " + entryChangeType);
+        }
+    }
+
+    /**
+     * Imports a LDIF file (RFC 2849) with content records or change records (add, modify, delete and modrdn). The file is read incrementally
+     * and its records are applied in batches of <i>batchSize</i> records using up to <i>parallelism</i> connections at the same time, so
+     * files of any size can be imported.
+     * <p/>
+     * Within each batch parent entries are added before their children and children are deleted before their parents. Entries whose parent
+     * does not exist yet (for example because it appears later in the file) are retried once the whole file was read. Records that are not
+     * valid or fail are written to <i>rejectFile</i> preceded by a comment with their line number and the error, so they can be fixed
+     * and imported again.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-ldap.xml.sample ldap:import-ldif}
+     * 
+     * @param file Path of the LDIF file. It must be UTF-8 encoded.
+     * @param rejectFile Path of the file where the rejected records are written. If the file exists it is overwritten.
+     * @param parallelism Maximum amount of records applied at the same time. The parallelism is also limited by the max pool size, and it is 1 if
+     *                    pooling is disabled.
+     * @param batchSize Amount of records read before applying them.
+     * @param gzip If true, then the file is decompressed using GZIP.
+     * @return A {@link LDIFImportResult} with the amount of records read, applied, rejected and deferred.
+     * @throws org.mule.module.ldap.api.LDAPException If the import was interrupted.
+     * @throws Exception In case there is any error reading the file or writing the rejected records.
+     */
+    @Processor
+    @InvalidateConnectionOn(exception = CommunicationException.class)
+    public LDIFImportResult importLdif(String file, @Optional String rejectFile, @Optional @Default("1") int parallelism, @Optional @Default("1000") int batchSize, @Optional @Default("false") boolean gzip) throws Exception
+    {
+        if(LOGGER.isDebugEnabled())
+        {
+            LOGGER.debug("About to import LDIF file " + file + " with parallelism " + parallelism + " and batch size " + batchSize);
+        }
+        
+        InputStream in = new FileInputStream(file);
+        OutputStream rejects = null;
+        try
+        {
+            if(gzip)
+            {
+                in = new GZIPInputStream(in, LDIFReader.DEFAULT_BUFFER_SIZE);
+            }
+            if(StringUtils.isNotEmpty(rejectFile))
+            {
+                rejects = new FileOutputStream(rejectFile);
+            }
+            LDIFImportResult result = this.connection.importLdif(in, rejects, parallelism, batchSize);
+            
+            if(LOGGER.isInfoEnabled())
+            {
+                LOGGER.info("Imported LDIF file " + file + ": " + result);
+            }
+            return result;
+        }
+        finally
+        {
+            in.close();
+            if(rejects != null)
+            {
+                rejects.close();
+            }
+        }
+    }
     
     /**
      * Adds a value for an attribute in an existing LDAP entry. If the entry already contained a value for the given
@@ -1509,6 +2542,156 @@ public class LDAPConnector
         this.poolTimeout = poolTimeout;
     }
 
+    public long getPoolMaxWait()
+    {
+        return poolMaxWait;
+    }
+
+    public void setPoolMaxWait(long poolMaxWait)
+    {
+        this.poolMaxWait = poolMaxWait;
+    }
+
+    public int getAuthenticationPoolSize()
+    {
+        return authenticationPoolSize;
+    }
+
+    public void setAuthenticationPoolSize(int authenticationPoolSize)
+    {
+        this.authenticationPoolSize = authenticationPoolSize;
+    }
+
+    public LoadBalancing getLoadBalancing()
+    {
+        return loadBalancing;
+    }
+
+    public void setLoadBalancing(LoadBalancing loadBalancing)
+    {
+        this.loadBalancing = loadBalancing;
+    }
+
+    public long getHealthCheckInterval()
+    {
+        return healthCheckInterval;
+    }
+
+    public void setHealthCheckInterval(long healthCheckInterval)
+    {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    public String getReplicaBaseDn()
+    {
+        return replicaBaseDn;
+    }
+
+    public void setReplicaBaseDn(String replicaBaseDn)
+    {
+        this.replicaBaseDn = replicaBaseDn;
+    }
+
+    public String getReplicaIndexes()
+    {
+        return replicaIndexes;
+    }
+
+    public void setReplicaIndexes(String replicaIndexes)
+    {
+        this.replicaIndexes = replicaIndexes;
+    }
+
+    public long getReplicaRefreshInterval()
+    {
+        return replicaRefreshInterval;
+    }
+
+    public void setReplicaRefreshInterval(long replicaRefreshInterval)
+    {
+        this.replicaRefreshInterval = replicaRefreshInterval;
+    }
+
+    public long getReplicaReconcileInterval()
+    {
+        return replicaReconcileInterval;
+    }
+
+    public void setReplicaReconcileInterval(long replicaReconcileInterval)
+    {
+        this.replicaReconcileInterval = replicaReconcileInterval;
+    }
+
+    public String getReplicaHighWaterMark()
+    {
+        return replicaHighWaterMark;
+    }
+
+    public void setReplicaHighWaterMark(String replicaHighWaterMark)
+    {
+        this.replicaHighWaterMark = replicaHighWaterMark;
+    }
+
+    public long getCacheTtl()
+    {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(long cacheTtl)
+    {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public int getCacheMaxEntries()
+    {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(int cacheMaxEntries)
+    {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public long getCacheMaxBytes()
+    {
+        return cacheMaxBytes;
+    }
+
+    public void setCacheMaxBytes(long cacheMaxBytes)
+    {
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    public boolean isCacheNotFound()
+    {
+        return cacheNotFound;
+    }
+
+    public void setCacheNotFound(boolean cacheNotFound)
+    {
+        this.cacheNotFound = cacheNotFound;
+    }
+
+    public long getGroupCacheTtl()
+    {
+        return groupCacheTtl;
+    }
+
+    public void setGroupCacheTtl(long groupCacheTtl)
+    {
+        this.groupCacheTtl = groupCacheTtl;
+    }
+
+    public String getStatisticsName()
+    {
+        return statisticsName;
+    }
+
+    public void setStatisticsName(String statisticsName)
+    {
+        this.statisticsName = statisticsName;
+    }
+
     public Referral getReferral()
     {
         return referral;
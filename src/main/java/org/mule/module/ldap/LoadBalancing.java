@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+public enum LoadBalancing
+{
+    ROUND_ROBIN("roundRobin"), LEAST_OUTSTANDING("leastOutstanding");
+    
+    private String loadBalancing;
+    
+    private LoadBalancing(String loadBalancing)
+    {
+        this.loadBalancing = loadBalancing;
+    }
+    
+    public String toString()
+    {
+        return this.loadBalancing;
+    }
+}
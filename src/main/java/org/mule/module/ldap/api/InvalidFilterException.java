@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+/**
+ * Thrown when an LDAP search filter is not valid.
+ * 
+ * @author mariano
+ */
+public class InvalidFilterException extends LDAPException
+{
+
+    private static final long serialVersionUID = -4215736582239410147L;
+
+    /**
+     * 
+     */
+    public InvalidFilterException()
+    {
+    }
+
+    /**
+     * @param message
+     * @param cause
+     */
+    public InvalidFilterException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+
+    /**
+     * @param message
+     */
+    public InvalidFilterException(String message)
+    {
+        super(message);
+    }
+
+    /**
+     * @param cause
+     */
+    public InvalidFilterException(Throwable cause)
+    {
+        super(cause);
+    }
+
+}
+
+
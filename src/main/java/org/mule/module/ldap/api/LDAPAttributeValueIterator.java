@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Lazy {@link Iterator} over the values of an attribute of a LDAP entry. Values are read using
+ * range retrieval (<i>member;range=0-1499</i>), so only the values of the current range are held
+ * in memory. A range is requested only when the values of the previous one were consumed.
+ * <p/>
+ * If the LDAP server does not support range retrieval then all the values are read with the first
+ * request, and each value is released as soon as it is returned.
+ * <p/>
+ * As {@link Iterator} methods cannot throw checked exceptions, {@link LDAPException} errors are
+ * thrown wrapped in an {@link IllegalStateException}. This iterator can be traversed only once.
+ *
+ * @author mariano
+ */
+public class LDAPAttributeValueIterator implements Iterator<Object>, Iterable<Object>
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final String RANGE_OPTION = ";range=";
+
+    private final LDAPConnection connection;
+    private final String dn;
+    private final String attributeName;
+    private final int rangeSize;
+
+    private List<Object> values = null;
+    private int position = 0;
+    private int nextFirst = 0;
+    private boolean lastRange = false;
+    private long count = 0;
+    private int ranges = 0;
+
+    /**
+     * @param connection
+     * @param dn DN of the entry.
+     * @param attributeName Name of the attribute, without options.
+     * @param rangeSize Amount of values requested at a time. If 0 or less, then the LDAP server decides
+     *        the size of each range (for example <i>MaxValRange</i> in Active Directory).
+     */
+    public LDAPAttributeValueIterator(LDAPConnection connection, String dn, String attributeName, int rangeSize)
+    {
+        this.connection = connection;
+        this.dn = dn;
+        this.attributeName = attributeName;
+        this.rangeSize = rangeSize;
+    }
+
+    /**
+     * @return
+     * @see java.util.Iterator#hasNext()
+     */
+    @Override
+    public boolean hasNext()
+    {
+        while (values == null || position >= values.size())
+        {
+            if (lastRange)
+            {
+                return false;
+            }
+            try
+            {
+                readRange();
+            }
+            catch (LDAPException ex)
+            {
+                lastRange = true;
+                values = null;
+                throw new IllegalStateException(ex.getMessage(), ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return
+     * @see java.util.Iterator#next()
+     */
+    @Override
+    public Object next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        count++;
+        // Released so that only the pending values are held in memory
+        return values.set(position++, null);
+    }
+
+    /**
+     * @see java.util.Iterator#remove()
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Values cannot be removed while iterating them.");
+    }
+
+    /**
+     * @return
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Object> iterator()
+    {
+        return this;
+    }
+
+    /**
+     * @return The amount of values returned so far.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return The amount of requests sent to the LDAP server so far.
+     */
+    public int getRanges()
+    {
+        return ranges;
+    }
+
+    private void readRange() throws LDAPException
+    {
+        int requestedLast = rangeSize > 0 ? nextFirst + rangeSize - 1 : -1;
+        LDAPEntryAttribute attribute = connection.lookupAttributeRange(dn, attributeName, nextFirst, requestedLast);
+        ranges++;
+
+        values = attribute != null ? attribute.getValues() : null;
+        position = 0;
+        if (values == null || values.isEmpty())
+        {
+            lastRange = true;
+            return;
+        }
+
+        // The returned name holds the range actually sent by the server (for example member;range=1500-*)
+        String name = attribute.getName();
+        int option = name.toLowerCase().indexOf(RANGE_OPTION);
+        String range = option >= 0 ? name.substring(option + RANGE_OPTION.length()) : "*";
+        int separator = range.indexOf('-');
+        if (separator < 0 || range.endsWith("-*"))
+        {
+            lastRange = true;
+        }
+        else
+        {
+            try
+            {
+                int first = Integer.parseInt(range.substring(0, separator));
+                int last = Integer.parseInt(range.substring(separator + 1));
+                // A server that ignores the range may still echo it, so the values must match it
+                lastRange = first != nextFirst || last - first + 1 != values.size();
+                nextFirst = last + 1;
+            }
+            catch (NumberFormatException ex)
+            {
+                throw new LDAPException("Invalid range " + name + " returned for attribute " + attributeName + " of " + dn);
+            }
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Read " + values.size() + " values of " + name + " from " + dn);
+        }
+    }
+}
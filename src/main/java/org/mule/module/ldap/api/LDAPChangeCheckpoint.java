@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * High-water mark of an incremental search: the greatest value of an attribute that changes every
+ * time an entry is modified (like <i>modifyTimestamp</i>, <i>entryCSN</i> or <i>uSNChanged</i>)
+ * among the entries already processed. It is stored in a file so that, after a restart, only the
+ * entries changed since the last stored mark are searched again.
+ * <p/>
+ * Entries are searched with <i>(attribute&gt;=mark)</i> because several entries may share the same
+ * value. To avoid returning those entries twice, the DNs of the processed entries whose value is
+ * equal to the mark are stored too.
+ * <p/>
+ * The attribute is given as a sort key (<i>attribute[:matchingRule]</i>, see {@link LDAPSortKey}).
+ * The matching rule is used to compare values (for example <i>uSNChanged:integerOrderingMatch</i>
+ * compares them as numbers) and must be the one used to sort the entries, as the mark can only be
+ * stored after processing an entry if no entry with a lower value comes after it.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @author mariano
+ */
+public class LDAPChangeCheckpoint
+{
+    private static final String ATTRIBUTE_PROPERTY = "attribute";
+    private static final String VALUE_PROPERTY = "value";
+    private static final String DN_PROPERTY_PREFIX = "dn.";
+
+    private final File file;
+    private final LDAPSortKey key;
+    private String value = null;
+    private final Set<String> dnsAtValue = new HashSet<String>();
+
+    /**
+     * @param file The file where the mark is stored. It doesn't need to exist. If null, the mark is only kept in memory.
+     * @param attribute The attribute used as high-water mark and optionally its ordering matching rule (for example <i>uSNChanged:integerOrderingMatch</i>).
+     * @throws IllegalArgumentException If <i>attribute</i> is not a single sort key in ascending order.
+     */
+    public LDAPChangeCheckpoint(File file, String attribute)
+    {
+        List<LDAPSortKey> keys = LDAPSortKey.parse(attribute);
+        if (keys.size() != 1 || keys.get(0).isReverseOrder())
+        {
+            throw new IllegalArgumentException("The high-water mark must be a single attribute in ascending order: " + attribute);
+        }
+        this.file = file;
+        this.key = keys.get(0);
+    }
+
+    /**
+     * Reads the mark stored in the file, if it exists.
+     *
+     * @throws LDAPException If the file cannot be read or it holds the mark of another attribute.
+     */
+    public void load() throws LDAPException
+    {
+        value = null;
+        dnsAtValue.clear();
+        if (file == null || !file.exists())
+        {
+            return;
+        }
+
+        Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            properties.load(in);
+        }
+        catch (IOException ex)
+        {
+            throw new LDAPException("Could not read checkpoint " + file.getAbsolutePath(), ex);
+        }
+        finally
+        {
+            close(in);
+        }
+
+        String storedAttribute = properties.getProperty(ATTRIBUTE_PROPERTY);
+        if (storedAttribute != null && !storedAttribute.equalsIgnoreCase(getAttributeName()))
+        {
+            throw new LDAPException("Checkpoint " + file.getAbsolutePath() + " holds a high-water mark of " + storedAttribute + " instead of " + getAttributeName());
+        }
+
+        value = properties.getProperty(VALUE_PROPERTY);
+        for (String name : properties.stringPropertyNames())
+        {
+            if (name.startsWith(DN_PROPERTY_PREFIX))
+            {
+                dnsAtValue.add(properties.getProperty(name));
+            }
+        }
+    }
+
+    /**
+     * Writes the mark to a temporary file that then replaces the checkpoint file, so a failure
+     * while writing never leaves a partial checkpoint.
+     *
+     * @throws LDAPException If the file cannot be written.
+     */
+    public void store() throws LDAPException
+    {
+        if (file == null)
+        {
+            return;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(ATTRIBUTE_PROPERTY, getAttributeName());
+        if (value != null)
+        {
+            properties.setProperty(VALUE_PROPERTY, value);
+        }
+        int index = 0;
+        for (String dn : dnsAtValue)
+        {
+            properties.setProperty(DN_PROPERTY_PREFIX + index++, dn);
+        }
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        File temp = new File(directory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try
+        {
+            if (directory != null && !directory.exists() && !directory.mkdirs())
+            {
+                throw new IOException("Cannot create directory " + directory);
+            }
+            out = new FileOutputStream(temp);
+            properties.store(out, "LDAP high-water mark");
+            out.close();
+            out = null;
+
+            // renameTo does not replace existing files on every platform
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+            {
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new LDAPException("Could not write checkpoint " + file.getAbsolutePath(), ex);
+        }
+        finally
+        {
+            close(out);
+        }
+    }
+
+    /**
+     * @param filter
+     * @return A filter that matches the entries that match <i>filter</i> and were changed since the mark.
+     */
+    public String buildFilter(String filter)
+    {
+        String trimmed = filter != null ? filter.trim() : "";
+        String condition = "(" + getAttributeName() + (value != null ? ">=" + LDAPFilter.escape(value) : "=*") + ")";
+        if (trimmed.length() == 0)
+        {
+            return condition;
+        }
+        return "(&" + (trimmed.startsWith("(") ? trimmed : "(" + trimmed + ")") + condition + ")";
+    }
+
+    /**
+     * @return The order the entries must be searched in.
+     */
+    public String getOrderBy()
+    {
+        return key.getMatchingRule() != null ? getAttributeName() + ":" + key.getMatchingRule() : getAttributeName();
+    }
+
+    /**
+     * @param entry
+     * @return true if the entry was changed after the mark or if it has the same value as the mark but was not processed.
+     */
+    public boolean isChanged(LDAPEntry entry)
+    {
+        Object entryValue = getValue(entry);
+        if (entryValue == null)
+        {
+            return false;
+        }
+        if (value == null)
+        {
+            return true;
+        }
+        int result = LDAPEntryComparator.compareValues(entryValue.toString(), value, key.getMatchingRule());
+        return result > 0 || (result == 0 && !dnsAtValue.contains(LDAPUtils.normalizeDn(entry.getDn())));
+    }
+
+    /**
+     * Moves the mark to the value of a processed entry, if it is greater.
+     *
+     * @param entry
+     */
+    public void advance(LDAPEntry entry)
+    {
+        Object entryValue = getValue(entry);
+        if (entryValue == null)
+        {
+            return;
+        }
+        int result = value != null ? LDAPEntryComparator.compareValues(entryValue.toString(), value, key.getMatchingRule()) : 1;
+        if (result > 0)
+        {
+            value = entryValue.toString();
+            dnsAtValue.clear();
+        }
+        if (result >= 0)
+        {
+            dnsAtValue.add(LDAPUtils.normalizeDn(entry.getDn()));
+        }
+    }
+
+    /**
+     * @return The value of the mark or null if no entry was processed yet.
+     */
+    public String getValue()
+    {
+        return value;
+    }
+
+    public String getAttributeName()
+    {
+        return key.getAttributeName();
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @param entry
+     * @return The value of the high-water mark attribute of the entry (the first one if it has many).
+     */
+    public Object getValue(LDAPEntry entry)
+    {
+        return entry != null && entry.getAttributes() != null ? entry.getAttributes().getValue(getAttributeName()) : null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LDAPChangeCheckpoint[file=" + file + ", attribute=" + getAttributeName() + ", value=" + value + "]";
+    }
+
+    private static void close(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException ex)
+            {
+                // Nothing to do
+            }
+        }
+    }
+}
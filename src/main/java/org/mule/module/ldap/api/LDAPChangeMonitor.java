@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+/**
+ * Changes pushed by the LDAP server for the entries under a base DN that match a filter. Each change
+ * is returned as a {@link LDAPChangeRecord}:
+ * <ul>
+ *    <li>{@link LDAPChangeRecord#ADD} and {@link LDAPChangeRecord#MODIFY}: the entry as it is after the change.</li>
+ *    <li>{@link LDAPChangeRecord#DELETE}: the DN of the deleted entry.</li>
+ *    <li>{@link LDAPChangeRecord#MODRDN}: the previous DN, the new DN and the renamed entry.</li>
+ * </ul>
+ * If the connection is lost, the monitor reconnects by itself and changes made meanwhile are returned
+ * again as {@link LDAPChangeRecord#ADD} or {@link LDAPChangeRecord#MODIFY}, so a change may be
+ * returned more than once.
+ *
+ * @author mariano
+ */
+public interface LDAPChangeMonitor
+{
+    /**
+     * @param timeout Milliseconds to wait for a change.
+     * @return The next change or null if there was no change before the timeout.
+     * @throws LDAPException If the monitor is closed.
+     * @throws InterruptedException
+     */
+    LDAPChangeRecord poll(long timeout) throws LDAPException, InterruptedException;
+
+    boolean isConnected();
+
+    void close();
+
+    boolean isClosed();
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A change to apply to the LDAP server, similar to a LDIF change record (RFC 2849). Depending on
+ * the change type the record holds:
+ * <ul>
+ *    <li>{@link #ADD}: the entry to add.</li>
+ *    <li>{@link #MODIFY}: the DN and the list of modifications or, if there are no modifications,
+ *        the entry whose attributes replace the existing ones.</li>
+ *    <li>{@link #DELETE}: the DN of the entry to delete.</li>
+ *    <li>{@link #MODRDN}: the DN of the entry and its new DN.</li>
+ * </ul>
+ * 
+ * @author mariano
+ */
+public class LDAPChangeRecord implements Serializable
+{
+    private static final long serialVersionUID = -6184772960451829213L;
+
+    public final static int ADD = 0;
+    public final static int MODIFY = 1;
+    public final static int DELETE = 2;
+    public final static int MODRDN = 3;
+
+    private int changeType = ADD;
+    private String dn = null;
+    private LDAPEntry entry = null;
+    private String newDn = null;
+    private List<LDAPModification> modifications = new ArrayList<LDAPModification>();
+
+    public LDAPChangeRecord()
+    {
+    }
+
+    /**
+     * @param changeType
+     * @param dn
+     */
+    public LDAPChangeRecord(int changeType, String dn)
+    {
+        this.changeType = changeType;
+        this.dn = dn;
+    }
+
+    /**
+     * @param changeType {@link #ADD} or {@link #MODIFY}.
+     * @param entry
+     */
+    public LDAPChangeRecord(int changeType, LDAPEntry entry)
+    {
+        this(changeType, entry != null ? entry.getDn() : null);
+        this.entry = entry;
+    }
+
+    public static LDAPChangeRecord add(LDAPEntry entry)
+    {
+        return new LDAPChangeRecord(ADD, entry);
+    }
+
+    public static LDAPChangeRecord modify(LDAPEntry entry)
+    {
+        return new LDAPChangeRecord(MODIFY, entry);
+    }
+
+    public static LDAPChangeRecord modify(String dn, List<LDAPModification> modifications)
+    {
+        LDAPChangeRecord record = new LDAPChangeRecord(MODIFY, dn);
+        record.setModifications(modifications);
+        return record;
+    }
+
+    public static LDAPChangeRecord delete(String dn)
+    {
+        return new LDAPChangeRecord(DELETE, dn);
+    }
+
+    public static LDAPChangeRecord modrdn(String dn, String newDn)
+    {
+        LDAPChangeRecord record = new LDAPChangeRecord(MODRDN, dn);
+        record.setNewDn(newDn);
+        return record;
+    }
+
+    /**
+     * @return The name of the change type as used in LDIF (add, modify, delete or modrdn).
+     */
+    public String getChangeTypeName()
+    {
+        switch (changeType)
+        {
+            case ADD:
+                return "add";
+            case MODIFY:
+                return "modify";
+            case DELETE:
+                return "delete";
+            case MODRDN:
+                return "modrdn";
+            default:
+                return String.valueOf(changeType);
+        }
+    }
+
+    public int getChangeType()
+    {
+        return changeType;
+    }
+
+    public void setChangeType(int changeType)
+    {
+        this.changeType = changeType;
+    }
+
+    public String getDn()
+    {
+        return dn != null ? dn : (entry != null ? entry.getDn() : null);
+    }
+
+    public void setDn(String dn)
+    {
+        this.dn = dn;
+    }
+
+    public LDAPEntry getEntry()
+    {
+        return entry;
+    }
+
+    public void setEntry(LDAPEntry entry)
+    {
+        this.entry = entry;
+    }
+
+    public String getNewDn()
+    {
+        return newDn;
+    }
+
+    public void setNewDn(String newDn)
+    {
+        this.newDn = newDn;
+    }
+
+    public List<LDAPModification> getModifications()
+    {
+        return modifications;
+    }
+
+    public void setModifications(List<LDAPModification> modifications)
+    {
+        this.modifications = modifications != null ? modifications : new ArrayList<LDAPModification>();
+    }
+
+    public void addModification(LDAPModification modification)
+    {
+        this.modifications.add(modification);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "{changetype: " + getChangeTypeName() + ", dn: " + getDn() + (newDn != null ? ", newdn: " + newDn : "") + "}";
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+
+/**
+ * The outcome of applying a {@link LDAPChangeRecord}. If the change failed, then the result holds
+ * the exception that was thrown, which is one of the {@link LDAPException} subclasses (for
+ * example {@link NameAlreadyBoundException} or {@link NameNotFoundException}) when the failure
+ * was reported by the LDAP server.
+ * 
+ * @author mariano
+ */
+public class LDAPChangeResult implements Serializable
+{
+    private static final long serialVersionUID = 4458197264135527113L;
+
+    private final int index;
+    private final LDAPChangeRecord change;
+    private final Exception exception;
+
+    /**
+     * @param index Position of the change in the batch.
+     * @param change
+     * @param exception The exception thrown while applying the change or null if it succeeded.
+     */
+    public LDAPChangeResult(int index, LDAPChangeRecord change, Exception exception)
+    {
+        this.index = index;
+        this.change = change;
+        this.exception = exception;
+    }
+
+    public int getIndex()
+    {
+        return index;
+    }
+
+    public LDAPChangeRecord getChange()
+    {
+        return change;
+    }
+
+    public String getDn()
+    {
+        return change != null ? change.getDn() : null;
+    }
+
+    public boolean isSuccess()
+    {
+        return exception == null;
+    }
+
+    public Exception getException()
+    {
+        return exception;
+    }
+
+    /**
+     * @return The simple class name of the exception (for example <i>NameAlreadyBoundException</i>) or null if the change succeeded.
+     */
+    public String getExceptionType()
+    {
+        return exception != null ? exception.getClass().getSimpleName() : null;
+    }
+
+    /**
+     * @return The message of the exception or null if the change succeeded.
+     */
+    public String getMessage()
+    {
+        return exception != null ? exception.getMessage() : null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "{index: " + index + ", change: " + change + ", success: " + isSuccess() + (exception != null ? ", exception: " + getExceptionType() + ", message: " + getMessage() : "") + "}";
+    }
+}
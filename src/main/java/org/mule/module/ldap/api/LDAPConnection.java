@@ -8,8 +8,30 @@
 
 package org.mule.module.ldap.api;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -26,6 +48,11 @@ public abstract class LDAPConnection
     protected final Log logger = LogFactory.getLog(getClass());
 
     private String name = null;
+    
+    private ExecutorService executor = null;
+    private ExecutorService asyncExecutor = null;
+    private Semaphore partitionPermits = null;
+    private LDAPGroupResolver groupResolver = new LDAPGroupResolver(this, 0);
 
     protected static final Map<String, Class<?>> CONNECTION_IMPLEMENTATIONS = new HashMap<String, Class<?>>();
 
@@ -42,7 +69,32 @@ public abstract class LDAPConnection
     public static final String INITIAL_POOL_CONNECTIONS_ATTR = "initialPoolSize";
     public static final String MAX_POOL_CONNECTIONS_ATTR = "maxPoolSize";
     public static final String POOL_TIMEOUT_ATTR = "poolTimeout";
+    public static final String POOL_MAX_WAIT_ATTR = "poolMaxWait";
     public static final String REFERRAL_ATTR = "referral";
+    public static final String CACHE_TTL_ATTR = "cacheTtl";
+    public static final String CACHE_MAX_ENTRIES_ATTR = "cacheMaxEntries";
+    public static final String CACHE_MAX_BYTES_ATTR = "cacheMaxBytes";
+    public static final String CACHE_NOT_FOUND_ATTR = "cacheNotFound";
+    public static final String STATISTICS_NAME_ATTR = "statisticsName";
+    public static final String GROUP_CACHE_TTL_ATTR = "groupCacheTtl";
+    public static final String AUTHENTICATION_POOL_SIZE_ATTR = "authenticationPoolSize";
+    public static final String LOAD_BALANCING_ATTR = "loadBalancing";
+    public static final String HEALTH_CHECK_INTERVAL_ATTR = "healthCheckInterval";
+    public static final String REPLICA_BASE_DN_ATTR = "replicaBaseDn";
+    public static final String REPLICA_INDEXES_ATTR = "replicaIndexes";
+    public static final String REPLICA_REFRESH_INTERVAL_ATTR = "replicaRefreshInterval";
+    public static final String REPLICA_RECONCILE_INTERVAL_ATTR = "replicaReconcileInterval";
+    public static final String REPLICA_HIGH_WATER_MARK_ATTR = "replicaHighWaterMark";
+    
+    /**
+     * Maximum amount of child containers searched as separate partitions. If there are more, then the
+     * base DN is searched as a single partition.
+     */
+    public static final int MAX_CHILD_PARTITIONS = 256;
+    
+    private static final String HAS_SUBORDINATES_ATTR = "hasSubordinates";
+    private static final String OBJECT_CLASS_ATTR = "objectClass";
+    private static final Set<String> CONTAINER_OBJECT_CLASSES = new HashSet<String>(Arrays.asList("organizationalunit", "organization", "container", "domain", "locality", "country"));
     
     /**
 	 * 
@@ -138,13 +190,25 @@ public abstract class LDAPConnection
      * @throws LDAPException
      */
     public abstract void rebind() throws LDAPException;
+
+    /**
+     * Checks the password of a user with a simple bind, without changing the identity used by
+     * this connection. Implementations should not open a new connection for each check.
+     * 
+     * @param dn DN of the user.
+     * @param password Password of the user.
+     * @return true if the credentials are valid, false if they are not (or if the password is empty).
+     * @throws LDAPException If the credentials cannot be checked (for example because the server is not reachable).
+     */
+    public abstract boolean verifyCredentials(String dn, String password) throws LDAPException;
     
     /**
      * @param baseDn
-     * @param filter
-     * @param filterArgs
+     * @param filter Filter with arguments written as <i>{n}</i> (see {@link LDAPFilter}).
+     * @param filterArgs Values of the arguments. They are escaped, so they cannot change the structure of the filter.
      * @param controls
      * @return
+     * @throws InvalidFilterException If the filter is not valid or there are missing arguments.
      * @throws LDAPException
      */
     public abstract LDAPResultSet search(String baseDn,
@@ -169,6 +233,303 @@ public abstract class LDAPConnection
     public abstract LDAPResultSet search(String baseDn, String filter, LDAPSearchControls controls)
         throws LDAPException;
 
+    /**
+     * Starts monitoring the changes of the entries under <i>baseDn</i> that match <i>filter</i>. The
+     * monitor uses its own connection, bound with the identity of this connection, so it must be
+     * closed when no longer needed.
+     *
+     * @param baseDn
+     * @param filter
+     * @param controls Only the scope and the attributes to return are used.
+     * @param reconnectDelay Milliseconds to wait before reconnecting if the monitor connection is lost.
+     * @return
+     * @throws LDAPException If the server does not support change notifications or the monitor cannot connect.
+     */
+    public abstract LDAPChangeMonitor monitorChanges(String baseDn, String filter, LDAPSearchControls controls, long reconnectDelay)
+        throws LDAPException;
+
+    /**
+     * Splits a search in several partitions that are searched concurrently (each one using its own
+     * connection if pooling is enabled) and merges their results in a single {@link LDAPResultSet}.
+     * <p/>
+     * There is a partition for each base DN and filter shard combination. The filter of a partition is
+     * <i>(&filter shard)</i>. If <i>partitionByChildren</i> is true and the scope is
+     * {@link LDAPSearchControls#SUBTREE_SCOPE}, then the containers one level under each base DN (entries
+     * with entries under them) are searched first and each of their subtrees becomes a partition (plus
+     * the base DN itself and the rest of the entries one level under it). If there are no containers or
+     * there are more than {@link #MAX_CHILD_PARTITIONS}, then the base DN is searched as a single partition.
+     * <p/>
+     * If an order is defined in the search controls, then the results are sorted. <i>maxResults</i> is
+     * applied to the whole result and partitions still running when it is reached are cancelled. So are
+     * the offset and window size.
+     * 
+     * @param baseDns The base DNs to search.
+     * @param filter
+     * @param filterShards Filters that split the entries matching <i>filter</i> in disjoint sets (for example uid=a*, uid=b*, ...). Null or empty if the search should not be split by filter.
+     * @param partitionByChildren Whether each container one level under the base DNs should be a partition.
+     * @param controls
+     * @param parallelism Maximum amount of partitions searched at the same time (and threads used to search them). It is capped to one less than the connections available (see {@link #getMaxParallelism()}), and the partitions of concurrent partitioned searches share that limit.
+     * @return
+     * @throws LDAPException
+     */
+    public LDAPResultSet partitionedSearch(List<String> baseDns, String filter, List<String> filterShards, boolean partitionByChildren, LDAPSearchControls controls, int parallelism) throws LDAPException
+    {
+        if (baseDns == null || baseDns.isEmpty())
+        {
+            throw new LDAPException("At least one base DN is required to perform a partitioned search.");
+        }
+
+        final LDAPSearchControls partitionControls = new LDAPSearchControls(controls);
+        // Each partition is read by its own thread and sorted before merging
+        partitionControls.setOrderBy(null);
+        partitionControls.setPrefetchPages(0);
+        // Windows only apply to the merged results
+        partitionControls.setOffset(0);
+        partitionControls.setWindowSize(0);
+
+        List<SearchBase> bases = new ArrayList<SearchBase>();
+        for (String baseDn : baseDns)
+        {
+            List<String> containers = partitionByChildren && controls.getScope() == LDAPSearchControls.SUBTREE_SCOPE ? getChildContainerDns(baseDn) : null;
+            if (containers != null && !containers.isEmpty() && containers.size() <= MAX_CHILD_PARTITIONS)
+            {
+                bases.add(new SearchBase(baseDn, LDAPSearchControls.OBJECT_SCOPE, null));
+                // The containers themselves are returned by their own subtree partitions
+                bases.add(new SearchBase(baseDn, LDAPSearchControls.ONELEVEL_SCOPE, new HashSet<String>(containers)));
+                for (String containerDn : containers)
+                {
+                    bases.add(new SearchBase(containerDn, LDAPSearchControls.SUBTREE_SCOPE, null));
+                }
+            }
+            else
+            {
+                bases.add(new SearchBase(baseDn, controls.getScope(), null));
+            }
+        }
+
+        List<String> filters = new ArrayList<String>();
+        if (filterShards != null && !filterShards.isEmpty())
+        {
+            for (String shard : filterShards)
+            {
+                filters.add("(&" + enclose(filter) + enclose(shard) + ")");
+            }
+        }
+        else
+        {
+            filters.add(filter);
+        }
+
+        List<Callable<LDAPResultSet>> partitions = new ArrayList<Callable<LDAPResultSet>>();
+        for (final SearchBase base : bases)
+        {
+            for (final String partitionFilter : filters)
+            {
+                partitions.add(new Callable<LDAPResultSet>()
+                {
+                    @Override
+                    public LDAPResultSet call() throws Exception
+                    {
+                        LDAPSearchControls scopedControls = new LDAPSearchControls(partitionControls);
+                        scopedControls.setScope(base.scope);
+                        Semaphore permits = getPartitionPermits();
+                        permits.acquire();
+                        try
+                        {
+                            LDAPResultSet result = search(base.dn, partitionFilter, scopedControls);
+                            result = base.excludedDns != null ? new ExcludingLDAPResultSet(result, base.excludedDns) : result;
+                            return new PermitLDAPResultSet(result, permits);
+                        }
+                        catch (Exception ex)
+                        {
+                            permits.release();
+                            throw ex;
+                        }
+                    }
+                });
+            }
+        }
+
+        // Leave a connection for the operations performed while the results are being read
+        int workers = Math.min(Math.min(parallelism, Math.max(getMaxParallelism() - 1, 1)), partitions.size());
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Searching " + partitions.size() + " partitions with parallelism " + Math.max(workers, 1));
+        }
+
+        long maxResults = controls.getMaxResults();
+        if (controls.getWindowSize() > 0 && (maxResults <= 0 || maxResults > controls.getOffset() + controls.getWindowSize()))
+        {
+            maxResults = controls.getOffset() + controls.getWindowSize();
+        }
+        MergingLDAPResultSet result = new MergingLDAPResultSet(partitions, controls.isOrderBySet() ? new LDAPEntryComparator(controls.getSortKeys()) : null, maxResults, Math.max(workers, 1), controls.getSortBufferSize(), Math.max(controls.getPageSize(), 0) * 2);
+        result.start(getExecutor());
+        try
+        {
+            for (long skipped = 0; skipped < controls.getOffset() && result.hasNext(); skipped++)
+            {
+                result.next();
+            }
+        }
+        catch (LDAPException ex)
+        {
+            result.close();
+            throw ex;
+        }
+        return result;
+    }
+
+    /**
+     * @param baseDn
+     * @return The DNs of the entries one level under the base DN that have entries under them. If the
+     *         server does not return the hasSubordinates attribute, then entries with a container
+     *         object class are considered containers.
+     * @throws LDAPException
+     */
+    private List<String> getChildContainerDns(String baseDn) throws LDAPException
+    {
+        LDAPSearchControls childrenControls = new LDAPSearchControls();
+        childrenControls.setScope(LDAPSearchControls.ONELEVEL_SCOPE);
+        childrenControls.setAttributesToReturn(new String[] {HAS_SUBORDINATES_ATTR, OBJECT_CLASS_ATTR});
+
+        List<String> dns = new ArrayList<String>();
+        LDAPResultSet children = search(baseDn, "(objectClass=*)", childrenControls);
+        try
+        {
+            while (children.hasNext())
+            {
+                LDAPEntry child = children.next();
+                if (isContainer(child))
+                {
+                    dns.add(child.getDn());
+                }
+            }
+        }
+        finally
+        {
+            children.close();
+        }
+        return dns;
+    }
+
+    private boolean isContainer(LDAPEntry entry)
+    {
+        LDAPEntryAttribute hasSubordinates = entry.getAttribute(HAS_SUBORDINATES_ATTR);
+        if (hasSubordinates != null)
+        {
+            return "TRUE".equalsIgnoreCase(String.valueOf(hasSubordinates.getValue()));
+        }
+        LDAPEntryAttribute objectClasses = entry.getAttribute(OBJECT_CLASS_ATTR);
+        if (objectClasses != null)
+        {
+            for (Object objectClass : objectClasses.getValues())
+            {
+                if (CONTAINER_OBJECT_CLASSES.contains(String.valueOf(objectClass).toLowerCase()))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String enclose(String filter)
+    {
+        String trimmed = filter.trim();
+        return trimmed.startsWith("(") ? trimmed : "(" + trimmed + ")";
+    }
+
+    /**
+     * Returns the groups an entry belongs to, directly or through nested groups. The groups of each
+     * nesting level are searched concurrently (see {@link LDAPGroupResolver}).
+     * 
+     * @param dn DN of the entry (usually a user).
+     * @param groupsBaseDn Base DN of the groups.
+     * @param memberAttribute Attribute of the groups that holds the DNs of their members.
+     * @param groupFilter Filter that the groups must match.
+     * @param maxDepth Maximum nesting level expanded. If 0 or less, all the levels are expanded.
+     * @return The DNs of the groups, ordered by level.
+     * @throws LDAPException
+     */
+    public Set<String> getGroupMembership(String dn, String groupsBaseDn, String memberAttribute, String groupFilter, int maxDepth) throws LDAPException
+    {
+        return getGroupResolver().getGroups(dn, groupsBaseDn, memberAttribute, groupFilter, maxDepth);
+    }
+
+    /**
+     * @return The resolver used by {@link #getGroupMembership(String, String, String, String, int)}.
+     */
+    public synchronized LDAPGroupResolver getGroupResolver()
+    {
+        return groupResolver;
+    }
+
+    /**
+     * @param ttl Milliseconds that the direct groups of each DN are memoized. If 0 or less, they are not memoized.
+     */
+    protected synchronized void setGroupCacheTtl(long ttl)
+    {
+        this.groupResolver = new LDAPGroupResolver(this, ttl);
+    }
+
+    /**
+     * Writes the entries that match a search to an {@link OutputStream} as LDIF (see {@link LDIFWriter}).
+     * Entries are written as they are read, so if paging is enabled in the search controls the memory
+     * used does not depend on the amount of entries exported. The output stream is flushed but not closed.
+     * 
+     * @param baseDn
+     * @param filter
+     * @param controls
+     * @param out
+     * @return The amount of entries written.
+     * @throws LDAPException
+     */
+    public long exportLdif(String baseDn, String filter, LDAPSearchControls controls, OutputStream out) throws LDAPException
+    {
+        LDIFWriter writer = new LDIFWriter(out);
+        LDAPResultSet result = search(baseDn, filter, controls);
+        try
+        {
+            writer.writeVersion();
+            while (result.hasNext())
+            {
+                writer.write(result.next());
+            }
+            writer.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new LDAPException("Could not write LDIF after " + writer.getEntriesWritten() + " entries.", ex);
+        }
+        finally
+        {
+            result.close();
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Exported " + writer.getEntriesWritten() + " entries under " + baseDn + " as LDIF.");
+        }
+        return writer.getEntriesWritten();
+    }
+
+    /**
+     * Applies the records of a LDIF file. See {@link LDIFImporter} for details on how the records
+     * are ordered and applied. The streams are not closed.
+     * 
+     * @param in UTF-8 encoded LDIF.
+     * @param rejects Where the records that are not valid or fail are written. May be null.
+     * @param parallelism Maximum amount of records applied at the same time.
+     * @param batchSize Amount of records read before applying them.
+     * @return The import counters.
+     * @throws LDAPException If the LDIF cannot be read or if the import was interrupted.
+     */
+    public LDIFImportResult importLdif(InputStream in, OutputStream rejects, int parallelism, int batchSize) throws LDAPException
+    {
+        return new LDIFImporter(this, parallelism, batchSize).importLdif(in, rejects);
+    }
+
     /**
      * @param dn
      * @return
@@ -195,6 +556,37 @@ public abstract class LDAPConnection
      */
     public abstract LDAPEntry lookup(String dn, String attributes[]) throws LDAPException;
 
+    /**
+     * Reads a range of the values of an attribute using range retrieval (for example
+     * <i>member;range=0-1499</i>). The name of the returned attribute holds the range actually
+     * returned by the LDAP server, which may be smaller than the requested one, and its end is
+     * <b>*</b> if there are no more values. If the LDAP server does not support range retrieval,
+     * then all the values are returned in an attribute without the range option.
+     * 
+     * @param dn
+     * @param attributeName Name of the attribute, without options.
+     * @param first Index of the first value.
+     * @param last Index of the last value or -1 to let the server decide it.
+     * @return The values of the range or null if the entry does not have the attribute.
+     * @throws LDAPException
+     */
+    public abstract LDAPEntryAttribute lookupAttributeRange(String dn, String attributeName, int first, int last) throws LDAPException;
+
+    /**
+     * Returns a lazy iterator over the values of an attribute that reads them in ranges of
+     * <i>rangeSize</i> values (see {@link LDAPAttributeValueIterator}). Use it for attributes with
+     * too many values to hold them in memory, like the members of big groups.
+     * 
+     * @param dn
+     * @param attributeName Name of the attribute, without options.
+     * @param rangeSize Amount of values requested at a time. If 0 or less, then the LDAP server decides it.
+     * @return
+     */
+    public LDAPAttributeValueIterator getAttributeValues(String dn, String attributeName, int rangeSize)
+    {
+        return new LDAPAttributeValueIterator(this, dn, attributeName, rangeSize);
+    }
+
     /**
      * @param entry
      * @throws LDAPException
@@ -242,6 +634,428 @@ public abstract class LDAPConnection
      */
     public abstract void deleteAttribute(String dn, LDAPEntryAttribute attribute) throws LDAPException;
 
+    /**
+     * Applies all the modifications to the entry in a single operation.
+     * 
+     * @param dn
+     * @param modifications
+     * @throws LDAPException
+     */
+    public abstract void modifyEntry(String dn, List<LDAPModification> modifications) throws LDAPException;
+
+    /**
+     * @param change
+     * @throws LDAPException
+     */
+    public void applyChange(LDAPChangeRecord change) throws LDAPException
+    {
+        switch (change.getChangeType())
+        {
+            case LDAPChangeRecord.ADD:
+                addEntry(change.getEntry());
+                break;
+            case LDAPChangeRecord.MODIFY:
+                if (change.getModifications() != null && !change.getModifications().isEmpty())
+                {
+                    modifyEntry(change.getDn(), change.getModifications());
+                }
+                else
+                {
+                    updateEntry(change.getEntry());
+                }
+                break;
+            case LDAPChangeRecord.DELETE:
+                deleteEntry(change.getDn());
+                break;
+            case LDAPChangeRecord.MODRDN:
+                renameEntry(change.getDn(), change.getNewDn());
+                break;
+            default:
+                throw new LDAPException("Unsupported change type " + change.getChangeType() + " for entry " + change.getDn());
+        }
+    }
+
+    /**
+     * Applies a batch of changes using up to <i>parallelism</i> threads (each one using its own
+     * connection if pooling is enabled). A failing change does not stop the batch: the result of
+     * each change is reported in the returned list, in the same order as the changes.
+     * <p/>
+     * Changes to the same DN are applied in the order they appear in the batch. Changes to different
+     * DNs may be applied in any order, so if a change depends on another one (for example adding an
+     * entry under an entry added in the same batch) either use a parallelism of 1 or apply them in
+     * separate batches.
+     * 
+     * @param changes
+     * @param parallelism Maximum amount of changes applied at the same time.
+     * @return The result of each change.
+     * @throws LDAPException If the batch was interrupted.
+     */
+    public List<LDAPChangeResult> applyChanges(final List<LDAPChangeRecord> changes, int parallelism) throws LDAPException
+    {
+        final LDAPChangeResult[] results = new LDAPChangeResult[changes.size()];
+
+        // Changes of the same entry are applied by the same thread
+        Map<String, List<Integer>> changesByDn = new LinkedHashMap<String, List<Integer>>();
+        for (int i = 0; i < changes.size(); i++)
+        {
+            LDAPChangeRecord change = changes.get(i);
+            String key = change != null && change.getDn() != null ? LDAPUtils.normalizeDn(change.getDn()) : "#" + i;
+            List<Integer> indexes = changesByDn.get(key);
+            if (indexes == null)
+            {
+                indexes = new ArrayList<Integer>();
+                changesByDn.put(key, indexes);
+            }
+            indexes.add(i);
+        }
+        final List<List<Integer>> groups = new ArrayList<List<Integer>>(changesByDn.values());
+
+        int workers = Math.min(Math.min(parallelism, getMaxParallelism()), groups.size());
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Applying " + changes.size() + " changes with parallelism " + Math.max(workers, 1));
+        }
+
+        if (workers <= 1)
+        {
+            for (int i = 0; i < changes.size(); i++)
+            {
+                results[i] = applyChangeAndReport(i, changes.get(i));
+            }
+        }
+        else
+        {
+            final AtomicInteger nextGroup = new AtomicInteger(0);
+            List<Future<?>> tasks = new ArrayList<Future<?>>(workers);
+            for (int i = 0; i < workers; i++)
+            {
+                tasks.add(getExecutor().submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        int group;
+                        while ((group = nextGroup.getAndIncrement()) < groups.size() && !Thread.currentThread().isInterrupted())
+                        {
+                            for (Integer index : groups.get(group))
+                            {
+                                results[index] = applyChangeAndReport(index, changes.get(index));
+                            }
+                        }
+                    }
+                }));
+            }
+
+            try
+            {
+                for (Future<?> task : tasks)
+                {
+                    task.get();
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                for (Future<?> task : tasks)
+                {
+                    task.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new LDAPException("Interrupted while applying changes.", ex);
+            }
+            catch (ExecutionException ex)
+            {
+                throw new LDAPException("Could not apply changes.", ex.getCause());
+            }
+        }
+
+        List<LDAPChangeResult> report = new ArrayList<LDAPChangeResult>(results.length);
+        for (LDAPChangeResult result : results)
+        {
+            report.add(result);
+        }
+        return report;
+    }
+
+    private LDAPChangeResult applyChangeAndReport(int index, LDAPChangeRecord change)
+    {
+        try
+        {
+            if (change == null)
+            {
+                throw new LDAPException("Change number " + index + " is null.");
+            }
+            applyChange(change);
+            return new LDAPChangeResult(index, change, null);
+        }
+        catch (LDAPException ex)
+        {
+            logger.debug("Change " + change + " failed.", ex);
+            return new LDAPChangeResult(index, change, ex);
+        }
+        catch (RuntimeException ex)
+        {
+            logger.debug("Change " + change + " failed.", ex);
+            return new LDAPChangeResult(index, change, ex);
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #lookup(String)}. Failures are reported by the returned
+     * {@link Future} as an {@link ExecutionException} whose cause is the {@link LDAPException}.
+     * 
+     * @param dn
+     * @return
+     * @see #getAsyncExecutor()
+     */
+    public Future<LDAPEntry> lookupAsync(final String dn)
+    {
+        return submitAsync(new Callable<LDAPEntry>()
+        {
+            @Override
+            public LDAPEntry call() throws Exception
+            {
+                return lookup(dn);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #lookup(String, String[])}.
+     * 
+     * @param dn
+     * @param attributes
+     * @return
+     */
+    public Future<LDAPEntry> lookupAsync(final String dn, final String attributes[])
+    {
+        return submitAsync(new Callable<LDAPEntry>()
+        {
+            @Override
+            public LDAPEntry call() throws Exception
+            {
+                return lookup(dn, attributes);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #search(String, String, LDAPSearchControls)}. The future
+     * completes when the search request was sent and the result set is ready to be read.
+     * 
+     * @param baseDn
+     * @param filter
+     * @param controls
+     * @return
+     */
+    public Future<LDAPResultSet> searchAsync(final String baseDn, final String filter, final LDAPSearchControls controls)
+    {
+        return submitAsync(new Callable<LDAPResultSet>()
+        {
+            @Override
+            public LDAPResultSet call() throws Exception
+            {
+                return search(baseDn, filter, controls);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #addEntry(LDAPEntry)}.
+     * 
+     * @param entry
+     * @return
+     */
+    public Future<Void> addEntryAsync(final LDAPEntry entry)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                addEntry(entry);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #updateEntry(LDAPEntry)}.
+     * 
+     * @param entry
+     * @return
+     */
+    public Future<Void> updateEntryAsync(final LDAPEntry entry)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                updateEntry(entry);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #modifyEntry(String, List)}.
+     * 
+     * @param dn
+     * @param modifications
+     * @return
+     */
+    public Future<Void> modifyEntryAsync(final String dn, final List<LDAPModification> modifications)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                modifyEntry(dn, modifications);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #deleteEntry(String)}.
+     * 
+     * @param dn
+     * @return
+     */
+    public Future<Void> deleteEntryAsync(final String dn)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                deleteEntry(dn);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #renameEntry(String, String)}.
+     * 
+     * @param oldDn
+     * @param newDn
+     * @return
+     */
+    public Future<Void> renameEntryAsync(final String oldDn, final String newDn)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                renameEntry(oldDn, newDn);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #addAttribute(String, LDAPEntryAttribute)}.
+     * 
+     * @param dn
+     * @param attribute
+     * @return
+     */
+    public Future<Void> addAttributeAsync(final String dn, final LDAPEntryAttribute attribute)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                addAttribute(dn, attribute);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #updateAttribute(String, LDAPEntryAttribute)}.
+     * 
+     * @param dn
+     * @param attribute
+     * @return
+     */
+    public Future<Void> updateAttributeAsync(final String dn, final LDAPEntryAttribute attribute)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                updateAttribute(dn, attribute);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #deleteAttribute(String, LDAPEntryAttribute)}.
+     * 
+     * @param dn
+     * @param attribute
+     * @return
+     */
+    public Future<Void> deleteAttributeAsync(final String dn, final LDAPEntryAttribute attribute)
+    {
+        return submitAsync(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws Exception
+            {
+                deleteAttribute(dn, attribute);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #applyChanges(List, int)}.
+     * 
+     * @param changes
+     * @param parallelism
+     * @return
+     */
+    public Future<List<LDAPChangeResult>> applyChangesAsync(final List<LDAPChangeRecord> changes, final int parallelism)
+    {
+        // Runs in the background executor as it waits for the changes applied by the I/O threads
+        return getExecutor().submit(new Callable<List<LDAPChangeResult>>()
+        {
+            @Override
+            public List<LDAPChangeResult> call() throws Exception
+            {
+                return applyChanges(changes, parallelism);
+            }
+        });
+    }
+
+    /**
+     * Runs an operation in the I/O executor.
+     * 
+     * @param operation
+     * @return
+     */
+    protected <T> Future<T> submitAsync(Callable<T> operation)
+    {
+        return getAsyncExecutor().submit(operation);
+    }
+
+    /**
+     * @return Maximum amount of operations that can be performed concurrently by this connection.
+     */
+    protected int getMaxParallelism()
+    {
+        return 1;
+    }
+
     /**
      * @throws LDAPException
      */
@@ -253,6 +1067,94 @@ public abstract class LDAPConnection
      */
     public abstract boolean isClosed() throws LDAPException;
 
+    /**
+     * Returns the executor used to run LDAP operations in background threads (for example to
+     * prefetch search result pages). Threads are created on demand, are daemon threads and are
+     * discarded after being idle for a minute.
+     * 
+     * @return
+     */
+    protected synchronized ExecutorService getExecutor()
+    {
+        if (executor == null || executor.isShutdown())
+        {
+            executor = Executors.newCachedThreadPool(newThreadFactory("worker"));
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the executor that performs the operations requested through the asynchronous methods
+     * (for example {@link #lookupAsync(String)}). It has as many threads as operations this
+     * connection can perform concurrently (see {@link #getMaxParallelism()}), so requests that
+     * exceed that amount wait in the executor queue instead of waiting for a pooled connection.
+     * Idle threads are discarded after a minute.
+     * 
+     * @return
+     */
+    protected synchronized ExecutorService getAsyncExecutor()
+    {
+        if (asyncExecutor == null || asyncExecutor.isShutdown())
+        {
+            int threads = Math.max(getMaxParallelism(), 1);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), newThreadFactory("io"));
+            pool.allowCoreThreadTimeOut(true);
+            asyncExecutor = pool;
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Returns the permits that partitioned searches acquire before searching a partition. They are
+     * shared by all the partitioned searches of this connection, so concurrent searches don't use
+     * more than {@link #getMaxParallelism()} - 1 connections in total and there is always a
+     * connection left for the operations performed while their results are being read.
+     * 
+     * @return
+     */
+    protected synchronized Semaphore getPartitionPermits()
+    {
+        if (partitionPermits == null)
+        {
+            partitionPermits = new Semaphore(Math.max(getMaxParallelism() - 1, 1), true);
+        }
+        return partitionPermits;
+    }
+
+    private ThreadFactory newThreadFactory(String kind)
+    {
+        final String prefix = "ldap-" + (getName() != null ? getName() + "-" : "") + kind + "-";
+        return new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Stops accepting background and asynchronous tasks. Tasks already submitted are allowed to finish.
+     */
+    protected synchronized void shutdownExecutor()
+    {
+        if (executor != null)
+        {
+            executor.shutdown();
+            executor = null;
+        }
+        if (asyncExecutor != null)
+        {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+        }
+    }
+
     public String getName()
     {
         return name;
@@ -262,4 +1164,127 @@ public abstract class LDAPConnection
     {
         this.name = name;
     }
+
+    private static class SearchBase
+    {
+        private final String dn;
+        private final int scope;
+        private final Set<String> excludedDns;
+
+        SearchBase(String dn, int scope, Set<String> excludedDns)
+        {
+            this.dn = dn;
+            this.scope = scope;
+            this.excludedDns = excludedDns;
+        }
+    }
+
+    /*
+     * Releases the permit acquired to search a partition once its result set is closed.
+     */
+    private static class PermitLDAPResultSet implements LDAPResultSet
+    {
+        private final LDAPResultSet result;
+        private final Semaphore permits;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        PermitLDAPResultSet(LDAPResultSet result, Semaphore permits)
+        {
+            this.result = result;
+            this.permits = permits;
+        }
+
+        @Override
+        public boolean hasNext() throws LDAPException
+        {
+            return result.hasNext();
+        }
+
+        @Override
+        public LDAPEntry next() throws LDAPException
+        {
+            return result.next();
+        }
+
+        @Override
+        public List<LDAPEntry> getAllEntries() throws LDAPException
+        {
+            return result.getAllEntries();
+        }
+
+        @Override
+        public void close() throws LDAPException
+        {
+            try
+            {
+                result.close();
+            }
+            finally
+            {
+                if (released.compareAndSet(false, true))
+                {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    /*
+     * Skips the entries whose DN is in the given set.
+     */
+    private static class ExcludingLDAPResultSet implements LDAPResultSet
+    {
+        private final LDAPResultSet result;
+        private final Set<String> excludedDns;
+        private LDAPEntry nextEntry = null;
+
+        ExcludingLDAPResultSet(LDAPResultSet result, Set<String> excludedDns)
+        {
+            this.result = result;
+            this.excludedDns = excludedDns;
+        }
+
+        @Override
+        public boolean hasNext() throws LDAPException
+        {
+            while (nextEntry == null && result.hasNext())
+            {
+                LDAPEntry entry = result.next();
+                if (!excludedDns.contains(entry.getDn()))
+                {
+                    nextEntry = entry;
+                }
+            }
+            return nextEntry != null;
+        }
+
+        @Override
+        public LDAPEntry next() throws LDAPException
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            LDAPEntry entry = nextEntry;
+            nextEntry = null;
+            return entry;
+        }
+
+        @Override
+        public List<LDAPEntry> getAllEntries() throws LDAPException
+        {
+            List<LDAPEntry> all = new ArrayList<LDAPEntry>();
+            while (hasNext())
+            {
+                all.add(next());
+            }
+            return all;
+        }
+
+        @Override
+        public void close() throws LDAPException
+        {
+            result.close();
+        }
+    }
 }
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set of DNs normalized once (see {@link LDAPUtils#normalizeDn(String)}) so that checking if a DN
+ * belongs to it takes a single hash lookup, no matter how many DNs it holds or how they were written.
+ * <p/>
+ * It is meant to be built from attributes that hold DNs (like the <i>member</i> attribute of a group)
+ * and then reused for repeated membership checks. As those DNs usually share a few parents
+ * (<i>ou=people,dc=mulesoft,dc=org</i>), each DN is stored as its first RDN under its parent DN,
+ * and each parent DN is stored only once.
+ * <p/>
+ * Values that are not valid DNs are ignored. This class is not thread safe while DNs are added.
+ *
+ * @author mariano
+ */
+public class LDAPDnIndex implements Serializable
+{
+    private static final long serialVersionUID = -3466190215306462101L;
+
+    private final Map<String, Set<String>> rdnsByParent = new HashMap<String, Set<String>>();
+    private int size = 0;
+
+    /**
+     * Creates an empty index.
+     */
+    public LDAPDnIndex()
+    {
+    }
+
+    /**
+     * @param values DNs to add to the index. Values that are not strings are ignored.
+     */
+    public LDAPDnIndex(Collection<?> values)
+    {
+        addAll(values);
+    }
+
+    /**
+     * @param attribute Attribute that holds DNs (for example the <i>member</i> attribute of a group).
+     */
+    public LDAPDnIndex(LDAPEntryAttribute attribute)
+    {
+        if (attribute != null)
+        {
+            addAll(attribute.getValues());
+        }
+    }
+
+    /**
+     * @param dn
+     * @return true if the DN is valid and was not already in the index.
+     */
+    public boolean add(String dn)
+    {
+        String normalized = LDAPUtils.parseNormalizedDn(dn);
+        if (normalized == null)
+        {
+            return false;
+        }
+
+        int separator = parentSeparator(normalized);
+        String parent = separator >= 0 ? normalized.substring(separator + 1) : "";
+        Set<String> rdns = rdnsByParent.get(parent);
+        if (rdns == null)
+        {
+            rdns = new HashSet<String>();
+            rdnsByParent.put(parent, rdns);
+        }
+        if (rdns.add(separator >= 0 ? normalized.substring(0, separator) : normalized))
+        {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param values DNs to add to the index. Values that are not strings are ignored.
+     */
+    public void addAll(Collection<?> values)
+    {
+        if (values != null)
+        {
+            for (Object value : values)
+            {
+                if (value instanceof String)
+                {
+                    add((String) value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dn
+     * @return true if the index holds a DN equivalent to <i>dn</i>. False if <i>dn</i> is not a valid DN.
+     */
+    public boolean contains(String dn)
+    {
+        return containsNormalized(LDAPUtils.parseNormalizedDn(dn));
+    }
+
+    /**
+     * Same as {@link #contains(String)} but for a DN already normalized with {@link LDAPUtils#normalizeDn(String)}.
+     *
+     * @param normalizedDn
+     * @return
+     */
+    public boolean containsNormalized(String normalizedDn)
+    {
+        if (normalizedDn == null || size == 0)
+        {
+            return false;
+        }
+        int separator = parentSeparator(normalizedDn);
+        Set<String> rdns = rdnsByParent.get(separator >= 0 ? normalizedDn.substring(separator + 1) : "");
+        return rdns != null && rdns.contains(separator >= 0 ? normalizedDn.substring(0, separator) : normalizedDn);
+    }
+
+    /**
+     * @return The amount of distinct DNs in the index.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LDAPDnIndex[size=" + size + ", parents=" + rdnsByParent.size() + "]";
+    }
+
+    /*
+     * Position of the comma that separates the first RDN from the parent DN, skipping escaped commas.
+     */
+    static int parentSeparator(String normalizedDn)
+    {
+        for (int i = 0; i < normalizedDn.length(); i++)
+        {
+            char c = normalizedDn.charAt(i);
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == ',')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
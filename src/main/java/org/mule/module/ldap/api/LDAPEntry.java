@@ -18,6 +18,8 @@
 package org.mule.module.ldap.api;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -123,15 +125,15 @@ public class LDAPEntry implements Serializable
     {
         if(attributeValue instanceof Collection)
         {
-            addAttribute(new LDAPMultiValueEntryAttribute(attributeName, (Collection<Object>) attributeValue));
+            this.attributes.addMultiValueAttribute(attributeName, new ArrayList<Object>((Collection<Object>) attributeValue));
         }
         else if(attributeValue instanceof Object[])
         {
-            addAttribute(new LDAPMultiValueEntryAttribute(attributeName, (Object[]) attributeValue));
+            this.attributes.addMultiValueAttribute(attributeName, new ArrayList<Object>(Arrays.asList((Object[]) attributeValue)));
         }
         else
         {
-            addAttribute(new LDAPSingleValueEntryAttribute(attributeName, attributeValue));
+            this.attributes.addSingleValueAttribute(attributeName, attributeValue);
         }
     }
     
@@ -221,21 +223,19 @@ public class LDAPEntry implements Serializable
     
     public Map<String, Object> toMap()
     {
-        Map<String, Object> entry = new HashMap<String, Object>();
+        Map<String, Object> entry = new HashMap<String, Object>(attributes.getCount() * 4 / 3 + 2);
         
         entry.put(MAP_DN_KEY, getDn());
 
-        LDAPEntryAttribute anAttr;
-        for (Iterator<LDAPEntryAttribute> it = attributes(); it.hasNext();)
+        for (int i = 0; i < attributes.getCount(); i++)
         {
-            anAttr = it.next();
-            if(!anAttr.isMultiValued())
+            if(!attributes.isMultiValued(i))
             {
-                entry.put(anAttr.getName(), anAttr.getValue());
+                entry.put(attributes.getName(i), attributes.getValue(i));
             }
             else
             {
-                entry.put(anAttr.getName(), anAttr.getValues());
+                entry.put(attributes.getName(i), attributes.getValues(i));
             }
         }        
         
@@ -12,39 +12,88 @@
  * File: LDAPEntryAttributes.java
  *
  * Property of Leonards / Mindpool
- * Created on Jun 25, 2006 (11:40:32 AM) 
+ * Created on Jun 25, 2006 (11:40:32 AM)
  */
 
 package org.mule.module.ldap.api;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * This class is the abstraction
- * 
+ * Attributes of a {@link LDAPEntry}. Attribute names are case insensitive.
+ * <p/>
+ * Attributes are stored in parallel arrays of names and values instead of one
+ * {@link LDAPEntryAttribute} object per attribute, so that large amounts of entries can be held
+ * in memory. Attribute names are shared by all the entries (see {@link #internName(String)}) and
+ * they are looked up comparing an ASCII case folded hash, so no lower case copies of the names
+ * are created. The {@link LDAPEntryAttribute} objects returned by {@link #getAttribute(String)}
+ * and {@link #attributes()} are views of the stored values: changing their values changes the
+ * values of the entry.
+ * <p/>
+ * Attributes are returned in the order they were added. Subclasses may add attributes the first
+ * time they are requested (see {@link #loadAttribute(String)} and {@link #loadAttributes()}).
+ *
  * @author mariano
  */
 public class LDAPEntryAttributes implements Serializable
 {
     /**
-	 * 
+	 *
 	 */
-    private static final long serialVersionUID = 7394952573580371628L;
+    private static final long serialVersionUID = -1804498160097192294L;
 
     /**
-	 * 
-	 */
-    private Map<String, LDAPEntryAttribute> attributes = new HashMap<String, LDAPEntryAttribute>();
+     * Maximum amount of attribute names shared by all the entries. Names beyond this limit are
+     * not shared, so that entries with random attribute names do not fill the table.
+     */
+    public static final int MAX_INTERNED_NAMES = 4096;
+
+    private static final ConcurrentHashMap<String, String> NAMES = new ConcurrentHashMap<String, String>();
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private static final byte SINGLE_VALUE = 0;
+    private static final byte MULTI_VALUE = 1;
+    private static final byte ATTRIBUTE = 2;
+
+    private static final String[] EMPTY_NAMES = new String[0];
+    private static final int[] EMPTY_HASHES = new int[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+    private static final byte[] EMPTY_KINDS = new byte[0];
+
+    /*
+     * values[i] holds the value of a single valued attribute, the List<Object> of values of a multi
+     * valued attribute or, for any other kind of LDAPEntryAttribute, the attribute itself.
+     */
+    private transient String[] names;
+    private transient int[] hashes;
+    private transient Object[] values;
+    private transient byte[] kinds;
+    private transient int count = 0;
 
     /**
-	 * 
+	 *
 	 */
     public LDAPEntryAttributes()
+    {
+        this(0);
+    }
+
+    /**
+     * @param capacity Expected amount of attributes.
+     */
+    public LDAPEntryAttributes(int capacity)
     {
         super();
+        allocate(capacity);
     }
 
     /**
@@ -52,16 +101,50 @@ public class LDAPEntryAttributes implements Serializable
      */
     public void addAttribute(LDAPEntryAttribute attribute)
     {
-        this.attributes.put(attribute.getName().toLowerCase(), attribute);
+        if (attribute instanceof SingleValueView || attribute != null && attribute.getClass() == LDAPSingleValueEntryAttribute.class)
+        {
+            put(attribute.getName(), SINGLE_VALUE, attribute.getValue());
+        }
+        else if (attribute instanceof MultiValueView || attribute != null && attribute.getClass() == LDAPMultiValueEntryAttribute.class)
+        {
+            put(attribute.getName(), MULTI_VALUE, attribute.getValues());
+        }
+        else
+        {
+            put(attribute.getName(), ATTRIBUTE, attribute);
+        }
     }
 
     /**
-	 * 
+     * Adds (or replaces) a single valued attribute without creating a {@link LDAPEntryAttribute}.
+     *
+     * @param name
+     * @param value
+     */
+    public void addSingleValueAttribute(String name, Object value)
+    {
+        put(name, SINGLE_VALUE, value);
+    }
+
+    /**
+     * Adds (or replaces) a multi valued attribute without creating a {@link LDAPEntryAttribute}.
+     * The list is not copied, so it should not be shared with other entries.
+     *
+     * @param name
+     * @param values
+     */
+    public void addMultiValueAttribute(String name, List<Object> values)
+    {
+        put(name, MULTI_VALUE, values != null ? values : new ArrayList<Object>(0));
+    }
+
+    /**
+	 *
 	 *
 	 */
     public void resetAttributes()
     {
-        this.attributes.clear();
+        allocate(0);
     }
 
     /**
@@ -69,7 +152,8 @@ public class LDAPEntryAttributes implements Serializable
      */
     public int getCount()
     {
-        return this.attributes.size();
+        loadAttributes();
+        return count;
     }
 
     /**
@@ -77,7 +161,41 @@ public class LDAPEntryAttributes implements Serializable
      */
     public Iterator<LDAPEntryAttribute> attributes()
     {
-        return this.attributes.values().iterator();
+        loadAttributes();
+        return new Iterator<LDAPEntryAttribute>()
+        {
+            private int next = 0;
+            private int last = -1;
+
+            @Override
+            public boolean hasNext()
+            {
+                return next < count;
+            }
+
+            @Override
+            public LDAPEntryAttribute next()
+            {
+                if (next >= count)
+                {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return view(last);
+            }
+
+            @Override
+            public void remove()
+            {
+                if (last < 0)
+                {
+                    throw new IllegalStateException();
+                }
+                removeAt(last);
+                next = last;
+                last = -1;
+            }
+        };
     }
 
     /**
@@ -86,6 +204,389 @@ public class LDAPEntryAttributes implements Serializable
      */
     public LDAPEntryAttribute getAttribute(String name)
     {
-        return (LDAPEntryAttribute) this.attributes.get(name.toLowerCase());
+        int index = indexOf(name);
+        return index >= 0 ? view(index) : null;
+    }
+
+    /**
+     * @param name
+     * @return The first value of the attribute or null if the entry does not have the attribute.
+     */
+    public Object getValue(String name)
+    {
+        int index = indexOf(name);
+        return index >= 0 ? firstValue(index) : null;
+    }
+
+    /**
+     * @param name
+     * @return The position of the attribute or -1 if the entry does not have the attribute.
+     */
+    public int indexOf(String name)
+    {
+        if (name == null)
+        {
+            return -1;
+        }
+        int hash = foldedHash(name);
+        int index = find(name, hash);
+        if (index < 0)
+        {
+            int loaded = count;
+            loadAttribute(name);
+            if (count > loaded)
+            {
+                index = find(name, hash);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param index
+     * @return The name of the attribute at the given position.
+     */
+    public String getName(int index)
+    {
+        loadAttributes();
+        checkIndex(index);
+        return names[index];
+    }
+
+    /**
+     * @param index
+     * @return Whether the attribute at the given position is multi valued.
+     */
+    public boolean isMultiValued(int index)
+    {
+        loadAttributes();
+        checkIndex(index);
+        switch (kinds[index])
+        {
+            case SINGLE_VALUE :
+                return false;
+            case MULTI_VALUE :
+                return true;
+            default :
+                return ((LDAPEntryAttribute) values[index]).isMultiValued();
+        }
+    }
+
+    /**
+     * @param index
+     * @return The first value of the attribute at the given position.
+     */
+    public Object getValue(int index)
+    {
+        loadAttributes();
+        checkIndex(index);
+        return firstValue(index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object firstValue(int index)
+    {
+        switch (kinds[index])
+        {
+            case SINGLE_VALUE :
+                return values[index];
+            case MULTI_VALUE :
+                List<Object> list = (List<Object>) values[index];
+                return !list.isEmpty() ? list.get(0) : null;
+            default :
+                return ((LDAPEntryAttribute) values[index]).getValue();
+        }
+    }
+
+    /**
+     * @param index
+     * @return The values of the attribute at the given position.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> getValues(int index)
+    {
+        loadAttributes();
+        checkIndex(index);
+        switch (kinds[index])
+        {
+            case SINGLE_VALUE :
+                List<Object> list = new ArrayList<Object>(1);
+                list.add(values[index]);
+                return list;
+            case MULTI_VALUE :
+                return (List<Object>) values[index];
+            default :
+                return ((LDAPEntryAttribute) values[index]).getValues();
+        }
+    }
+
+    /**
+     * Called when an attribute that was not added is requested, so that subclasses can add it
+     * only when it is needed. It must not add any other attribute.
+     *
+     * @param name
+     */
+    protected void loadAttribute(String name)
+    {
+    }
+
+    /**
+     * Called before all the attributes are accessed (iterated, counted, accessed by position or
+     * serialized), so that subclasses can add the attributes that were not added yet.
+     */
+    protected void loadAttributes()
+    {
+    }
+
+    /**
+     * Returns the shared instance of an attribute name, so that all the entries reference the
+     * same string instead of the copies created for each search result.
+     *
+     * @param name
+     * @return
+     */
+    public static String internName(String name)
+    {
+        if (name == null)
+        {
+            return null;
+        }
+        String interned = NAMES.get(name);
+        if (interned != null)
+        {
+            return interned;
+        }
+        if (NAMES.size() >= MAX_INTERNED_NAMES)
+        {
+            return name;
+        }
+        interned = NAMES.putIfAbsent(name, name);
+        return interned != null ? interned : name;
+    }
+
+    /*
+     * Hash of the name ignoring the case of ASCII letters (attribute descriptions are ASCII, see RFC 4512).
+     */
+    static int foldedHash(String name)
+    {
+        int hash = 0;
+        for (int i = 0, length = name.length(); i < length; i++)
+        {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+            {
+                c = (char) (c + ('a' - 'A'));
+            }
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+    private int find(String name, int hash)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (hashes[i] == hash && (names[i] == name || names[i].equalsIgnoreCase(name)))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void put(String name, byte kind, Object value)
+    {
+        if (name == null)
+        {
+            throw new IllegalArgumentException("Attribute name cannot be null.");
+        }
+        int index = indexOf(name);
+        if (index < 0)
+        {
+            if (count == names.length)
+            {
+                grow();
+            }
+            index = count++;
+            hashes[index] = foldedHash(name);
+        }
+        names[index] = internName(name);
+        kinds[index] = kind;
+        values[index] = value;
+    }
+
+    private void setSingleValue(String name, Object value)
+    {
+        int index = indexOf(name);
+        if (index >= 0 && kinds[index] == SINGLE_VALUE)
+        {
+            values[index] = value;
+        }
+        else
+        {
+            put(name, SINGLE_VALUE, value);
+        }
+    }
+
+    private void removeAt(int index)
+    {
+        int moved = count - index - 1;
+        if (moved > 0)
+        {
+            System.arraycopy(names, index + 1, names, index, moved);
+            System.arraycopy(hashes, index + 1, hashes, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+            System.arraycopy(kinds, index + 1, kinds, index, moved);
+        }
+        count--;
+        names[count] = null;
+        values[count] = null;
+    }
+
+    private void allocate(int capacity)
+    {
+        count = 0;
+        if (capacity > 0)
+        {
+            names = new String[capacity];
+            hashes = new int[capacity];
+            values = new Object[capacity];
+            kinds = new byte[capacity];
+        }
+        else
+        {
+            names = EMPTY_NAMES;
+            hashes = EMPTY_HASHES;
+            values = EMPTY_VALUES;
+            kinds = EMPTY_KINDS;
+        }
+    }
+
+    private void grow()
+    {
+        int capacity = names.length < DEFAULT_CAPACITY ? DEFAULT_CAPACITY : names.length + (names.length >> 1);
+
+        String[] newNames = new String[capacity];
+        int[] newHashes = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        byte[] newKinds = new byte[capacity];
+        System.arraycopy(names, 0, newNames, 0, count);
+        System.arraycopy(hashes, 0, newHashes, 0, count);
+        System.arraycopy(values, 0, newValues, 0, count);
+        System.arraycopy(kinds, 0, newKinds, 0, count);
+        names = newNames;
+        hashes = newHashes;
+        values = newValues;
+        kinds = newKinds;
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= count)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Attributes: " + count);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private LDAPEntryAttribute view(int index)
+    {
+        switch (kinds[index])
+        {
+            case SINGLE_VALUE :
+                return new SingleValueView(names[index]);
+            case MULTI_VALUE :
+                return new MultiValueView(names[index], (List<Object>) values[index]);
+            default :
+                return (LDAPEntryAttribute) values[index];
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        loadAttributes();
+        out.defaultWriteObject();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++)
+        {
+            out.writeUTF(names[i]);
+            out.writeByte(kinds[i]);
+            out.writeObject(values[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        int size = in.readInt();
+        allocate(size);
+        for (int i = 0; i < size; i++)
+        {
+            String name = in.readUTF();
+            byte kind = in.readByte();
+            put(name, kind, in.readObject());
+        }
+    }
+
+    /**
+     * Single valued attribute whose value is stored in the entry.
+     */
+    private class SingleValueView extends LDAPSingleValueEntryAttribute
+    {
+        private static final long serialVersionUID = -7071318452437040457L;
+
+        SingleValueView(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        public Object getValue()
+        {
+            int index = indexOf(getName());
+            return index >= 0 ? firstValue(index) : null;
+        }
+
+        @Override
+        public List<Object> getValues()
+        {
+            List<Object> values = new ArrayList<Object>(1);
+            values.add(getValue());
+            return values;
+        }
+
+        @Override
+        public void setValue(Object value)
+        {
+            setSingleValue(getName(), value);
+        }
+    }
+
+    /**
+     * Multi valued attribute whose values are stored in the entry.
+     */
+    private static class MultiValueView extends LDAPMultiValueEntryAttribute
+    {
+        private static final long serialVersionUID = 3302624946286580617L;
+
+        private final List<Object> values;
+
+        MultiValueView(String name, List<Object> values)
+        {
+            super(name);
+            this.values = values;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return !values.isEmpty() ? values.get(0) : null;
+        }
+
+        @Override
+        public List<Object> getValues()
+        {
+            return values;
+        }
     }
 }
@@ -0,0 +1,531 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of LDAP entries retrieved by DN. Entries are cached by normalized DN and the set of
+ * requested attributes, so a lookup of all the attributes of an entry and a lookup of some of
+ * them are cached separately.
+ * <p/>
+ * Cached entries expire after <i>ttl</i> milliseconds. When there are more than <i>maxEntries</i>
+ * entries or their estimated size is greater than <i>maxBytes</i>, the least recently used entries
+ * are evicted. If negative caching is enabled, then DNs that do not exist are also cached so that
+ * repeated lookups of them do not reach the LDAP server.
+ * <p/>
+ * Entries are copied when cached and when returned, so changes performed on a returned entry do
+ * not affect the cache. The cache must be invalidated when an entry is modified (see
+ * {@link #invalidate(String)} and {@link #invalidateSubtree(String)}).
+ * <p/>
+ * Each invalidation increases the cache generation. An entry read from the LDAP server should be
+ * cached with the generation obtained (see {@link #getGeneration()}) before reading it, so that it
+ * is discarded if the entry was invalidated while it was being read.
+ * <p/>
+ * Connections to the same server with the same identity share their cache (see
+ * {@link #acquire(String, long, int, long, boolean)}), so an entry modified through any of
+ * them is invalidated for all of them.
+ *
+ * @author mariano
+ */
+public class LDAPEntryCache
+{
+    private static final String ALL_ATTRIBUTES = "*";
+    private static final int MAX_TRACKED_INVALIDATIONS = 1024;
+    private static final Map<String, LDAPEntryCache> SHARED = new HashMap<String, LDAPEntryCache>();
+
+    private final long ttl;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final boolean negativeCaching;
+
+    private final LinkedHashMap<String, CachedEntry> entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true);
+    private final Map<String, Set<String>> keysByDn = new HashMap<String, Set<String>>();
+    private long bytes = 0;
+    private long generation = 0;
+    private final LinkedList<Invalidation> invalidations = new LinkedList<Invalidation>();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private String sharedKey = null;
+    private int references = 0;
+
+    /**
+     * @param ttl Milliseconds an entry remains in the cache.
+     * @param maxEntries Maximum amount of cached entries. If less than 1, then the amount of entries is not limited.
+     * @param maxBytes Maximum estimated size in bytes of the cached entries. If less than 1, then the size is not limited.
+     * @param negativeCaching Whether DNs that do not exist should be cached.
+     */
+    public LDAPEntryCache(long ttl, int maxEntries, long maxBytes, boolean negativeCaching)
+    {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries > 0 ? maxEntries : Integer.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.negativeCaching = negativeCaching;
+    }
+
+    /**
+     * Returns the cache shared by the connections with the given key and settings, creating it the
+     * first time it is requested. The cache is discarded once every connection that acquired it
+     * calls {@link #release()}.
+     * 
+     * @param key Identifies the entries that can be shared, for example the LDAP URL and the bound identity.
+     * @param ttl
+     * @param maxEntries
+     * @param maxBytes
+     * @param negativeCaching
+     * @return The shared cache.
+     */
+    public static LDAPEntryCache acquire(String key, long ttl, int maxEntries, long maxBytes, boolean negativeCaching)
+    {
+        String sharedKey = key + "|" + ttl + "|" + maxEntries + "|" + maxBytes + "|" + negativeCaching;
+        synchronized (SHARED)
+        {
+            LDAPEntryCache cache = SHARED.get(sharedKey);
+            if (cache == null)
+            {
+                cache = new LDAPEntryCache(ttl, maxEntries, maxBytes, negativeCaching);
+                cache.sharedKey = sharedKey;
+                SHARED.put(sharedKey, cache);
+            }
+            cache.references++;
+            return cache;
+        }
+    }
+
+    /**
+     * Gives back a cache obtained with {@link #acquire(String, long, int, long, boolean)}. Once it is
+     * released by all the connections that acquired it, its entries are discarded.
+     */
+    public void release()
+    {
+        synchronized (SHARED)
+        {
+            if (references > 0)
+            {
+                references--;
+                if (references == 0 && SHARED.get(sharedKey) == this)
+                {
+                    SHARED.remove(sharedKey);
+                    clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dn
+     * @param attributes The requested attributes or null if all the attributes were requested.
+     * @return A copy of the cached entry or null if it is not cached.
+     * @throws NameNotFoundException If it was cached that the entry does not exist.
+     */
+    public synchronized LDAPEntry get(String dn, String[] attributes) throws NameNotFoundException
+    {
+        String key = buildKey(LDAPUtils.normalizeDn(dn), attributes);
+        CachedEntry cached = entries.get(key);
+        if (cached == null)
+        {
+            misses++;
+            return null;
+        }
+        if (cached.expiresAt <= System.currentTimeMillis())
+        {
+            remove(key);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        if (cached.entry == null)
+        {
+            throw new NameNotFoundException(cached.notFoundMessage);
+        }
+        return copy(cached.entry);
+    }
+
+    /**
+     * @return The current generation, which is increased by each invalidation.
+     */
+    public synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * @param dn
+     * @param attributes The requested attributes or null if all the attributes were requested.
+     * @param entry
+     */
+    public synchronized void put(String dn, String[] attributes, LDAPEntry entry)
+    {
+        put(dn, attributes, entry, generation);
+    }
+
+    /**
+     * Caches an entry unless it was invalidated after <i>generation</i>.
+     *
+     * @param dn
+     * @param attributes The requested attributes or null if all the attributes were requested.
+     * @param entry
+     * @param generation The generation of the cache before the entry was read.
+     */
+    public synchronized void put(String dn, String[] attributes, LDAPEntry entry, long generation)
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        if (entry != null && !isInvalidatedSince(normalizedDn, generation))
+        {
+            store(normalizedDn, attributes, new CachedEntry(copy(entry), null, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Caches that an entry does not exist (only if negative caching is enabled).
+     *
+     * @param dn
+     * @param attributes The requested attributes or null if all the attributes were requested.
+     * @param message The message of the {@link NameNotFoundException} thrown when the DN is requested again.
+     */
+    public synchronized void putNotFound(String dn, String[] attributes, String message)
+    {
+        putNotFound(dn, attributes, message, generation);
+    }
+
+    /**
+     * Caches that an entry does not exist (only if negative caching is enabled) unless it was
+     * invalidated after <i>generation</i>.
+     *
+     * @param dn
+     * @param attributes The requested attributes or null if all the attributes were requested.
+     * @param message The message of the {@link NameNotFoundException} thrown when the DN is requested again.
+     * @param generation The generation of the cache before the entry was read.
+     */
+    public synchronized void putNotFound(String dn, String[] attributes, String message, long generation)
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        if (negativeCaching && !isInvalidatedSince(normalizedDn, generation))
+        {
+            store(normalizedDn, attributes, new CachedEntry(null, message, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Removes all the cached versions of an entry (including the fact that it does not exist).
+     *
+     * @param dn
+     */
+    public synchronized void invalidate(String dn)
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        recordInvalidation(normalizedDn, false);
+        removeDn(normalizedDn);
+    }
+
+    /**
+     * Removes all the cached versions of an entry and of all the entries under it.
+     *
+     * @param dn
+     */
+    public synchronized void invalidateSubtree(String dn)
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        recordInvalidation(normalizedDn, true);
+        String suffix = "," + normalizedDn;
+        for (Iterator<String> it = new HashSet<String>(keysByDn.keySet()).iterator(); it.hasNext();)
+        {
+            String cachedDn = it.next();
+            if (cachedDn.equals(normalizedDn) || cachedDn.endsWith(suffix))
+            {
+                removeDn(cachedDn);
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached entries.
+     */
+    public synchronized void clear()
+    {
+        // Entries read before clearing the cache are never stored
+        generation++;
+        invalidations.clear();
+        entries.clear();
+        keysByDn.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes()
+    {
+        return bytes;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    public long getTtl()
+    {
+        return ttl;
+    }
+
+    private void recordInvalidation(String normalizedDn, boolean subtree)
+    {
+        generation++;
+        invalidations.addLast(new Invalidation(generation, normalizedDn, subtree));
+        if (invalidations.size() > MAX_TRACKED_INVALIDATIONS)
+        {
+            invalidations.removeFirst();
+        }
+    }
+
+    /*
+     * If some of the invalidations performed after the given generation are no longer tracked,
+     * then the entry is considered invalidated.
+     */
+    private boolean isInvalidatedSince(String normalizedDn, long since)
+    {
+        if (since >= generation)
+        {
+            return false;
+        }
+        if (invalidations.isEmpty() || invalidations.getFirst().generation > since + 1)
+        {
+            return true;
+        }
+        for (Iterator<Invalidation> it = invalidations.descendingIterator(); it.hasNext();)
+        {
+            Invalidation invalidation = it.next();
+            if (invalidation.generation <= since)
+            {
+                break;
+            }
+            if (invalidation.matches(normalizedDn))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void store(String normalizedDn, String[] attributes, CachedEntry cached)
+    {
+        String key = buildKey(normalizedDn, attributes);
+        remove(key);
+
+        entries.put(key, cached);
+        bytes += cached.bytes;
+        Set<String> keys = keysByDn.get(normalizedDn);
+        if (keys == null)
+        {
+            keys = new HashSet<String>();
+            keysByDn.put(normalizedDn, keys);
+        }
+        keys.add(key);
+
+        // Least recently used entries are the first ones
+        Iterator<Map.Entry<String, CachedEntry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext())
+        {
+            Map.Entry<String, CachedEntry> eldest = it.next();
+            it.remove();
+            bytes -= eldest.getValue().bytes;
+            unindex(eldest.getKey());
+            evictions++;
+        }
+    }
+
+    private void remove(String key)
+    {
+        CachedEntry removed = entries.remove(key);
+        if (removed != null)
+        {
+            bytes -= removed.bytes;
+            unindex(key);
+        }
+    }
+
+    private void removeDn(String normalizedDn)
+    {
+        Set<String> keys = keysByDn.remove(normalizedDn);
+        if (keys != null)
+        {
+            for (String key : keys)
+            {
+                CachedEntry removed = entries.remove(key);
+                if (removed != null)
+                {
+                    bytes -= removed.bytes;
+                }
+            }
+        }
+    }
+
+    private void unindex(String key)
+    {
+        String normalizedDn = key.substring(0, key.lastIndexOf('|'));
+        Set<String> keys = keysByDn.get(normalizedDn);
+        if (keys != null)
+        {
+            keys.remove(key);
+            if (keys.isEmpty())
+            {
+                keysByDn.remove(normalizedDn);
+            }
+        }
+    }
+
+    private String buildKey(String normalizedDn, String[] attributes)
+    {
+        if (attributes == null || attributes.length == 0)
+        {
+            return normalizedDn + "|" + ALL_ATTRIBUTES;
+        }
+
+        String[] names = new String[attributes.length];
+        for (int i = 0; i < attributes.length; i++)
+        {
+            names[i] = attributes[i].toLowerCase();
+        }
+        Arrays.sort(names);
+
+        StringBuilder key = new StringBuilder(normalizedDn).append('|');
+        for (int i = 0; i < names.length; i++)
+        {
+            key.append(i > 0 ? "," : "").append(names[i]);
+        }
+        return key.toString();
+    }
+
+    private static LDAPEntry copy(LDAPEntry entry)
+    {
+        LDAPEntryAttributes attributes = entry.getAttributes();
+        LDAPEntryAttributes copy = new LDAPEntryAttributes(attributes.getCount());
+        for (int i = 0; i < attributes.getCount(); i++)
+        {
+            if (attributes.isMultiValued(i))
+            {
+                copy.addMultiValueAttribute(attributes.getName(i), new ArrayList<Object>(attributes.getValues(i)));
+            }
+            else
+            {
+                copy.addSingleValueAttribute(attributes.getName(i), attributes.getValue(i));
+            }
+        }
+        LDAPEntry copied = new LDAPEntry(entry.getDn());
+        copied.setAttributes(copy);
+        return copied;
+    }
+
+    /*
+     * Rough estimation of the heap used by an entry. Attribute names are shared by all the entries.
+     */
+    private static long estimateSize(LDAPEntry entry)
+    {
+        if (entry == null)
+        {
+            return 64;
+        }
+
+        LDAPEntryAttributes attributes = entry.getAttributes();
+        long size = 96 + (entry.getDn() != null ? entry.getDn().length() * 2 : 0);
+        for (int i = 0; i < attributes.getCount(); i++)
+        {
+            size += 16;
+            if (attributes.isMultiValued(i))
+            {
+                size += 24;
+                for (Object value : attributes.getValues(i))
+                {
+                    size += estimateSize(value);
+                }
+            }
+            else
+            {
+                size += estimateSize(attributes.getValue(i));
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(Object value)
+    {
+        if (value instanceof String)
+        {
+            return 40 + ((String) value).length() * 2;
+        }
+        else if (value instanceof byte[])
+        {
+            return 16 + ((byte[]) value).length;
+        }
+        else
+        {
+            return 16;
+        }
+    }
+
+    private static class CachedEntry
+    {
+        private final LDAPEntry entry;
+        private final String notFoundMessage;
+        private final long expiresAt;
+        private final long bytes;
+
+        CachedEntry(LDAPEntry entry, String notFoundMessage, long expiresAt)
+        {
+            this.entry = entry;
+            this.notFoundMessage = notFoundMessage;
+            this.expiresAt = expiresAt;
+            this.bytes = estimateSize(entry);
+        }
+    }
+
+    private static class Invalidation
+    {
+        private final long generation;
+        private final String normalizedDn;
+        private final boolean subtree;
+
+        Invalidation(long generation, String normalizedDn, boolean subtree)
+        {
+            this.generation = generation;
+            this.normalizedDn = normalizedDn;
+            this.subtree = subtree;
+        }
+
+        boolean matches(String dn)
+        {
+            return dn.equals(normalizedDn) || (subtree && dn.endsWith("," + normalizedDn));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compares {@link LDAPEntry} objects using a list of {@link LDAPSortKey} the same way a LDAP
+ * server would do it when processing a server side sort control (RFC 2891): the first value
+ * of each attribute is compared and entries that have no value for a key are ordered after
+ * the ones that do.
+ * <p/>
+ * Matching rules are approximated: rules whose name contains <i>caseExact</i> compare strings
+ * case sensitive, rules whose name contains <i>integer</i> or <i>numeric</i> compare numbers and
+ * any other rule compares strings ignoring case. Binary values are compared byte by byte.
+ *
+ * @author mariano
+ */
+public class LDAPEntryComparator implements Comparator<LDAPEntry>, Serializable
+{
+    private static final long serialVersionUID = -2280542817347786094L;
+
+    private final List<LDAPSortKey> keys;
+
+    /**
+     * @param keys
+     */
+    public LDAPEntryComparator(List<LDAPSortKey> keys)
+    {
+        this.keys = keys;
+    }
+
+    /**
+     * @param orderBy
+     * @see LDAPSortKey#parse(String)
+     */
+    public LDAPEntryComparator(String orderBy)
+    {
+        this(LDAPSortKey.parse(orderBy));
+    }
+
+    /**
+     * @param entry1
+     * @param entry2
+     * @return
+     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public int compare(LDAPEntry entry1, LDAPEntry entry2)
+    {
+        for (LDAPSortKey key : keys)
+        {
+            int result = compareValues(firstValue(entry1, key), firstValue(entry2, key), key.getMatchingRule());
+            if (result != 0)
+            {
+                return key.isReverseOrder() ? -result : result;
+            }
+        }
+        return 0;
+    }
+
+    public List<LDAPSortKey> getKeys()
+    {
+        return keys;
+    }
+
+    private Object firstValue(LDAPEntry entry, LDAPSortKey key)
+    {
+        return entry != null && entry.getAttributes() != null ? entry.getAttributes().getValue(key.getAttributeName()) : null;
+    }
+
+    /*
+     * Null values sort last. Also used to compare high-water marks (see LDAPChangeCheckpoint).
+     */
+    static int compareValues(Object value1, Object value2, String matchingRule)
+    {
+        if (value1 == null || value2 == null)
+        {
+            return value1 == value2 ? 0 : (value1 == null ? 1 : -1);
+        }
+
+        if (value1 instanceof byte[] && value2 instanceof byte[])
+        {
+            return compareBytes((byte[]) value1, (byte[]) value2);
+        }
+
+        String str1 = value1.toString();
+        String str2 = value2.toString();
+        String rule = matchingRule != null ? matchingRule.toLowerCase() : "";
+
+        if (rule.indexOf("integer") >= 0 || rule.indexOf("numeric") >= 0)
+        {
+            try
+            {
+                return new BigDecimal(str1.trim()).compareTo(new BigDecimal(str2.trim()));
+            }
+            catch (NumberFormatException ex)
+            {
+                // Not numbers, compare them as strings
+            }
+        }
+
+        if (rule.indexOf("caseexact") >= 0)
+        {
+            return str1.compareTo(str2);
+        }
+        else
+        {
+            return String.CASE_INSENSITIVE_ORDER.compare(str1, str2);
+        }
+    }
+
+    private static int compareBytes(byte[] bytes1, byte[] bytes2)
+    {
+        int length = Math.min(bytes1.length, bytes2.length);
+        for (int i = 0; i < length; i++)
+        {
+            int diff = (bytes1[i] & 0xff) - (bytes2[i] & 0xff);
+            if (diff != 0)
+            {
+                return diff;
+            }
+        }
+        return bytes1.length - bytes2.length;
+    }
+}
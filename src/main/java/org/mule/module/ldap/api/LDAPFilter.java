@@ -0,0 +1,808 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed LDAP search filter (RFC 4515) that may contain arguments written as <i>{n}</i> in place of
+ * assertion values (for example <i>(&amp;(objectClass=person)(|(uid={0})(mail={1}*)))</i>), the same
+ * syntax used by JNDI for filter arguments.
+ * <p/>
+ * Parse a filter with {@link #compile(String)}, which keeps the most recently used filters so each
+ * template is parsed only once, and then build the filter string for each search with
+ * {@link #format(Object[])}. Arguments are escaped (a <i>byte[]</i> is escaped byte by byte and any
+ * other object is converted with <i>toString()</i>), so they can never change the structure of the
+ * filter.
+ * <p/>
+ * Instances are immutable and thread safe.
+ *
+ * @author mariano
+ */
+public abstract class LDAPFilter implements Serializable
+{
+    private static final long serialVersionUID = 4913585463125862311L;
+
+    public static final int AND = 0;
+    public static final int OR = 1;
+    public static final int NOT = 2;
+    public static final int EQUALITY = 3;
+    public static final int SUBSTRINGS = 4;
+    public static final int GREATER_OR_EQUAL = 5;
+    public static final int LESS_OR_EQUAL = 6;
+    public static final int PRESENT = 7;
+    public static final int APPROX = 8;
+    public static final int EXTENSIBLE = 9;
+
+    public static final int MAX_CACHED_FILTERS = 1000;
+
+    private static final String UTF_8 = "UTF-8";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Map<String, LDAPFilter> CACHE = new LinkedHashMap<String, LDAPFilter>(64, 0.75f, true)
+    {
+        private static final long serialVersionUID = -1874381396418337245L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LDAPFilter> eldest)
+        {
+            return size() > MAX_CACHED_FILTERS;
+        }
+    };
+
+    private final int type;
+    private int argumentCount = 0;
+
+    protected LDAPFilter(int type)
+    {
+        this.type = type;
+    }
+
+    /**
+     * Parses a filter, reusing the result of a previous call with the same filter.
+     *
+     * @param filter Filter with or without arguments. The enclosing parentheses are optional.
+     * @return
+     * @throws InvalidFilterException If the filter is not valid.
+     */
+    public static LDAPFilter compile(String filter) throws InvalidFilterException
+    {
+        synchronized (CACHE)
+        {
+            LDAPFilter compiled = CACHE.get(filter);
+            if (compiled != null)
+            {
+                return compiled;
+            }
+        }
+
+        LDAPFilter compiled = parse(filter);
+        synchronized (CACHE)
+        {
+            CACHE.put(filter, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses a filter without caching it.
+     *
+     * @param filter Filter with or without arguments. The enclosing parentheses are optional.
+     * @return
+     * @throws InvalidFilterException If the filter is not valid.
+     */
+    public static LDAPFilter parse(String filter) throws InvalidFilterException
+    {
+        if (filter == null || filter.trim().length() == 0)
+        {
+            throw new InvalidFilterException("Filter cannot be empty.");
+        }
+        String trimmed = filter.trim();
+        Parser parser = new Parser(trimmed.charAt(0) == '(' ? trimmed : "(" + trimmed + ")");
+        LDAPFilter parsed = parser.parseFilter();
+        if (parser.position != parser.filter.length())
+        {
+            throw parser.error("Unexpected characters after the end of the filter");
+        }
+        parsed.argumentCount = parser.maxArgument + 1;
+        return parsed;
+    }
+
+    /**
+     * @return The amount of filters currently cached by {@link #compile(String)}.
+     */
+    public static int getCacheSize()
+    {
+        synchronized (CACHE)
+        {
+            return CACHE.size();
+        }
+    }
+
+    /**
+     * Builds the filter replacing each argument with its escaped value.
+     *
+     * @param args Arguments, <i>{0}</i> being the first one.
+     * @return
+     * @throws InvalidFilterException If there are less arguments than the ones used in the filter or any of them is null.
+     */
+    public String format(Object[] args) throws InvalidFilterException
+    {
+        int count = args != null ? args.length : 0;
+        if (count < argumentCount)
+        {
+            throw new InvalidFilterException("Filter " + this + " requires " + argumentCount + " arguments but " + count + " were given.");
+        }
+        for (int i = 0; i < argumentCount; i++)
+        {
+            if (args[i] == null)
+            {
+                throw new InvalidFilterException("Argument {" + i + "} of filter " + this + " is null.");
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        append(builder, args);
+        return builder.toString();
+    }
+
+    /**
+     * @return One of {@link #AND}, {@link #OR}, {@link #NOT}, {@link #EQUALITY}, {@link #SUBSTRINGS}, {@link #GREATER_OR_EQUAL},
+     *         {@link #LESS_OR_EQUAL}, {@link #PRESENT}, {@link #APPROX} or {@link #EXTENSIBLE}.
+     */
+    public int getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return The amount of arguments the filter requires (the greatest argument index plus one).
+     */
+    public int getArgumentCount()
+    {
+        return argumentCount;
+    }
+
+    /**
+     * @return The filter with its arguments unbound (<i>{n}</i>).
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        append(builder, null);
+        return builder.toString();
+    }
+
+    protected abstract void append(StringBuilder builder, Object[] args);
+
+    /**
+     * <i>and</i> or <i>or</i> of a list of filters.
+     */
+    public static final class Composite extends LDAPFilter
+    {
+        private static final long serialVersionUID = 1306236406318325394L;
+
+        private final List<LDAPFilter> filters;
+
+        Composite(int type, List<LDAPFilter> filters)
+        {
+            super(type);
+            this.filters = Collections.unmodifiableList(filters);
+        }
+
+        public List<LDAPFilter> getFilters()
+        {
+            return filters;
+        }
+
+        @Override
+        protected void append(StringBuilder builder, Object[] args)
+        {
+            builder.append(getType() == AND ? "(&" : "(|");
+            for (LDAPFilter filter : filters)
+            {
+                filter.append(builder, args);
+            }
+            builder.append(')');
+        }
+    }
+
+    /**
+     * Negation of a filter.
+     */
+    public static final class Not extends LDAPFilter
+    {
+        private static final long serialVersionUID = -6427713592271458302L;
+
+        private final LDAPFilter filter;
+
+        Not(LDAPFilter filter)
+        {
+            super(NOT);
+            this.filter = filter;
+        }
+
+        public LDAPFilter getFilter()
+        {
+            return filter;
+        }
+
+        @Override
+        protected void append(StringBuilder builder, Object[] args)
+        {
+            builder.append("(!");
+            filter.append(builder, args);
+            builder.append(')');
+        }
+    }
+
+    /**
+     * Assertion over the values of an attribute. For {@link #SUBSTRINGS} filters the value is null and the
+     * initial, any and final parts are set instead (initial and final may be null).
+     */
+    public static final class Assertion extends LDAPFilter
+    {
+        private static final long serialVersionUID = 3346519862773470316L;
+
+        private final String attribute;
+        private final Value value;
+        private final Value initial;
+        private final List<Value> any;
+        private final Value last;
+        private final String matchingRule;
+        private final boolean dnAttributes;
+
+        Assertion(int type, String attribute, Value value)
+        {
+            this(type, attribute, value, null, Collections.<Value> emptyList(), null, null, false);
+        }
+
+        Assertion(int type, String attribute, Value value, Value initial, List<Value> any, Value last, String matchingRule, boolean dnAttributes)
+        {
+            super(type);
+            this.attribute = attribute;
+            this.value = value;
+            this.initial = initial;
+            this.any = Collections.unmodifiableList(any);
+            this.last = last;
+            this.matchingRule = matchingRule;
+            this.dnAttributes = dnAttributes;
+        }
+
+        /**
+         * @return The attribute description, including options. Null for extensible filters without attribute.
+         */
+        public String getAttribute()
+        {
+            return attribute;
+        }
+
+        public Value getValue()
+        {
+            return value;
+        }
+
+        public Value getInitial()
+        {
+            return initial;
+        }
+
+        public List<Value> getAny()
+        {
+            return any;
+        }
+
+        public Value getFinal()
+        {
+            return last;
+        }
+
+        public String getMatchingRule()
+        {
+            return matchingRule;
+        }
+
+        public boolean isDnAttributes()
+        {
+            return dnAttributes;
+        }
+
+        @Override
+        protected void append(StringBuilder builder, Object[] args)
+        {
+            builder.append('(');
+            if (attribute != null)
+            {
+                builder.append(attribute);
+            }
+            switch (getType())
+            {
+                case PRESENT:
+                    builder.append("=*");
+                    break;
+                case SUBSTRINGS:
+                    builder.append('=');
+                    if (initial != null)
+                    {
+                        initial.append(builder, args);
+                    }
+                    builder.append('*');
+                    for (Value part : any)
+                    {
+                        part.append(builder, args);
+                        builder.append('*');
+                    }
+                    if (last != null)
+                    {
+                        last.append(builder, args);
+                    }
+                    break;
+                case GREATER_OR_EQUAL:
+                    builder.append(">=");
+                    value.append(builder, args);
+                    break;
+                case LESS_OR_EQUAL:
+                    builder.append("<=");
+                    value.append(builder, args);
+                    break;
+                case APPROX:
+                    builder.append("~=");
+                    value.append(builder, args);
+                    break;
+                case EXTENSIBLE:
+                    if (dnAttributes)
+                    {
+                        builder.append(":dn");
+                    }
+                    if (matchingRule != null)
+                    {
+                        builder.append(':').append(matchingRule);
+                    }
+                    builder.append(":=");
+                    value.append(builder, args);
+                    break;
+                default:
+                    builder.append('=');
+                    value.append(builder, args);
+            }
+            builder.append(')');
+        }
+    }
+
+    /**
+     * Assertion value made of literal parts and arguments.
+     */
+    public static final class Value implements Serializable
+    {
+        private static final long serialVersionUID = -1569440436893519571L;
+
+        // Strings are unescaped literals, Integers are argument indexes
+        private final List<Object> parts;
+
+        Value(List<Object> parts)
+        {
+            this.parts = parts;
+        }
+
+        /**
+         * @return true if the value has no arguments.
+         */
+        public boolean isLiteral()
+        {
+            for (Object part : parts)
+            {
+                if (part instanceof Integer)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param args
+         * @return The unescaped value with the arguments bound (converted with <i>toString()</i>, or as UTF-8 if they are byte arrays).
+         */
+        public String getString(Object[] args)
+        {
+            StringBuilder builder = new StringBuilder();
+            for (Object part : parts)
+            {
+                if (part instanceof Integer)
+                {
+                    Object arg = args[(Integer) part];
+                    builder.append(arg instanceof byte[] ? decode((byte[]) arg) : arg.toString());
+                }
+                else
+                {
+                    builder.append((String) part);
+                }
+            }
+            return builder.toString();
+        }
+
+        void append(StringBuilder builder, Object[] args)
+        {
+            for (Object part : parts)
+            {
+                if (part instanceof Integer)
+                {
+                    if (args == null)
+                    {
+                        builder.append('{').append(part).append('}');
+                    }
+                    else if (args[(Integer) part] instanceof byte[])
+                    {
+                        for (byte b : (byte[]) args[(Integer) part])
+                        {
+                            builder.append('\\').append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+                        }
+                    }
+                    else
+                    {
+                        escape(builder, args[(Integer) part].toString());
+                    }
+                }
+                else
+                {
+                    escape(builder, (String) part);
+                }
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder builder = new StringBuilder();
+            append(builder, null);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Escapes the characters that have a special meaning in filters (RFC 4515 section 3).
+     *
+     * @param value
+     * @return
+     */
+    public static String escape(String value)
+    {
+        StringBuilder builder = new StringBuilder(value.length() + 8);
+        escape(builder, value);
+        return builder.toString();
+    }
+
+    private static void escape(StringBuilder builder, String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '*':
+                case '(':
+                case ')':
+                case '\\':
+                case '\0':
+                    builder.append('\\').append(HEX[(c >> 4) & 0x0f]).append(HEX[c & 0x0f]);
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+
+    private static String decode(byte[] bytes)
+    {
+        try
+        {
+            return new String(bytes, UTF_8);
+        }
+        catch (UnsupportedEncodingException ex)
+        {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * Recursive descent parser of the RFC 4515 grammar, extended with {n} arguments in assertion values
+     */
+    private static final class Parser
+    {
+        private final String filter;
+        private int position = 0;
+        private int maxArgument = -1;
+
+        Parser(String filter)
+        {
+            this.filter = filter;
+        }
+
+        LDAPFilter parseFilter() throws InvalidFilterException
+        {
+            expect('(');
+            if (position >= filter.length())
+            {
+                throw error("Unexpected end of filter");
+            }
+
+            LDAPFilter parsed;
+            char c = filter.charAt(position);
+            if (c == '&' || c == '|')
+            {
+                position++;
+                List<LDAPFilter> filters = new ArrayList<LDAPFilter>();
+                skipSpaces();
+                while (position < filter.length() && filter.charAt(position) == '(')
+                {
+                    filters.add(parseFilter());
+                    skipSpaces();
+                }
+                if (filters.isEmpty())
+                {
+                    throw error("Empty filter list");
+                }
+                parsed = new Composite(c == '&' ? AND : OR, filters);
+            }
+            else if (c == '!')
+            {
+                position++;
+                skipSpaces();
+                parsed = new Not(parseFilter());
+                skipSpaces();
+            }
+            else
+            {
+                parsed = parseItem();
+            }
+            expect(')');
+            return parsed;
+        }
+
+        private LDAPFilter parseItem() throws InvalidFilterException
+        {
+            String attribute = parseDescription();
+            boolean dnAttributes = false;
+            String matchingRule = null;
+
+            if (filter.startsWith(":dn:", position))
+            {
+                dnAttributes = true;
+                position += 3;
+            }
+            if (position < filter.length() && filter.charAt(position) == ':' && !filter.startsWith(":=", position))
+            {
+                position++;
+                matchingRule = parseDescription();
+                if (matchingRule.length() == 0)
+                {
+                    throw error("Missing matching rule");
+                }
+            }
+
+            int type;
+            if (filter.startsWith(":=", position))
+            {
+                type = EXTENSIBLE;
+                position += 2;
+                if (attribute.length() == 0 && matchingRule == null)
+                {
+                    throw error("Extensible filters require an attribute or a matching rule");
+                }
+            }
+            else if (dnAttributes || matchingRule != null)
+            {
+                throw error("Expected :=");
+            }
+            else if (filter.startsWith(">=", position))
+            {
+                type = GREATER_OR_EQUAL;
+                position += 2;
+            }
+            else if (filter.startsWith("<=", position))
+            {
+                type = LESS_OR_EQUAL;
+                position += 2;
+            }
+            else if (filter.startsWith("~=", position))
+            {
+                type = APPROX;
+                position += 2;
+            }
+            else if (position < filter.length() && filter.charAt(position) == '=')
+            {
+                type = EQUALITY;
+                position++;
+            }
+            else
+            {
+                throw error("Expected a filter type (=, ~=, >=, <= or :=)");
+            }
+
+            if (attribute.length() == 0 && type != EXTENSIBLE)
+            {
+                throw error("Missing attribute description");
+            }
+
+            List<Value> values = parseValues(type == EQUALITY);
+            if (type == EQUALITY && values.size() > 1)
+            {
+                if (values.size() == 2 && values.get(0) == null && values.get(1) == null)
+                {
+                    return new Assertion(PRESENT, attribute, null);
+                }
+                List<Value> any = new ArrayList<Value>();
+                for (int i = 1; i < values.size() - 1; i++)
+                {
+                    if (values.get(i) == null)
+                    {
+                        throw error("Empty substring");
+                    }
+                    any.add(values.get(i));
+                }
+                return new Assertion(SUBSTRINGS, attribute, null, values.get(0), any, values.get(values.size() - 1), null, false);
+            }
+
+            Value value = values.get(0) != null ? values.get(0) : new Value(new ArrayList<Object>());
+            if (type == EXTENSIBLE)
+            {
+                return new Assertion(EXTENSIBLE, attribute.length() > 0 ? attribute : null, value, null, Collections.<Value> emptyList(), null, matchingRule, dnAttributes);
+            }
+            return new Assertion(type, attribute, value);
+        }
+
+        /*
+         * Attribute descriptions (with options) and matching rules: keystrings or OIDs
+         */
+        private String parseDescription()
+        {
+            int start = position;
+            while (position < filter.length())
+            {
+                char c = filter.charAt(position);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == ';' || c == '_')
+                {
+                    position++;
+                }
+                else
+                {
+                    break;
+                }
+            }
+            return filter.substring(start, position);
+        }
+
+        /*
+         * Values separated by unescaped asterisks (only if substrings are allowed). Empty values are null.
+         */
+        private List<Value> parseValues(boolean substrings) throws InvalidFilterException
+        {
+            List<Value> values = new ArrayList<Value>();
+            List<Object> parts = new ArrayList<Object>();
+            StringBuilder literal = new StringBuilder();
+            ByteArrayOutputStream escaped = new ByteArrayOutputStream();
+
+            while (true)
+            {
+                if (position >= filter.length())
+                {
+                    throw error("Unexpected end of filter");
+                }
+                char c = filter.charAt(position);
+                if (c == '\\')
+                {
+                    if (position + 2 >= filter.length())
+                    {
+                        throw error("Invalid escape sequence");
+                    }
+                    int high = Character.digit(filter.charAt(position + 1), 16);
+                    int low = Character.digit(filter.charAt(position + 2), 16);
+                    if (high < 0 || low < 0)
+                    {
+                        throw error("Invalid escape sequence");
+                    }
+                    escaped.write((high << 4) + low);
+                    position += 3;
+                    continue;
+                }
+
+                flushEscaped(escaped, literal);
+                if (c == ')')
+                {
+                    flushLiteral(literal, parts);
+                    values.add(parts.isEmpty() ? null : new Value(parts));
+                    return values;
+                }
+                else if (c == '*' && substrings)
+                {
+                    flushLiteral(literal, parts);
+                    values.add(parts.isEmpty() ? null : new Value(parts));
+                    parts = new ArrayList<Object>();
+                    position++;
+                }
+                else if (c == '(' || c == '*')
+                {
+                    throw error("Unescaped " + c + " in value");
+                }
+                else if (c == '{' && isArgument())
+                {
+                    flushLiteral(literal, parts);
+                    int end = filter.indexOf('}', position);
+                    int index = Integer.parseInt(filter.substring(position + 1, end));
+                    maxArgument = Math.max(maxArgument, index);
+                    parts.add(Integer.valueOf(index));
+                    position = end + 1;
+                }
+                else
+                {
+                    literal.append(c);
+                    position++;
+                }
+            }
+        }
+
+        private boolean isArgument()
+        {
+            int i = position + 1;
+            while (i < filter.length() && Character.isDigit(filter.charAt(i)))
+            {
+                i++;
+            }
+            return i > position + 1 && i < filter.length() && filter.charAt(i) == '}' && i - position <= 10;
+        }
+
+        private void flushEscaped(ByteArrayOutputStream escaped, StringBuilder literal)
+        {
+            if (escaped.size() > 0)
+            {
+                literal.append(decode(escaped.toByteArray()));
+                escaped.reset();
+            }
+        }
+
+        private void flushLiteral(StringBuilder literal, List<Object> parts)
+        {
+            if (literal.length() > 0)
+            {
+                parts.add(literal.toString());
+                literal.setLength(0);
+            }
+        }
+
+        private void skipSpaces()
+        {
+            while (position < filter.length() && filter.charAt(position) == ' ')
+            {
+                position++;
+            }
+        }
+
+        private void expect(char c) throws InvalidFilterException
+        {
+            if (position >= filter.length() || filter.charAt(position) != c)
+            {
+                throw error("Expected " + c);
+            }
+            position++;
+        }
+
+        InvalidFilterException error(String message)
+        {
+            return new InvalidFilterException(message + " at position " + position + " of filter " + filter);
+        }
+    }
+}
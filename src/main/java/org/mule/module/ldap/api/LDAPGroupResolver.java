@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Resolves the groups an entry belongs to, directly or through nested groups.
+ * <p/>
+ * Groups are expanded breadth first: the groups of all the entries of a level are searched
+ * concurrently (each search returns the groups whose member attribute contains one DN), so
+ * resolving a membership nested <i>n</i> levels deep takes <i>n</i> rounds of searches. Groups
+ * already found are not expanded again, so cycles between groups are harmless.
+ * <p/>
+ * The direct groups of each DN are memoized for <i>ttl</i> milliseconds and shared across calls,
+ * so groups that are common to many entries are expanded only once. Changes to group memberships
+ * are only seen once the memoized groups expire.
+ *
+ * @author mariano
+ */
+public class LDAPGroupResolver
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final String DEFAULT_MEMBER_ATTRIBUTE = "member";
+    public static final String DEFAULT_GROUP_FILTER = "(objectClass=*)";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final LDAPConnection connection;
+    private final long ttl;
+    private final int maxEntries;
+    private final Map<String, MemoizedGroups> memo = new ConcurrentHashMap<String, MemoizedGroups>();
+
+    /**
+     * @param connection
+     * @param ttl Milliseconds that the direct groups of each DN are memoized. If 0 or less, nothing is memoized across calls.
+     */
+    public LDAPGroupResolver(LDAPConnection connection, long ttl)
+    {
+        this(connection, ttl, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param connection
+     * @param ttl Milliseconds that the direct groups of each DN are memoized. If 0 or less, nothing is memoized across calls.
+     * @param maxEntries Maximum amount of DNs whose groups are memoized.
+     */
+    public LDAPGroupResolver(LDAPConnection connection, long ttl, int maxEntries)
+    {
+        this.connection = connection;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param dn DN of the entry (usually a user).
+     * @param groupsBaseDn Base DN of the groups.
+     * @param memberAttribute Attribute of the groups that holds the DNs of their members (for example <i>member</i> or <i>uniqueMember</i>).
+     * @param groupFilter Filter that the groups must match (for example <i>(objectClass=groupOfNames)</i>).
+     * @param maxDepth Maximum nesting level expanded. If 0 or less, all the levels are expanded.
+     * @return The DNs of the groups the entry belongs to, ordered by level.
+     * @throws LDAPException
+     */
+    public Set<String> getGroups(String dn, String groupsBaseDn, String memberAttribute, String groupFilter, int maxDepth) throws LDAPException
+    {
+        String filter = "(&" + enclose(groupFilter != null ? groupFilter : DEFAULT_GROUP_FILTER) + "(" + (memberAttribute != null ? memberAttribute : DEFAULT_MEMBER_ATTRIBUTE) + "={0}))";
+        String scope = groupsBaseDn + "|" + filter + "|";
+
+        Set<String> groups = new LinkedHashSet<String>();
+        Set<String> visited = new HashSet<String>();
+        visited.add(LDAPUtils.normalizeDn(dn));
+
+        List<String> level = Collections.singletonList(dn);
+        int depth = 0;
+        while (!level.isEmpty() && (maxDepth <= 0 || depth < maxDepth))
+        {
+            List<String> next = new ArrayList<String>();
+            for (List<String> parents : getDirectGroups(level, groupsBaseDn, filter, scope))
+            {
+                for (String parent : parents)
+                {
+                    if (visited.add(LDAPUtils.normalizeDn(parent)))
+                    {
+                        groups.add(parent);
+                        next.add(parent);
+                    }
+                }
+            }
+            level = next;
+            depth++;
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Resolved " + groups.size() + " groups of " + dn + " expanding " + depth + " levels");
+        }
+        return groups;
+    }
+
+    /**
+     * Forgets all the memoized groups.
+     */
+    public void clear()
+    {
+        memo.clear();
+    }
+
+    /**
+     * @return The amount of DNs whose groups are memoized, including expired ones.
+     */
+    public int size()
+    {
+        return memo.size();
+    }
+
+    /*
+     * Returns the direct groups of each DN of the level, searching the ones that are not memoized concurrently.
+     */
+    private List<List<String>> getDirectGroups(List<String> level, final String groupsBaseDn, final String filter, String scope) throws LDAPException
+    {
+        long now = System.currentTimeMillis();
+        List<List<String>> result = new ArrayList<List<String>>(level.size());
+        List<Future<List<String>>> searches = new ArrayList<Future<List<String>>>(level.size());
+        for (final String dn : level)
+        {
+            MemoizedGroups memoized = ttl > 0 ? memo.get(scope + LDAPUtils.normalizeDn(dn)) : null;
+            if (memoized != null && memoized.expires > now)
+            {
+                result.add(memoized.groups);
+                searches.add(null);
+            }
+            else
+            {
+                result.add(null);
+                searches.add(level.size() > 1 ? connection.submitAsync(new Callable<List<String>>()
+                {
+                    @Override
+                    public List<String> call() throws Exception
+                    {
+                        return searchDirectGroups(dn, groupsBaseDn, filter);
+                    }
+                }) : null);
+            }
+        }
+
+        try
+        {
+            for (int i = 0; i < result.size(); i++)
+            {
+                if (result.get(i) == null)
+                {
+                    List<String> groups = searches.get(i) != null ? searches.get(i).get() : searchDirectGroups(level.get(i), groupsBaseDn, filter);
+                    result.set(i, groups);
+                    memoize(scope + LDAPUtils.normalizeDn(level.get(i)), groups);
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            cancel(searches);
+            Thread.currentThread().interrupt();
+            throw new LDAPException("Interrupted while resolving groups.", ex);
+        }
+        catch (ExecutionException ex)
+        {
+            cancel(searches);
+            if (ex.getCause() instanceof LDAPException)
+            {
+                throw (LDAPException) ex.getCause();
+            }
+            throw new LDAPException("Could not resolve groups.", ex.getCause());
+        }
+        catch (LDAPException ex)
+        {
+            cancel(searches);
+            throw ex;
+        }
+        return result;
+    }
+
+    private List<String> searchDirectGroups(String dn, String groupsBaseDn, String filter) throws LDAPException
+    {
+        LDAPSearchControls controls = new LDAPSearchControls();
+        controls.setScope(LDAPSearchControls.SUBTREE_SCOPE);
+        // No attributes (RFC 4511 section 4.5.1.8)
+        controls.setAttributesToReturn(new String[] {"1.1"});
+
+        List<String> groups = new ArrayList<String>();
+        LDAPResultSet result = connection.search(groupsBaseDn, filter, new Object[] {dn}, controls);
+        try
+        {
+            while (result.hasNext())
+            {
+                groups.add(result.next().getDn());
+            }
+        }
+        finally
+        {
+            result.close();
+        }
+        return groups;
+    }
+
+    private void memoize(String key, List<String> groups)
+    {
+        if (ttl <= 0)
+        {
+            return;
+        }
+        if (memo.size() >= maxEntries)
+        {
+            long now = System.currentTimeMillis();
+            for (Iterator<MemoizedGroups> it = memo.values().iterator(); it.hasNext();)
+            {
+                if (it.next().expires <= now)
+                {
+                    it.remove();
+                }
+            }
+            if (memo.size() >= maxEntries)
+            {
+                memo.clear();
+            }
+        }
+        memo.put(key, new MemoizedGroups(groups, System.currentTimeMillis() + ttl));
+    }
+
+    private void cancel(List<Future<List<String>>> searches)
+    {
+        for (Future<List<String>> search : searches)
+        {
+            if (search != null)
+            {
+                search.cancel(true);
+            }
+        }
+    }
+
+    private String enclose(String filter)
+    {
+        String trimmed = filter.trim();
+        return trimmed.startsWith("(") ? trimmed : "(" + trimmed + ")";
+    }
+
+    private static class MemoizedGroups
+    {
+        private final List<String> groups;
+        private final long expires;
+
+        MemoizedGroups(List<String> groups, long expires)
+        {
+            this.groups = Collections.unmodifiableList(groups);
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+
+/**
+ * A modification of an attribute of an existing entry. It is part of a {@link LDAPChangeRecord}
+ * of type {@link LDAPChangeRecord#MODIFY}.
+ * 
+ * @author mariano
+ */
+public class LDAPModification implements Serializable
+{
+    private static final long serialVersionUID = 2816095316472905372L;
+
+    public final static int ADD_ATTRIBUTE = 1;
+    public final static int REPLACE_ATTRIBUTE = 2;
+    public final static int REMOVE_ATTRIBUTE = 3;
+
+    private int operation = REPLACE_ATTRIBUTE;
+    private LDAPEntryAttribute attribute = null;
+
+    public LDAPModification()
+    {
+    }
+
+    /**
+     * @param operation One of {@link #ADD_ATTRIBUTE}, {@link #REPLACE_ATTRIBUTE} or {@link #REMOVE_ATTRIBUTE}.
+     * @param attribute The attribute and the values added, replaced or removed. If no values are
+     *            removed, then the whole attribute is removed.
+     */
+    public LDAPModification(int operation, LDAPEntryAttribute attribute)
+    {
+        this.operation = operation;
+        this.attribute = attribute;
+    }
+
+    public int getOperation()
+    {
+        return operation;
+    }
+
+    public void setOperation(int operation)
+    {
+        this.operation = operation;
+    }
+
+    public LDAPEntryAttribute getAttribute()
+    {
+        return attribute;
+    }
+
+    public void setAttribute(LDAPEntryAttribute attribute)
+    {
+        this.attribute = attribute;
+    }
+
+    @Override
+    public String toString()
+    {
+        String name;
+        switch (operation)
+        {
+            case ADD_ATTRIBUTE:
+                name = "add";
+                break;
+            case REMOVE_ATTRIBUTE:
+                name = "delete";
+                break;
+            default:
+                name = "replace";
+        }
+        return name + ": " + (attribute != null ? attribute.getName() : null);
+    }
+}
@@ -0,0 +1,1133 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the entries of a subtree, used to answer lookups and searches without
+ * reaching the LDAP server.
+ * <p/>
+ * The replica is loaded with a search of the whole subtree (see {@link #load(LDAPResultSet)}) and
+ * then kept current by applying the entries changed since the greatest value of a high-water mark
+ * attribute (see {@link #getChangesFilter()} and {@link LDAPChangeCheckpoint}) and by comparing
+ * the DNs of the subtree to find deleted and added entries (see {@link #retain(LDAPResultSet)}).
+ * Comparing the DNs reads the whole subtree, so it should be performed much less often than
+ * applying the changed entries. Entries modified through the connections that use the replica
+ * must be invalidated, so that they are read from the server until they are read again by a
+ * refresh (see {@link #getStaleDns()}).
+ * <p/>
+ * Connections to the same server with the same identity share their replica (see
+ * {@link #acquire(String, String, String, String)}).
+ * <p/>
+ * Indexes can be defined on attributes: <i>hash</i> indexes are used for equality assertions and
+ * <i>sorted</i> indexes are also used for substring assertions with an initial part. Filters that
+ * cannot use an index are evaluated scanning all the entries.
+ * <p/>
+ * Only filters made of equality, presence and substring assertions (combined with <i>and</i>,
+ * <i>or</i> and <i>not</i>) are evaluated. Values are compared ignoring case and insignificant
+ * spaces, like <i>caseIgnoreMatch</i> does. Reads that cannot be answered (other assertions,
+ * matching rules, attributes never found in the replicated entries like operational attributes,
+ * entries outside the subtree) return null and must be performed on the server.
+ * <p/>
+ * Reads are thread safe. Refresh methods must not be called concurrently.
+ *
+ * @author mariano
+ */
+public class LDAPReplica
+{
+    public static final String HASH_INDEX = "hash";
+    public static final String SORTED_INDEX = "sorted";
+
+    private static final String ALL_ENTRIES_FILTER = "(objectClass=*)";
+    private static final String ALL_ATTRIBUTES = "*";
+    private static final String NO_ATTRIBUTES = "1.1";
+    private static final String OBJECT_CLASS = "objectclass";
+    private static final Map<String, LDAPReplica> SHARED = new HashMap<String, LDAPReplica>();
+
+    private final String baseDn;
+    private final String normalizedBaseDn;
+    private final String highWaterMark;
+    // Lower case attribute name -> whether the index is sorted
+    private final Map<String, Boolean> indexedAttributes = new LinkedHashMap<String, Boolean>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Store store = null;
+    private LDAPChangeCheckpoint checkpoint;
+
+    // Normalized DN -> generation in which it was invalidated
+    private final Map<String, Long> staleEntries = new HashMap<String, Long>();
+    private final Map<String, Long> staleSubtrees = new HashMap<String, Long>();
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile long lastRefreshTime = 0;
+    private volatile long lastReconcileTime = 0;
+
+    private String sharedKey = null;
+    private int references = 0;
+
+    /**
+     * @param baseDn The DN of the replicated subtree.
+     * @param indexes Attributes to index separated by spaces or commas, each one optionally followed by <i>:hash</i> (default) or <i>:sorted</i>.
+     * @param highWaterMark Attribute updated every time an entry changes and optionally its ordering matching rule (see {@link LDAPChangeCheckpoint}).
+     * @throws IllegalArgumentException If an index type or the high-water mark is not valid.
+     */
+    public LDAPReplica(String baseDn, String indexes, String highWaterMark)
+    {
+        this.baseDn = baseDn;
+        this.normalizedBaseDn = LDAPUtils.normalizeDn(baseDn);
+        this.highWaterMark = highWaterMark;
+        this.checkpoint = new LDAPChangeCheckpoint(null, highWaterMark);
+
+        if (indexes != null)
+        {
+            for (String index : indexes.trim().split("[\\s,]+"))
+            {
+                if (index.length() == 0)
+                {
+                    continue;
+                }
+                int separator = index.indexOf(':');
+                String name = separator >= 0 ? index.substring(0, separator) : index;
+                String type = separator >= 0 ? index.substring(separator + 1) : HASH_INDEX;
+                if (!HASH_INDEX.equalsIgnoreCase(type) && !SORTED_INDEX.equalsIgnoreCase(type))
+                {
+                    throw new IllegalArgumentException("Invalid index type " + type + " for attribute " + name + ". Valid types are " + HASH_INDEX + " and " + SORTED_INDEX + ".");
+                }
+                indexedAttributes.put(name.toLowerCase(), Boolean.valueOf(SORTED_INDEX.equalsIgnoreCase(type)));
+            }
+        }
+    }
+
+    /**
+     * Returns the replica shared by the connections with the given key and settings, creating it the
+     * first time it is requested. The replica is discarded once every connection that acquired it
+     * calls {@link #release()}.
+     * 
+     * @param key Identifies the connections that can share the entries, for example the LDAP URL and the bound identity.
+     * @param baseDn
+     * @param indexes
+     * @param highWaterMark
+     * @return The shared replica.
+     * @throws IllegalArgumentException If an index type or the high-water mark is not valid.
+     */
+    public static LDAPReplica acquire(String key, String baseDn, String indexes, String highWaterMark)
+    {
+        String sharedKey = key + "|" + LDAPUtils.normalizeDn(baseDn) + "|" + indexes + "|" + highWaterMark;
+        synchronized (SHARED)
+        {
+            LDAPReplica replica = SHARED.get(sharedKey);
+            if (replica == null)
+            {
+                replica = new LDAPReplica(baseDn, indexes, highWaterMark);
+                replica.sharedKey = sharedKey;
+                SHARED.put(sharedKey, replica);
+            }
+            replica.references++;
+            return replica;
+        }
+    }
+
+    /**
+     * Gives back a replica obtained with {@link #acquire(String, String, String, String)}.
+     */
+    public void release()
+    {
+        synchronized (SHARED)
+        {
+            if (references > 0)
+            {
+                references--;
+                if (references == 0 && SHARED.get(sharedKey) == this)
+                {
+                    SHARED.remove(sharedKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dn
+     * @param attributes The requested attributes or null if all the attributes were requested.
+     * @return A copy of the entry or null if the lookup cannot be answered by the replica.
+     * @throws NameNotFoundException If the DN belongs to the replicated subtree but the entry does not exist.
+     */
+    public LDAPEntry lookup(String dn, String[] attributes) throws NameNotFoundException
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        lock.readLock().lock();
+        try
+        {
+            Store current = this.store;
+            if (current == null || !isUnder(normalizedDn, normalizedBaseDn) || isStale(normalizedDn) || !canReturn(attributes, current))
+            {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            LDAPEntry entry = current.entries.get(normalizedDn);
+            if (entry == null)
+            {
+                throw new NameNotFoundException("Entry " + dn + " does not exist.");
+            }
+            return copy(entry, attributes);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param baseDn
+     * @param filter Filter, optionally with arguments (see {@link LDAPFilter}).
+     * @param filterArgs Values of the arguments or null.
+     * @param controls Scope, attributes, maximum amount of results and order are used. The other controls are ignored.
+     * @return Copies of the matching entries or null if the search cannot be answered by the replica.
+     * @throws NameNotFoundException If the base DN belongs to the replicated subtree but the entry does not exist.
+     */
+    public List<LDAPEntry> search(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls) throws NameNotFoundException
+    {
+        LDAPFilter parsed = compile(filter, filterArgs);
+        String normalizedDn = LDAPUtils.normalizeDn(baseDn);
+        lock.readLock().lock();
+        try
+        {
+            Store current = this.store;
+            if (parsed == null || current == null || !isUnder(normalizedDn, normalizedBaseDn) || isStaleSubtree(normalizedDn)
+                || !canEvaluate(parsed, current) || !canReturn(controls.getAttributesToReturn(), current))
+            {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            hits.incrementAndGet();
+            if (!current.entries.containsKey(normalizedDn))
+            {
+                throw new NameNotFoundException("Base DN " + baseDn + " does not exist.");
+            }
+
+            Evaluation evaluation = new Evaluation(filterArgs);
+            Collection<String> candidates = getCandidates(parsed, current, evaluation);
+            long maxResults = controls.getMaxResults() > 0 ? controls.getMaxResults() : Long.MAX_VALUE;
+            List<LDAPEntry> matches = new ArrayList<LDAPEntry>();
+            for (String dn : candidates != null ? candidates : current.entries.keySet())
+            {
+                if (!controls.isOrderBySet() && matches.size() >= maxResults)
+                {
+                    break;
+                }
+                LDAPEntry entry = current.entries.get(dn);
+                if (entry != null && isInScope(dn, normalizedDn, controls.getScope()) && matches(parsed, entry, evaluation))
+                {
+                    matches.add(entry);
+                }
+            }
+
+            if (controls.isOrderBySet())
+            {
+                Collections.sort(matches, new LDAPEntryComparator(controls.getSortKeys()));
+            }
+            List<LDAPEntry> result = new ArrayList<LDAPEntry>((int) Math.min(matches.size(), maxResults));
+            for (Iterator<LDAPEntry> it = matches.iterator(); it.hasNext() && result.size() < maxResults;)
+            {
+                result.add(copy(it.next(), controls.getAttributesToReturn()));
+            }
+            return result;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Marks an entry as stale, so it is read from the server until the next refresh.
+     *
+     * @param dn
+     */
+    public void invalidate(String dn)
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        if (isUnder(normalizedDn, normalizedBaseDn))
+        {
+            synchronized (staleEntries)
+            {
+                staleEntries.put(normalizedDn, Long.valueOf(++generation));
+            }
+        }
+    }
+
+    /**
+     * Marks an entry and all the entries under it as stale, so they are read from the server until
+     * the next refresh.
+     *
+     * @param dn
+     */
+    public void invalidateSubtree(String dn)
+    {
+        String normalizedDn = LDAPUtils.normalizeDn(dn);
+        if (isUnder(normalizedDn, normalizedBaseDn) || isUnder(normalizedBaseDn, normalizedDn))
+        {
+            synchronized (staleEntries)
+            {
+                staleSubtrees.put(normalizedDn, Long.valueOf(++generation));
+            }
+        }
+    }
+
+    /**
+     * Must be called before the searches of a refresh.
+     *
+     * @return The value to pass to {@link #endRefresh(long)} once the refresh succeeds.
+     */
+    public long beginRefresh()
+    {
+        synchronized (staleEntries)
+        {
+            return generation;
+        }
+    }
+
+    /**
+     * Removes the marks of the entries invalidated before the refresh began, as the refresh read
+     * their current version.
+     *
+     * @param refreshGeneration The value returned by {@link #beginRefresh()}.
+     */
+    public void endRefresh(long refreshGeneration)
+    {
+        synchronized (staleEntries)
+        {
+            removeUpTo(staleEntries, refreshGeneration);
+            removeUpTo(staleSubtrees, refreshGeneration);
+        }
+        lastRefreshTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The DNs of the entries invalidated since the last refresh. They must be read again (and
+     *         passed to {@link #update(LDAPResultSet)} or {@link #remove(String)}) before the refresh ends,
+     *         as changes performed without updating the high-water mark (like deleting an entry) are not
+     *         found by the search of changed entries.
+     */
+    public List<String> getStaleDns()
+    {
+        synchronized (staleEntries)
+        {
+            return new ArrayList<String>(staleEntries.keySet());
+        }
+    }
+
+    /**
+     * @return true if entire subtrees were invalidated since the last refresh (for example because an
+     *         entry was renamed), so the DNs of the subtree must be compared (see {@link #retain(LDAPResultSet)})
+     *         before the refresh ends.
+     */
+    public boolean hasStaleSubtrees()
+    {
+        synchronized (staleEntries)
+        {
+            return !staleSubtrees.isEmpty();
+        }
+    }
+
+    /**
+     * @return When the last refresh ended (in milliseconds since the epoch) or 0 if it was never refreshed.
+     */
+    public long getLastRefreshTime()
+    {
+        return lastRefreshTime;
+    }
+
+    /**
+     * @return When the replica was last loaded or its DNs compared with the ones of the subtree (in
+     *         milliseconds since the epoch) or 0 if it was never loaded.
+     */
+    public long getLastReconcileTime()
+    {
+        return lastReconcileTime;
+    }
+
+    /**
+     * @return The attributes to request when searching the entries to replicate.
+     */
+    public String[] getAttributesToReplicate()
+    {
+        return new String[] {ALL_ATTRIBUTES, checkpoint.getAttributeName()};
+    }
+
+    /**
+     * @return A filter that matches all the entries if the replica is not loaded, or the entries
+     *         changed since the high-water mark otherwise.
+     */
+    public String getChangesFilter()
+    {
+        return isLoaded() ? checkpoint.buildFilter(null) : ALL_ENTRIES_FILTER;
+    }
+
+    /**
+     * Replaces the entries of the replica.
+     *
+     * @param result All the entries of the subtree, with the attributes returned by {@link #getAttributesToReplicate()}.
+     *        It is closed.
+     * @throws LDAPException If the entries cannot be read.
+     */
+    public void load(LDAPResultSet result) throws LDAPException
+    {
+        LDAPChangeCheckpoint loadedCheckpoint = new LDAPChangeCheckpoint(null, highWaterMark);
+        Store loaded = new Store(indexedAttributes);
+        try
+        {
+            while (result.hasNext())
+            {
+                LDAPEntry entry = result.next();
+                loadedCheckpoint.advance(entry);
+                loaded.put(LDAPUtils.normalizeDn(entry.getDn()), strip(entry));
+            }
+        }
+        finally
+        {
+            result.close();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            this.store = loaded;
+            this.checkpoint = loadedCheckpoint;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        lastReconcileTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Adds or replaces entries.
+     *
+     * @param result Changed entries, with the attributes returned by {@link #getAttributesToReplicate()}. It is closed.
+     * @throws LDAPException If the entries cannot be read.
+     */
+    public void update(LDAPResultSet result) throws LDAPException
+    {
+        checkLoaded();
+        List<LDAPEntry> changed;
+        try
+        {
+            changed = result.getAllEntries();
+        }
+        finally
+        {
+            result.close();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            for (LDAPEntry entry : changed)
+            {
+                checkpoint.advance(entry);
+                store.put(LDAPUtils.normalizeDn(entry.getDn()), strip(entry));
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the entries that are not in the subtree anymore.
+     *
+     * @param result The entries of the subtree (only their DNs are used). It is closed.
+     * @return The DNs of the subtree that are not in the replica (entries added without updating the
+     *         high-water mark attribute), which must be read and passed to {@link #update(LDAPResultSet)}.
+     * @throws LDAPException If the entries cannot be read.
+     */
+    public List<String> retain(LDAPResultSet result) throws LDAPException
+    {
+        checkLoaded();
+        Map<String, String> current = new HashMap<String, String>();
+        try
+        {
+            while (result.hasNext())
+            {
+                String dn = result.next().getDn();
+                current.put(LDAPUtils.normalizeDn(dn), dn);
+            }
+        }
+        finally
+        {
+            result.close();
+        }
+
+        lock.writeLock().lock();
+        try
+        {
+            for (String dn : new ArrayList<String>(store.entries.keySet()))
+            {
+                if (current.remove(dn) == null)
+                {
+                    store.remove(dn);
+                }
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        lastReconcileTime = System.currentTimeMillis();
+        return new ArrayList<String>(current.values());
+    }
+
+    /**
+     * Removes an entry that does not exist anymore.
+     *
+     * @param dn
+     */
+    public void remove(String dn)
+    {
+        checkLoaded();
+        lock.writeLock().lock();
+        try
+        {
+            store.remove(LDAPUtils.normalizeDn(dn));
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true once the entries were loaded.
+     */
+    public boolean isLoaded()
+    {
+        return store != null;
+    }
+
+    /**
+     * @return The amount of replicated entries.
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return store != null ? store.entries.size() : 0;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getBaseDn()
+    {
+        return baseDn;
+    }
+
+    /**
+     * @return The greatest value of the high-water mark attribute among the replicated entries.
+     */
+    public String getHighWaterMark()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return checkpoint.getValue();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The amount of reads answered by the replica.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return The amount of reads that had to be performed on the server.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LDAPReplica[baseDn=" + baseDn + ", indexes=" + indexedAttributes + ", entries=" + size() + ", highWaterMark=" + getHighWaterMark() + "]";
+    }
+
+    private void checkLoaded()
+    {
+        if (!isLoaded())
+        {
+            throw new IllegalStateException("The replica of " + baseDn + " must be loaded first.");
+        }
+    }
+
+    /*
+     * Parsed filter or null if it is not valid or some argument is missing (so the server reports the error)
+     */
+    private static LDAPFilter compile(String filter, Object[] filterArgs)
+    {
+        try
+        {
+            LDAPFilter parsed = LDAPFilter.compile(filter);
+            int count = filterArgs != null ? filterArgs.length : 0;
+            if (count < parsed.getArgumentCount())
+            {
+                return null;
+            }
+            for (int i = 0; i < parsed.getArgumentCount(); i++)
+            {
+                if (filterArgs[i] == null)
+                {
+                    return null;
+                }
+            }
+            return parsed;
+        }
+        catch (InvalidFilterException ex)
+        {
+            return null;
+        }
+    }
+
+    private boolean isStale(String normalizedDn)
+    {
+        synchronized (staleEntries)
+        {
+            if (staleEntries.containsKey(normalizedDn))
+            {
+                return true;
+            }
+            for (String subtree : staleSubtrees.keySet())
+            {
+                if (isUnder(normalizedDn, subtree))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /*
+     * Whether an entry under the base DN (or the base DN itself) is stale
+     */
+    private boolean isStaleSubtree(String normalizedBaseDn)
+    {
+        synchronized (staleEntries)
+        {
+            for (String dn : staleEntries.keySet())
+            {
+                if (isUnder(dn, normalizedBaseDn))
+                {
+                    return true;
+                }
+            }
+            for (String subtree : staleSubtrees.keySet())
+            {
+                if (isUnder(subtree, normalizedBaseDn) || isUnder(normalizedBaseDn, subtree))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static void removeUpTo(Map<String, Long> stale, long refreshGeneration)
+    {
+        for (Iterator<Long> it = stale.values().iterator(); it.hasNext();)
+        {
+            if (it.next().longValue() <= refreshGeneration)
+            {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean canEvaluate(LDAPFilter filter, Store store)
+    {
+        switch (filter.getType())
+        {
+            case LDAPFilter.AND:
+            case LDAPFilter.OR:
+                for (LDAPFilter child : ((LDAPFilter.Composite) filter).getFilters())
+                {
+                    if (!canEvaluate(child, store))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            case LDAPFilter.NOT:
+                return canEvaluate(((LDAPFilter.Not) filter).getFilter(), store);
+            case LDAPFilter.EQUALITY:
+            case LDAPFilter.SUBSTRINGS:
+            case LDAPFilter.PRESENT:
+                return isKnownAttribute(((LDAPFilter.Assertion) filter).getAttribute(), store);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean canReturn(String[] attributes, Store store)
+    {
+        if (attributes != null)
+        {
+            for (String attribute : attributes)
+            {
+                if (!ALL_ATTRIBUTES.equals(attribute) && !NO_ATTRIBUTES.equals(attribute) && !isKnownAttribute(attribute, store))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Attributes never found in the entries may be operational attributes (not replicated) or
+     * aliases of other attributes, so the replica cannot tell whether an entry has them.
+     */
+    private static boolean isKnownAttribute(String attribute, Store store)
+    {
+        return attribute != null && attribute.indexOf(';') < 0 && (OBJECT_CLASS.equalsIgnoreCase(attribute) || store.attributeNames.contains(attribute.toLowerCase()));
+    }
+
+    /*
+     * DNs of the entries that may match the filter according to the indexes, or null if all the entries may match.
+     */
+    private static Collection<String> getCandidates(LDAPFilter filter, Store store, Evaluation evaluation)
+    {
+        switch (filter.getType())
+        {
+            case LDAPFilter.AND:
+                Collection<String> smallest = null;
+                for (LDAPFilter child : ((LDAPFilter.Composite) filter).getFilters())
+                {
+                    Collection<String> candidates = getCandidates(child, store, evaluation);
+                    if (candidates != null && (smallest == null || candidates.size() < smallest.size()))
+                    {
+                        smallest = candidates;
+                    }
+                }
+                return smallest;
+            case LDAPFilter.OR:
+                Set<String> union = new HashSet<String>();
+                for (LDAPFilter child : ((LDAPFilter.Composite) filter).getFilters())
+                {
+                    Collection<String> candidates = getCandidates(child, store, evaluation);
+                    if (candidates == null)
+                    {
+                        return null;
+                    }
+                    union.addAll(candidates);
+                }
+                return union;
+            case LDAPFilter.EQUALITY:
+            case LDAPFilter.SUBSTRINGS:
+                LDAPFilter.Assertion assertion = (LDAPFilter.Assertion) filter;
+                Index index = store.indexes.get(assertion.getAttribute().toLowerCase());
+                if (index == null)
+                {
+                    return null;
+                }
+                if (filter.getType() == LDAPFilter.EQUALITY)
+                {
+                    return index.get(evaluation.bind(assertion.getValue(), true));
+                }
+                return assertion.getInitial() != null && index.isSorted() ? index.getStartingWith(evaluation.bind(assertion.getInitial(), false)) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean matches(LDAPFilter filter, LDAPEntry entry, Evaluation evaluation)
+    {
+        switch (filter.getType())
+        {
+            case LDAPFilter.AND:
+                for (LDAPFilter child : ((LDAPFilter.Composite) filter).getFilters())
+                {
+                    if (!matches(child, entry, evaluation))
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            case LDAPFilter.OR:
+                for (LDAPFilter child : ((LDAPFilter.Composite) filter).getFilters())
+                {
+                    if (matches(child, entry, evaluation))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            case LDAPFilter.NOT:
+                return !matches(((LDAPFilter.Not) filter).getFilter(), entry, evaluation);
+            default:
+                LDAPFilter.Assertion assertion = (LDAPFilter.Assertion) filter;
+                LDAPEntryAttribute attribute = entry.getAttribute(assertion.getAttribute());
+                if (filter.getType() == LDAPFilter.PRESENT)
+                {
+                    return attribute != null || OBJECT_CLASS.equalsIgnoreCase(assertion.getAttribute());
+                }
+                if (attribute != null)
+                {
+                    for (Object value : attribute.getValues())
+                    {
+                        if (matches(assertion, normalize(value, true), evaluation))
+                        {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+        }
+    }
+
+    private static boolean matches(LDAPFilter.Assertion assertion, String value, Evaluation evaluation)
+    {
+        if (value == null)
+        {
+            return false;
+        }
+        if (assertion.getType() == LDAPFilter.EQUALITY)
+        {
+            return value.equals(evaluation.bind(assertion.getValue(), true));
+        }
+
+        int position = 0;
+        if (assertion.getInitial() != null)
+        {
+            String initial = evaluation.bind(assertion.getInitial(), false);
+            if (!value.startsWith(initial))
+            {
+                return false;
+            }
+            position = initial.length();
+        }
+        for (LDAPFilter.Value any : assertion.getAny())
+        {
+            String part = evaluation.bind(any, false);
+            int found = value.indexOf(part, position);
+            if (found < 0)
+            {
+                return false;
+            }
+            position = found + part.length();
+        }
+        if (assertion.getFinal() != null)
+        {
+            String last = evaluation.bind(assertion.getFinal(), false);
+            return value.length() - last.length() >= position && value.endsWith(last);
+        }
+        return true;
+    }
+
+    private static boolean isInScope(String normalizedDn, String normalizedBaseDn, int scope)
+    {
+        switch (scope)
+        {
+            case LDAPSearchControls.OBJECT_SCOPE:
+                return normalizedDn.equals(normalizedBaseDn);
+            case LDAPSearchControls.ONELEVEL_SCOPE:
+                int separator = LDAPDnIndex.parentSeparator(normalizedDn);
+                return separator >= 0 && normalizedDn.length() - separator - 1 == normalizedBaseDn.length() && normalizedDn.endsWith(normalizedBaseDn);
+            default:
+                return isUnder(normalizedDn, normalizedBaseDn);
+        }
+    }
+
+    /*
+     * Whether a DN is equal to another one or is under it (both normalized)
+     */
+    private static boolean isUnder(String normalizedDn, String normalizedBaseDn)
+    {
+        if (normalizedDn.equals(normalizedBaseDn))
+        {
+            return true;
+        }
+        int separator = normalizedDn.length() - normalizedBaseDn.length() - 1;
+        return separator > 0 && normalizedDn.charAt(separator) == ',' && normalizedDn.endsWith(normalizedBaseDn);
+    }
+
+    /*
+     * Lower case, without leading and trailing spaces (if trim is true) and with inner spaces
+     * collapsed. Null for binary values, which never match.
+     */
+    private static String normalize(Object value, boolean trim)
+    {
+        if (value == null || value instanceof byte[])
+        {
+            return null;
+        }
+
+        String string = trim ? value.toString().trim() : value.toString();
+        StringBuilder normalized = new StringBuilder(string.length());
+        boolean space = false;
+        for (int i = 0; i < string.length(); i++)
+        {
+            char c = string.charAt(i);
+            if (Character.isWhitespace(c))
+            {
+                space = true;
+            }
+            else
+            {
+                if (space)
+                {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        if (space && !trim)
+        {
+            normalized.append(' ');
+        }
+        return normalized.toString();
+    }
+
+    /*
+     * Copy of a replicated entry without the high-water mark attribute, which is usually operational
+     */
+    private LDAPEntry strip(LDAPEntry entry)
+    {
+        LDAPEntryAttributes attributes = entry.getAttributes();
+        LDAPEntryAttributes stripped = new LDAPEntryAttributes(attributes.getCount());
+        for (int i = 0; i < attributes.getCount(); i++)
+        {
+            if (!attributes.getName(i).equalsIgnoreCase(checkpoint.getAttributeName()))
+            {
+                copyAttribute(attributes, i, stripped);
+            }
+        }
+        LDAPEntry copy = new LDAPEntry(entry.getDn());
+        copy.setAttributes(stripped);
+        return copy;
+    }
+
+    private static LDAPEntry copy(LDAPEntry entry, String[] requested)
+    {
+        Set<String> names = null;
+        if (requested != null)
+        {
+            names = new HashSet<String>();
+            for (String name : requested)
+            {
+                names.add(name.toLowerCase());
+            }
+        }
+
+        LDAPEntryAttributes attributes = entry.getAttributes();
+        LDAPEntryAttributes copy = new LDAPEntryAttributes(names != null ? names.size() : attributes.getCount());
+        for (int i = 0; i < attributes.getCount(); i++)
+        {
+            if (names == null || names.contains(ALL_ATTRIBUTES) || names.contains(attributes.getName(i).toLowerCase()))
+            {
+                copyAttribute(attributes, i, copy);
+            }
+        }
+        LDAPEntry copied = new LDAPEntry(entry.getDn());
+        copied.setAttributes(copy);
+        return copied;
+    }
+
+    private static void copyAttribute(LDAPEntryAttributes attributes, int index, LDAPEntryAttributes copy)
+    {
+        if (attributes.isMultiValued(index))
+        {
+            copy.addMultiValueAttribute(attributes.getName(index), new ArrayList<Object>(attributes.getValues(index)));
+        }
+        else
+        {
+            copy.addSingleValueAttribute(attributes.getName(index), attributes.getValue(index));
+        }
+    }
+
+    /**
+     * Entries by normalized DN and their indexes.
+     */
+    private static final class Store
+    {
+        private final Map<String, LDAPEntry> entries = new HashMap<String, LDAPEntry>();
+        private final Map<String, Index> indexes = new HashMap<String, Index>();
+        // Lower case names of the attributes found in the entries
+        private final Set<String> attributeNames = new HashSet<String>();
+
+        Store(Map<String, Boolean> indexedAttributes)
+        {
+            for (Map.Entry<String, Boolean> indexed : indexedAttributes.entrySet())
+            {
+                indexes.put(indexed.getKey(), new Index(indexed.getValue().booleanValue()));
+            }
+        }
+
+        void put(String normalizedDn, LDAPEntry entry)
+        {
+            remove(normalizedDn);
+            entries.put(normalizedDn, entry);
+            for (Iterator<LDAPEntryAttribute> it = entry.attributes(); it.hasNext();)
+            {
+                LDAPEntryAttribute attribute = it.next();
+                String name = attribute.getName().toLowerCase();
+                attributeNames.add(name);
+                Index index = indexes.get(name);
+                if (index != null)
+                {
+                    for (Object value : attribute.getValues())
+                    {
+                        index.add(normalize(value, true), normalizedDn);
+                    }
+                }
+            }
+        }
+
+        void remove(String normalizedDn)
+        {
+            LDAPEntry removed = entries.remove(normalizedDn);
+            if (removed == null)
+            {
+                return;
+            }
+            for (Iterator<LDAPEntryAttribute> it = removed.attributes(); it.hasNext();)
+            {
+                LDAPEntryAttribute attribute = it.next();
+                Index index = indexes.get(attribute.getName().toLowerCase());
+                if (index != null)
+                {
+                    for (Object value : attribute.getValues())
+                    {
+                        index.remove(normalize(value, true), normalizedDn);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Normalized DNs by normalized value of an attribute.
+     */
+    private static final class Index
+    {
+        private final Map<String, Set<String>> dnsByValue;
+
+        Index(boolean sorted)
+        {
+            this.dnsByValue = sorted ? new TreeMap<String, Set<String>>() : new HashMap<String, Set<String>>();
+        }
+
+        boolean isSorted()
+        {
+            return dnsByValue instanceof TreeMap;
+        }
+
+        void add(String value, String normalizedDn)
+        {
+            if (value == null)
+            {
+                return;
+            }
+            Set<String> dns = dnsByValue.get(value);
+            if (dns == null)
+            {
+                dns = new HashSet<String>(2);
+                dnsByValue.put(value, dns);
+            }
+            dns.add(normalizedDn);
+        }
+
+        void remove(String value, String normalizedDn)
+        {
+            Set<String> dns = value != null ? dnsByValue.get(value) : null;
+            if (dns != null && dns.remove(normalizedDn) && dns.isEmpty())
+            {
+                dnsByValue.remove(value);
+            }
+        }
+
+        Collection<String> get(String value)
+        {
+            Set<String> dns = dnsByValue.get(value);
+            return dns != null ? dns : Collections.<String> emptySet();
+        }
+
+        Collection<String> getStartingWith(String prefix)
+        {
+            Set<String> dns = new HashSet<String>();
+            for (Set<String> matching : ((TreeMap<String, Set<String>>) dnsByValue).subMap(prefix, prefix + Character.MAX_VALUE).values())
+            {
+                dns.addAll(matching);
+            }
+            return dns;
+        }
+    }
+
+    /**
+     * Arguments of a search and the normalized values of the filter, bound once per search.
+     */
+    private static final class Evaluation
+    {
+        private final Object[] args;
+        private final Map<LDAPFilter.Value, String> trimmed = new IdentityHashMap<LDAPFilter.Value, String>();
+        private final Map<LDAPFilter.Value, String> untrimmed = new IdentityHashMap<LDAPFilter.Value, String>();
+
+        Evaluation(Object[] args)
+        {
+            this.args = args;
+        }
+
+        String bind(LDAPFilter.Value value, boolean trim)
+        {
+            Map<LDAPFilter.Value, String> bound = trim ? trimmed : untrimmed;
+            String normalized = bound.get(value);
+            if (normalized == null)
+            {
+                normalized = normalize(value.getString(args), trim);
+                bound.put(value, normalized);
+            }
+            return normalized;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Lazy {@link Iterator} over a {@link LDAPResultSet}. Entries are read from the result set only
+ * when they are requested, so when the result set is paged only the current page is held in memory.
+ * <p/>
+ * The underlying result set (and the connection it holds) is closed as soon as the iteration
+ * finishes, an error occurs or {@link #close()} is called. As {@link Iterator} methods cannot throw
+ * checked exceptions, {@link LDAPException} errors are thrown wrapped in an {@link IllegalStateException}.
+ * <p/>
+ * This iterator can be traversed only once.
+ *
+ * @author mariano
+ */
+public class LDAPResultSetIterator implements Iterator<LDAPEntry>, Iterable<LDAPEntry>
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private LDAPResultSet result;
+    private long count = 0;
+
+    /**
+     * @param result The result set to iterate.
+     */
+    public LDAPResultSetIterator(LDAPResultSet result)
+    {
+        this.result = result;
+    }
+
+    /**
+     * @return
+     * @see java.util.Iterator#hasNext()
+     */
+    @Override
+    public boolean hasNext()
+    {
+        if (result == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            if (result.hasNext())
+            {
+                return true;
+            }
+            else
+            {
+                close();
+                return false;
+            }
+        }
+        catch (LDAPException ex)
+        {
+            silentClose();
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return
+     * @see java.util.Iterator#next()
+     */
+    @Override
+    public LDAPEntry next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        try
+        {
+            count++;
+            return result.next();
+        }
+        catch (LDAPException ex)
+        {
+            silentClose();
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @see java.util.Iterator#remove()
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("LDAP entries cannot be removed from a search result.");
+    }
+
+    /**
+     * @return
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<LDAPEntry> iterator()
+    {
+        return this;
+    }
+
+    /**
+     * Closes the underlying result set. Closing an already closed iterator has no effect.
+     *
+     * @throws LDAPException
+     */
+    public void close() throws LDAPException
+    {
+        if (result != null)
+        {
+            try
+            {
+                result.close();
+            }
+            finally
+            {
+                result = null;
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Closed result set after iterating " + count + " entries");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether the underlying result set was already closed.
+     */
+    public boolean isClosed()
+    {
+        return result == null;
+    }
+
+    /**
+     * @return The amount of entries returned so far.
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    private void silentClose()
+    {
+        try
+        {
+            close();
+        }
+        catch (LDAPException ex)
+        {
+            logger.warn("Unable to close result set.", ex);
+        }
+    }
+}
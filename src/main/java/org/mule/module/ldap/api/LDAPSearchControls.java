@@ -18,6 +18,7 @@
 package org.mule.module.ldap.api;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * This class is the abstraction
@@ -35,6 +36,8 @@ public class LDAPSearchControls implements Serializable
     public final static int ONELEVEL_SCOPE = 1;
     public final static int SUBTREE_SCOPE = 2;
 
+    public final static int DEFAULT_SORT_BUFFER_SIZE = 10000;
+
     private int scope = ONELEVEL_SCOPE;
 
     /**
@@ -67,6 +70,31 @@ public class LDAPSearchControls implements Serializable
      */
     private String orderBy = null;
     
+    /**
+     * Maximum amount of entries sorted in memory when the LDAP server cannot sort the results
+     */
+    private int sortBufferSize = DEFAULT_SORT_BUFFER_SIZE;
+    
+    /**
+     * Amount of pages read ahead in background while the current page is processed (0 means no read ahead)
+     */
+    private int prefetchPages = 0;
+    
+    /**
+     * Whether the attributes of the entries are converted only when they are requested
+     */
+    private boolean lazyAttributes = false;
+    
+    /**
+     * Amount of entries skipped before the first returned entry (0 means none)
+     */
+    private long offset = 0;
+    
+    /**
+     * Maximum amount of entries returned after the skipped ones (0 means all of them)
+     */
+    private long windowSize = 0;
+    
     /**
 	 * 
 	 */
@@ -75,6 +103,28 @@ public class LDAPSearchControls implements Serializable
         super();
     }
 
+    /**
+     * Creates a copy of the given search controls.
+     * 
+     * @param controls
+     */
+    public LDAPSearchControls(LDAPSearchControls controls)
+    {
+        super();
+        this.scope = controls.scope;
+        this.timeout = controls.timeout;
+        this.maxResults = controls.maxResults;
+        this.attributesToReturn = controls.attributesToReturn;
+        this.returnObject = controls.returnObject;
+        this.pageSize = controls.pageSize;
+        this.orderBy = controls.orderBy;
+        this.sortBufferSize = controls.sortBufferSize;
+        this.prefetchPages = controls.prefetchPages;
+        this.lazyAttributes = controls.lazyAttributes;
+        this.offset = controls.offset;
+        this.windowSize = controls.windowSize;
+    }
+
     /**
      * @return Returns the attributesToReturn.
      */
@@ -206,6 +256,124 @@ public class LDAPSearchControls implements Serializable
      */
     public boolean isOrderBySet()
     {
-        return getOrderBy() != null;
+        return getOrderBy() != null && getOrderBy().trim().length() > 0;
+    }
+    
+    /**
+     * 
+     * @return The sort keys parsed from the order by expression.
+     * @see LDAPSortKey#parse(String)
+     */
+    public List<LDAPSortKey> getSortKeys()
+    {
+        return LDAPSortKey.parse(getOrderBy());
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getSortBufferSize()
+    {
+        return sortBufferSize;
+    }
+
+    /**
+     * 
+     * @param sortBufferSize
+     */
+    public void setSortBufferSize(int sortBufferSize)
+    {
+        this.sortBufferSize = sortBufferSize;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getPrefetchPages()
+    {
+        return prefetchPages;
+    }
+
+    /**
+     * 
+     * @param prefetchPages
+     */
+    public void setPrefetchPages(int prefetchPages)
+    {
+        this.prefetchPages = prefetchPages;
+    }
+    
+    /**
+     * 
+     * @return
+     */
+    public boolean isPrefetchEnabled()
+    {
+        return isPagingEnabled() && getPrefetchPages() > 0;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public boolean isLazyAttributes()
+    {
+        return lazyAttributes;
+    }
+
+    /**
+     * 
+     * @param lazyAttributes
+     */
+    public void setLazyAttributes(boolean lazyAttributes)
+    {
+        this.lazyAttributes = lazyAttributes;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * 
+     * @param offset
+     */
+    public void setOffset(long offset)
+    {
+        this.offset = offset;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public long getWindowSize()
+    {
+        return windowSize;
+    }
+
+    /**
+     * 
+     * @param windowSize
+     */
+    public void setWindowSize(long windowSize)
+    {
+        this.windowSize = windowSize;
+    }
+    
+    /**
+     * 
+     * @return Whether only a window of the results starting at {@link #getOffset()} should be returned.
+     */
+    public boolean isWindowSet()
+    {
+        return getOffset() > 0 || getWindowSize() > 0;
     }
 }
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sort key of a LDAP search as defined in RFC 2891: an attribute name, the sort direction
+ * and an optional ordering matching rule.
+ * <p/>
+ * Sort keys are parsed from <i>orderBy</i> expressions that contain one or more keys separated by
+ * commas. Each key is an attribute name optionally prefixed with <b>-</b> (descending) or
+ * <b>+</b> (ascending, the default) and optionally followed by <b>:</b> and the name or OID of
+ * the ordering matching rule. For example: <code>sn, -createTimestamp, cn:caseExactOrderingMatch</code>
+ *
+ * @author mariano
+ */
+public class LDAPSortKey implements Serializable
+{
+    private static final long serialVersionUID = 3614418962410279562L;
+
+    private String attributeName;
+    private boolean reverseOrder;
+    private String matchingRule;
+
+    /**
+     * @param attributeName
+     * @param reverseOrder
+     * @param matchingRule
+     */
+    public LDAPSortKey(String attributeName, boolean reverseOrder, String matchingRule)
+    {
+        this.attributeName = attributeName;
+        this.reverseOrder = reverseOrder;
+        this.matchingRule = matchingRule;
+    }
+
+    /**
+     * @param orderBy A comma separated list of sort keys.
+     * @return The parsed sort keys. An empty list if <i>orderBy</i> is null or blank.
+     * @throws IllegalArgumentException If any of the keys has no attribute name.
+     */
+    public static List<LDAPSortKey> parse(String orderBy)
+    {
+        List<LDAPSortKey> keys = new ArrayList<LDAPSortKey>();
+        if (orderBy != null)
+        {
+            for (String token : orderBy.split(","))
+            {
+                String key = token.trim();
+                if (key.length() == 0)
+                {
+                    continue;
+                }
+
+                boolean reverse = false;
+                if (key.charAt(0) == '-' || key.charAt(0) == '+')
+                {
+                    reverse = key.charAt(0) == '-';
+                    key = key.substring(1).trim();
+                }
+
+                String rule = null;
+                int colon = key.indexOf(':');
+                if (colon >= 0)
+                {
+                    rule = key.substring(colon + 1).trim();
+                    rule = rule.length() > 0 ? rule : null;
+                    key = key.substring(0, colon).trim();
+                }
+
+                if (key.length() == 0)
+                {
+                    throw new IllegalArgumentException("Invalid sort key [" + token.trim() + "] in order by expression: " + orderBy);
+                }
+
+                keys.add(new LDAPSortKey(key, reverse, rule));
+            }
+        }
+        return keys;
+    }
+
+    public String getAttributeName()
+    {
+        return attributeName;
+    }
+
+    public boolean isReverseOrder()
+    {
+        return reverseOrder;
+    }
+
+    public String getMatchingRule()
+    {
+        return matchingRule;
+    }
+
+    /**
+     * @return
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return (reverseOrder ? "-" : "") + attributeName + (matchingRule != null ? ":" + matchingRule : "");
+    }
+}
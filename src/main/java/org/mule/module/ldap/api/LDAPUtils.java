@@ -9,6 +9,11 @@
 package org.mule.module.ldap.api;
 
 import java.io.IOException;
+import java.util.List;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 
 import org.mule.util.Base64;
 
@@ -35,6 +40,117 @@ public class LDAPUtils
         }
             
     }    
+    
+    /**
+     * Normalizes a DN so that equivalent DNs (for example <i>uid=user1, ou=People,dc=mulesoft,dc=org</i> and
+     * <i>uid=user1,ou=people,dc=mulesoft,dc=org</i>) have the same representation. Spaces between RDNs are
+     * removed and attribute types and values are converted to lower case. If the DN cannot be parsed, then
+     * the trimmed lower case DN is returned.
+     * 
+     * @param dn
+     * @return The normalized DN or null if <i>dn</i> is null.
+     */
+    public static String normalizeDn(String dn)
+    {
+        if (dn == null)
+        {
+            return null;
+        }
+        
+        String normalized = parseNormalizedDn(dn);
+        return normalized != null ? normalized : dn.trim().toLowerCase();
+    }
+
+    /**
+     * Same as {@link #normalizeDn(String)} but returning null if the DN cannot be parsed.
+     * <p/>
+     * DNs without escaped, quoted or multi valued RDNs (the vast majority) are normalized without
+     * parsing them with {@link LdapName}, which is several times slower.
+     * 
+     * @param dn
+     * @return The normalized DN or null if <i>dn</i> is null or is not valid.
+     */
+    public static String parseNormalizedDn(String dn)
+    {
+        if (dn == null)
+        {
+            return null;
+        }
+        
+        String normalized = normalizeSimpleDn(dn);
+        if (normalized != null)
+        {
+            return normalized;
+        }
+        
+        try
+        {
+            List<Rdn> rdns = new LdapName(dn).getRdns();
+            StringBuilder builder = new StringBuilder(dn.length());
+            // LdapName holds the RDNs from right to left
+            for (int i = rdns.size() - 1; i >= 0; i--)
+            {
+                if (builder.length() > 0)
+                {
+                    builder.append(',');
+                }
+                builder.append(rdns.get(i).toString().toLowerCase());
+            }
+            return builder.toString();
+        }
+        catch (InvalidNameException ex)
+        {
+            return null;
+        }
+    }
+
+    /*
+     * Normalizes DNs made of type=value RDNs whose values need no escaping, producing the same result
+     * as LdapName. Returns null for any other DN.
+     */
+    private static String normalizeSimpleDn(String dn)
+    {
+        int length = dn.length();
+        StringBuilder normalized = new StringBuilder(length);
+        int start = 0;
+        while (start <= length)
+        {
+            int end = dn.indexOf(',', start);
+            if (end < 0)
+            {
+                end = length;
+            }
+
+            int equals = -1;
+            for (int i = start; i < end; i++)
+            {
+                char c = dn.charAt(i);
+                if (c == '=' && equals < 0)
+                {
+                    equals = i;
+                }
+                else if (c == '=' || c == '\\' || c == '"' || c == '+' || c == ';' || c == '<' || c == '>' || c == '#')
+                {
+                    return null;
+                }
+            }
+
+            String type = equals > 0 ? dn.substring(start, equals).trim() : "";
+            if (type.length() == 0)
+            {
+                // Not a type=value RDN (or the empty DN), left to LdapName
+                return null;
+            }
+
+            if (normalized.length() > 0)
+            {
+                normalized.append(',');
+            }
+            normalized.append(type.toLowerCase()).append('=').append(dn.substring(equals + 1, end).trim().toLowerCase());
+            start = end + 1;
+        }
+        return normalized.toString();
+    }
 }
 
 
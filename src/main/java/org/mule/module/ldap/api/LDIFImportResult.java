@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Serializable;
+
+/**
+ * Counters of a LDIF import (see {@link LDIFImporter}).
+ *
+ * @author mariano
+ */
+public class LDIFImportResult implements Serializable
+{
+    private static final long serialVersionUID = -2309118577946421655L;
+
+    private long recordsRead = 0;
+    private long applied = 0;
+    private long rejected = 0;
+    private long deferred = 0;
+    private long elapsedMillis = 0;
+
+    /**
+     * @return The amount of records read, including the invalid ones.
+     */
+    public long getRecordsRead()
+    {
+        return recordsRead;
+    }
+
+    /**
+     * @return The amount of records successfully applied.
+     */
+    public long getApplied()
+    {
+        return applied;
+    }
+
+    /**
+     * @return The amount of records that were invalid or could not be applied.
+     */
+    public long getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * @return The amount of entries whose addition was retried because their parent entry did not exist yet.
+     */
+    public long getDeferred()
+    {
+        return deferred;
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return The amount of records read per second.
+     */
+    public double getRecordsPerSecond()
+    {
+        return elapsedMillis > 0 ? recordsRead * 1000.0 / elapsedMillis : recordsRead;
+    }
+
+    void incrementRecordsRead()
+    {
+        recordsRead++;
+    }
+
+    void incrementApplied()
+    {
+        applied++;
+    }
+
+    void incrementRejected()
+    {
+        rejected++;
+    }
+
+    void incrementDeferred()
+    {
+        deferred++;
+    }
+
+    void setElapsedMillis(long elapsedMillis)
+    {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "{recordsRead: " + recordsRead + ", applied: " + applied + ", rejected: " + rejected + ", deferred: " + deferred + ", elapsedMillis: " + elapsedMillis + "}";
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Applies the records of a LDIF file (see {@link LDIFReader}) through a {@link LDAPConnection}.
+ * <p/>
+ * Records are read in batches of <i>batchSize</i> records and each batch is applied using
+ * {@link LDAPConnection#applyChanges(List, int)}, so the memory used does not depend on the size
+ * of the file. Consecutive records of the same type are applied together:
+ * <ul>
+ *    <li>Additions are applied from the shallowest to the deepest entries, so parent entries are
+ *        added before their children. Entries whose parent does not exist yet (for example because
+ *        it appears later in the file) are retried once all the records were read.</li>
+ *    <li>Deletions are applied from the deepest to the shallowest entries.</li>
+ *    <li>Modifications are applied in parallel.</li>
+ *    <li>Renames are applied one at a time, in the order they appear in the file.</li>
+ * </ul>
+ * Records that are not valid or that fail are written to the rejects output (if any) preceded by
+ * a comment with their line number and the error, and the import continues with the next record.
+ *
+ * @author mariano
+ */
+public class LDIFImporter
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final LDAPConnection connection;
+    private final int parallelism;
+    private final int batchSize;
+
+    private LDIFImportResult result;
+    private LDIFWriter rejects;
+    private List<PendingRecord> deferred;
+
+    /**
+     * @param connection
+     * @param parallelism Maximum amount of records applied at the same time.
+     * @param batchSize Amount of records read before applying them.
+     */
+    public LDIFImporter(LDAPConnection connection, int parallelism, int batchSize)
+    {
+        this.connection = connection;
+        this.parallelism = Math.max(parallelism, 1);
+        this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Imports the LDIF. The streams are not closed.
+     *
+     * @param in UTF-8 encoded LDIF.
+     * @param rejectsOut Where the rejected records are written as LDIF. May be null.
+     * @return The import counters.
+     * @throws LDAPException If the LDIF or the rejects cannot be read or written or if the import was interrupted.
+     */
+    public LDIFImportResult importLdif(InputStream in, OutputStream rejectsOut) throws LDAPException
+    {
+        long start = System.currentTimeMillis();
+        result = new LDIFImportResult();
+        rejects = rejectsOut != null ? new LDIFWriter(rejectsOut) : null;
+        deferred = new ArrayList<PendingRecord>();
+
+        LDIFReader reader = new LDIFReader(in);
+        try
+        {
+            List<PendingRecord> batch = new ArrayList<PendingRecord>(batchSize);
+            boolean eof = false;
+            while (!eof)
+            {
+                try
+                {
+                    LDAPChangeRecord record = reader.read();
+                    if (record != null)
+                    {
+                        result.incrementRecordsRead();
+                        batch.add(new PendingRecord(record, reader.getRecordLineNumber()));
+                    }
+                    else
+                    {
+                        eof = true;
+                    }
+                }
+                catch (LDAPException ex)
+                {
+                    result.incrementRecordsRead();
+                    rejectInvalid(reader, ex);
+                }
+
+                if (batch.size() >= batchSize || (eof && !batch.isEmpty()))
+                {
+                    applyBatch(batch);
+                    batch.clear();
+                    if (logger.isInfoEnabled())
+                    {
+                        logger.info("LDIF import progress: " + result);
+                    }
+                }
+            }
+
+            applyDeferred();
+
+            if (rejects != null)
+            {
+                rejects.flush();
+            }
+        }
+        catch (IOException ex)
+        {
+            throw new LDAPException("Could not import LDIF after " + result.getRecordsRead() + " records.", ex);
+        }
+
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        if (logger.isInfoEnabled())
+        {
+            logger.info("LDIF import finished: " + result);
+        }
+        return result;
+    }
+
+    private void applyBatch(List<PendingRecord> batch) throws LDAPException, IOException
+    {
+        int start = 0;
+        while (start < batch.size())
+        {
+            int type = batch.get(start).record.getChangeType();
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end).record.getChangeType() == type)
+            {
+                end++;
+            }
+
+            List<PendingRecord> run = batch.subList(start, end);
+            switch (type)
+            {
+                case LDAPChangeRecord.ADD:
+                    for (List<PendingRecord> level : byDepth(run, false).values())
+                    {
+                        apply(level, parallelism, true);
+                    }
+                    break;
+                case LDAPChangeRecord.DELETE:
+                    for (List<PendingRecord> level : byDepth(run, true).values())
+                    {
+                        apply(level, parallelism, false);
+                    }
+                    break;
+                case LDAPChangeRecord.MODRDN:
+                    apply(run, 1, false);
+                    break;
+                default:
+                    apply(run, parallelism, false);
+                    break;
+            }
+            start = end;
+        }
+    }
+
+    /*
+     * Entries whose parent was missing are retried until no more of them can be added.
+     */
+    private void applyDeferred() throws LDAPException, IOException
+    {
+        while (!deferred.isEmpty())
+        {
+            List<PendingRecord> pending = deferred;
+            deferred = new ArrayList<PendingRecord>();
+            for (List<PendingRecord> level : byDepth(pending, false).values())
+            {
+                apply(level, parallelism, true);
+            }
+
+            if (deferred.size() == pending.size())
+            {
+                break;
+            }
+        }
+
+        for (PendingRecord record : deferred)
+        {
+            reject(record, "NameNotFoundException", "The parent entry does not exist.");
+        }
+        deferred.clear();
+    }
+
+    private void apply(List<PendingRecord> records, int threads, boolean deferMissingParent) throws LDAPException, IOException
+    {
+        List<LDAPChangeRecord> changes = new ArrayList<LDAPChangeRecord>(records.size());
+        for (PendingRecord record : records)
+        {
+            changes.add(record.record);
+        }
+
+        List<LDAPChangeResult> results = connection.applyChanges(changes, threads);
+        for (int i = 0; i < results.size(); i++)
+        {
+            LDAPChangeResult changeResult = results.get(i);
+            PendingRecord record = records.get(i);
+            if (changeResult.isSuccess())
+            {
+                result.incrementApplied();
+            }
+            else if (deferMissingParent && changeResult.getException() instanceof NameNotFoundException)
+            {
+                if (!record.deferred)
+                {
+                    record.deferred = true;
+                    result.incrementDeferred();
+                }
+                deferred.add(record);
+            }
+            else
+            {
+                reject(record, changeResult.getExceptionType(), changeResult.getMessage());
+            }
+        }
+    }
+
+    private void reject(PendingRecord record, String type, String message) throws IOException
+    {
+        result.incrementRejected();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Rejected LDIF record at line " + record.line + " (" + record.record.getDn() + "): " + type + ": " + message);
+        }
+        if (rejects != null)
+        {
+            rejects.writeComment("line " + record.line + ": " + type + ": " + message);
+            rejects.write(record.record);
+        }
+    }
+
+    private void rejectInvalid(LDIFReader reader, LDAPException ex) throws IOException
+    {
+        result.incrementRejected();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(ex.getMessage());
+        }
+        if (rejects != null)
+        {
+            // The record cannot be parsed, so it is written commented out
+            rejects.writeComment(ex.getMessage());
+            for (String line : reader.getRecordLines())
+            {
+                rejects.writeComment(line);
+            }
+        }
+    }
+
+    private Map<Integer, List<PendingRecord>> byDepth(List<PendingRecord> records, boolean deepestFirst)
+    {
+        Map<Integer, List<PendingRecord>> levels = deepestFirst ? new TreeMap<Integer, List<PendingRecord>>(Collections.reverseOrder()) : new TreeMap<Integer, List<PendingRecord>>();
+        for (PendingRecord record : records)
+        {
+            Integer depth = depth(record.record.getDn());
+            List<PendingRecord> level = levels.get(depth);
+            if (level == null)
+            {
+                level = new ArrayList<PendingRecord>();
+                levels.put(depth, level);
+            }
+            level.add(record);
+        }
+        return levels;
+    }
+
+    private int depth(String dn)
+    {
+        try
+        {
+            return new LdapName(dn).size();
+        }
+        catch (InvalidNameException ex)
+        {
+            // Invalid DNs are rejected by the server
+            return 0;
+        }
+    }
+
+    private static class PendingRecord
+    {
+        private final LDAPChangeRecord record;
+        private final long line;
+        private boolean deferred = false;
+
+        PendingRecord(LDAPChangeRecord record, long line)
+        {
+            this.record = record;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads LDIF files (RFC 2849) one record at a time, so files of any size can be processed
+ * without loading them in memory. Both content records (returned as {@link LDAPChangeRecord#ADD}
+ * changes) and change records (add, delete, modify, modrdn and moddn) are supported.
+ * <p/>
+ * Base 64 encoded values are returned as strings if they are valid UTF-8 text, otherwise (and for
+ * attributes with the <i>binary</i> option) they are returned as byte arrays. Values referenced by
+ * a <i>file</i> URL are read as byte arrays. Controls are ignored.
+ * <p/>
+ * If a record is not valid an {@link LDAPException} is thrown, but the reader can still be used
+ * to read the following records. The lines of the last record read are available through
+ * {@link #getRecordLines()} and {@link #getRecordLineNumber()}.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @author mariano
+ */
+public class LDIFReader implements Closeable
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final BufferedReader reader;
+    private final CharsetDecoder decoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    private final List<String> recordLines = new ArrayList<String>();
+    private long lineNumber = 0;
+    private long recordLineNumber = 0;
+    private boolean firstRecord = true;
+    private String version = null;
+
+    /**
+     * @param in UTF-8 encoded LDIF.
+     */
+    public LDIFReader(InputStream in)
+    {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param in UTF-8 encoded LDIF.
+     * @param bufferSize
+     */
+    public LDIFReader(InputStream in, int bufferSize)
+    {
+        this.reader = new BufferedReader(new InputStreamReader(in, UTF8), bufferSize);
+    }
+
+    /**
+     * @return The next record or null if there are no more records.
+     * @throws IOException If the LDIF cannot be read.
+     * @throws LDAPException If the record is not valid.
+     */
+    public LDAPChangeRecord read() throws IOException, LDAPException
+    {
+        boolean found = readRecordLines();
+
+        if (firstRecord)
+        {
+            firstRecord = false;
+            if (version != null && !"1".equals(version))
+            {
+                recordLineNumber = 1;
+                throw invalid("Unsupported LDIF version " + version);
+            }
+        }
+
+        return found ? parseRecord() : null;
+    }
+
+    /**
+     * @return The lines (unfolded and without comments) of the last record read.
+     */
+    public List<String> getRecordLines()
+    {
+        return recordLines;
+    }
+
+    /**
+     * @return The line number where the last record read starts.
+     */
+    public long getRecordLineNumber()
+    {
+        return recordLineNumber;
+    }
+
+    /**
+     * @throws IOException
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    /*
+     * Reads the lines of the next record, unfolding them and skipping comments.
+     */
+    private boolean readRecordLines() throws IOException
+    {
+        recordLines.clear();
+        boolean comment = false;
+        String line;
+        while ((line = nextLine()) != null)
+        {
+            if (line.length() == 0)
+            {
+                if (!recordLines.isEmpty())
+                {
+                    return true;
+                }
+                comment = false;
+            }
+            else if (line.charAt(0) == ' ')
+            {
+                if (!comment && !recordLines.isEmpty())
+                {
+                    int last = recordLines.size() - 1;
+                    recordLines.set(last, recordLines.get(last) + line.substring(1));
+                }
+            }
+            else if (line.charAt(0) == '#')
+            {
+                comment = true;
+            }
+            else if (firstRecord && lineNumber == 1 && line.startsWith("version:"))
+            {
+                version = value(line).trim();
+            }
+            else
+            {
+                comment = false;
+                if (recordLines.isEmpty())
+                {
+                    recordLineNumber = lineNumber;
+                }
+                recordLines.add(line);
+            }
+        }
+        return !recordLines.isEmpty();
+    }
+
+    private String nextLine() throws IOException
+    {
+        String line = reader.readLine();
+        if (line != null)
+        {
+            lineNumber++;
+        }
+        return line;
+    }
+
+    private LDAPChangeRecord parseRecord() throws LDAPException, IOException
+    {
+        String first = recordLines.get(0);
+        if (!"dn".equalsIgnoreCase(name(first)))
+        {
+            throw invalid("Records must start with the dn, found: " + first);
+        }
+        String dn = toString(decodeValue(first));
+
+        int index = 1;
+        while (index < recordLines.size() && "control".equalsIgnoreCase(name(recordLines.get(index))))
+        {
+            index++;
+        }
+
+        if (index < recordLines.size() && "changetype".equalsIgnoreCase(name(recordLines.get(index))))
+        {
+            String changeType = value(recordLines.get(index)).trim().toLowerCase();
+            index++;
+            if ("add".equals(changeType))
+            {
+                return LDAPChangeRecord.add(parseEntry(dn, index));
+            }
+            else if ("delete".equals(changeType))
+            {
+                if (index < recordLines.size())
+                {
+                    throw invalid("Delete records cannot have attributes.");
+                }
+                return LDAPChangeRecord.delete(dn);
+            }
+            else if ("modify".equals(changeType))
+            {
+                LDAPChangeRecord record = LDAPChangeRecord.modify(dn, parseModifications(index));
+                if (record.getModifications().isEmpty())
+                {
+                    // Nothing to change
+                    record.setEntry(new LDAPEntry(dn));
+                }
+                return record;
+            }
+            else if ("modrdn".equals(changeType) || "moddn".equals(changeType))
+            {
+                return parseModRdn(dn, index);
+            }
+            else
+            {
+                throw invalid("Unsupported change type " + changeType);
+            }
+        }
+
+        return LDAPChangeRecord.add(parseEntry(dn, index));
+    }
+
+    private LDAPEntry parseEntry(String dn, int index) throws LDAPException, IOException
+    {
+        Map<String, List<Object>> attributes = new LinkedHashMap<String, List<Object>>();
+        Map<String, String> names = new LinkedHashMap<String, String>();
+        for (int i = index; i < recordLines.size(); i++)
+        {
+            String line = recordLines.get(i);
+            String name = name(line);
+            String key = name.toLowerCase();
+            List<Object> values = attributes.get(key);
+            if (values == null)
+            {
+                values = new ArrayList<Object>(1);
+                attributes.put(key, values);
+                names.put(key, name);
+            }
+            values.add(decodeValue(line));
+        }
+
+        LDAPEntryAttributes entryAttributes = new LDAPEntryAttributes(attributes.size());
+        for (Map.Entry<String, List<Object>> attribute : attributes.entrySet())
+        {
+            String name = names.get(attribute.getKey());
+            if (attribute.getValue().size() == 1)
+            {
+                entryAttributes.addSingleValueAttribute(name, attribute.getValue().get(0));
+            }
+            else
+            {
+                entryAttributes.addMultiValueAttribute(name, attribute.getValue());
+            }
+        }
+
+        LDAPEntry entry = new LDAPEntry(dn);
+        entry.setAttributes(entryAttributes);
+        return entry;
+    }
+
+    private List<LDAPModification> parseModifications(int index) throws LDAPException, IOException
+    {
+        List<LDAPModification> modifications = new ArrayList<LDAPModification>();
+        int i = index;
+        while (i < recordLines.size())
+        {
+            String line = recordLines.get(i++);
+            String operation = name(line).toLowerCase();
+            String attributeName = value(line).trim();
+
+            LDAPMultiValueEntryAttribute attribute = new LDAPMultiValueEntryAttribute(attributeName);
+            while (i < recordLines.size() && !"-".equals(recordLines.get(i)))
+            {
+                String valueLine = recordLines.get(i++);
+                if (!attributeName.equalsIgnoreCase(name(valueLine)))
+                {
+                    throw invalid("Expected a value of " + attributeName + " but found: " + valueLine);
+                }
+                attribute.addValue(decodeValue(valueLine));
+            }
+            // Skip the separator
+            i++;
+
+            if ("add".equals(operation))
+            {
+                modifications.add(new LDAPModification(LDAPModification.ADD_ATTRIBUTE, attribute));
+            }
+            else if ("replace".equals(operation))
+            {
+                modifications.add(new LDAPModification(LDAPModification.REPLACE_ATTRIBUTE, attribute));
+            }
+            else if ("delete".equals(operation))
+            {
+                modifications.add(new LDAPModification(LDAPModification.REMOVE_ATTRIBUTE, attribute));
+            }
+            else
+            {
+                throw invalid("Unsupported modification " + operation);
+            }
+        }
+        return modifications;
+    }
+
+    private LDAPChangeRecord parseModRdn(String dn, int index) throws LDAPException, IOException
+    {
+        String newRdn = null;
+        String newSuperior = null;
+        for (int i = index; i < recordLines.size(); i++)
+        {
+            String line = recordLines.get(i);
+            String name = name(line);
+            if ("newrdn".equalsIgnoreCase(name))
+            {
+                newRdn = toString(decodeValue(line));
+            }
+            else if ("deleteoldrdn".equalsIgnoreCase(name))
+            {
+                if ("0".equals(value(line).trim()) && logger.isDebugEnabled())
+                {
+                    logger.debug("deleteoldrdn: 0 is not supported, the old RDN of " + dn + " will be deleted.");
+                }
+            }
+            else if ("newsuperior".equalsIgnoreCase(name))
+            {
+                newSuperior = toString(decodeValue(line));
+            }
+            else
+            {
+                throw invalid("Unexpected line in modrdn record: " + line);
+            }
+        }
+        if (newRdn == null)
+        {
+            throw invalid("The newrdn of " + dn + " is missing.");
+        }
+
+        try
+        {
+            if (newSuperior == null)
+            {
+                LdapName name = new LdapName(dn);
+                newSuperior = name.size() > 1 ? name.getPrefix(name.size() - 1).toString() : "";
+            }
+        }
+        catch (InvalidNameException ex)
+        {
+            throw invalid("Invalid DN " + dn);
+        }
+        return LDAPChangeRecord.modrdn(dn, newSuperior.length() > 0 ? newRdn + "," + newSuperior : newRdn);
+    }
+
+    private String name(String line) throws LDAPException
+    {
+        int colon = line.indexOf(':');
+        if (colon <= 0)
+        {
+            throw invalid("Invalid line: " + line);
+        }
+        return line.substring(0, colon);
+    }
+
+    private String value(String line)
+    {
+        return value(line, line.indexOf(':') + 1);
+    }
+
+    private String value(String line, int start)
+    {
+        while (start < line.length() && line.charAt(start) == ' ')
+        {
+            start++;
+        }
+        return line.substring(start);
+    }
+
+    private Object decodeValue(String line) throws LDAPException, IOException
+    {
+        int colon = line.indexOf(':');
+        char type = colon + 1 < line.length() ? line.charAt(colon + 1) : ' ';
+        if (type == ':')
+        {
+            byte[] bytes = decodeBase64(value(line, colon + 2));
+            if (line.substring(0, colon).toLowerCase().indexOf(";binary") >= 0)
+            {
+                return bytes;
+            }
+            return toTextIfPossible(bytes);
+        }
+        else if (type == '<')
+        {
+            return readUrl(value(line, colon + 2).trim());
+        }
+        return value(line);
+    }
+
+    private Object toTextIfPossible(byte[] bytes)
+    {
+        try
+        {
+            String text = decoder.decode(ByteBuffer.wrap(bytes)).toString();
+            for (int i = 0; i < text.length(); i++)
+            {
+                char c = text.charAt(i);
+                if (c < 0x20 && c != '\t' && c != '\n' && c != '\r')
+                {
+                    return bytes;
+                }
+            }
+            return text;
+        }
+        catch (CharacterCodingException ex)
+        {
+            return bytes;
+        }
+    }
+
+    private String toString(Object value)
+    {
+        return value instanceof byte[] ? new String((byte[]) value, UTF8) : (String) value;
+    }
+
+    private byte[] readUrl(String url) throws LDAPException, IOException
+    {
+        if (!url.toLowerCase().startsWith("file:"))
+        {
+            throw invalid("Only file URLs are supported: " + url);
+        }
+        InputStream in = new URL(url).openStream();
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private byte[] decodeBase64(String value) throws LDAPException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length() * 3 / 4);
+        int group = 0;
+        int bits = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            int digit;
+            if (c >= 'A' && c <= 'Z')
+            {
+                digit = c - 'A';
+            }
+            else if (c >= 'a' && c <= 'z')
+            {
+                digit = c - 'a' + 26;
+            }
+            else if (c >= '0' && c <= '9')
+            {
+                digit = c - '0' + 52;
+            }
+            else if (c == '+')
+            {
+                digit = 62;
+            }
+            else if (c == '/')
+            {
+                digit = 63;
+            }
+            else if (c == '=' || c == ' ')
+            {
+                continue;
+            }
+            else
+            {
+                throw invalid("Invalid base 64 value: " + value);
+            }
+            group = (group << 6) | digit;
+            bits += 6;
+            if (bits >= 8)
+            {
+                bits -= 8;
+                out.write((group >> bits) & 0xFF);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private LDAPException invalid(String message)
+    {
+        return new LDAPException("Invalid LDIF record at line " + recordLineNumber + ". " + message);
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+/**
+ * Writes {@link LDAPEntry} objects to an {@link OutputStream} as LDIF content records (RFC 2849).
+ * <p/>
+ * Lines longer than {@link #MAX_LINE_LENGTH} are folded. Binary values and values that are not
+ * safe strings (for example values with non ASCII characters, line breaks or leading spaces) are
+ * written base 64 encoded from their UTF-8 representation. Entries are encoded directly into a
+ * reusable buffer, so no intermediate strings are created and the memory used does not depend
+ * on the amount of entries written.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @author mariano
+ */
+public class LDIFWriter implements Closeable
+{
+    public static final int MAX_LINE_LENGTH = 76;
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final byte[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final byte LINE_SEPARATOR = '\n';
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position = 0;
+    private int column = 0;
+
+    private int base64Group = 0;
+    private int base64GroupSize = 0;
+
+    private boolean versionWritten = false;
+    private boolean recordStarted = false;
+    private long entriesWritten = 0;
+
+    /**
+     * @param out
+     */
+    public LDIFWriter(OutputStream out)
+    {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param out
+     * @param bufferSize Size of the buffer used to encode the entries. At least {@link #MAX_LINE_LENGTH} bytes.
+     */
+    public LDIFWriter(OutputStream out, int bufferSize)
+    {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, MAX_LINE_LENGTH)];
+    }
+
+    /**
+     * Writes the version line. If used, it must be called before writing any entry.
+     *
+     * @throws IOException
+     */
+    public void writeVersion() throws IOException
+    {
+        if (entriesWritten > 0)
+        {
+            throw new IllegalStateException("The LDIF version must be written before the entries.");
+        }
+        if (!versionWritten)
+        {
+            writeAscii("version: 1");
+            newLine();
+            versionWritten = true;
+        }
+    }
+
+    /**
+     * @param entry
+     * @throws IOException
+     */
+    public void write(LDAPEntry entry) throws IOException
+    {
+        startRecord();
+
+        writeValue("dn", entry.getDn());
+        writeAttributes(entry);
+        entriesWritten++;
+        recordStarted = false;
+    }
+
+    /**
+     * Writes a change record. Modify records without modifications are written as the
+     * replacement of all the attributes of their entry.
+     *
+     * @param change
+     * @throws IOException
+     */
+    public void write(LDAPChangeRecord change) throws IOException
+    {
+        startRecord();
+
+        writeValue("dn", change.getDn());
+        writeValue("changetype", change.getChangeTypeName());
+        switch (change.getChangeType())
+        {
+            case LDAPChangeRecord.ADD:
+                writeAttributes(change.getEntry());
+                break;
+            case LDAPChangeRecord.MODIFY:
+                if (!change.getModifications().isEmpty())
+                {
+                    for (LDAPModification modification : change.getModifications())
+                    {
+                        writeModification(modification.getOperation(), modification.getAttribute());
+                    }
+                }
+                else if (change.getEntry() != null)
+                {
+                    for (Iterator<LDAPEntryAttribute> it = change.getEntry().attributes(); it.hasNext();)
+                    {
+                        writeModification(LDAPModification.REPLACE_ATTRIBUTE, it.next());
+                    }
+                }
+                break;
+            case LDAPChangeRecord.MODRDN:
+                writeModRdn(change.getNewDn());
+                break;
+            default:
+                break;
+        }
+        entriesWritten++;
+        recordStarted = false;
+    }
+
+    /**
+     * Writes a comment line. Line breaks in the comment are replaced by spaces.
+     *
+     * @param comment
+     * @throws IOException
+     */
+    public void writeComment(String comment) throws IOException
+    {
+        startRecord();
+        // Comments are not folded, so multi byte characters are never split
+        append((byte) '#');
+        append((byte) ' ');
+        byte[] bytes = comment.replace('\n', ' ').replace('\r', ' ').getBytes("UTF-8");
+        for (int i = 0; i < bytes.length; i++)
+        {
+            append(bytes[i]);
+        }
+        newLine();
+    }
+
+    /**
+     * @return The amount of entries written.
+     */
+    public long getEntriesWritten()
+    {
+        return entriesWritten;
+    }
+
+    /**
+     * Writes the buffered content to the output stream and flushes it.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * Flushes the buffered content and closes the output stream.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flushBuffer();
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @param value
+     * @return Whether the value can be written as is (SAFE-STRING in RFC 2849). By convention
+     *         values that end with a space are not considered safe either.
+     */
+    public static boolean isSafeString(String value)
+    {
+        int length = value.length();
+        if (length == 0)
+        {
+            return true;
+        }
+
+        char first = value.charAt(0);
+        if (first == ' ' || first == ':' || first == '<' || value.charAt(length - 1) == ' ')
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (c == 0 || c == '\n' || c == '\r' || c > 0x7F)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Records are separated by an empty line, which is written before the comments of the record.
+     */
+    private void startRecord() throws IOException
+    {
+        if ((entriesWritten > 0 || versionWritten) && !recordStarted)
+        {
+            newLine();
+        }
+        recordStarted = true;
+    }
+
+    private void writeAttributes(LDAPEntry entry) throws IOException
+    {
+        LDAPEntryAttributes attributes = entry.getAttributes();
+        for (int i = 0; i < attributes.getCount(); i++)
+        {
+            String name = attributes.getName(i);
+            if (attributes.isMultiValued(i))
+            {
+                List<Object> values = attributes.getValues(i);
+                for (int j = 0; j < values.size(); j++)
+                {
+                    writeValue(name, values.get(j));
+                }
+            }
+            else
+            {
+                writeValue(name, attributes.getValue(i));
+            }
+        }
+    }
+
+    private void writeModification(int operation, LDAPEntryAttribute attribute) throws IOException
+    {
+        switch (operation)
+        {
+            case LDAPModification.ADD_ATTRIBUTE:
+                writeValue("add", attribute.getName());
+                break;
+            case LDAPModification.REMOVE_ATTRIBUTE:
+                writeValue("delete", attribute.getName());
+                break;
+            default:
+                writeValue("replace", attribute.getName());
+                break;
+        }
+        List<Object> values = attribute.getValues();
+        for (int i = 0; i < values.size(); i++)
+        {
+            writeValue(attribute.getName(), values.get(i));
+        }
+        writeAscii("-");
+        newLine();
+    }
+
+    private void writeModRdn(String newDn) throws IOException
+    {
+        String newRdn = newDn;
+        String newSuperior = null;
+        try
+        {
+            LdapName name = new LdapName(newDn);
+            if (name.size() > 1)
+            {
+                newRdn = name.getSuffix(name.size() - 1).toString();
+                newSuperior = name.getPrefix(name.size() - 1).toString();
+            }
+        }
+        catch (InvalidNameException ex)
+        {
+            // Written as is
+        }
+        writeValue("newrdn", newRdn);
+        writeValue("deleteoldrdn", "1");
+        if (newSuperior != null)
+        {
+            writeValue("newsuperior", newSuperior);
+        }
+    }
+
+    private void writeValue(String name, Object value) throws IOException
+    {
+        writeAscii(name);
+        if (value instanceof byte[])
+        {
+            writeAscii(":: ");
+            writeBase64((byte[]) value);
+        }
+        else
+        {
+            String str = value != null ? String.valueOf(value) : "";
+            if (str.length() == 0)
+            {
+                writeAscii(":");
+            }
+            else if (isSafeString(str))
+            {
+                writeAscii(": ");
+                writeAscii(str);
+            }
+            else
+            {
+                writeAscii(":: ");
+                writeBase64(str);
+            }
+        }
+        newLine();
+    }
+
+    private void writeAscii(String str) throws IOException
+    {
+        for (int i = 0, length = str.length(); i < length; i++)
+        {
+            writeByte((byte) str.charAt(i));
+        }
+    }
+
+    private void writeBase64(byte[] value) throws IOException
+    {
+        for (int i = 0; i < value.length; i++)
+        {
+            encodeBase64(value[i]);
+        }
+        endBase64();
+    }
+
+    /*
+     * Encodes the UTF-8 representation of the value without creating a byte array.
+     */
+    private void writeBase64(String value) throws IOException
+    {
+        for (int i = 0, length = value.length(); i < length;)
+        {
+            int c = value.codePointAt(i);
+            i += Character.charCount(c);
+            if (c < 0x80)
+            {
+                encodeBase64(c);
+            }
+            else if (c < 0x800)
+            {
+                encodeBase64(0xC0 | (c >> 6));
+                encodeBase64(0x80 | (c & 0x3F));
+            }
+            else if (c < 0x10000)
+            {
+                encodeBase64(0xE0 | (c >> 12));
+                encodeBase64(0x80 | ((c >> 6) & 0x3F));
+                encodeBase64(0x80 | (c & 0x3F));
+            }
+            else
+            {
+                encodeBase64(0xF0 | (c >> 18));
+                encodeBase64(0x80 | ((c >> 12) & 0x3F));
+                encodeBase64(0x80 | ((c >> 6) & 0x3F));
+                encodeBase64(0x80 | (c & 0x3F));
+            }
+        }
+        endBase64();
+    }
+
+    private void encodeBase64(int b) throws IOException
+    {
+        base64Group = (base64Group << 8) | (b & 0xFF);
+        base64GroupSize++;
+        if (base64GroupSize == 3)
+        {
+            writeByte(BASE64_ALPHABET[(base64Group >> 18) & 0x3F]);
+            writeByte(BASE64_ALPHABET[(base64Group >> 12) & 0x3F]);
+            writeByte(BASE64_ALPHABET[(base64Group >> 6) & 0x3F]);
+            writeByte(BASE64_ALPHABET[base64Group & 0x3F]);
+            base64Group = 0;
+            base64GroupSize = 0;
+        }
+    }
+
+    private void endBase64() throws IOException
+    {
+        if (base64GroupSize == 1)
+        {
+            writeByte(BASE64_ALPHABET[(base64Group >> 2) & 0x3F]);
+            writeByte(BASE64_ALPHABET[(base64Group << 4) & 0x3F]);
+            writeByte((byte) '=');
+            writeByte((byte) '=');
+        }
+        else if (base64GroupSize == 2)
+        {
+            writeByte(BASE64_ALPHABET[(base64Group >> 10) & 0x3F]);
+            writeByte(BASE64_ALPHABET[(base64Group >> 4) & 0x3F]);
+            writeByte(BASE64_ALPHABET[(base64Group << 2) & 0x3F]);
+            writeByte((byte) '=');
+        }
+        base64Group = 0;
+        base64GroupSize = 0;
+    }
+
+    private void writeByte(byte b) throws IOException
+    {
+        if (column == MAX_LINE_LENGTH)
+        {
+            // Folded lines start with a single space
+            append(LINE_SEPARATOR);
+            append((byte) ' ');
+            column = 1;
+        }
+        append(b);
+        column++;
+    }
+
+    private void newLine() throws IOException
+    {
+        append(LINE_SEPARATOR);
+        column = 0;
+    }
+
+    private void append(byte b) throws IOException
+    {
+        if (position == buffer.length)
+        {
+            flushBuffer();
+        }
+        buffer[position++] = b;
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        if (position > 0)
+        {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link LDAPResultSet} that returns at most a given amount of the entries of another result set.
+ * The entries are read from the wrapped result set as they are requested.
+ *
+ * @author mariano
+ */
+public class LimitedLDAPResultSet implements LDAPResultSet
+{
+    private final LDAPResultSet result;
+    private long remaining;
+
+    /**
+     * @param result
+     * @param limit Maximum amount of entries returned.
+     */
+    public LimitedLDAPResultSet(LDAPResultSet result, long limit)
+    {
+        this.result = result;
+        this.remaining = limit;
+    }
+
+    @Override
+    public boolean hasNext() throws LDAPException
+    {
+        return remaining > 0 && result.hasNext();
+    }
+
+    @Override
+    public LDAPEntry next() throws LDAPException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        return result.next();
+    }
+
+    @Override
+    public List<LDAPEntry> getAllEntries() throws LDAPException
+    {
+        List<LDAPEntry> all = new ArrayList<LDAPEntry>();
+        while (hasNext())
+        {
+            all.add(next());
+        }
+        return all;
+    }
+
+    @Override
+    public void close() throws LDAPException
+    {
+        result.close();
+    }
+}
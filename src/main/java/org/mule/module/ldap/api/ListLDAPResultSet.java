@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link LDAPResultSet} over entries that are already in memory (for example the ones found in a
+ * {@link LDAPReplica}).
+ *
+ * @author mariano
+ */
+public class ListLDAPResultSet implements LDAPResultSet
+{
+    private List<LDAPEntry> entries;
+    private int position = 0;
+
+    /**
+     * @param entries
+     */
+    public ListLDAPResultSet(List<LDAPEntry> entries)
+    {
+        this.entries = entries;
+    }
+
+    @Override
+    public void close() throws LDAPException
+    {
+        entries = null;
+    }
+
+    @Override
+    public LDAPEntry next() throws LDAPException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return entries.get(position++);
+    }
+
+    @Override
+    public boolean hasNext() throws LDAPException
+    {
+        return entries != null && position < entries.size();
+    }
+
+    @Override
+    public List<LDAPEntry> getAllEntries() throws LDAPException
+    {
+        List<LDAPEntry> all = new ArrayList<LDAPEntry>();
+        while (hasNext())
+        {
+            all.add(next());
+        }
+        return all;
+    }
+}
@@ -0,0 +1,465 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link LDAPResultSet} that runs several searches (partitions) concurrently and merges their
+ * entries into a single result set.
+ * <p/>
+ * The partitions are searched by <i>parallelism</i> workers that take them one at a time, so no
+ * more threads than that are used no matter how many partitions there are. If no {@link Comparator}
+ * is provided, then entries are returned in the order they arrive from the partitions. Each worker
+ * hands its entries through a bounded queue, so partitions stop reading from the LDAP server when
+ * the consumer is slower. If a comparator is provided, then each worker sorts a whole partition
+ * (using a {@link SortedLDAPResultSet}) and moves on to the next one, and the sorted partitions are
+ * merged by the consumer, so the entries are returned in order.
+ * <p/>
+ * When <i>maxResults</i> entries were returned or this result set is closed, partitions that are
+ * still pending are cancelled.
+ *
+ * @author mariano
+ */
+public class MergingLDAPResultSet implements LDAPResultSet
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final int DEFAULT_QUEUE_SIZE = 500;
+
+    /**
+     * Milliseconds a partition waits for room in its queue before checking whether the result
+     * set was closed.
+     */
+    private static final long OFFER_TIMEOUT = 100L;
+
+    /**
+     * Marks the end of the entries of a partition.
+     */
+    private final LDAPEntry endOfPartition = new LDAPEntry();
+
+    /**
+     * Handed to the consumer instead of the sorted partition when the search of a partition failed.
+     */
+    private final LDAPResultSet failedPartition = new ListLDAPResultSet(new ArrayList<LDAPEntry>());
+
+    private final List<Callable<LDAPResultSet>> partitions;
+    private final Comparator<LDAPEntry> comparator;
+    private final long maxResults;
+    private final int parallelism;
+    private final int sortBufferSize;
+    private final AtomicInteger nextPartition = new AtomicInteger(0);
+    private final BlockingQueue<LDAPEntry> entries;
+    private final List<BlockingQueue<LDAPResultSet>> sortedPartitions;
+    private final List<Future<?>> tasks = new ArrayList<Future<?>>();
+
+    private volatile boolean closed = false;
+    private volatile Exception failure = null;
+
+    private long returned = 0;
+    private int finishedPartitions = 0;
+    private PriorityQueue<Head> heads = null;
+    private LDAPEntry nextEntry = null;
+
+    /**
+     * @param partitions Each callable performs the search of a partition.
+     * @param comparator Used to merge the partitions in order or null if the order is not relevant.
+     * @param maxResults Maximum amount of entries returned (0 means no limit)
+     * @param parallelism Maximum amount of partitions searched at the same time (and amount of threads used).
+     * @param sortBufferSize Maximum amount of entries of each partition sorted in memory. Only used if a comparator is provided.
+     * @param queueSize Maximum amount of entries waiting to be consumed. Only used if no comparator is provided.
+     */
+    public MergingLDAPResultSet(List<Callable<LDAPResultSet>> partitions, Comparator<LDAPEntry> comparator, long maxResults, int parallelism, int sortBufferSize, int queueSize)
+    {
+        this.partitions = partitions;
+        this.comparator = comparator;
+        this.maxResults = maxResults > 0 ? maxResults : 0;
+        this.parallelism = parallelism > 0 ? parallelism : 1;
+        this.sortBufferSize = sortBufferSize;
+
+        if (comparator != null)
+        {
+            this.entries = null;
+            this.sortedPartitions = new ArrayList<BlockingQueue<LDAPResultSet>>();
+            for (int i = 0; i < partitions.size(); i++)
+            {
+                sortedPartitions.add(new ArrayBlockingQueue<LDAPResultSet>(1));
+            }
+        }
+        else
+        {
+            this.entries = new ArrayBlockingQueue<LDAPEntry>(queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE);
+            this.sortedPartitions = null;
+        }
+    }
+
+    /**
+     * Starts searching the partitions.
+     *
+     * @param executor The executor that runs the workers.
+     */
+    public void start(ExecutorService executor)
+    {
+        int workers = Math.min(parallelism, partitions.size());
+        for (int i = 0; i < workers; i++)
+        {
+            tasks.add(executor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    int partition;
+                    while (!closed && (partition = nextPartition.getAndIncrement()) < partitions.size())
+                    {
+                        if (comparator != null)
+                        {
+                            sortPartition(partition);
+                        }
+                        else
+                        {
+                            searchPartition(partitions.get(partition));
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Cancels the partitions that are still running. Each partition closes its own result set.
+     *
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#close()
+     */
+    @Override
+    public void close() throws LDAPException
+    {
+        if (!closed)
+        {
+            closed = true;
+            for (Future<?> task : tasks)
+            {
+                task.cancel(false);
+            }
+            if (entries != null)
+            {
+                entries.clear();
+            }
+            if (heads != null)
+            {
+                for (Head head : heads)
+                {
+                    closePartition(head.result);
+                }
+            }
+            if (sortedPartitions != null)
+            {
+                for (BlockingQueue<LDAPResultSet> queue : sortedPartitions)
+                {
+                    LDAPResultSet sorted = queue.poll();
+                    if (sorted != null)
+                    {
+                        closePartition(sorted);
+                    }
+                }
+            }
+            heads = null;
+            nextEntry = null;
+        }
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#next()
+     */
+    @Override
+    public LDAPEntry next() throws LDAPException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        LDAPEntry entry = nextEntry;
+        nextEntry = null;
+        returned++;
+        return entry;
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws LDAPException
+    {
+        if (nextEntry != null)
+        {
+            return true;
+        }
+        if (closed)
+        {
+            return false;
+        }
+        if (maxResults > 0 && returned >= maxResults)
+        {
+            logger.debug("Max results reached. Cancelling pending partitions.");
+            close();
+            return false;
+        }
+
+        try
+        {
+            nextEntry = comparator != null ? takeOrdered() : takeUnordered();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new LDAPException("Interrupted while waiting for LDAP entries.", ex);
+        }
+
+        if (nextEntry == null)
+        {
+            Exception ex = failure;
+            close();
+            if (ex instanceof LDAPException)
+            {
+                throw (LDAPException) ex;
+            }
+            else if (ex instanceof RuntimeException)
+            {
+                throw (RuntimeException) ex;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#getAllEntries()
+     */
+    @Override
+    public List<LDAPEntry> getAllEntries() throws LDAPException
+    {
+        List<LDAPEntry> allEntries = new ArrayList<LDAPEntry>();
+
+        while (hasNext())
+        {
+            allEntries.add(next());
+        }
+
+        return allEntries;
+    }
+
+    /**
+     * @return The amount of partitions.
+     */
+    public int getPartitionsCount()
+    {
+        return partitions.size();
+    }
+
+    private LDAPEntry takeUnordered() throws InterruptedException
+    {
+        while (finishedPartitions < partitions.size() && failure == null)
+        {
+            LDAPEntry entry = entries.take();
+            if (entry == endOfPartition)
+            {
+                finishedPartitions++;
+            }
+            else
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private LDAPEntry takeOrdered() throws InterruptedException, LDAPException
+    {
+        if (heads == null)
+        {
+            heads = new PriorityQueue<Head>(Math.max(partitions.size(), 1));
+            for (int i = 0; i < sortedPartitions.size() && failure == null; i++)
+            {
+                LDAPResultSet sorted = sortedPartitions.get(i).take();
+                if (sorted.hasNext())
+                {
+                    heads.offer(new Head(sorted.next(), sorted, i));
+                }
+                else
+                {
+                    closePartition(sorted);
+                }
+            }
+        }
+
+        Head head = failure == null ? heads.poll() : null;
+        if (head == null)
+        {
+            return null;
+        }
+
+        if (head.result.hasNext())
+        {
+            heads.offer(new Head(head.result.next(), head.result, head.partition));
+        }
+        else
+        {
+            closePartition(head.result);
+        }
+        return head.entry;
+    }
+
+    private void searchPartition(Callable<LDAPResultSet> partition)
+    {
+        LDAPResultSet result = null;
+        try
+        {
+            result = partition.call();
+            while (!closed && result.hasNext())
+            {
+                if (!enqueue(result.next()))
+                {
+                    break;
+                }
+            }
+        }
+        catch (Exception ex)
+        {
+            failed(ex);
+        }
+        finally
+        {
+            closePartition(result);
+            enqueue(endOfPartition);
+        }
+    }
+
+    /*
+     * Sorting reads all the entries of the partition and releases its connection, so the worker
+     * can search the next partition while this one is merged.
+     */
+    private void sortPartition(int partition)
+    {
+        BlockingQueue<LDAPResultSet> queue = sortedPartitions.get(partition);
+        LDAPResultSet sorted = null;
+        try
+        {
+            sorted = new SortedLDAPResultSet(partitions.get(partition).call(), comparator, sortBufferSize);
+            sorted.hasNext();
+        }
+        catch (Exception ex)
+        {
+            failed(ex);
+            closePartition(sorted);
+            sorted = null;
+        }
+
+        queue.offer(sorted != null ? sorted : failedPartition);
+        if (closed && sorted != null && queue.remove(sorted))
+        {
+            closePartition(sorted);
+        }
+    }
+
+    private void failed(Exception ex)
+    {
+        if (!closed)
+        {
+            logger.warn("Search of partition failed.", ex);
+            failure = ex instanceof LDAPException || ex instanceof RuntimeException ? ex : new LDAPException(ex.getMessage(), ex);
+        }
+    }
+
+    private void closePartition(LDAPResultSet result)
+    {
+        if (result != null)
+        {
+            try
+            {
+                result.close();
+            }
+            catch (LDAPException ex)
+            {
+                logger.warn("Could not close partition result set.", ex);
+            }
+        }
+    }
+
+    private boolean enqueue(LDAPEntry entry)
+    {
+        boolean interrupted = false;
+        try
+        {
+            while (!closed)
+            {
+                try
+                {
+                    if (entries.offer(entry, OFFER_TIMEOUT, TimeUnit.MILLISECONDS))
+                    {
+                        return true;
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    // Keep trying, otherwise the consumer could wait forever for the end of the partition
+                    interrupted = true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class Head implements Comparable<Head>
+    {
+        private final LDAPEntry entry;
+        private final LDAPResultSet result;
+        private final int partition;
+
+        Head(LDAPEntry entry, LDAPResultSet result, int partition)
+        {
+            this.entry = entry;
+            this.result = result;
+            this.partition = partition;
+        }
+
+        @Override
+        public int compareTo(Head other)
+        {
+            int result = comparator.compare(entry, other.entry);
+            return result != 0 ? result : partition - other.partition;
+        }
+    }
+}
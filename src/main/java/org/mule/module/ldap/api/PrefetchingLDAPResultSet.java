@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link LDAPResultSet} that reads ahead the entries of another result set in a background
+ * thread, so that the next pages of a paged search are requested to the LDAP server while the
+ * current page is being processed.
+ * <p/>
+ * Entries are handed from the background thread to the consumer in pages of <i>pageSize</i>
+ * entries through a queue that holds at most <i>prefetchPages</i> pages. When the queue is full
+ * the background thread stops reading until the consumer takes a page, so at most
+ * <i>prefetchPages</i> + 2 pages are held in memory.
+ * <p/>
+ * The source result set is only used by the background thread and it is closed when this
+ * result set is closed.
+ *
+ * @author mariano
+ */
+public class PrefetchingLDAPResultSet implements LDAPResultSet
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    /**
+     * Milliseconds the background thread waits for room in the queue before checking whether
+     * the result set was closed.
+     */
+    private static final long OFFER_TIMEOUT = 100L;
+
+    /**
+     * Marks the end of the entries (or a failure reading them).
+     */
+    private final List<LDAPEntry> endOfEntries = new ArrayList<LDAPEntry>(0);
+
+    private final LDAPResultSet source;
+    private final int pageSize;
+    private final BlockingQueue<List<LDAPEntry>> pages;
+
+    private Future<?> producer = null;
+    private volatile boolean closed = false;
+    private volatile Exception failure = null;
+
+    private Iterator<LDAPEntry> currentPage = null;
+    private boolean finished = false;
+
+    /**
+     * @param source The result set to read ahead.
+     * @param pageSize Amount of entries handed to the consumer at once.
+     * @param prefetchPages Maximum amount of pages read ahead. At least 1.
+     */
+    public PrefetchingLDAPResultSet(LDAPResultSet source, int pageSize, int prefetchPages)
+    {
+        this.source = source;
+        this.pageSize = pageSize > 0 ? pageSize : 1;
+        this.pages = new ArrayBlockingQueue<List<LDAPEntry>>(prefetchPages > 0 ? prefetchPages : 1);
+    }
+
+    /**
+     * Starts reading entries in the background.
+     *
+     * @param executor The executor that runs the background thread.
+     */
+    public void start(ExecutorService executor)
+    {
+        producer = executor.submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                prefetch();
+            }
+        });
+    }
+
+    /**
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#close()
+     */
+    @Override
+    public void close() throws LDAPException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        pages.clear();
+
+        try
+        {
+            // Wait for the background thread to stop using the source result set
+            if (producer != null)
+            {
+                producer.get();
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex)
+        {
+            logger.warn("Prefetching of LDAP entries failed.", ex.getCause());
+        }
+        finally
+        {
+            pages.clear();
+            source.close();
+        }
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#next()
+     */
+    @Override
+    public LDAPEntry next() throws LDAPException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws LDAPException
+    {
+        if (closed || producer == null)
+        {
+            finished = true;
+        }
+        
+        while (!finished && (currentPage == null || !currentPage.hasNext()))
+        {
+
+            List<LDAPEntry> page;
+            try
+            {
+                page = pages.take();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new LDAPException("Interrupted while waiting for LDAP entries.", ex);
+            }
+
+            if (page == endOfEntries)
+            {
+                finished = true;
+                currentPage = null;
+                rethrowFailure();
+            }
+            else
+            {
+                currentPage = page.iterator();
+            }
+        }
+        return !finished;
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#getAllEntries()
+     */
+    @Override
+    public List<LDAPEntry> getAllEntries() throws LDAPException
+    {
+        List<LDAPEntry> allEntries = new ArrayList<LDAPEntry>();
+
+        while (hasNext())
+        {
+            allEntries.add(next());
+        }
+
+        return allEntries;
+    }
+
+    /**
+     * @return The amount of pages that were read ahead and are waiting to be consumed.
+     */
+    public int getPrefetchedPagesCount()
+    {
+        return pages.contains(endOfEntries) ? pages.size() - 1 : pages.size();
+    }
+
+    private void prefetch()
+    {
+        try
+        {
+            List<LDAPEntry> page = new ArrayList<LDAPEntry>(pageSize);
+            while (!closed && failure == null && source.hasNext())
+            {
+                LDAPEntry entry = source.next();
+                if (entry != null)
+                {
+                    page.add(entry);
+                }
+                if (page.size() >= pageSize)
+                {
+                    enqueue(page);
+                    page = new ArrayList<LDAPEntry>(pageSize);
+                }
+            }
+            if (!page.isEmpty())
+            {
+                enqueue(page);
+            }
+        }
+        catch (LDAPException ex)
+        {
+            failure = ex;
+        }
+        catch (RuntimeException ex)
+        {
+            failure = ex;
+        }
+        finally
+        {
+            enqueue(endOfEntries);
+        }
+    }
+
+    private void enqueue(List<LDAPEntry> page)
+    {
+        try
+        {
+            while (!closed)
+            {
+                if (pages.offer(page, OFFER_TIMEOUT, TimeUnit.MILLISECONDS))
+                {
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            if (failure == null)
+            {
+                failure = new LDAPException("Interrupted while prefetching LDAP entries.", ex);
+            }
+            // Pending pages are discarded so that the consumer gets the failure
+            pages.clear();
+            pages.offer(endOfEntries);
+        }
+    }
+
+    private void rethrowFailure() throws LDAPException
+    {
+        Exception ex = failure;
+        if (ex instanceof LDAPException)
+        {
+            throw (LDAPException) ex;
+        }
+        else if (ex instanceof RuntimeException)
+        {
+            throw (RuntimeException) ex;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * {@link LDAPResultSet} that returns the entries of another result set sorted using a
+ * {@link Comparator}. It is used when the LDAP server cannot sort the results itself.
+ * <p/>
+ * Sorting is performed as a bounded external merge sort: entries are read in runs of at most
+ * <i>maxEntriesInMemory</i> entries, each run is sorted and, if more than one run is needed,
+ * written to a temporary file. Runs are then merged lazily as entries are requested, so no more
+ * than <i>maxEntriesInMemory</i> entries plus one entry per run are held in memory at any time.
+ * <p/>
+ * The source result set is completely read (and closed) when the first entry is requested.
+ * Temporary files are deleted when this result set is closed.
+ *
+ * @author mariano
+ */
+public class SortedLDAPResultSet implements LDAPResultSet
+{
+    /**
+     * Maximum number of runs merged at the same time. If there are more runs, they are
+     * merged in several passes to bound the amount of open files.
+     */
+    public static final int MAX_MERGE_FAN_IN = 64;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private LDAPResultSet source;
+    private final Comparator<LDAPEntry> comparator;
+    private final int maxEntriesInMemory;
+
+    private boolean sorted = false;
+    private final List<File> runFiles = new ArrayList<File>();
+    private final List<RunCursor> cursors = new ArrayList<RunCursor>();
+    private PriorityQueue<RunCursor> heads = null;
+
+    /**
+     * @param source The result set whose entries should be sorted.
+     * @param comparator
+     * @param maxEntriesInMemory Maximum amount of entries sorted in memory. If less than 1, then all entries are sorted in memory.
+     */
+    public SortedLDAPResultSet(LDAPResultSet source, Comparator<LDAPEntry> comparator, int maxEntriesInMemory)
+    {
+        this.source = source;
+        this.comparator = comparator;
+        this.maxEntriesInMemory = maxEntriesInMemory > 0 ? maxEntriesInMemory : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#close()
+     */
+    @Override
+    public void close() throws LDAPException
+    {
+        try
+        {
+            if (source != null)
+            {
+                source.close();
+            }
+        }
+        finally
+        {
+            source = null;
+            heads = null;
+            for (RunCursor cursor : cursors)
+            {
+                cursor.close();
+            }
+            cursors.clear();
+            for (File file : runFiles)
+            {
+                deleteRunFile(file);
+            }
+            runFiles.clear();
+        }
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#next()
+     */
+    @Override
+    public LDAPEntry next() throws LDAPException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        RunCursor cursor = heads.poll();
+        LDAPEntry entry = cursor.current;
+        if (cursor.advance())
+        {
+            heads.offer(cursor);
+        }
+        return entry;
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws LDAPException
+    {
+        if (!sorted)
+        {
+            sort();
+        }
+        return heads != null && !heads.isEmpty();
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#getAllEntries()
+     */
+    @Override
+    public List<LDAPEntry> getAllEntries() throws LDAPException
+    {
+        List<LDAPEntry> allEntries = new ArrayList<LDAPEntry>();
+
+        while (hasNext())
+        {
+            allEntries.add(next());
+        }
+
+        return allEntries;
+    }
+
+    /**
+     * @return The amount of runs that were written to temporary files.
+     */
+    public int getSpilledRunsCount()
+    {
+        return runFiles.size();
+    }
+
+    private void sort() throws LDAPException
+    {
+        sorted = true;
+        if (source == null)
+        {
+            return;
+        }
+
+        List<LDAPEntry> run = new ArrayList<LDAPEntry>(Math.min(maxEntriesInMemory, 1024));
+        long total = 0;
+        try
+        {
+            while (source.hasNext())
+            {
+                LDAPEntry entry = source.next();
+                if (entry != null)
+                {
+                    run.add(entry);
+                    total++;
+                }
+                if (run.size() >= maxEntriesInMemory)
+                {
+                    Collections.sort(run, comparator);
+                    runFiles.add(writeRun(run.iterator()));
+                    run.clear();
+                }
+            }
+        }
+        finally
+        {
+            LDAPResultSet toClose = source;
+            source = null;
+            toClose.close();
+        }
+
+        Collections.sort(run, comparator);
+
+        if (runFiles.size() + 1 > MAX_MERGE_FAN_IN)
+        {
+            if (!run.isEmpty())
+            {
+                runFiles.add(writeRun(run.iterator()));
+                run.clear();
+            }
+            reduceRuns();
+        }
+
+        heads = newHeadsQueue(runFiles.size() + 1);
+
+        for (File file : runFiles)
+        {
+            addCursor(new FileRunCursor(file, cursors.size()));
+        }
+        if (!run.isEmpty())
+        {
+            addCursor(new MemoryRunCursor(run, cursors.size()));
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Sorted " + total + " entries on the client using " + runFiles.size() + " temporary runs.");
+        }
+    }
+
+    /*
+     * Entries with the same sort values are returned in the order they were read from the source.
+     */
+    private PriorityQueue<RunCursor> newHeadsQueue(int runs)
+    {
+        return new PriorityQueue<RunCursor>(Math.max(runs, 1), new Comparator<RunCursor>()
+        {
+            @Override
+            public int compare(RunCursor cursor1, RunCursor cursor2)
+            {
+                int result = comparator.compare(cursor1.current, cursor2.current);
+                return result != 0 ? result : cursor1.index - cursor2.index;
+            }
+        });
+    }
+
+    private void addCursor(RunCursor cursor) throws LDAPException
+    {
+        cursors.add(cursor);
+        if (cursor.advance())
+        {
+            heads.offer(cursor);
+        }
+    }
+
+    /*
+     * Merges the runs in groups of MAX_MERGE_FAN_IN until there are at most MAX_MERGE_FAN_IN runs left.
+     */
+    private void reduceRuns() throws LDAPException
+    {
+        while (runFiles.size() > MAX_MERGE_FAN_IN)
+        {
+            // Consecutive runs are merged together so that the merge remains stable
+            List<File> merged = new ArrayList<File>();
+            try
+            {
+                while (!runFiles.isEmpty())
+                {
+                    List<File> group = new ArrayList<File>(runFiles.subList(0, Math.min(MAX_MERGE_FAN_IN, runFiles.size())));
+                    merged.add(group.size() > 1 ? mergeRuns(group) : group.get(0));
+                    runFiles.removeAll(group);
+                }
+            }
+            finally
+            {
+                runFiles.addAll(0, merged);
+            }
+        }
+    }
+
+    private File mergeRuns(List<File> group) throws LDAPException
+    {
+        heads = newHeadsQueue(group.size());
+        try
+        {
+            for (File file : group)
+            {
+                addCursor(new FileRunCursor(file, cursors.size()));
+            }
+            return writeRun(new Iterator<LDAPEntry>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return !heads.isEmpty();
+                }
+
+                @Override
+                public LDAPEntry next()
+                {
+                    try
+                    {
+                        return SortedLDAPResultSet.this.next();
+                    }
+                    catch (LDAPException ex)
+                    {
+                        throw new IllegalStateException(ex.getMessage(), ex);
+                    }
+                }
+
+                @Override
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            });
+        }
+        catch (IllegalStateException ex)
+        {
+            if (ex.getCause() instanceof LDAPException)
+            {
+                throw (LDAPException) ex.getCause();
+            }
+            throw ex;
+        }
+        finally
+        {
+            for (RunCursor cursor : cursors)
+            {
+                cursor.close();
+            }
+            cursors.clear();
+            for (File file : group)
+            {
+                deleteRunFile(file);
+            }
+            heads = null;
+        }
+    }
+
+    private File writeRun(Iterator<LDAPEntry> entries) throws LDAPException
+    {
+        File file = null;
+        ObjectOutputStream out = null;
+        boolean written = false;
+        try
+        {
+            file = File.createTempFile("ldap-sort-", ".run");
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            while (entries.hasNext())
+            {
+                out.writeBoolean(true);
+                out.writeObject(entries.next());
+                // Do not keep references to the written entries
+                out.reset();
+            }
+            out.writeBoolean(false);
+            out.close();
+            out = null;
+            written = true;
+            return file;
+        }
+        catch (IOException ex)
+        {
+            throw new LDAPException("Could not write temporary file while sorting search results.", ex);
+        }
+        finally
+        {
+            if (out != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException ex)
+                {
+                    // Ignore
+                }
+            }
+            if (!written)
+            {
+                // Runs are deleted when the result set is closed, but this one was never tracked
+                deleteRunFile(file);
+            }
+        }
+    }
+
+    private void deleteRunFile(File file)
+    {
+        if (file != null && file.exists() && !file.delete())
+        {
+            logger.warn("Could not delete temporary file " + file.getAbsolutePath());
+        }
+    }
+
+    private abstract static class RunCursor
+    {
+        protected final int index;
+        protected LDAPEntry current = null;
+
+        RunCursor(int index)
+        {
+            this.index = index;
+        }
+
+        abstract boolean advance() throws LDAPException;
+
+        void close()
+        {
+        }
+    }
+
+    private static class MemoryRunCursor extends RunCursor
+    {
+        private final Iterator<LDAPEntry> entries;
+
+        MemoryRunCursor(List<LDAPEntry> entries, int index)
+        {
+            super(index);
+            this.entries = entries.iterator();
+        }
+
+        @Override
+        boolean advance()
+        {
+            current = entries.hasNext() ? entries.next() : null;
+            return current != null;
+        }
+    }
+
+    private static class FileRunCursor extends RunCursor
+    {
+        private final File file;
+        private ObjectInputStream in = null;
+
+        FileRunCursor(File file, int index)
+        {
+            super(index);
+            this.file = file;
+        }
+
+        @Override
+        boolean advance() throws LDAPException
+        {
+            try
+            {
+                if (in == null)
+                {
+                    in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+                }
+                if (in.readBoolean())
+                {
+                    current = (LDAPEntry) in.readObject();
+                    return true;
+                }
+                current = null;
+                close();
+                return false;
+            }
+            catch (IOException ex)
+            {
+                close();
+                throw new LDAPException("Could not read temporary file " + file.getAbsolutePath() + " while sorting search results.", ex);
+            }
+            catch (ClassNotFoundException ex)
+            {
+                close();
+                throw new LDAPException("Could not read temporary file " + file.getAbsolutePath() + " while sorting search results.", ex);
+            }
+        }
+
+        @Override
+        void close()
+        {
+            if (in != null)
+            {
+                try
+                {
+                    in.close();
+                }
+                catch (IOException ex)
+                {
+                    // Ignore
+                }
+                finally
+                {
+                    in = null;
+                }
+            }
+        }
+    }
+}
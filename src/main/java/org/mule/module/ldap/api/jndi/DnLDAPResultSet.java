@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import org.mule.module.ldap.api.LDAPException;
+import org.mule.module.ldap.api.LDAPResultSet;
+
+/**
+ * Result set that can move to the next entry without building it, used to skip entries.
+ *
+ * @author mariano
+ */
+interface DnLDAPResultSet extends LDAPResultSet
+{
+    /**
+     * @return The DN of the next entry. Its attributes are not converted.
+     * @throws LDAPException
+     * @throws java.util.NoSuchElementException If there are no more entries.
+     */
+    String nextDn() throws LDAPException;
+}
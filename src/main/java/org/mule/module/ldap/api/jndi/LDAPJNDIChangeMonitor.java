@@ -0,0 +1,463 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Binding;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.event.EventDirContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
+import javax.naming.event.ObjectChangeListener;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.module.ldap.api.LDAPChangeMonitor;
+import org.mule.module.ldap.api.LDAPChangeRecord;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPException;
+
+/**
+ * {@link LDAPChangeMonitor} based on the JNDI event API, which opens a persistent search
+ * (draft-ietf-ldapext-psearch) with entry change notifications over its own connection, so the
+ * server sends each change as soon as it happens instead of being polled.
+ * <p/>
+ * When the connection is lost a background thread reconnects, waiting <i>reconnectDelay</i>
+ * milliseconds the first time and doubling the wait after each failure (up to one minute or
+ * <i>reconnectDelay</i> if greater). Once the persistent search is open again, the entries created
+ * or modified since the connection was lost (minus {@link #RESUME_MARGIN} to allow for clock
+ * differences) are searched by their <i>createTimestamp</i> and <i>modifyTimestamp</i> and returned
+ * as changes. Entries deleted or renamed while disconnected cannot be found that way.
+ * <p/>
+ * Changes are kept in a queue of up to {@link #MAX_PENDING_CHANGES} changes until they are polled.
+ *
+ * @author mariano
+ */
+public class LDAPJNDIChangeMonitor implements LDAPChangeMonitor, NamespaceChangeListener, ObjectChangeListener
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final long DEFAULT_RECONNECT_DELAY = 1000L;
+    public static final long RESUME_MARGIN = 60000L;
+    public static final int MAX_PENDING_CHANGES = 1000;
+
+    private static final long MAX_RECONNECT_DELAY = 60000L;
+    private static final String PERSISTENT_SEARCH_OID = "2.16.840.1.113730.3.4.3";
+    private static final String SUPPORTED_CONTROL = "supportedControl";
+    private static final String CREATE_TIMESTAMP = "createTimestamp";
+    private static final String MODIFY_TIMESTAMP = "modifyTimestamp";
+    private static final int GENERALIZED_TIME_LENGTH = 14;
+
+    private final Hashtable<String, String> environment;
+    private final String baseDn;
+    private final String filter;
+    private final SearchControls controls;
+    private final long reconnectDelay;
+    private final BlockingQueue<LDAPChangeRecord> changes = new LinkedBlockingQueue<LDAPChangeRecord>(MAX_PENDING_CHANGES);
+
+    private volatile LdapContext context = null;
+    private volatile EventDirContext eventContext = null;
+    private volatile boolean closed = false;
+    private Thread reconnectThread = null;
+    private long reconnectCount = 0;
+
+    /**
+     * @param environment The environment used to create the connection.
+     * @param baseDn DN of the entry where changes are monitored.
+     * @param filter Changes are only returned for the entries that match this filter.
+     * @param controls Scope and attributes of the entries returned.
+     * @param reconnectDelay Milliseconds to wait before the first reconnection attempt.
+     */
+    public LDAPJNDIChangeMonitor(Hashtable<String, String> environment, String baseDn, String filter, SearchControls controls, long reconnectDelay)
+    {
+        this.environment = environment;
+        this.baseDn = baseDn;
+        this.filter = filter;
+        this.controls = controls;
+        this.reconnectDelay = reconnectDelay > 0 ? reconnectDelay : DEFAULT_RECONNECT_DELAY;
+    }
+
+    /**
+     * Opens the persistent search.
+     *
+     * @throws LDAPException If the connection cannot be opened or the search is rejected.
+     */
+    public void start() throws LDAPException
+    {
+        try
+        {
+            connect();
+            if (!isPersistentSearchSupported())
+            {
+                disconnect();
+                throw new LDAPException("The LDAP server does not support persistent searches (control " + PERSISTENT_SEARCH_OID + ").");
+            }
+        }
+        catch (NamingException nex)
+        {
+            disconnect();
+            throw LDAPException.create(nex);
+        }
+        logger.info("Monitoring changes of " + filter + " under " + baseDn);
+    }
+
+    @Override
+    public LDAPChangeRecord poll(long timeout) throws LDAPException, InterruptedException
+    {
+        LDAPChangeRecord change = changes.poll();
+        if (change == null)
+        {
+            if (closed)
+            {
+                throw new LDAPException("Change monitor is closed.");
+            }
+            change = changes.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+        return change;
+    }
+
+    @Override
+    public boolean isConnected()
+    {
+        return eventContext != null;
+    }
+
+    /**
+     * @return How many times the monitor reconnected after losing its connection.
+     */
+    public synchronized long getReconnectCount()
+    {
+        return reconnectCount;
+    }
+
+    @Override
+    public void close()
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            thread = reconnectThread;
+            reconnectThread = null;
+        }
+        if (thread != null)
+        {
+            thread.interrupt();
+        }
+        disconnect();
+        logger.info("Stopped monitoring changes of " + filter + " under " + baseDn);
+    }
+
+    @Override
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public void objectAdded(NamingEvent event)
+    {
+        enqueue(new LDAPChangeRecord(LDAPChangeRecord.ADD, buildEntry(event.getNewBinding())));
+    }
+
+    @Override
+    public void objectChanged(NamingEvent event)
+    {
+        enqueue(new LDAPChangeRecord(LDAPChangeRecord.MODIFY, buildEntry(event.getNewBinding())));
+    }
+
+    @Override
+    public void objectRemoved(NamingEvent event)
+    {
+        enqueue(LDAPChangeRecord.delete(getDn(event.getOldBinding())));
+    }
+
+    @Override
+    public void objectRenamed(NamingEvent event)
+    {
+        LDAPEntry entry = buildEntry(event.getNewBinding());
+        LDAPChangeRecord change = LDAPChangeRecord.modrdn(getDn(event.getOldBinding()), entry.getDn());
+        change.setEntry(entry);
+        enqueue(change);
+    }
+
+    @Override
+    public void namingExceptionThrown(NamingExceptionEvent event)
+    {
+        // The persistent search is over, the listener is no longer registered
+        synchronized (this)
+        {
+            if (closed || reconnectThread != null)
+            {
+                return;
+            }
+            logger.warn("Lost connection while monitoring changes under " + baseDn + ". Reconnecting.", event.getException());
+            disconnect();
+
+            final long since = System.currentTimeMillis() - RESUME_MARGIN;
+            reconnectThread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    reconnect(since);
+                }
+            }, "ldap-change-monitor-reconnect");
+            reconnectThread.setDaemon(true);
+            reconnectThread.start();
+        }
+    }
+
+    private void connect() throws NamingException
+    {
+        context = new InitialLdapContext(environment, null);
+        EventDirContext events = (EventDirContext) context.lookup("");
+        events.addNamingListener(baseDn, filter, controls, this);
+        eventContext = events;
+    }
+
+    /*
+     * Errors of the persistent search are only notified to the listener, so the control is checked in the root DSE
+     */
+    private boolean isPersistentSearchSupported() throws NamingException
+    {
+        Attribute supportedControls = context.getAttributes("", new String[] {SUPPORTED_CONTROL}).get(SUPPORTED_CONTROL);
+        return supportedControls == null || supportedControls.contains(PERSISTENT_SEARCH_OID);
+    }
+
+    private void disconnect()
+    {
+        EventDirContext events = eventContext;
+        eventContext = null;
+        if (events != null)
+        {
+            try
+            {
+                events.removeNamingListener(this);
+                events.close();
+            }
+            catch (NamingException nex)
+            {
+                logger.debug("Could not stop monitoring changes under " + baseDn, nex);
+            }
+        }
+
+        LdapContext ctx = context;
+        context = null;
+        if (ctx != null)
+        {
+            try
+            {
+                ctx.close();
+            }
+            catch (NamingException nex)
+            {
+                logger.debug("Could not close change monitor connection", nex);
+            }
+        }
+    }
+
+    private void reconnect(long since)
+    {
+        long delay = reconnectDelay;
+        try
+        {
+            while (!closed)
+            {
+                Thread.sleep(delay);
+                try
+                {
+                    // The listener is registered first so no change is lost between the search and the notifications
+                    connect();
+                    logger.info("Reconnected to monitor changes under " + baseDn + ". Searching changes made while disconnected.");
+                    resume(since);
+
+                    synchronized (this)
+                    {
+                        reconnectCount++;
+                        reconnectThread = null;
+                        if (closed)
+                        {
+                            disconnect();
+                        }
+                    }
+                    return;
+                }
+                catch (NamingException nex)
+                {
+                    disconnect();
+                    delay = Math.min(delay * 2, Math.max(MAX_RECONNECT_DELAY, reconnectDelay));
+                    logger.warn("Could not reconnect to monitor changes under " + baseDn + ". Retrying in " + delay + " ms: " + nex.getMessage());
+                }
+            }
+        }
+        catch (InterruptedException iex)
+        {
+            // Closed
+        }
+    }
+
+    private void resume(long since) throws NamingException, InterruptedException
+    {
+        String timestamp = formatGeneralizedTime(since);
+        String resumeFilter = "(&" + wrap(filter) + "(|(" + CREATE_TIMESTAMP + ">=" + timestamp + ")(" + MODIFY_TIMESTAMP + ">=" + timestamp + ")))";
+
+        SearchControls resumeControls = new SearchControls(controls.getSearchScope(), 0, controls.getTimeLimit(), getResumeAttributes(), false, false);
+        NamingEnumeration<SearchResult> results = context.search(baseDn, resumeFilter, resumeControls);
+        try
+        {
+            while (results.hasMore())
+            {
+                SearchResult result = results.next();
+                Attributes attributes = result.getAttributes();
+                int changeType = isAfter(attributes.get(CREATE_TIMESTAMP), timestamp) ? LDAPChangeRecord.ADD : LDAPChangeRecord.MODIFY;
+                if (!isReturned(CREATE_TIMESTAMP))
+                {
+                    attributes.remove(CREATE_TIMESTAMP);
+                }
+                if (!isReturned(MODIFY_TIMESTAMP))
+                {
+                    attributes.remove(MODIFY_TIMESTAMP);
+                }
+                changes.put(new LDAPChangeRecord(changeType, LDAPJNDIUtils.buildEntry(result.getNameInNamespace(), attributes)));
+            }
+        }
+        catch (LDAPException ex)
+        {
+            logger.warn("Could not read entries changed while disconnected", ex);
+        }
+        finally
+        {
+            results.close();
+        }
+    }
+
+    private void enqueue(LDAPChangeRecord change)
+    {
+        try
+        {
+            // Blocks the JNDI event thread until there is room
+            changes.put(change);
+        }
+        catch (InterruptedException iex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private LDAPEntry buildEntry(Binding binding)
+    {
+        String dn = getDn(binding);
+        if (binding instanceof SearchResult && ((SearchResult) binding).getAttributes() != null)
+        {
+            try
+            {
+                return LDAPJNDIUtils.buildEntry(dn, ((SearchResult) binding).getAttributes());
+            }
+            catch (LDAPException ex)
+            {
+                logger.warn("Could not read the attributes of changed entry " + dn, ex);
+            }
+        }
+        return new LDAPEntry(dn);
+    }
+
+    private String getDn(Binding binding)
+    {
+        try
+        {
+            return binding.getNameInNamespace();
+        }
+        catch (UnsupportedOperationException ex)
+        {
+            // Names are relative to the root context
+            return binding.getName();
+        }
+    }
+
+    private String[] getResumeAttributes()
+    {
+        String[] attributes = controls.getReturningAttributes();
+        if (attributes == null)
+        {
+            return new String[] {"*", CREATE_TIMESTAMP, MODIFY_TIMESTAMP};
+        }
+        List<String> resumeAttributes = new ArrayList<String>(Arrays.asList(attributes));
+        resumeAttributes.add(CREATE_TIMESTAMP);
+        resumeAttributes.add(MODIFY_TIMESTAMP);
+        return resumeAttributes.toArray(new String[resumeAttributes.size()]);
+    }
+
+    private boolean isReturned(String attributeName)
+    {
+        String[] attributes = controls.getReturningAttributes();
+        if (attributes != null)
+        {
+            for (String attribute : attributes)
+            {
+                if (attribute.equalsIgnoreCase(attributeName) || "+".equals(attribute))
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAfter(Attribute timestamp, String since) throws NamingException
+    {
+        Object value = timestamp != null ? timestamp.get() : null;
+        if (!(value instanceof String) || ((String) value).length() < GENERALIZED_TIME_LENGTH)
+        {
+            return false;
+        }
+        return ((String) value).substring(0, GENERALIZED_TIME_LENGTH).compareTo(since.substring(0, GENERALIZED_TIME_LENGTH)) >= 0;
+    }
+
+    private static String formatGeneralizedTime(long time)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    private static String wrap(String filter)
+    {
+        String trimmed = filter.trim();
+        return trimmed.startsWith("(") ? trimmed : "(" + trimmed + ")";
+    }
+
+    @Override
+    public String toString()
+    {
+        return "LDAPJNDIChangeMonitor[baseDn=" + baseDn + ", filter=" + filter + ", connected=" + isConnected() + "]";
+    }
+}
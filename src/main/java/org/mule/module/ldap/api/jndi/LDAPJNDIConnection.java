@@ -17,31 +17,57 @@
 
 package org.mule.module.ldap.api.jndi;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
 import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.SortResponseControl;
 
 import org.apache.commons.lang.StringUtils;
+import org.mule.module.ldap.api.LDAPAttributeValueIterator;
+import org.mule.module.ldap.api.LDAPChangeMonitor;
 import org.mule.module.ldap.api.LDAPConnection;
 import org.mule.module.ldap.api.LDAPEntry;
 import org.mule.module.ldap.api.LDAPEntryAttribute;
 import org.mule.module.ldap.api.LDAPEntryAttributes;
+import org.mule.module.ldap.api.LDAPEntryCache;
+import org.mule.module.ldap.api.LDAPEntryComparator;
 import org.mule.module.ldap.api.LDAPException;
+import org.mule.module.ldap.api.LDAPFilter;
+import org.mule.module.ldap.api.LDAPModification;
+import org.mule.module.ldap.api.LDAPReplica;
 import org.mule.module.ldap.api.LDAPResultSet;
 import org.mule.module.ldap.api.LDAPSearchControls;
+import org.mule.module.ldap.api.LDAPUtils;
+import org.mule.module.ldap.api.LimitedLDAPResultSet;
+import org.mule.module.ldap.api.ListLDAPResultSet;
+import org.mule.module.ldap.api.NameNotFoundException;
+import org.mule.module.ldap.api.PrefetchingLDAPResultSet;
+import org.mule.module.ldap.api.SortedLDAPResultSet;
+import org.mule.module.ldap.api.stats.LDAPStatistics;
 
 /**
  * This class is the abstraction
@@ -53,6 +79,17 @@ public class LDAPJNDIConnection extends LDAPConnection
     public static final int DEFAULT_MAX_POOL_CONNECTIONS = 0;
     public static final int DEFAULT_INITIAL_POOL_CONNECTIONS = 0;
     public static final long DEFAULT_POOL_TIMEOUT = 0L;
+    public static final long DEFAULT_POOL_MAX_WAIT = 30000L;
+    public static final long DEFAULT_CACHE_TTL = 0L;
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_CACHE_MAX_BYTES = 0L;
+    public static final long DEFAULT_GROUP_CACHE_TTL = 0L;
+    public static final int DEFAULT_AUTHENTICATION_POOL_SIZE = 5;
+    public static final String DEFAULT_LOAD_BALANCING = LDAPJNDIServerSet.ROUND_ROBIN;
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = LDAPJNDIServerSet.DEFAULT_HEALTH_CHECK_INTERVAL;
+    public static final long DEFAULT_REPLICA_REFRESH_INTERVAL = 60000L;
+    public static final long DEFAULT_REPLICA_RECONCILE_INTERVAL = 3600000L;
+    public static final String DEFAULT_REPLICA_HIGH_WATER_MARK = "modifyTimestamp";
     public static final String DEFAULT_INITIAL_CONTEXT_FACTORY = "com.sun.jndi.ldap.LdapCtxFactory";
     public static final String DEFAULT_REFERRAL = "ignore";
 
@@ -60,25 +97,68 @@ public class LDAPJNDIConnection extends LDAPConnection
 
     private static final String INITIAL_CONTEXT_FACTORY_ATTR = "initialContextFactory";
     
+    private static final String SUPPORTED_CONTROL_ATTR = "supportedControl";
+    private static final String SORT_CONTROL_OID = "1.2.840.113556.1.4.473";
+    
+    private static final String ALL_ENTRIES_FILTER = "(objectClass=*)";
+    private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+    private static final int REPLICA_PAGE_SIZE = 500;
+    
+    /**
+     * Single daemon thread shared by all the connections to refresh their replicas.
+     */
+    private static final ScheduledExecutorService REPLICA_REFRESHER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "ldap-replica-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    
     /**
-     * Final constants for managing JNDI Pool connections.
+     * Pooling is handled by {@link LDAPJNDIContextPool}, so the JNDI provider pool is disabled
+     * unless it is explicitly enabled through the extended configuration.
      */
     private static final String POOL_ENABLED_ENV_PARAM =  "com.sun.jndi.ldap.connect.pool";
-    private static final String MAX_POOL_SIZE_ENV_PARAM = "com.sun.jndi.ldap.connect.pool.maxsize";
-    private static final String INIT_POOL_SIZE_ENV_PARAM = "com.sun.jndi.ldap.connect.pool.initsize";
-    private static final String TIME_OUT_ENV_PARAM = "com.sun.jndi.ldap.connect.pool.timeout";
-    private static final String AUTHENTICATION_ENV_PARAM = "com.sun.jndi.ldap.pool.authentication";
 
     private String providerUrl = null;
     private int maxPoolConnections = DEFAULT_MAX_POOL_CONNECTIONS;
     private int initialPoolSizeConnections = DEFAULT_INITIAL_POOL_CONNECTIONS;
     private long poolTimeout = DEFAULT_POOL_TIMEOUT;
+    private long poolMaxWait = DEFAULT_POOL_MAX_WAIT;
     private String authentication = NO_AUTHENTICATION;
     private String initialContextFactory = DEFAULT_INITIAL_CONTEXT_FACTORY;
     private String referral = DEFAULT_REFERRAL;
     private Map<String, String> extendedEnvironment = null;
         
     private LdapContext conn = null;
+    private Hashtable<String, String> boundEnvironment = null;
+    private LDAPJNDIContextPool pool = null;
+    private int authenticationPoolSize = DEFAULT_AUTHENTICATION_POOL_SIZE;
+    private LDAPJNDIContextPool authenticationPool = null;
+    private String loadBalancing = DEFAULT_LOAD_BALANCING;
+    private long healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+    private LDAPJNDIServerSet serverSet = null;
+    private final List<LDAPChangeMonitor> changeMonitors = new ArrayList<LDAPChangeMonitor>();
+    private volatile Boolean serverSideSortSupported = null;
+    private volatile Boolean virtualListViewSupported = null;
+    private String statisticsName = null;
+    private volatile LDAPStatistics statistics = null;
+    private long cacheTtl = DEFAULT_CACHE_TTL;
+    private int cacheMaxEntries = DEFAULT_CACHE_MAX_ENTRIES;
+    private long cacheMaxBytes = DEFAULT_CACHE_MAX_BYTES;
+    private boolean cacheNotFound = true;
+    private volatile LDAPEntryCache cache = null;
+    private String replicaBaseDn = null;
+    private String replicaIndexes = null;
+    private long replicaRefreshInterval = DEFAULT_REPLICA_REFRESH_INTERVAL;
+    private long replicaReconcileInterval = DEFAULT_REPLICA_RECONCILE_INTERVAL;
+    private String replicaHighWaterMark = DEFAULT_REPLICA_HIGH_WATER_MARK;
+    private volatile LDAPReplica replica = null;
+    private ScheduledFuture<?> replicaTask = null;
 
     /**
 	 * 
@@ -171,6 +251,9 @@ public class LDAPJNDIConnection extends LDAPConnection
 
             setPoolTimeout(getConfValue(conf, POOL_TIMEOUT_ATTR, DEFAULT_POOL_TIMEOUT));
             extendedEnvironment.remove(POOL_TIMEOUT_ATTR);
+
+            setPoolMaxWait(getConfValue(conf, POOL_MAX_WAIT_ATTR, DEFAULT_POOL_MAX_WAIT));
+            extendedEnvironment.remove(POOL_MAX_WAIT_ATTR);
             
             setProviderUrl(getConfValue(conf, LDAP_URL_ATTR, null));
             extendedEnvironment.remove(LDAP_URL_ATTR);
@@ -178,6 +261,42 @@ public class LDAPJNDIConnection extends LDAPConnection
             setReferral(getConfValue(conf, REFERRAL_ATTR, DEFAULT_REFERRAL));
             extendedEnvironment.remove(REFERRAL_ATTR);
             
+            // The cache itself is shared by the connections bound to the same server with the same identity
+            this.cacheTtl = getConfValue(conf, CACHE_TTL_ATTR, DEFAULT_CACHE_TTL);
+            this.cacheMaxEntries = getConfValue(conf, CACHE_MAX_ENTRIES_ATTR, DEFAULT_CACHE_MAX_ENTRIES);
+            this.cacheMaxBytes = getConfValue(conf, CACHE_MAX_BYTES_ATTR, DEFAULT_CACHE_MAX_BYTES);
+            this.cacheNotFound = Boolean.parseBoolean(getConfValue(conf, CACHE_NOT_FOUND_ATTR, "true"));
+            extendedEnvironment.remove(CACHE_TTL_ATTR);
+            extendedEnvironment.remove(CACHE_MAX_ENTRIES_ATTR);
+            extendedEnvironment.remove(CACHE_MAX_BYTES_ATTR);
+            extendedEnvironment.remove(CACHE_NOT_FOUND_ATTR);
+            
+            setGroupCacheTtl(getConfValue(conf, GROUP_CACHE_TTL_ATTR, DEFAULT_GROUP_CACHE_TTL));
+            extendedEnvironment.remove(GROUP_CACHE_TTL_ATTR);
+            
+            setAuthenticationPoolSize(getConfValue(conf, AUTHENTICATION_POOL_SIZE_ATTR, DEFAULT_AUTHENTICATION_POOL_SIZE));
+            extendedEnvironment.remove(AUTHENTICATION_POOL_SIZE_ATTR);
+            
+            setLoadBalancing(getConfValue(conf, LOAD_BALANCING_ATTR, DEFAULT_LOAD_BALANCING));
+            extendedEnvironment.remove(LOAD_BALANCING_ATTR);
+            
+            setHealthCheckInterval(getConfValue(conf, HEALTH_CHECK_INTERVAL_ATTR, DEFAULT_HEALTH_CHECK_INTERVAL));
+            extendedEnvironment.remove(HEALTH_CHECK_INTERVAL_ATTR);
+            
+            setReplicaBaseDn(getConfValue(conf, REPLICA_BASE_DN_ATTR, null));
+            extendedEnvironment.remove(REPLICA_BASE_DN_ATTR);
+            setReplicaIndexes(getConfValue(conf, REPLICA_INDEXES_ATTR, null));
+            extendedEnvironment.remove(REPLICA_INDEXES_ATTR);
+            setReplicaRefreshInterval(getConfValue(conf, REPLICA_REFRESH_INTERVAL_ATTR, DEFAULT_REPLICA_REFRESH_INTERVAL));
+            extendedEnvironment.remove(REPLICA_REFRESH_INTERVAL_ATTR);
+            setReplicaReconcileInterval(getConfValue(conf, REPLICA_RECONCILE_INTERVAL_ATTR, DEFAULT_REPLICA_RECONCILE_INTERVAL));
+            extendedEnvironment.remove(REPLICA_RECONCILE_INTERVAL_ATTR);
+            setReplicaHighWaterMark(getConfValue(conf, REPLICA_HIGH_WATER_MARK_ATTR, DEFAULT_REPLICA_HIGH_WATER_MARK));
+            extendedEnvironment.remove(REPLICA_HIGH_WATER_MARK_ATTR);
+            
+            this.statisticsName = getConfValue(conf, STATISTICS_NAME_ATTR, null);
+            extendedEnvironment.remove(STATISTICS_NAME_ATTR);
+            
         }
     }
 
@@ -222,11 +341,24 @@ public class LDAPJNDIConnection extends LDAPConnection
         {
             conf.append("bindDn: {anonymous}, ");
         }        
+        if (isServerSetEnabled())
+        {
+            conf.append("load_balancing: " + getLoadBalancing() + ", ");
+            conf.append("health_check_interval: " + getHealthCheckInterval() + ", ");
+        }
+        if (StringUtils.isNotEmpty(getReplicaBaseDn()))
+        {
+            conf.append("replica: " + getReplicaBaseDn() + ", ");
+            conf.append("replica_indexes: " + getReplicaIndexes() + ", ");
+            conf.append("replica_refresh_interval: " + getReplicaRefreshInterval() + ", ");
+            conf.append("replica_reconcile_interval: " + getReplicaReconcileInterval() + ", ");
+        }
         if (isConnectionPoolEnabled())
         {
             conf.append("init_pool_conns: " + getInitialPoolSizeConnections() + ", ");
             conf.append("max_pool_conns: " + getMaxPoolConnections() + ", ");
-            conf.append("pool_timeout: " + getPoolTimeout());
+            conf.append("pool_timeout: " + getPoolTimeout() + ", ");
+            conf.append("pool_max_wait: " + getPoolMaxWait());
         }
         else
         {
@@ -254,7 +386,7 @@ public class LDAPJNDIConnection extends LDAPConnection
      */
     public boolean isClosed()
     {
-        return getConn() == null;
+        return this.boundEnvironment == null;
     }
 
     /**
@@ -263,19 +395,33 @@ public class LDAPJNDIConnection extends LDAPConnection
      */
     public void close() throws LDAPException
     {
+        closePool();
+        closeServerSet();
+        closeAuthenticationPool();
+        closeChangeMonitors();
+        closeReplica();
+        shutdownExecutor();
+        releaseStatistics();
+        releaseCache();
+        
+        boolean wasBound = this.boundEnvironment != null;
+        this.boundEnvironment = null;
         if (getConn() != null)
         {
             try
             {
                 getConn().close();
                 setConn(null);
-                logger.info("Connection closed.");
             }
             catch (NamingException nex)
             {
                 throw handleNamingException(nex, "Close connection failed.");
             }
         }
+        if (wasBound)
+        {
+            logger.info("Connection closed.");
+        }
     }
 
     /**
@@ -297,33 +443,7 @@ public class LDAPJNDIConnection extends LDAPConnection
         }
         env.put(Context.INITIAL_CONTEXT_FACTORY, getInitialContextFactory());
         env.put(Context.PROVIDER_URL, getProviderUrl());
-
-
-        if (isConnectionPoolEnabled())
-        {
-            env.put(POOL_ENABLED_ENV_PARAM, "true");
-            
-            env.put(AUTHENTICATION_ENV_PARAM, getAuthentication());
-
-            if (getMaxPoolConnections() > 0)
-            {
-                env.put(MAX_POOL_SIZE_ENV_PARAM, String.valueOf(getMaxPoolConnections()));
-            }
-
-            if (getInitialPoolSizeConnections() > 0)
-            {
-                env.put(INIT_POOL_SIZE_ENV_PARAM, String.valueOf(getInitialPoolSizeConnections()));
-            }
-
-            if (getPoolTimeout() > 0)
-            {
-                env.put(TIME_OUT_ENV_PARAM, String.valueOf(getPoolTimeout()));
-            }
-        }
-        else
-        {
-            env.put(POOL_ENABLED_ENV_PARAM, "false");
-        }
+        env.put(POOL_ENABLED_ENV_PARAM, "false");
         
         if(extendedEnvironment != null && extendedEnvironment.size() > 0)
         {
@@ -363,274 +483,1378 @@ public class LDAPJNDIConnection extends LDAPConnection
     @Override
     public void bind(String dn, String password) throws LDAPException
     {
+        long start = System.nanoTime();
+        NamingException failure = null;
         try
         {
+            boolean identityChanged = true;
             if(!isClosed())
             {
-                String currentUrl = (String) getConn().getEnvironment().get(Context.PROVIDER_URL);
-                String currentAuth = (String) getConn().getEnvironment().get(Context.SECURITY_AUTHENTICATION);
+                String currentUrl = this.boundEnvironment.get(Context.PROVIDER_URL);
+                String currentAuth = this.boundEnvironment.get(Context.SECURITY_AUTHENTICATION);
                 String currentDn = getBindedUserDn();
+                identityChanged = !StringUtils.equals(currentDn, dn);
                 
-                logger.info("Already binded to " + currentUrl + " with " + currentAuth + " authentication as " + (currentDn != null ? currentDn : "anonymous") + ". Closing connection first.");
+                logger.info("Already binded to " + currentUrl + " with " + currentAuth + " authentication as " + (currentDn != null ? currentDn : "anonymous") + ". Replacing bound contexts first.");
                 
-                close();
+                closeBoundContexts();
                 
                 logger.info("Re-binding to " + getProviderUrl() + " with " + getAuthentication() + " authentication as " + (dn != null ? dn : "anonymous"));
             }
             
+            if (this.statisticsName != null && this.statistics == null)
+            {
+                this.statistics = LDAPStatistics.acquire(this.statisticsName);
+            }
+            
+            if (identityChanged || this.cache == null)
+            {
+                // Entries visible to the previous user may not be visible to the new one
+                acquireCache(dn);
+            }
+            
             logConfiguration(dn, password);
-            setConn(new InitialLdapContext(buildEnvironment(dn, password), null));
+            Hashtable<String, String> environment = buildEnvironment(dn, password);
+
+            // The contexts of the previous pool are discarded once the new one is ready. When pooling is
+            // enabled every operation uses a pooled context, so no other connection is opened.
+            LDAPJNDIContextPool previousPool = this.pool;
+            LDAPJNDIServerSet previousServerSet = this.serverSet;
+            if (isServerSetEnabled())
+            {
+                startServerSet(environment);
+            }
+            else if (isConnectionPoolEnabled())
+            {
+                startPool(environment);
+            }
+            else
+            {
+                setConn(new InitialLdapContext(environment, null));
+            }
+            this.boundEnvironment = environment;
             logger.info("Binded to " + getProviderUrl() + " with " + getAuthentication() + " authentication as " + (dn != null ? dn : "anonymous"));
 
-        }
-        catch (NamingException nex)
-        {
-            throw handleNamingException(nex, "Bind failed.");
-        }
-    }
+            if (previousServerSet != null)
+            {
+                previousServerSet.close();
+            }
+            if (previousPool != null)
+            {
+                previousPool.close();
+            }
+            
+            if (StringUtils.isNotEmpty(getReplicaBaseDn()) && (identityChanged || this.replica == null))
+            {
+                // Entries visible to the previous user may not be visible to the new one
+                startReplica(dn);
+            }
 
-    private String getBindedUserPassword() throws LDAPException
-    {
-        try
-        {
-            return (String) getConn().getEnvironment().get(Context.SECURITY_CREDENTIALS);
         }
         catch (NamingException nex)
         {
-            throw handleNamingException(nex, "Cannot get binded user password.");
-        }
-    }
-    
-    @Override
-    public String getBindedUserDn() throws LDAPException
-    {
-        if(!isClosed())
-        {
-            try
-            {
-                return (String) getConn().getEnvironment().get(Context.SECURITY_PRINCIPAL);
-            }
-            catch (NamingException nex)
+            failure = nex;
+            if (isClosed())
             {
-                throw handleNamingException(nex, "Cannot get binded user DN.");
+                // Do not keep using the contexts of the previous identity
+                close();
             }
+            throw handleNamingException(nex, "Bind failed.");
         }
-        else
+        finally
         {
-            return null;
+            recordOperation("bind", start, failure);
         }
     }
-    
-    /**
-     * @param baseDn
-     * @param filter
-     * @param controls
-     * @return
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#search(java.lang.String,
-     *      java.lang.String, org.mule.module.ldap.api.LDAPSearchControls)
-     */
-    @Override
-    public LDAPResultSet search(String baseDn, String filter, LDAPSearchControls controls)
-        throws LDAPException
-    {
-        return doSearch(baseDn, filter, null, controls);
-    }
 
     /**
-     * @param baseDn
-     * @param filter
-     * @param filterArgs
-     * @param controls
+     * Checks the credentials with a simple bind over a connection of the authentication pool. These
+     * connections are opened with the identity of this connection (or anonymously) the first time they
+     * are needed and reused afterwards, so each check costs a bind instead of a new connection. After
+     * the check the connection is bound back to its original identity.
+     * <p/>
+     * The connections used by the other operations are never re-authenticated.
+     * 
+     * @param dn
+     * @param password
      * @return
      * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#search(java.lang.String,
-     *      java.lang.String, java.lang.Object[],
-     *      org.mule.module.ldap.api.LDAPSearchControls)
+     * @see org.mule.module.ldap.api.LDAPConnection#verifyCredentials(java.lang.String, java.lang.String)
      */
     @Override
-    public LDAPResultSet search(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls)
-        throws LDAPException
-    {
-        return doSearch(baseDn, filter, filterArgs, controls);
-    }
-
-    private LDAPResultSet doSearch(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls) throws LDAPException
+    public boolean verifyCredentials(String dn, String password) throws LDAPException
     {
-        LdapContext searchConn = null;
+        if (StringUtils.isEmpty(dn) || StringUtils.isEmpty(password))
+        {
+            // A simple bind without password is an unauthenticated bind (RFC 4513 section 5.1.2) that many servers accept
+            return false;
+        }
+        
+        LDAPJNDIContextPool currentPool = getAuthenticationPool();
+        long start = System.nanoTime();
+        NamingException failure = null;
+        LdapContext ctx = currentPool.borrow();
         try
         {
-            searchConn = controls.isPagingEnabled() ? getConn().newInstance(LDAPJNDIUtils.buildRequestControls(controls, null)) : getConn();
+            boolean valid = authenticate(ctx, SIMPLE_AUTHENTICATION, dn, password);
+            currentPool.release(restoreIdentity(ctx, currentPool));
             
-            NamingEnumeration<SearchResult> entries;
-            if(filterArgs != null && filterArgs.length > 0)
-            {
-                entries = searchConn.search(baseDn, filter, filterArgs, LDAPJNDIUtils.buildSearchControls(controls));
-            }
-            else
+            if (logger.isDebugEnabled())
             {
-                entries = searchConn.search(baseDn, filter, LDAPJNDIUtils.buildSearchControls(controls));
+                logger.debug("Credentials of " + dn + (valid ? " are valid." : " are not valid."));
             }
-            
-            return LDAPResultSetFactory.create(baseDn, filter, filterArgs, searchConn, controls, entries);
+            return valid;
         }
         catch (NamingException nex)
         {
-            throw handleNamingException(nex, "Search failed.");
+            failure = nex;
+            currentPool.invalidate(ctx);
+            throw handleNamingException(nex, "Verify credentials failed.");
+        }
+        finally
+        {
+            recordOperation("verifyCredentials", start, failure);
         }
     }
-    
-    /**
-     * @param dn
-     * @return
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#lookup(java.lang.String)
+
+    /*
+     * Re-authenticates the context over its current connection. Returns false if the credentials are rejected.
      */
-    public LDAPEntry lookup(String dn) throws LDAPException
+    private boolean authenticate(LdapContext ctx, String authentication, String dn, String password) throws NamingException
     {
+        ctx.addToEnvironment(Context.SECURITY_AUTHENTICATION, authentication);
+        if (dn != null)
+        {
+            ctx.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            ctx.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+        }
+        else
+        {
+            ctx.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
+            ctx.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+        }
+        
         try
         {
-            return LDAPJNDIUtils.buildEntry(dn, getConn().getAttributes(dn));
+            // Sends a new bind request, reusing the connection if it is still open
+            ctx.reconnect(null);
+            return true;
         }
-        catch (NamingException nex)
+        catch (javax.naming.AuthenticationException ex)
         {
-            throw handleNamingException(nex, "Lookup failed.");
+            return false;
+        }
+        catch (javax.naming.NameNotFoundException ex)
+        {
+            return false;
         }
     }
 
-    /**
-     * @param dn
-     * @param attributes
-     * @return
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#lookup(java.lang.String,
-     *      java.lang.String[])
-     */
-    public LDAPEntry lookup(String dn, String[] attributes) throws LDAPException
+    private LdapContext restoreIdentity(LdapContext ctx, LDAPJNDIContextPool currentPool) throws NamingException
     {
-        try
+        Hashtable<String, String> env = currentPool.getEnvironment();
+        if (!authenticate(ctx, env.get(Context.SECURITY_AUTHENTICATION), env.get(Context.SECURITY_PRINCIPAL), env.get(Context.SECURITY_CREDENTIALS)))
         {
-            return LDAPJNDIUtils.buildEntry(dn, getConn().getAttributes(dn, attributes));
-        }
-        catch (NamingException nex)
-        {
-            throw handleNamingException(nex, "Lookup failed.");
+            throw new javax.naming.AuthenticationException("Cannot bind back as " + env.get(Context.SECURITY_PRINCIPAL) + " after verifying credentials.");
         }
+        return ctx;
     }
 
     /**
-     * @param entry
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#addEntry(org.mule.module.ldap.api.LDAPEntry)
+     * @return The pool of connections used to verify credentials. It is created the first time it is needed.
+     * @throws LDAPException If the connection is closed.
      */
-    public void addEntry(LDAPEntry entry) throws LDAPException
+    public synchronized LDAPJNDIContextPool getAuthenticationPool() throws LDAPException
     {
-        try
+        if (this.authenticationPool == null)
         {
-            getConn().bind(entry.getDn(), null, buildAttributes(entry));
+            if (isClosed())
+            {
+                throw new LDAPException("Connection is closed. You must first bind.");
+            }
+            
+            LDAPJNDIContextPool newPool = new LDAPJNDIContextPool(buildEnvironment(getBindedUserDn(), getBindedUserPassword()), 0,
+                getAuthenticationPoolSize(), getPoolMaxWait(), getPoolTimeout());
+            newPool.start();
+            if (this.statistics != null)
+            {
+                newPool.setStatistics(this.statistics.getPool());
+            }
+            this.authenticationPool = newPool;
         }
-        catch (NamingException nex)
+        return this.authenticationPool;
+    }
+
+    private synchronized void closeAuthenticationPool()
+    {
+        if (this.authenticationPool != null)
         {
-            throw handleNamingException(nex, "Add entry failed.");
+            this.authenticationPool.close();
+            this.authenticationPool = null;
+        }
+    }
+
+    private void closeChangeMonitors()
+    {
+        synchronized (this.changeMonitors)
+        {
+            for (LDAPChangeMonitor monitor : this.changeMonitors)
+            {
+                monitor.close();
+            }
+            this.changeMonitors.clear();
         }
     }
 
+    private String getBindedUserPassword() throws LDAPException
+    {
+        Hashtable<String, String> environment = this.boundEnvironment;
+        return environment != null ? environment.get(Context.SECURITY_CREDENTIALS) : null;
+    }
     
-    private LDAPException handleNamingException(NamingException nex, String logMessage)
+    @Override
+    public String getBindedUserDn() throws LDAPException
     {
-        logger.error(logMessage, nex);
-        
-        return LDAPException.create(nex);
+        Hashtable<String, String> environment = this.boundEnvironment;
+        if(environment != null)
+        {
+            return environment.get(Context.SECURITY_PRINCIPAL);
+        }
+        else
+        {
+            return null;
+        }
     }
     
-    /**
-     * @param entry
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#updateEntry(org.mule.module.ldap.api.LDAPEntry)
-     */
-    public void updateEntry(LDAPEntry entry) throws LDAPException
+    private void startPool(Hashtable<String, String> environment) throws LDAPException
     {
+        LDAPJNDIContextPool newPool = new LDAPJNDIContextPool(environment, getInitialPoolSizeConnections(),
+            getMaxPoolConnections(), getPoolMaxWait(), getPoolTimeout());
         try
         {
-            ModificationItem[] mods = new ModificationItem[entry.getAttributeCount()];
-            Iterator<LDAPEntryAttribute> it = entry.attributes();
-            for (int i = 0; it.hasNext() && i < mods.length; i++)
+            newPool.start();
+            if (newPool.getIdleCount() == 0)
             {
-                mods[i] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
-                    buildBasicAttribute(((LDAPEntryAttribute) it.next())));
+                // No context was opened when starting the pool, so the credentials are checked with the first one
+                newPool.release(newPool.borrow());
+            }
+            if (this.statistics != null)
+            {
+                newPool.setStatistics(this.statistics.getPool());
+                this.statistics.getPool().recordWarmUp(newPool.getWarmUpTime());
             }
-            getConn().modifyAttributes(entry.getDn(), mods);
+            this.pool = newPool;
         }
-        catch (NamingException nex)
+        catch (LDAPException ex)
         {
-            throw handleNamingException(nex, "Update entry failed.");
+            newPool.close();
+            close();
+            throw ex;
         }
     }
 
-    /**
-     * @param entry
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#deleteEntry(org.mule.module.ldap.api.LDAPEntry)
-     */
-    public void deleteEntry(LDAPEntry entry) throws LDAPException
-    {
-        deleteEntry(entry.getDn());
-    }
-
-    /**
-     * @param dn
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#deleteEntry(java.lang.String)
-     */
-    public void deleteEntry(String dn) throws LDAPException
+    private void startServerSet(Hashtable<String, String> environment) throws LDAPException
     {
+        LDAPJNDIServerSet newServerSet = new LDAPJNDIServerSet(LDAPJNDIServerSet.parseUrls(getProviderUrl()), environment,
+            getInitialPoolSizeConnections(), getMaxPoolConnections(), getPoolMaxWait(), getPoolTimeout(), getLoadBalancing(), getHealthCheckInterval());
         try
         {
-            if(logger.isDebugEnabled())
+            newServerSet.start();
+            if (getInitialPoolSizeConnections() <= 0)
             {
-                logger.debug("About to delete entry " + dn );
-            } 
-            
-            getConn().unbind(dn);
-            
-            if(logger.isInfoEnabled())
+                // No context was opened when starting the servers, so the credentials are checked with the first one
+                newServerSet.release(newServerSet.borrow(true));
+            }
+            if (this.statistics != null)
             {
-                logger.info("Deleted entry " + dn);
-            }             
+                newServerSet.setStatistics(this.statistics);
+            }
+            this.serverSet = newServerSet;
         }
-        catch (NamingException nex)
+        catch (LDAPException ex)
         {
-            throw handleNamingException(nex, "Delete entry failed.");
+            newServerSet.close();
+            close();
+            throw ex;
         }
     }
 
-    /**
-     * 
-     * @param oldDn
-     * @param newDn
-     * @throws LDAPException
-     * @see org.mule.module.ldap.api.LDAPConnection#renameEntry(java.lang.String, java.lang.String)
+    /*
+     * The replica is shared by the connections bound to the same server with the same identity. It is
+     * loaded in background. Until then, all the reads are performed on the server.
      */
-    public void renameEntry(String oldDn, String newDn) throws LDAPException
+    private void startReplica(String dn)
     {
-        try
+        closeReplica();
+        String identity = getAuthentication() + ":" + (dn != null ? LDAPUtils.normalizeDn(dn) : "");
+        final LDAPReplica newReplica = LDAPReplica.acquire(getProviderUrl() + "|" + identity, getReplicaBaseDn(), getReplicaIndexes(), getReplicaHighWaterMark());
+        this.replica = newReplica;
+        this.replicaTask = REPLICA_REFRESHER.scheduleWithFixedDelay(new Runnable()
         {
-            if(logger.isDebugEnabled())
+            @Override
+            public void run()
             {
-                logger.debug("About to rename entry " + oldDn + " to " + newDn);
+                refreshReplica(newReplica);
             }
-            
-            getConn().rename(oldDn, newDn);
-            
-            if(logger.isInfoEnabled())
+        }, 0, getEffectiveReplicaRefreshInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    private void closeReplica()
+    {
+        if (this.replicaTask != null)
+        {
+            this.replicaTask.cancel(false);
+            this.replicaTask = null;
+        }
+        LDAPReplica currentReplica = this.replica;
+        if (currentReplica != null)
+        {
+            this.replica = null;
+            currentReplica.release();
+        }
+    }
+
+    private long getEffectiveReplicaRefreshInterval()
+    {
+        return getReplicaRefreshInterval() > 0 ? getReplicaRefreshInterval() : DEFAULT_REPLICA_REFRESH_INTERVAL;
+    }
+
+    /**
+     * Loads the replica the first time and then applies the entries changed since the previous
+     * refresh. Entries invalidated through the connections that share the replica are read again,
+     * so that the ones deleted are removed.
+     * <p/>
+     * Deleted entries (and entries added without the high-water mark attribute) are not found by the
+     * search of changed entries, so every <i>replicaReconcileInterval</i> milliseconds (or when a
+     * subtree was invalidated) the DNs of the subtree are also compared with the replicated ones.
+     * That reads the DN of every entry, so it is performed much less often than a refresh.
+     * <p/>
+     * Each connection sharing the replica schedules its refresh, but the replica is refreshed once
+     * per interval.
+     * 
+     * @param target
+     */
+    private void refreshReplica(LDAPReplica target)
+    {
+        if (target != this.replica || isClosed())
+        {
+            return;
+        }
+        
+        synchronized (target)
+        {
+            long start = System.currentTimeMillis();
+            if (target.isLoaded() && start - target.getLastRefreshTime() < getEffectiveReplicaRefreshInterval() / 2)
+            {
+                // Refreshed by another connection
+                return;
+            }
+            try
+            {
+                long generation = target.beginRefresh();
+                LDAPSearchControls controls = new LDAPSearchControls();
+                controls.setScope(LDAPSearchControls.SUBTREE_SCOPE);
+                controls.setPageSize(REPLICA_PAGE_SIZE);
+                controls.setAttributesToReturn(target.getAttributesToReplicate());
+                
+                LDAPSearchControls entryControls = new LDAPSearchControls(controls);
+                entryControls.setScope(LDAPSearchControls.OBJECT_SCOPE);
+                entryControls.setPageSize(0);
+                
+                if (!target.isLoaded())
+                {
+                    target.load(doSearch(target.getBaseDn(), ALL_ENTRIES_FILTER, null, controls));
+                }
+                else
+                {
+                    target.update(doSearch(target.getBaseDn(), target.getChangesFilter(), null, controls));
+                    
+                    boolean reconcile = target.hasStaleSubtrees() || 
+                        (getReplicaReconcileInterval() > 0 && start - target.getLastReconcileTime() >= getReplicaReconcileInterval());
+                    if (reconcile)
+                    {
+                        LDAPSearchControls dnControls = new LDAPSearchControls(controls);
+                        dnControls.setAttributesToReturn(NO_ATTRIBUTES);
+                        List<String> added = target.retain(doSearch(target.getBaseDn(), ALL_ENTRIES_FILTER, null, dnControls));
+                        for (String dn : added)
+                        {
+                            try
+                            {
+                                target.update(doSearch(dn, ALL_ENTRIES_FILTER, null, entryControls));
+                            }
+                            catch (NameNotFoundException ex)
+                            {
+                                // Deleted after the DNs were read
+                            }
+                        }
+                    }
+                    
+                    for (String dn : target.getStaleDns())
+                    {
+                        try
+                        {
+                            target.update(doSearch(dn, ALL_ENTRIES_FILTER, null, entryControls));
+                        }
+                        catch (NameNotFoundException ex)
+                        {
+                            target.remove(dn);
+                        }
+                    }
+                }
+                target.endRefresh(generation);
+                
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Replica of " + target.getBaseDn() + " refreshed in " + (System.currentTimeMillis() - start) + " ms. Entries: " + target.size());
+                }
+            }
+            catch (LDAPException ex)
+            {
+                logger.warn("Could not refresh replica of " + target.getBaseDn() + ". " + (target.isLoaded() ? "Reads will use the entries replicated so far." : "Reads will be performed on the server."), ex);
+            }
+            catch (RuntimeException ex)
+            {
+                // Do not cancel next refreshes
+                logger.warn("Could not refresh replica of " + target.getBaseDn() + ".", ex);
+            }
+        }
+    }
+
+    private void closeServerSet()
+    {
+        if (this.serverSet != null)
+        {
+            this.serverSet.close();
+            this.serverSet = null;
+        }
+    }
+
+    /*
+     * Closes the contexts bound with the current identity. Long-lived components (change monitors,
+     * replica, executors and statistics) are kept, and so are the pools until new ones are started.
+     */
+    private void closeBoundContexts()
+    {
+        closeAuthenticationPool();
+        closeQuietly(getConn());
+        setConn(null);
+        this.boundEnvironment = null;
+    }
+
+    private void acquireCache(String dn)
+    {
+        releaseCache();
+        if (this.cacheTtl > 0)
+        {
+            String identity = getAuthentication() + ":" + (dn != null ? LDAPUtils.normalizeDn(dn) : "");
+            this.cache = LDAPEntryCache.acquire(getProviderUrl() + "|" + identity, this.cacheTtl, this.cacheMaxEntries, this.cacheMaxBytes, this.cacheNotFound);
+        }
+    }
+
+    private void releaseCache()
+    {
+        LDAPEntryCache currentCache = this.cache;
+        if (currentCache != null)
+        {
+            this.cache = null;
+            currentCache.release();
+        }
+    }
+
+    private void releaseStatistics()
+    {
+        if (this.statistics != null)
+        {
+            this.statistics.release();
+            this.statistics = null;
+        }
+    }
+
+    private void closePool()
+    {
+        if (this.pool != null)
+        {
+            this.pool.close();
+            this.pool = null;
+        }
+    }
+
+    /**
+     * Obtains the context that should be used to perform an operation. If several servers or pooling are
+     * enabled, then the context is borrowed from a pool and it should be given back using {@link #releaseContext(LdapContext)}
+     * or {@link #invalidateContext(LdapContext)}. Otherwise the shared connection is returned.
+     * 
+     * @param write Whether the operation modifies entries, so that it is sent to the primary server.
+     * @return
+     * @throws LDAPException
+     */
+    private LdapContext borrowContext(boolean write) throws LDAPException
+    {
+        LDAPJNDIServerSet currentServerSet = this.serverSet;
+        LDAPJNDIContextPool currentPool = this.pool;
+        if (currentServerSet != null)
+        {
+            return currentServerSet.borrow(write);
+        }
+        else if (currentPool != null)
+        {
+            return currentPool.borrow();
+        }
+        else if (!isClosed())
+        {
+            return getConn();
+        }
+        else
+        {
+            throw new LDAPException("Connection is closed. You must first bind.");
+        }
+    }
+
+    private void releaseContext(LdapContext ctx)
+    {
+        LDAPJNDIServerSet currentServerSet = this.serverSet;
+        LDAPJNDIContextPool currentPool = this.pool;
+        if (currentServerSet != null)
+        {
+            currentServerSet.release(ctx);
+        }
+        else if (currentPool != null && ctx != getConn())
+        {
+            currentPool.release(ctx);
+        }
+    }
+
+    private void invalidateContext(LdapContext ctx)
+    {
+        LDAPJNDIServerSet currentServerSet = this.serverSet;
+        LDAPJNDIContextPool currentPool = this.pool;
+        if (currentServerSet != null)
+        {
+            currentServerSet.invalidate(ctx);
+        }
+        else if (currentPool != null && ctx != getConn())
+        {
+            currentPool.invalidate(ctx);
+        }
+    }
+
+    /**
+     * Gives back to the pool a context after an operation was performed, discarding it if the
+     * operation failed because the connection was lost.
+     * 
+     * @param ctx
+     * @param nex The exception thrown by the operation or null if it succeeded.
+     */
+    private void returnContext(LdapContext ctx, NamingException nex)
+    {
+        if (nex instanceof javax.naming.CommunicationException || nex instanceof ServiceUnavailableException)
+        {
+            invalidateContext(ctx);
+        }
+        else
+        {
+            releaseContext(ctx);
+        }
+    }
+
+    private void invalidateCachedEntry(String dn)
+    {
+        LDAPEntryCache currentCache = this.cache;
+        if (currentCache != null && dn != null)
+        {
+            currentCache.invalidate(dn);
+        }
+        LDAPReplica currentReplica = this.replica;
+        if (currentReplica != null && dn != null)
+        {
+            currentReplica.invalidate(dn);
+        }
+    }
+
+    private void invalidateCachedSubtree(String dn)
+    {
+        LDAPEntryCache currentCache = this.cache;
+        if (currentCache != null && dn != null)
+        {
+            currentCache.invalidateSubtree(dn);
+        }
+        LDAPReplica currentReplica = this.replica;
+        if (currentReplica != null && dn != null)
+        {
+            currentReplica.invalidateSubtree(dn);
+        }
+    }
+
+    private void recordOperation(String operation, long start, NamingException failure)
+    {
+        LDAPStatistics currentStatistics = this.statistics;
+        if (currentStatistics != null)
+        {
+            currentStatistics.recordOperation(operation, System.nanoTime() - start, failure != null ? LDAPException.create(failure).getClass().getSimpleName() : null);
+        }
+    }
+
+    /**
+     * @return The statistics of this connection or null if they are disabled or the connection is closed.
+     */
+    public LDAPStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return The entry cache shared by the connections bound to the same server with the same identity, or
+     *         null if caching is disabled or the connection is not bound.
+     */
+    public LDAPEntryCache getEntryCache()
+    {
+        return cache;
+    }
+
+    /**
+     * @return The replica or null if it is disabled or the connection is not bound.
+     */
+    public LDAPReplica getReplica()
+    {
+        return replica;
+    }
+
+    /**
+     * @return The connection pool or null if pooling is disabled or several servers are configured.
+     */
+    public LDAPJNDIContextPool getPool()
+    {
+        return this.pool;
+    }
+
+    /**
+     * @return The servers or null if a single server is configured.
+     */
+    public LDAPJNDIServerSet getServerSet()
+    {
+        return this.serverSet;
+    }
+
+    /*
+     * The pool a borrowed context should be given back to, or null if it is the shared connection.
+     */
+    private LDAPJNDIContextPool getPool(LdapContext ctx)
+    {
+        LDAPJNDIServerSet currentServerSet = this.serverSet;
+        if (currentServerSet != null)
+        {
+            return currentServerSet.getPool(ctx);
+        }
+        return ctx != getConn() ? this.pool : null;
+    }
+
+    /**
+     * @param baseDn
+     * @param filter
+     * @param controls
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#search(java.lang.String,
+     *      java.lang.String, org.mule.module.ldap.api.LDAPSearchControls)
+     */
+    @Override
+    public LDAPResultSet search(String baseDn, String filter, LDAPSearchControls controls)
+        throws LDAPException
+    {
+        LDAPResultSet replicated = searchReplica(baseDn, filter, null, controls);
+        return replicated != null ? replicated : doSearch(baseDn, filter, null, controls);
+    }
+
+    /**
+     * @param baseDn
+     * @param filter
+     * @param filterArgs
+     * @param controls
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#search(java.lang.String,
+     *      java.lang.String, java.lang.Object[],
+     *      org.mule.module.ldap.api.LDAPSearchControls)
+     */
+    @Override
+    public LDAPResultSet search(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls)
+        throws LDAPException
+    {
+        LDAPResultSet replicated = searchReplica(baseDn, filter, filterArgs, controls);
+        if(replicated != null)
+        {
+            return replicated;
+        }
+        if(filterArgs != null && filterArgs.length > 0)
+        {
+            // Arguments are bound to the cached parsed filter instead of letting JNDI parse the filter on every search
+            return doSearch(baseDn, LDAPFilter.compile(filter).format(filterArgs), null, controls);
+        }
+        return doSearch(baseDn, filter, null, controls);
+    }
+
+    /**
+     * Opens a persistent search over a new connection (see {@link LDAPJNDIChangeMonitor}). The monitor
+     * is closed when this connection is closed.
+     * 
+     * @param baseDn
+     * @param filter
+     * @param controls
+     * @param reconnectDelay
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#monitorChanges(java.lang.String, java.lang.String,
+     *      org.mule.module.ldap.api.LDAPSearchControls, long)
+     */
+    @Override
+    public LDAPChangeMonitor monitorChanges(String baseDn, String filter, LDAPSearchControls controls, long reconnectDelay) throws LDAPException
+    {
+        if (isClosed())
+        {
+            throw new LDAPException("Cannot monitor changes with a closed connection. You must first bind.");
+        }
+        
+        long start = System.nanoTime();
+        LDAPJNDIChangeMonitor monitor = new LDAPJNDIChangeMonitor(buildEnvironment(getBindedUserDn(), getBindedUserPassword()), baseDn, filter,
+            LDAPJNDIUtils.buildSearchControls(controls), reconnectDelay);
+        monitor.start();
+        recordOperation("monitorChanges", start, null);
+        
+        synchronized (this.changeMonitors)
+        {
+            for (Iterator<LDAPChangeMonitor> it = this.changeMonitors.iterator(); it.hasNext();)
+            {
+                if (it.next().isClosed())
+                {
+                    it.remove();
+                }
+            }
+            this.changeMonitors.add(monitor);
+        }
+        return monitor;
+    }
+
+    private LDAPResultSet searchReplica(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls) throws LDAPException
+    {
+        LDAPReplica currentReplica = this.replica;
+        List<LDAPEntry> entries = currentReplica != null ? currentReplica.search(baseDn, filter, filterArgs, controls) : null;
+        if(entries != null && controls.isWindowSet())
+        {
+            int from = (int) Math.min(controls.getOffset(), entries.size());
+            int to = controls.getWindowSize() > 0 ? (int) Math.min(from + controls.getWindowSize(), entries.size()) : entries.size();
+            entries = new ArrayList<LDAPEntry>(entries.subList(from, to));
+        }
+        return entries != null ? new ListLDAPResultSet(entries) : null;
+    }
+
+    private LDAPResultSet doSearch(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls) throws LDAPException
+    {
+        return doSearch(baseDn, filter, filterArgs, controls, false);
+    }
+
+    /**
+     * @param clientSort whether results must be sorted on the client even if the server
+     *                   advertises the server side sort control
+     */
+    private LDAPResultSet doSearch(String baseDn, String filter, Object[] filterArgs, LDAPSearchControls controls, boolean clientSort) throws LDAPException
+    {
+        if(controls.isWindowSet())
+        {
+            return doWindowSearch(baseDn, filterArgs != null && filterArgs.length > 0 ? LDAPFilter.compile(filter).format(filterArgs) : filter, controls);
+        }
+        
+        long start = System.nanoTime();
+        LdapContext pooledConn = borrowContext(false);
+        LdapContext searchConn = null;
+        LDAPSearchControls searchControls = controls;
+        
+        try
+        {
+            if(controls.isOrderBySet() && (clientSort || !isServerSideSortSupported(pooledConn)))
+            {
+                // Search without sort control and sort results on the client
+                searchControls = new LDAPSearchControls(controls);
+                searchControls.setOrderBy(null);
+            }
+            
+            searchConn = searchControls.isPagingEnabled() || searchControls.isOrderBySet() ? pooledConn.newInstance(LDAPJNDIUtils.buildRequestControls(searchControls, null)) : pooledConn;
+            
+            NamingEnumeration<SearchResult> entries;
+            if(filterArgs != null && filterArgs.length > 0)
+            {
+                entries = searchConn.search(baseDn, filter, filterArgs, LDAPJNDIUtils.buildSearchControls(searchControls));
+            }
+            else
+            {
+                entries = searchConn.search(baseDn, filter, LDAPJNDIUtils.buildSearchControls(searchControls));
+            }
+            
+            LDAPResultSet result = LDAPResultSetFactory.create(baseDn, filter, filterArgs, searchConn, searchControls, entries, getPool(pooledConn), pooledConn);
+            recordOperation("search", start, null);
+            if(this.statistics != null && result instanceof PagedLDAPResultSet)
+            {
+                ((PagedLDAPResultSet) result).setStatistics(this.statistics.getPagedSearch());
+            }
+            
+            if(searchControls.isPrefetchEnabled())
+            {
+                PrefetchingLDAPResultSet prefetching = new PrefetchingLDAPResultSet(result, searchControls.getPageSize(), searchControls.getPrefetchPages());
+                prefetching.start(getExecutor());
+                result = prefetching;
+            }
+            
+            if(searchControls != controls)
+            {
+                if(logger.isDebugEnabled())
+                {
+                    logger.debug("Server side sort is not available. Sorting results by " + controls.getOrderBy() + " on the client.");
+                }
+                result = new SortedLDAPResultSet(result, new LDAPEntryComparator(controls.getSortKeys()), controls.getSortBufferSize());
+            }
+            return result;
+        }
+        catch (NamingException nex)
+        {
+            int sortResultCode = nex instanceof OperationNotSupportedException && searchControls.isOrderBySet() ? getSortResultCode(searchConn) : -1;
+            if (searchConn != null && searchConn != pooledConn)
+            {
+                try
+                {
+                    searchConn.close();
+                }
+                catch (NamingException ignored)
+                {
+                    // Ignore
+                }
+            }
+            returnContext(pooledConn, nex);
+            recordOperation("search", start, nex);
+            
+            if (sortResultCode > 0)
+            {
+                // The server supports the sort control but could not sort this search (i.e. by an
+                // attribute without ordering rule), so only this search is sorted on the client.
+                logger.info("LDAP server could not sort the results by " + controls.getOrderBy() + " (sort result code " + sortResultCode + "). Results will be sorted on the client.");
+                return doSearch(baseDn, filter, filterArgs, controls, true);
+            }
+            throw handleNamingException(nex, "Search failed.");
+        }
+        catch (RuntimeException ex)
+        {
+            releaseContext(pooledConn);
+            throw ex;
+        }
+    }
+    
+    /**
+     * Returns only the entries selected by the offset and window size of the search controls. If there is
+     * an offset, the results are sorted and the LDAP server supports the virtual list view control, then
+     * the server sends only the window. Otherwise the skipped entries are read from the search without
+     * building them and the window is streamed from the same search.
+     * <p/>
+     * A single search is performed on purpose: the skipped entries are sent by the server with all the
+     * requested attributes, but a first search returning only their DNs would need a second search (or a
+     * lookup per entry of the window) to read the window. Prefetching starts once the skipped entries were
+     * read, so they are not built by it either. When the results are sorted on the client every entry
+     * has to be read to sort them, so the skipped entries are built.
+     * 
+     * @param baseDn
+     * @param filter
+     * @param controls
+     * @return
+     * @throws LDAPException
+     */
+    private LDAPResultSet doWindowSearch(String baseDn, String filter, LDAPSearchControls controls) throws LDAPException
+    {
+        LDAPSearchControls searchControls = new LDAPSearchControls(controls);
+        searchControls.setOffset(0);
+        searchControls.setWindowSize(0);
+        searchControls.setPrefetchPages(0);
+        
+        if(controls.getOffset() > 0 && controls.isOrderBySet())
+        {
+            LdapContext pooledConn = borrowContext(false);
+            if(isServerSideSortSupported(pooledConn) && isVirtualListViewSupported(pooledConn))
+            {
+                LDAPResultSet window = doVirtualListViewSearch(baseDn, filter, controls, pooledConn);
+                if(window != null)
+                {
+                    return window;
+                }
+            }
+            else
+            {
+                releaseContext(pooledConn);
+            }
+        }
+        
+        LDAPResultSet result = doSearch(baseDn, filter, null, searchControls);
+        try
+        {
+            skipEntries(result, controls.getOffset());
+        }
+        catch(LDAPException ex)
+        {
+            result.close();
+            throw ex;
+        }
+        
+        if(controls.isPrefetchEnabled() && !(result instanceof SortedLDAPResultSet))
+        {
+            PrefetchingLDAPResultSet prefetching = new PrefetchingLDAPResultSet(result, controls.getPageSize(), controls.getPrefetchPages());
+            prefetching.start(getExecutor());
+            result = prefetching;
+        }
+        return controls.getWindowSize() > 0 ? new LimitedLDAPResultSet(result, controls.getWindowSize()) : result;
+    }
+    
+    /**
+     * @param baseDn
+     * @param filter
+     * @param controls
+     * @param pooledConn Context used for the search. It is released when the returned result set is closed.
+     * @return The window or null if the LDAP server could not provide it, in which case <i>pooledConn</i>
+     *         was already released.
+     * @throws LDAPException
+     */
+    private LDAPResultSet doVirtualListViewSearch(String baseDn, String filter, LDAPSearchControls controls, LdapContext pooledConn) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext searchConn = null;
+        try
+        {
+            searchConn = pooledConn.newInstance(null);
+            VirtualListViewLDAPResultSet result = new VirtualListViewLDAPResultSet(baseDn, filter, searchConn, controls, getPool(pooledConn), pooledConn);
+            if(result.start())
+            {
+                recordOperation("search", start, null);
+                return result;
+            }
+            closeQuietly(searchConn);
+            releaseContext(pooledConn);
+            return null;
+        }
+        catch (NamingException nex)
+        {
+            closeQuietly(searchConn);
+            returnContext(pooledConn, nex);
+            if (nex instanceof OperationNotSupportedException)
+            {
+                // Critical virtual list view control rejected by the server (unavailableCriticalExtension)
+                logger.info("LDAP server rejected the virtual list view control. Skipped entries will be read from the search results.");
+                this.virtualListViewSupported = Boolean.FALSE;
+                return null;
+            }
+            recordOperation("search", start, nex);
+            throw handleNamingException(nex, "Search failed.");
+        }
+        catch (LDAPException ex)
+        {
+            closeQuietly(searchConn);
+            releaseContext(pooledConn);
+            throw ex;
+        }
+        catch (RuntimeException ex)
+        {
+            closeQuietly(searchConn);
+            releaseContext(pooledConn);
+            throw ex;
+        }
+    }
+    
+    private void closeQuietly(LdapContext ctx)
+    {
+        if (ctx != null)
+        {
+            try
+            {
+                ctx.close();
+            }
+            catch (NamingException ignored)
+            {
+                // Ignore
+            }
+        }
+    }
+    
+    /*
+     * Skipped entries are not built, so their attributes are never converted.
+     */
+    private void skipEntries(LDAPResultSet result, long totalEntriesToSkip) throws LDAPException
+    {
+        for(long count = 0; count < totalEntriesToSkip && result.hasNext(); count++)
+        {
+            nextDn(result);
+        }
+    }
+    
+    private String nextDn(LDAPResultSet result) throws LDAPException
+    {
+        return result instanceof DnLDAPResultSet ? ((DnLDAPResultSet) result).nextDn() : result.next().getDn();
+    }
+    
+    /**
+     * Checks (only once) whether the LDAP server advertises the server side sort control
+     * in the supportedControl attribute of its root DSE.
+     * 
+     * @param ctx
+     * @return
+     */
+    private boolean isServerSideSortSupported(LdapContext ctx)
+    {
+        Boolean supported = this.serverSideSortSupported;
+        if(supported == null)
+        {
+            supported = isControlSupported(ctx, SORT_CONTROL_OID);
+            this.serverSideSortSupported = supported;
+        }
+        return supported.booleanValue();
+    }
+    
+    /**
+     * Checks (only once) whether the LDAP server advertises the virtual list view control
+     * in the supportedControl attribute of its root DSE.
+     * 
+     * @param ctx
+     * @return
+     */
+    private boolean isVirtualListViewSupported(LdapContext ctx)
+    {
+        Boolean supported = this.virtualListViewSupported;
+        if(supported == null)
+        {
+            supported = isControlSupported(ctx, VirtualListViewControl.OID);
+            this.virtualListViewSupported = supported;
+        }
+        return supported.booleanValue();
+    }
+    
+    /**
+     * Returns the result code of the sort response control sent by the server on the
+     * last operation of the context, or -1 if there is no such control.
+     * 
+     * @param ctx
+     * @return
+     */
+    private int getSortResultCode(LdapContext ctx)
+    {
+        if(ctx != null)
+        {
+            try
+            {
+                Control[] responseControls = ctx.getResponseControls();
+                if(responseControls != null)
+                {
+                    for(Control control : responseControls)
+                    {
+                        if(control instanceof SortResponseControl)
+                        {
+                            return ((SortResponseControl) control).getResultCode();
+                        }
+                    }
+                }
+            }
+            catch(NamingException nex)
+            {
+                logger.debug("Could not read response controls of the search.", nex);
+            }
+        }
+        return -1;
+    }
+    
+    private Boolean isControlSupported(LdapContext ctx, String oid)
+    {
+        try
+        {
+            Attribute supportedControls = ctx.getAttributes("", new String[] {SUPPORTED_CONTROL_ATTR}).get(SUPPORTED_CONTROL_ATTR);
+            return Boolean.valueOf(supportedControls != null && supportedControls.contains(oid));
+        }
+        catch(NamingException nex)
+        {
+            logger.warn("Could not read supported controls from root DSE. Assuming control " + oid + " is not supported.", nex);
+            return Boolean.FALSE;
+        }
+    }
+    
+    /**
+     * @param dn
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#lookup(java.lang.String)
+     */
+    public LDAPEntry lookup(String dn) throws LDAPException
+    {
+        return lookup(dn, null);
+    }
+
+    /**
+     * @param dn
+     * @param attributes
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#lookup(java.lang.String,
+     *      java.lang.String[])
+     */
+    public LDAPEntry lookup(String dn, String[] attributes) throws LDAPException
+    {
+        LDAPReplica currentReplica = this.replica;
+        if (currentReplica != null)
+        {
+            LDAPEntry replicated = currentReplica.lookup(dn, attributes);
+            if (replicated != null)
+            {
+                return replicated;
+            }
+        }
+        
+        LDAPEntryCache currentCache = this.cache;
+        long generation = 0;
+        if (currentCache != null)
+        {
+            LDAPEntry cached = currentCache.get(dn, attributes);
+            if (cached != null)
+            {
+                return cached;
+            }
+            // Entries invalidated while they are read are not cached
+            generation = currentCache.getGeneration();
+        }
+        
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(false);
+        NamingException failure = null;
+        try
+        {
+            LDAPEntry entry = LDAPJNDIUtils.buildEntry(dn, ctx.getAttributes(dn, attributes));
+            if (currentCache != null)
+            {
+                currentCache.put(dn, attributes, entry, generation);
+            }
+            return entry;
+        }
+        catch (NamingException nex)
+        {
+            failure = nex;
+            LDAPException ex = handleNamingException(nex, "Lookup failed.");
+            if (currentCache != null && ex instanceof NameNotFoundException)
+            {
+                currentCache.putNotFound(dn, attributes, ex.getMessage(), generation);
+            }
+            throw ex;
+        }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("lookup", start, failure);
+        }
+    }
+
+    /**
+     * @param dn
+     * @param attributeName
+     * @param first
+     * @param last
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#lookupAttributeRange(java.lang.String, java.lang.String, int, int)
+     */
+    @Override
+    public LDAPEntryAttribute lookupAttributeRange(String dn, String attributeName, int first, int last) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(false);
+        NamingException failure = null;
+        try
+        {
+            String rangedName = attributeName + LDAPAttributeValueIterator.RANGE_OPTION + first + "-" + (last >= 0 ? String.valueOf(last) : "*");
+            Attribute attribute = findRangedAttribute(ctx.getAttributes(dn, new String[] {rangedName}), attributeName);
+            if (attribute == null && first == 0)
+            {
+                // Range retrieval is not supported (or the entry has few values), so all of them are returned at once
+                attribute = ctx.getAttributes(dn, new String[] {attributeName}).get(attributeName);
+            }
+            return LDAPJNDIUtils.buildAttribute(attribute);
+        }
+        catch (NamingException nex)
+        {
+            failure = nex;
+            throw handleNamingException(nex, "Lookup of attribute range failed.");
+        }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("lookupAttributeRange", start, failure);
+        }
+    }
+
+    private Attribute findRangedAttribute(Attributes attributes, String attributeName) throws NamingException
+    {
+        String prefix = (attributeName + LDAPAttributeValueIterator.RANGE_OPTION).toLowerCase();
+        for (NamingEnumeration<? extends Attribute> all = attributes.getAll(); all.hasMore();)
+        {
+            Attribute attribute = all.next();
+            if (attribute.getID().toLowerCase().startsWith(prefix))
+            {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param entry
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#addEntry(org.mule.module.ldap.api.LDAPEntry)
+     */
+    public void addEntry(LDAPEntry entry) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
+        try
+        {
+            ctx.bind(entry.getDn(), null, buildAttributes(entry));
+        }
+        catch (NamingException nex)
+        {
+            failure = nex;
+            throw handleNamingException(nex, "Add entry failed.");
+        }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("add", start, failure);
+            invalidateCachedEntry(entry.getDn());
+        }
+    }
+
+    
+    private LDAPException handleNamingException(NamingException nex, String logMessage)
+    {
+        logger.error(logMessage, nex);
+        
+        return LDAPException.create(nex);
+    }
+    
+    /**
+     * @param entry
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#updateEntry(org.mule.module.ldap.api.LDAPEntry)
+     */
+    public void updateEntry(LDAPEntry entry) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
+        try
+        {
+            ModificationItem[] mods = new ModificationItem[entry.getAttributeCount()];
+            Iterator<LDAPEntryAttribute> it = entry.attributes();
+            for (int i = 0; it.hasNext() && i < mods.length; i++)
+            {
+                mods[i] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
+                    buildBasicAttribute(((LDAPEntryAttribute) it.next())));
+            }
+            ctx.modifyAttributes(entry.getDn(), mods);
+        }
+        catch (NamingException nex)
+        {
+            failure = nex;
+            throw handleNamingException(nex, "Update entry failed.");
+        }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("modify", start, failure);
+            invalidateCachedEntry(entry.getDn());
+        }
+    }
+
+    /**
+     * @param entry
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#deleteEntry(org.mule.module.ldap.api.LDAPEntry)
+     */
+    public void deleteEntry(LDAPEntry entry) throws LDAPException
+    {
+        deleteEntry(entry.getDn());
+    }
+
+    /**
+     * @param dn
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#deleteEntry(java.lang.String)
+     */
+    public void deleteEntry(String dn) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
+        try
+        {
+            if(logger.isDebugEnabled())
+            {
+                logger.debug("About to delete entry " + dn );
+            } 
+            
+            ctx.unbind(dn);
+            
+            if(logger.isInfoEnabled())
+            {
+                logger.info("Deleted entry " + dn);
+            }             
+        }
+        catch (NamingException nex)
+        {
+            failure = nex;
+            throw handleNamingException(nex, "Delete entry failed.");
+        }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("delete", start, failure);
+            invalidateCachedSubtree(dn);
+        }
+    }
+
+    /**
+     * 
+     * @param oldDn
+     * @param newDn
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#renameEntry(java.lang.String, java.lang.String)
+     */
+    public void renameEntry(String oldDn, String newDn) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
+        try
+        {
+            if(logger.isDebugEnabled())
+            {
+                logger.debug("About to rename entry " + oldDn + " to " + newDn);
+            }
+            
+            ctx.rename(oldDn, newDn);
+            
+            if(logger.isInfoEnabled())
             {
                 logger.info("Renamed entry " + oldDn + " to " + newDn);
             }            
         }
         catch (NamingException nex)
         {
+            failure = nex;
             throw handleNamingException(nex, "Rename entry failed.");
         }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("rename", start, failure);
+            invalidateCachedSubtree(oldDn);
+            invalidateCachedEntry(newDn);
+        }
     }
     
     /**
@@ -642,16 +1866,26 @@ public class LDAPJNDIConnection extends LDAPConnection
      */
     public void addAttribute(String dn, LDAPEntryAttribute attribute) throws LDAPException
     {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
         try
         {
             ModificationItem[] mods = new ModificationItem[1];
             mods[0] = new ModificationItem(DirContext.ADD_ATTRIBUTE, buildBasicAttribute(attribute));
-            getConn().modifyAttributes(dn, mods);
+            ctx.modifyAttributes(dn, mods);
         }
         catch (NamingException nex)
         {
+            failure = nex;
             throw handleNamingException(nex, "Add attribute failed.");
         }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("addAttribute", start, failure);
+            invalidateCachedEntry(dn);
+        }
     }
 
     /**
@@ -663,17 +1897,26 @@ public class LDAPJNDIConnection extends LDAPConnection
      */
     public void updateAttribute(String dn, LDAPEntryAttribute attribute) throws LDAPException
     {
-
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
         try
         {
             ModificationItem[] mods = new ModificationItem[1];
             mods[0] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE, buildBasicAttribute(attribute));
-            getConn().modifyAttributes(dn, mods);
+            ctx.modifyAttributes(dn, mods);
         }
         catch (NamingException nex)
         {
+            failure = nex;
             throw handleNamingException(nex, "Update attribute failed.");
         }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("modifyAttribute", start, failure);
+            invalidateCachedEntry(dn);
+        }
     }
 
     /**
@@ -685,16 +1928,89 @@ public class LDAPJNDIConnection extends LDAPConnection
      */
     public void deleteAttribute(String dn, LDAPEntryAttribute attribute) throws LDAPException
     {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
         try
         {
             ModificationItem[] mods = new ModificationItem[1];
             mods[0] = new ModificationItem(DirContext.REMOVE_ATTRIBUTE, buildBasicAttribute(attribute));
-            getConn().modifyAttributes(dn, mods);
+            ctx.modifyAttributes(dn, mods);
         }
         catch (NamingException nex)
         {
+            failure = nex;
             throw handleNamingException(nex, "Delete attribute failed.");
         }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("deleteAttribute", start, failure);
+            invalidateCachedEntry(dn);
+        }
+    }
+
+    /**
+     * @param dn
+     * @param modifications
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPConnection#modifyEntry(java.lang.String, java.util.List)
+     */
+    public void modifyEntry(String dn, List<LDAPModification> modifications) throws LDAPException
+    {
+        long start = System.nanoTime();
+        LdapContext ctx = borrowContext(true);
+        NamingException failure = null;
+        try
+        {
+            ModificationItem[] mods = new ModificationItem[modifications.size()];
+            for (int i = 0; i < mods.length; i++)
+            {
+                LDAPModification modification = modifications.get(i);
+                mods[i] = new ModificationItem(toModificationOperation(modification.getOperation()), buildBasicAttribute(modification.getAttribute()));
+            }
+            ctx.modifyAttributes(dn, mods);
+        }
+        catch (NamingException nex)
+        {
+            failure = nex;
+            throw handleNamingException(nex, "Modify entry failed.");
+        }
+        finally
+        {
+            returnContext(ctx, failure);
+            recordOperation("modifyEntry", start, failure);
+            invalidateCachedEntry(dn);
+        }
+    }
+
+    private int toModificationOperation(int operation) throws LDAPException
+    {
+        switch (operation)
+        {
+            case LDAPModification.ADD_ATTRIBUTE:
+                return DirContext.ADD_ATTRIBUTE;
+            case LDAPModification.REPLACE_ATTRIBUTE:
+                return DirContext.REPLACE_ATTRIBUTE;
+            case LDAPModification.REMOVE_ATTRIBUTE:
+                return DirContext.REMOVE_ATTRIBUTE;
+            default:
+                throw new LDAPException("Unsupported modification operation " + operation);
+        }
+    }
+
+    /**
+     * @return The maximum amount of pooled connections or 1 if pooling is disabled.
+     * @see org.mule.module.ldap.api.LDAPConnection#getMaxParallelism()
+     */
+    @Override
+    protected int getMaxParallelism()
+    {
+        if (isServerSetEnabled())
+        {
+            return LDAPJNDIServerSet.parseUrls(getProviderUrl()).size() * Math.max(getMaxPoolConnections(), 1);
+        }
+        return isConnectionPoolEnabled() ? Math.max(getMaxPoolConnections(), 1) : 1;
     }
 
     /**
@@ -745,6 +2061,22 @@ public class LDAPJNDIConnection extends LDAPConnection
         this.maxPoolConnections = maxPoolConnections;
     }
 
+    /**
+     * @return Returns the authenticationPoolSize.
+     */
+    public int getAuthenticationPoolSize()
+    {
+        return authenticationPoolSize;
+    }
+
+    /**
+     * @param authenticationPoolSize The authenticationPoolSize to set.
+     */
+    public void setAuthenticationPoolSize(int authenticationPoolSize)
+    {
+        this.authenticationPoolSize = authenticationPoolSize;
+    }
+
     /**
      * @return Returns the poolTimeout.
      */
@@ -761,6 +2093,22 @@ public class LDAPJNDIConnection extends LDAPConnection
         this.poolTimeout = poolTimeout;
     }
 
+    /**
+     * @return Returns the poolMaxWait.
+     */
+    public long getPoolMaxWait()
+    {
+        return poolMaxWait;
+    }
+
+    /**
+     * @param poolMaxWait The poolMaxWait to set.
+     */
+    public void setPoolMaxWait(long poolMaxWait)
+    {
+        this.poolMaxWait = poolMaxWait;
+    }
+
     /**
      * @return Returns the providerUrl.
      */
@@ -782,6 +2130,126 @@ public class LDAPJNDIConnection extends LDAPConnection
         return getInitialPoolSizeConnections() > 0;
     }
 
+    /**
+     * @return Whether the provider URL holds several servers, in which case each one has its own pool.
+     */
+    public boolean isServerSetEnabled()
+    {
+        return LDAPJNDIServerSet.parseUrls(getProviderUrl()).size() > 1;
+    }
+
+    /**
+     * @return Returns the loadBalancing.
+     */
+    public String getLoadBalancing()
+    {
+        return loadBalancing;
+    }
+
+    /**
+     * @param loadBalancing The loadBalancing to set.
+     */
+    public void setLoadBalancing(String loadBalancing)
+    {
+        this.loadBalancing = loadBalancing;
+    }
+
+    /**
+     * @return Returns the healthCheckInterval.
+     */
+    public long getHealthCheckInterval()
+    {
+        return healthCheckInterval;
+    }
+
+    /**
+     * @param healthCheckInterval The healthCheckInterval to set.
+     */
+    public void setHealthCheckInterval(long healthCheckInterval)
+    {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * @return Returns the replicaBaseDn.
+     */
+    public String getReplicaBaseDn()
+    {
+        return replicaBaseDn;
+    }
+
+    /**
+     * @param replicaBaseDn The replicaBaseDn to set.
+     */
+    public void setReplicaBaseDn(String replicaBaseDn)
+    {
+        this.replicaBaseDn = replicaBaseDn;
+    }
+
+    /**
+     * @return Returns the replicaIndexes.
+     */
+    public String getReplicaIndexes()
+    {
+        return replicaIndexes;
+    }
+
+    /**
+     * @param replicaIndexes The replicaIndexes to set.
+     */
+    public void setReplicaIndexes(String replicaIndexes)
+    {
+        this.replicaIndexes = replicaIndexes;
+    }
+
+    /**
+     * @return Returns the replicaRefreshInterval.
+     */
+    public long getReplicaRefreshInterval()
+    {
+        return replicaRefreshInterval;
+    }
+
+    /**
+     * @param replicaRefreshInterval The replicaRefreshInterval to set.
+     */
+    public void setReplicaRefreshInterval(long replicaRefreshInterval)
+    {
+        this.replicaRefreshInterval = replicaRefreshInterval;
+    }
+
+    /**
+     * @return Returns the replicaReconcileInterval.
+     */
+    public long getReplicaReconcileInterval()
+    {
+        return replicaReconcileInterval;
+    }
+
+    /**
+     * @param replicaReconcileInterval The replicaReconcileInterval to set.
+     */
+    public void setReplicaReconcileInterval(long replicaReconcileInterval)
+    {
+        this.replicaReconcileInterval = replicaReconcileInterval;
+    }
+
+    /**
+     * @return Returns the replicaHighWaterMark.
+     */
+    public String getReplicaHighWaterMark()
+    {
+        return replicaHighWaterMark;
+    }
+
+    /**
+     * @param replicaHighWaterMark The replicaHighWaterMark to set.
+     */
+    public void setReplicaHighWaterMark(String replicaHighWaterMark)
+    {
+        this.replicaHighWaterMark = replicaHighWaterMark;
+    }
+
     /**
      * @return Returns the initialContextFactory.
      */
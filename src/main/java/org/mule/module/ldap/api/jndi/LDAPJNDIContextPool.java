@@ -0,0 +1,608 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.module.ldap.api.LDAPException;
+import org.mule.module.ldap.api.stats.PoolMetrics;
+import org.mule.module.ldap.api.stats.PoolStatistics;
+
+/**
+ * Bounded pool of bound {@link LdapContext} instances. Each pooled context owns its own
+ * LDAP connection (it is created as a new {@link InitialLdapContext} from the pool
+ * environment) so that concurrent operations do not serialize on a single socket.
+ * <p/>
+ * When started, the <i>minIdle</i> contexts are opened in parallel and validated, so the
+ * connection setup (DNS, TCP and TLS) is paid before the first operation and not serially.
+ * <p/>
+ * The pool keeps at least <i>minIdle</i> contexts open, never opens more than
+ * <i>maxTotal</i> contexts at the same time, waits up to <i>maxWait</i> milliseconds
+ * for a context to be returned when exhausted, closes contexts that have been idle
+ * for more than <i>idleTimeout</i> milliseconds and validates idle contexts before
+ * handing them out.
+ *
+ * @author mariano
+ */
+public class LDAPJNDIContextPool implements PoolMetrics
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    /**
+     * Contexts returned to the pool less than this amount of milliseconds ago are
+     * handed out without validation.
+     */
+    public static final long VALIDATION_BYPASS_WINDOW = 500L;
+
+    /**
+     * Maximum amount of contexts opened at the same time when the pool is started.
+     */
+    public static final int MAX_WARM_UP_THREADS = 16;
+
+    /**
+     * Empty set of returning attributes (RFC 4511 section 4.5.1.8) used to validate
+     * contexts with a cheap root DSE read.
+     */
+    private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+    /**
+     * Single daemon thread shared by all the pools to close idle contexts.
+     */
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "ldap-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Hashtable<String, String> environment;
+    private final int minIdle;
+    private final int maxTotal;
+    private final long maxWait;
+    private final long idleTimeout;
+    private boolean validateOnBorrow = true;
+
+    private final LinkedBlockingDeque<PooledContext> idle = new LinkedBlockingDeque<PooledContext>();
+    private final Set<LdapContext> active = Collections.newSetFromMap(new IdentityHashMap<LdapContext, Boolean>());
+    private final Semaphore permits;
+    private final AtomicInteger waiters = new AtomicInteger(0);
+    private volatile boolean closed = false;
+    private ScheduledFuture<?> evictionTask = null;
+    private PoolStatistics statistics = null;
+    private long warmUpTime = -1L;
+
+    /**
+     * @param environment The environment used to create each {@link InitialLdapContext}.
+     * @param minIdle Amount of contexts that are opened when the pool is started and that are kept open even if idle.
+     * @param maxTotal Maximum amount of contexts (active + idle). If it is less than 1, then <i>minIdle</i> is used (at least 1).
+     * @param maxWait Milliseconds to wait for a context when the pool is exhausted. 0 means wait indefinitely.
+     * @param idleTimeout Milliseconds a context may remain idle before being closed. 0 means never close idle contexts.
+     */
+    public LDAPJNDIContextPool(Hashtable<String, String> environment, int minIdle, int maxTotal, long maxWait, long idleTimeout)
+    {
+        this.environment = environment;
+        this.minIdle = minIdle > 0 ? minIdle : 0;
+        this.maxTotal = maxTotal > 0 ? Math.max(maxTotal, this.minIdle) : Math.max(this.minIdle, 1);
+        this.maxWait = maxWait > 0 ? maxWait : 0;
+        this.idleTimeout = idleTimeout > 0 ? idleTimeout : 0;
+        this.permits = new Semaphore(this.maxTotal, true);
+    }
+
+    /**
+     * Opens <i>minIdle</i> contexts in parallel, validating each of them with a root DSE read.
+     *
+     * @throws LDAPException If any of the contexts cannot be created or fails validation. Contexts
+     *         already opened are closed.
+     */
+    public void start() throws LDAPException
+    {
+        long start = System.currentTimeMillis();
+        for (LdapContext context : warmUp())
+        {
+            idle.offerLast(new PooledContext(context, currentTimeMillis()));
+        }
+        warmUpTime = System.currentTimeMillis() - start;
+        if (minIdle > 0 && logger.isInfoEnabled())
+        {
+            logger.info("Opened and validated " + minIdle + " pooled connections in " + warmUpTime + " ms.");
+        }
+
+        if (idleTimeout > 0)
+        {
+            long period = Math.max(idleTimeout / 2, 1000L);
+            evictionTask = EVICTOR.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    int evicted = evict();
+                    if (evicted > 0 && logger.isDebugEnabled())
+                    {
+                        logger.debug("Closed " + evicted + " idle pooled connections.");
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Context pool started with " + idle.size() + " idle contexts (max: " + maxTotal + ")");
+        }
+    }
+
+    /**
+     * Borrows a context from the pool. The context must be given back using {@link #release(LdapContext)}
+     * or {@link #invalidate(LdapContext)}.
+     *
+     * @return A bound context.
+     * @throws LDAPException If the pool is closed, there is a timeout waiting for a context or a new context
+     *         cannot be created.
+     */
+    public LdapContext borrow() throws LDAPException
+    {
+        if (closed)
+        {
+            throw new LDAPException("Connection pool is closed.");
+        }
+
+        acquirePermit();
+
+        try
+        {
+            PooledContext pooled;
+            while ((pooled = idle.pollFirst()) != null)
+            {
+                long now = currentTimeMillis();
+                // Contexts idle for too long are reused instead of closed if they are needed to keep minIdle contexts
+                if (idleTimeout > 0 && now - pooled.lastReturned > idleTimeout && idle.size() >= minIdle)
+                {
+                    silentClose(pooled.context);
+                }
+                else if (validateOnBorrow && now - pooled.lastReturned > VALIDATION_BYPASS_WINDOW && !isValid(pooled.context))
+                {
+                    logger.info("Discarding pooled connection that failed validation.");
+                    silentClose(pooled.context);
+                }
+                else
+                {
+                    return activate(pooled.context);
+                }
+            }
+
+            return activate(createContext());
+        }
+        catch (LDAPException ex)
+        {
+            permits.release();
+            throw ex;
+        }
+        catch (RuntimeException ex)
+        {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a borrowed context to the pool.
+     *
+     * @param context The context obtained from {@link #borrow()}
+     */
+    public void release(LdapContext context)
+    {
+        if (context != null && deactivate(context))
+        {
+            if (closed)
+            {
+                silentClose(context);
+            }
+            else
+            {
+                idle.offerFirst(new PooledContext(context, currentTimeMillis()));
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes a borrowed context that should not be used any more (for example because
+     * its connection was lost) and frees its slot in the pool.
+     *
+     * @param context The context obtained from {@link #borrow()}
+     */
+    public void invalidate(LdapContext context)
+    {
+        if (context != null && deactivate(context))
+        {
+            silentClose(context);
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the contexts that have been idle for more than <i>idleTimeout</i> milliseconds while keeping
+     * at least <i>minIdle</i> contexts open.
+     *
+     * @return The amount of contexts that were closed.
+     */
+    public int evict()
+    {
+        int evicted = 0;
+        if (idleTimeout > 0)
+        {
+            long now = currentTimeMillis();
+            for (Iterator<PooledContext> it = idle.descendingIterator(); it.hasNext() && idle.size() > minIdle;)
+            {
+                PooledContext pooled = it.next();
+                if (now - pooled.lastReturned > idleTimeout && idle.removeFirstOccurrence(pooled))
+                {
+                    silentClose(pooled.context);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Closes all the idle contexts, for example because their server is not reachable any more. Unlike
+     * {@link #close()} the pool can still be used.
+     *
+     * @return The amount of contexts that were closed.
+     */
+    public int clear()
+    {
+        int cleared = 0;
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null)
+        {
+            silentClose(pooled.context);
+            cleared++;
+        }
+        return cleared;
+    }
+
+    /**
+     * Closes all the idle contexts. Borrowed contexts are closed as soon as they are released.
+     */
+    public void close()
+    {
+        closed = true;
+        if (statistics != null)
+        {
+            statistics.removePool(this);
+        }
+        if (evictionTask != null)
+        {
+            evictionTask.cancel(false);
+            evictionTask = null;
+        }
+        PooledContext pooled;
+        while ((pooled = idle.pollFirst()) != null)
+        {
+            silentClose(pooled.context);
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * @return Milliseconds taken to open and validate the initial contexts, or -1 if the pool was not started.
+     */
+    public long getWarmUpTime()
+    {
+        return warmUpTime;
+    }
+
+    /**
+     * @return The environment used to create the contexts.
+     */
+    Hashtable<String, String> getEnvironment()
+    {
+        return environment;
+    }
+
+    @Override
+    public int getActiveCount()
+    {
+        synchronized (active)
+        {
+            return active.size();
+        }
+    }
+
+    @Override
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    @Override
+    public int getWaitersCount()
+    {
+        return waiters.get();
+    }
+
+    @Override
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    public int getMinIdle()
+    {
+        return minIdle;
+    }
+
+    /**
+     * @param statistics Where the gauges of this pool and the time waited for connections are recorded. Null to disable it.
+     */
+    public void setStatistics(PoolStatistics statistics)
+    {
+        if (this.statistics != null)
+        {
+            this.statistics.removePool(this);
+        }
+        this.statistics = statistics;
+        if (statistics != null)
+        {
+            statistics.addPool(this);
+        }
+    }
+
+    public boolean isValidateOnBorrow()
+    {
+        return validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow)
+    {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    private void acquirePermit() throws LDAPException
+    {
+        long start = System.nanoTime();
+        boolean acquired = false;
+        waiters.incrementAndGet();
+        try
+        {
+            if (maxWait > 0)
+            {
+                if (!permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS))
+                {
+                    throw new LDAPException("Timeout waiting for an idle connection after " + maxWait + " ms. Max pool size is " + maxTotal + ".");
+                }
+            }
+            else
+            {
+                permits.acquire();
+            }
+            acquired = true;
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new LDAPException("Interrupted while waiting for an idle connection.", ex);
+        }
+        finally
+        {
+            waiters.decrementAndGet();
+            PoolStatistics currentStatistics = this.statistics;
+            if (currentStatistics != null)
+            {
+                currentStatistics.recordBorrow(System.nanoTime() - start, !acquired);
+            }
+        }
+    }
+
+    private List<LdapContext> warmUp() throws LDAPException
+    {
+        List<LdapContext> contexts = new ArrayList<LdapContext>(minIdle);
+        if (minIdle == 1)
+        {
+            contexts.add(createValidContext());
+            return contexts;
+        }
+        else if (minIdle == 0)
+        {
+            return contexts;
+        }
+
+        ExecutorService warmUpExecutor = Executors.newFixedThreadPool(Math.min(minIdle, MAX_WARM_UP_THREADS), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "ldap-pool-warm-up-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Future<LdapContext>> openings = new ArrayList<Future<LdapContext>>(minIdle);
+        LDAPException failure = null;
+        try
+        {
+            for (int i = 0; i < minIdle; i++)
+            {
+                openings.add(warmUpExecutor.submit(new Callable<LdapContext>()
+                {
+                    @Override
+                    public LdapContext call() throws Exception
+                    {
+                        return createValidContext();
+                    }
+                }));
+            }
+            // Every opening is waited for, so that no context is left open if one of them fails
+            for (Future<LdapContext> opening : openings)
+            {
+                try
+                {
+                    contexts.add(opening.get());
+                }
+                catch (ExecutionException ex)
+                {
+                    if (failure == null)
+                    {
+                        failure = ex.getCause() instanceof LDAPException ? (LDAPException) ex.getCause() : new LDAPException("Could not open pooled connection.", ex.getCause());
+                    }
+                }
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            failure = new LDAPException("Interrupted while opening pooled connections.", ex);
+        }
+        finally
+        {
+            warmUpExecutor.shutdownNow();
+        }
+
+        if (failure != null)
+        {
+            for (LdapContext context : contexts)
+            {
+                silentClose(context);
+            }
+            throw failure;
+        }
+        return contexts;
+    }
+
+    private LdapContext createValidContext() throws LDAPException
+    {
+        LdapContext context = createContext();
+        if (!isValid(context))
+        {
+            silentClose(context);
+            throw new LDAPException("Pooled connection failed validation (root DSE could not be read).");
+        }
+        return context;
+    }
+
+    /**
+     * @param context
+     * @return Whether the context was borrowed from this pool and was not given back yet.
+     */
+    boolean isActive(LdapContext context)
+    {
+        synchronized (active)
+        {
+            return active.contains(context);
+        }
+    }
+
+    /**
+     * @return The current time used to decide whether idle contexts expired or should be validated.
+     */
+    long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    private LdapContext activate(LdapContext context)
+    {
+        synchronized (active)
+        {
+            active.add(context);
+        }
+        return context;
+    }
+
+    private boolean deactivate(LdapContext context)
+    {
+        synchronized (active)
+        {
+            return active.remove(context);
+        }
+    }
+
+    private LdapContext createContext() throws LDAPException
+    {
+        try
+        {
+            return new InitialLdapContext(environment, null);
+        }
+        catch (NamingException nex)
+        {
+            throw LDAPException.create(nex);
+        }
+    }
+
+    private boolean isValid(LdapContext context)
+    {
+        try
+        {
+            context.getAttributes("", NO_ATTRIBUTES);
+            return true;
+        }
+        catch (NamingException nex)
+        {
+            return false;
+        }
+    }
+
+    private void silentClose(LdapContext context)
+    {
+        try
+        {
+            context.close();
+        }
+        catch (NamingException nex)
+        {
+            // Ignore
+        }
+    }
+
+    private static class PooledContext
+    {
+        private final LdapContext context;
+        private final long lastReturned;
+
+        PooledContext(LdapContext context, long lastReturned)
+        {
+            this.context = context;
+            this.lastReturned = lastReturned;
+        }
+    }
+}
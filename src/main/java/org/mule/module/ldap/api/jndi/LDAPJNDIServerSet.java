@@ -0,0 +1,542 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.module.ldap.api.CommunicationException;
+import org.mule.module.ldap.api.LDAPException;
+import org.mule.module.ldap.api.stats.LDAPStatistics;
+import org.mule.module.ldap.api.stats.ServerMetrics;
+import org.mule.module.ldap.api.stats.ServerStatistics;
+
+/**
+ * Set of LDAP servers holding the same entries (replicas), each one used through its own
+ * {@link LDAPJNDIContextPool}.
+ * <p/>
+ * Reads are balanced across the available servers, either round robin or sending each one to
+ * the server with less outstanding requests (borrowed connections, including open search
+ * results). Writes are sent to the first available server in the order the servers were
+ * configured, so the primary server should be listed first.
+ * <p/>
+ * A server is ejected when a connection to it cannot be opened or fails with a communication
+ * error, and the next server is used instead. Every <i>healthCheckInterval</i> milliseconds all
+ * the servers are checked in the background by reading their root DSE over a new connection:
+ * servers that do not answer are ejected and ejected servers that answer are re-admitted. If
+ * all the servers are ejected, they are still tried in order.
+ *
+ * @author mariano
+ */
+public class LDAPJNDIServerSet
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_OUTSTANDING = "leastOutstanding";
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 10000L;
+
+    private static final String CONNECT_TIMEOUT_ENV_PARAM = "com.sun.jndi.ldap.connect.timeout";
+    private static final String READ_TIMEOUT_ENV_PARAM = "com.sun.jndi.ldap.read.timeout";
+    private static final long MAX_HEALTH_CHECK_TIMEOUT = 5000L;
+    private static final String[] NO_ATTRIBUTES = new String[] {"1.1"};
+
+    /**
+     * Single daemon thread shared by all the server sets to check the servers.
+     */
+    private static final ScheduledExecutorService HEALTH_CHECKER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "ldap-health-check");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Comparator<Server> LEAST_OUTSTANDING_FIRST = new Comparator<Server>()
+    {
+        @Override
+        public int compare(Server server1, Server server2)
+        {
+            int outstanding1 = server1.getOutstandingCount();
+            int outstanding2 = server2.getOutstandingCount();
+            return outstanding1 < outstanding2 ? -1 : (outstanding1 == outstanding2 ? 0 : 1);
+        }
+    };
+
+    private final List<Server> servers;
+    private final boolean leastOutstanding;
+    private final long healthCheckInterval;
+    private final AtomicInteger next = new AtomicInteger(0);
+    private volatile boolean closed = false;
+    private ScheduledFuture<?> healthCheckTask = null;
+
+    /**
+     * @param urls The URL of each server, the primary first.
+     * @param environment The environment used to create the connections. Its provider URL is replaced by the URL of each server.
+     * @param minIdle See {@link LDAPJNDIContextPool}. Applies to the pool of each server.
+     * @param maxTotal See {@link LDAPJNDIContextPool}. Applies to the pool of each server.
+     * @param maxWait See {@link LDAPJNDIContextPool}.
+     * @param idleTimeout See {@link LDAPJNDIContextPool}.
+     * @param loadBalancing {@link #ROUND_ROBIN} or {@link #LEAST_OUTSTANDING}.
+     * @param healthCheckInterval Milliseconds between health checks. If 0 or less, servers are only ejected when a connection fails and never re-admitted.
+     */
+    public LDAPJNDIServerSet(List<String> urls, Hashtable<String, String> environment, int minIdle, int maxTotal, long maxWait, long idleTimeout, String loadBalancing, long healthCheckInterval)
+    {
+        this.servers = new ArrayList<Server>(urls.size());
+        for (String url : urls)
+        {
+            Hashtable<String, String> serverEnvironment = new Hashtable<String, String>(environment);
+            serverEnvironment.put(Context.PROVIDER_URL, url);
+            servers.add(new Server(url, serverEnvironment, new LDAPJNDIContextPool(serverEnvironment, minIdle, maxTotal, maxWait, idleTimeout)));
+        }
+        this.leastOutstanding = LEAST_OUTSTANDING.equalsIgnoreCase(loadBalancing);
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * @param providerUrl One or more URLs separated by spaces.
+     * @return The URLs.
+     */
+    public static List<String> parseUrls(String providerUrl)
+    {
+        List<String> urls = new ArrayList<String>();
+        if (providerUrl != null)
+        {
+            for (String url : providerUrl.trim().split("\\s+"))
+            {
+                if (url.length() > 0)
+                {
+                    urls.add(url);
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Starts the pool of each server. Servers whose pool cannot be started are ejected.
+     *
+     * @throws LDAPException If no server is available.
+     */
+    public void start() throws LDAPException
+    {
+        LDAPException failure = null;
+        for (Server server : servers)
+        {
+            try
+            {
+                server.pool.start();
+            }
+            catch (LDAPException ex)
+            {
+                failure = ex;
+                eject(server, ex);
+            }
+        }
+        if (getAvailableServers().isEmpty())
+        {
+            close();
+            throw failure;
+        }
+
+        if (healthCheckInterval > 0)
+        {
+            healthCheckTask = HEALTH_CHECKER.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    checkHealth();
+                }
+            }, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Borrows a context from a server. It must be given back using {@link #release(LdapContext)} or
+     * {@link #invalidate(LdapContext)}.
+     *
+     * @param write Whether the context is used to modify entries, in which case it is borrowed from the
+     *        first available server. Otherwise the server is chosen by the load balancing policy.
+     * @return
+     * @throws LDAPException If no server can be reached or the pool of the chosen server is exhausted.
+     */
+    public LdapContext borrow(boolean write) throws LDAPException
+    {
+        if (closed)
+        {
+            throw new LDAPException("Server set is closed.");
+        }
+
+        LDAPException failure = null;
+        for (Server server : getCandidates(write))
+        {
+            try
+            {
+                LdapContext context = server.pool.borrow();
+                server.recordRequest();
+                return context;
+            }
+            catch (LDAPException ex)
+            {
+                if (!isCommunicationFailure(ex))
+                {
+                    throw ex;
+                }
+                failure = ex;
+                eject(server, ex);
+            }
+        }
+        throw failure != null ? failure : new CommunicationException("No LDAP server available.");
+    }
+
+    /**
+     * Returns a borrowed context to the pool of its server.
+     *
+     * @param context
+     */
+    public void release(LdapContext context)
+    {
+        Server server = getServer(context);
+        if (server != null)
+        {
+            server.pool.release(context);
+        }
+    }
+
+    /**
+     * Closes a borrowed context whose connection failed and ejects its server.
+     *
+     * @param context
+     */
+    public void invalidate(LdapContext context)
+    {
+        Server server = getServer(context);
+        if (server != null)
+        {
+            server.pool.invalidate(context);
+            eject(server, null);
+        }
+    }
+
+    /**
+     * @param context A borrowed context.
+     * @return The pool the context was borrowed from or null if it does not belong to this set.
+     */
+    public LDAPJNDIContextPool getPool(LdapContext context)
+    {
+        Server server = getServer(context);
+        return server != null ? server.pool : null;
+    }
+
+    /**
+     * Reads the root DSE of every server over a new connection, ejecting the servers that do not
+     * answer and re-admitting the ones that answer again.
+     */
+    public void checkHealth()
+    {
+        for (Server server : servers)
+        {
+            if (closed)
+            {
+                return;
+            }
+            NamingException failure = probe(server);
+            if (failure == null)
+            {
+                readmit(server);
+            }
+            else
+            {
+                eject(server, LDAPException.create(failure));
+            }
+        }
+    }
+
+    /**
+     * Stops the health checks and closes the pool of every server.
+     */
+    public void close()
+    {
+        closed = true;
+        if (healthCheckTask != null)
+        {
+            healthCheckTask.cancel(false);
+            healthCheckTask = null;
+        }
+        for (Server server : servers)
+        {
+            server.pool.close();
+            if (server.statistics != null)
+            {
+                server.statistics.removeServer(server);
+            }
+        }
+    }
+
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * @return The servers, in the order they were configured.
+     */
+    public List<Server> getServers()
+    {
+        return Collections.unmodifiableList(servers);
+    }
+
+    /**
+     * @param statistics Where the requests, ejections and pool gauges of each server are recorded. Null to disable it.
+     */
+    public void setStatistics(LDAPStatistics statistics)
+    {
+        for (Server server : servers)
+        {
+            if (server.statistics != null)
+            {
+                server.statistics.removeServer(server);
+            }
+            server.statistics = statistics != null ? statistics.getServer(server.url) : null;
+            server.pool.setStatistics(statistics != null ? statistics.getPool() : null);
+            if (server.statistics != null)
+            {
+                server.statistics.addServer(server);
+            }
+        }
+    }
+
+    /*
+     * Available servers first (ordered by the load balancing policy unless writing), then the ejected ones as last resort.
+     */
+    private List<Server> getCandidates(boolean write)
+    {
+        List<Server> candidates = getAvailableServers();
+        if (!write && candidates.size() > 1)
+        {
+            Collections.rotate(candidates, -((next.getAndIncrement() & Integer.MAX_VALUE) % candidates.size()));
+            if (leastOutstanding)
+            {
+                // Stable, so ties are still rotated
+                Collections.sort(candidates, LEAST_OUTSTANDING_FIRST);
+            }
+        }
+        for (Server server : servers)
+        {
+            if (!server.isAvailable())
+            {
+                candidates.add(server);
+            }
+        }
+        return candidates;
+    }
+
+    private List<Server> getAvailableServers()
+    {
+        List<Server> available = new ArrayList<Server>(servers.size());
+        for (Server server : servers)
+        {
+            if (server.isAvailable())
+            {
+                available.add(server);
+            }
+        }
+        return available;
+    }
+
+    private Server getServer(LdapContext context)
+    {
+        for (Server server : servers)
+        {
+            if (server.pool.isActive(context))
+            {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    private void eject(Server server, LDAPException cause)
+    {
+        if (server.available.compareAndSet(true, false))
+        {
+            // Idle connections to the server are most probably broken as well
+            int cleared = server.pool.clear();
+            server.ejections.incrementAndGet();
+            if (server.statistics != null)
+            {
+                server.statistics.recordEjection();
+            }
+            logger.warn("Ejected LDAP server " + server.url + (cause != null ? ": " + cause.getMessage() : "") + " (closed " + cleared + " idle connections)");
+        }
+    }
+
+    private void readmit(Server server)
+    {
+        if (server.available.compareAndSet(false, true))
+        {
+            if (server.statistics != null)
+            {
+                server.statistics.recordReadmission();
+            }
+            logger.info("Re-admitted LDAP server " + server.url);
+        }
+    }
+
+    private NamingException probe(Server server)
+    {
+        Hashtable<String, String> environment = new Hashtable<String, String>(server.environment);
+        String timeout = String.valueOf(Math.min(healthCheckInterval > 0 ? healthCheckInterval : MAX_HEALTH_CHECK_TIMEOUT, MAX_HEALTH_CHECK_TIMEOUT));
+        if (!environment.containsKey(CONNECT_TIMEOUT_ENV_PARAM))
+        {
+            environment.put(CONNECT_TIMEOUT_ENV_PARAM, timeout);
+        }
+        if (!environment.containsKey(READ_TIMEOUT_ENV_PARAM))
+        {
+            environment.put(READ_TIMEOUT_ENV_PARAM, timeout);
+        }
+
+        LdapContext context = null;
+        try
+        {
+            context = new InitialLdapContext(environment, null);
+            context.getAttributes("", NO_ATTRIBUTES);
+            return null;
+        }
+        catch (NamingException nex)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Health check of LDAP server " + server.url + " failed: " + nex.getMessage());
+            }
+            return nex;
+        }
+        finally
+        {
+            if (context != null)
+            {
+                try
+                {
+                    context.close();
+                }
+                catch (NamingException nex)
+                {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private static boolean isCommunicationFailure(LDAPException ex)
+    {
+        return ex instanceof CommunicationException || ex.getCause() instanceof ServiceUnavailableException
+               || ex.getCause() instanceof javax.naming.CommunicationException;
+    }
+
+    /**
+     * A server of the set.
+     */
+    public static class Server implements ServerMetrics
+    {
+        private final String url;
+        private final Hashtable<String, String> environment;
+        private final LDAPJNDIContextPool pool;
+        private final AtomicBoolean available = new AtomicBoolean(true);
+        private final AtomicLong requests = new AtomicLong(0);
+        private final AtomicLong ejections = new AtomicLong(0);
+        private volatile ServerStatistics statistics = null;
+
+        Server(String url, Hashtable<String, String> environment, LDAPJNDIContextPool pool)
+        {
+            this.url = url;
+            this.environment = environment;
+            this.pool = pool;
+        }
+
+        public String getUrl()
+        {
+            return url;
+        }
+
+        public LDAPJNDIContextPool getPool()
+        {
+            return pool;
+        }
+
+        @Override
+        public boolean isAvailable()
+        {
+            return available.get();
+        }
+
+        /**
+         * @return Borrowed connections plus requests waiting for one.
+         */
+        @Override
+        public int getOutstandingCount()
+        {
+            return pool.getActiveCount() + pool.getWaitersCount();
+        }
+
+        /**
+         * @return The amount of connections borrowed from this server.
+         */
+        public long getRequestCount()
+        {
+            return requests.get();
+        }
+
+        /**
+         * @return The amount of times this server was ejected.
+         */
+        public long getEjectionCount()
+        {
+            return ejections.get();
+        }
+
+        private void recordRequest()
+        {
+            requests.incrementAndGet();
+            ServerStatistics currentStatistics = this.statistics;
+            if (currentStatistics != null)
+            {
+                currentStatistics.recordRequest();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return url + (isAvailable() ? "" : " (ejected)");
+        }
+    }
+}
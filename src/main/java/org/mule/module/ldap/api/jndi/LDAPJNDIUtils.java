@@ -9,28 +9,38 @@
 package org.mule.module.ldap.api.jndi;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import javax.naming.InvalidNameException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchControls;
 import javax.naming.ldap.Control;
-import javax.naming.ldap.LdapName;
 import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.SortControl;
+import javax.naming.ldap.SortKey;
 
+import org.mule.module.ldap.api.LDAPDnIndex;
 import org.mule.module.ldap.api.LDAPEntry;
 import org.mule.module.ldap.api.LDAPEntryAttribute;
+import org.mule.module.ldap.api.LDAPEntryAttributes;
 import org.mule.module.ldap.api.LDAPException;
 import org.mule.module.ldap.api.LDAPMultiValueEntryAttribute;
 import org.mule.module.ldap.api.LDAPSearchControls;
 import org.mule.module.ldap.api.LDAPSingleValueEntryAttribute;
+import org.mule.module.ldap.api.LDAPSortKey;
 
 public class LDAPJNDIUtils
 {
 
+    /*
+     * Index of the last list of values checked with containsDnValue.
+     */
+    private static volatile DnValuesIndex lastDnValues = null;
+
     /**
      * 
      */
@@ -49,12 +59,14 @@ public class LDAPJNDIUtils
         LDAPEntry anEntry = new LDAPEntry(entryDN);
         if (attributes != null)
         {
+            LDAPEntryAttributes entryAttributes = new LDAPEntryAttributes(attributes.size());
             try
             {
                 for (NamingEnumeration<?> attrs = attributes.getAll(); attrs.hasMore();)
                 {
-                    anEntry.addAttribute(buildAttribute((Attribute) attrs.nextElement()));
+                    addAttribute(entryAttributes, (Attribute) attrs.nextElement());
                 }
+                anEntry.setAttributes(entryAttributes);
             }
             catch (NamingException nex)
             {
@@ -64,6 +76,43 @@ public class LDAPJNDIUtils
         return anEntry;
     }    
     
+    /**
+     * Builds an entry whose attributes are converted the first time they are requested.
+     * 
+     * @param entryDN
+     * @param attributes
+     * @return
+     * @see LazyLDAPEntryAttributes
+     */
+    public static LDAPEntry buildLazyEntry(String entryDN, Attributes attributes)
+    {
+        LDAPEntry anEntry = new LDAPEntry(entryDN);
+        anEntry.setAttributes(new LazyLDAPEntryAttributes(attributes));
+        return anEntry;
+    }
+    
+    /**
+     * @param target
+     * @param attribute
+     * @throws NamingException
+     */
+    static void addAttribute(LDAPEntryAttributes target, Attribute attribute) throws NamingException
+    {
+        if (attribute.size() > 1)
+        {
+            List<Object> values = new ArrayList<Object>(attribute.size());
+            for (NamingEnumeration<?> it = attribute.getAll(); it.hasMore();)
+            {
+                values.add(it.next());
+            }
+            target.addMultiValueAttribute(attribute.getID(), values);
+        }
+        else
+        {
+            target.addSingleValueAttribute(attribute.getID(), attribute.get());
+        }
+    }
+    
     /**
      * @param attribute
      * @return
@@ -116,27 +165,45 @@ public class LDAPJNDIUtils
     {
         try
         {
+            List<Control> requestControls = new ArrayList<Control>(2);
+            if(controls.isOrderBySet())
+            {
+                requestControls.add(buildSortControl(controls.getSortKeys()));
+            }
             if(controls.isPagingEnabled())
             {
                 if(cookie != null)
                 {
-                    return new Control[] {new PagedResultsControl(controls.getPageSize(), cookie, Control.CRITICAL)};
+                    requestControls.add(new PagedResultsControl(controls.getPageSize(), cookie, Control.CRITICAL));
                 }
                 else
                 {
-                    return new Control[] {new PagedResultsControl(controls.getPageSize(), Control.CRITICAL)};
+                    requestControls.add(new PagedResultsControl(controls.getPageSize(), Control.CRITICAL));
                 }
             }
-            else
-            {
-                return new Control[0];
-            }
+            return requestControls.toArray(new Control[requestControls.size()]);
         }
         catch(IOException ex)
         {
             throw new LDAPException("Could not create request paging controls", ex);
         }
     }    
+
+    /**
+     * @param keys
+     * @return A critical server side sort control (RFC 2891) for the given keys.
+     * @throws IOException
+     */
+    public static SortControl buildSortControl(List<LDAPSortKey> keys) throws IOException
+    {
+        SortKey[] sortKeys = new SortKey[keys.size()];
+        for(int i = 0; i < sortKeys.length; i++)
+        {
+            LDAPSortKey key = keys.get(i);
+            sortKeys[i] = new SortKey(key.getAttributeName(), !key.isReverseOrder(), key.getMatchingRule());
+        }
+        return new SortControl(sortKeys, Control.CRITICAL);
+    }
     
     /**
      * @param controls
@@ -177,43 +244,74 @@ public class LDAPJNDIUtils
      * Whether the list of values contains a given DN. You can use this
      * method to evaluate if a multi value attribute that holds DNs contains
      * a given DN. 
+     * <p/>
+     * The values are normalized into a {@link LDAPDnIndex} that is reused
+     * while the same list is checked again and still holds the same values,
+     * so repeated checks against a group's members only normalize the DN.
      * @param dn
      * @param values
      * @return
      */
     public static boolean containsDnValue(String dn, List<Object> values)
     {
-        LdapName normalizedDn = toLdapName(dn);
-        if(normalizedDn != null && values != null && values.size() > 0)
+        if(values == null || values.isEmpty())
         {
-            for(Object value : values)
-            {
-                if(value instanceof String)
-                {
-                    if(normalizedDn.equals(toLdapName((String) value)))
-                    {
-                        return true;
-                    }
-                }
-            }
             return false;
         }
-        else
+        
+        DnValuesIndex cached = lastDnValues;
+        if(cached == null || !cached.isIndexOf(values))
         {
-            return false;
+            cached = new DnValuesIndex(values);
+            lastDnValues = cached;
         }
+        return containsDnValue(dn, cached.index);
     }
-    
-    private static LdapName toLdapName(String dn) {
-        try
+
+    /**
+     * Whether the index contains a given DN, with a single hash lookup.
+     * @param dn
+     * @param index
+     * @return
+     */
+    public static boolean containsDnValue(String dn, LDAPDnIndex index)
+    {
+        return index != null && index.contains(dn);
+    }
+
+    /*
+     * LDAPDnIndex built from a list of values, along with the values it was
+     * built from. Values are immutable strings, so comparing them by reference
+     * is enough to tell if the list changed since then.
+     */
+    private static class DnValuesIndex
+    {
+        private final List<Object> values;
+        private final Object[] snapshot;
+        private final LDAPDnIndex index;
+
+        DnValuesIndex(List<Object> values)
         {
-            return new LdapName(dn);
+            this.values = values;
+            this.snapshot = values.toArray();
+            this.index = new LDAPDnIndex(Arrays.asList(this.snapshot));
         }
-        catch (InvalidNameException e)
+
+        boolean isIndexOf(List<Object> other)
         {
-            return null;
-        }         
+            if(other != values || other.size() != snapshot.length)
+            {
+                return false;
+            }
+            int i = 0;
+            for(Object value : other)
+            {
+                if(value != snapshot[i++])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
-
-
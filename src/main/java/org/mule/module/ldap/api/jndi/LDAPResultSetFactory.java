@@ -36,14 +36,31 @@ public class LDAPResultSetFactory
      * @return
      */
     public static LDAPResultSet create(String baseDn, String filter, Object[] filterArgs, LdapContext conn, LDAPSearchControls controls, NamingEnumeration<SearchResult> entries)
+    {
+        return create(baseDn, filter, filterArgs, conn, controls, entries, null, null);
+    }
+
+    /**
+     * 
+     * @param baseDn
+     * @param filter
+     * @param filterArgs
+     * @param conn
+     * @param controls
+     * @param entries
+     * @param pool The pool <i>pooledConn</i> was borrowed from or null if the connection is not pooled.
+     * @param pooledConn The pooled connection that should be given back to the pool when the result set is closed.
+     * @return
+     */
+    public static LDAPResultSet create(String baseDn, String filter, Object[] filterArgs, LdapContext conn, LDAPSearchControls controls, NamingEnumeration<SearchResult> entries, LDAPJNDIContextPool pool, LdapContext pooledConn)
     {
         if(controls.isPagingEnabled())
         {
-            return new PagedLDAPResultSet(baseDn, filter, filterArgs, conn, controls, entries);
+            return new PagedLDAPResultSet(baseDn, filter, filterArgs, conn, controls, entries, pool, pooledConn);
         }
         else
         {
-            return new SimpleLDAPResultSet(baseDn, conn, controls, entries);
+            return new SimpleLDAPResultSet(baseDn, conn, controls, entries, pool, pooledConn);
         }
     }
     
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+import org.mule.module.ldap.api.LDAPEntryAttributes;
+
+/**
+ * {@link LDAPEntryAttributes} that wraps the JNDI {@link Attributes} of a search result and
+ * converts each attribute the first time it is requested. All the remaining attributes are
+ * converted when the attributes are iterated, counted or serialized (for example by
+ * {@link org.mule.module.ldap.api.LDAPEntry#toMap()} or
+ * {@link org.mule.module.ldap.api.LDAPEntry#toLDIFString()}).
+ * <p/>
+ * Like {@link LDAPEntryAttributes}, it is not thread safe.
+ *
+ * @author mariano
+ */
+public class LazyLDAPEntryAttributes extends LDAPEntryAttributes
+{
+    private static final long serialVersionUID = -4101457604498651287L;
+
+    private transient Attributes source;
+
+    /**
+     * @param source The JNDI attributes. They are removed from it as they are converted.
+     */
+    public LazyLDAPEntryAttributes(Attributes source)
+    {
+        super(source != null ? source.size() : 0);
+        this.source = source != null && source.size() > 0 ? source : null;
+    }
+
+    /**
+     * @return The amount of attributes that were not converted yet.
+     */
+    public int getPendingCount()
+    {
+        return source != null ? source.size() : 0;
+    }
+
+    /**
+     * @see org.mule.module.ldap.api.LDAPEntryAttributes#resetAttributes()
+     */
+    @Override
+    public void resetAttributes()
+    {
+        source = null;
+        super.resetAttributes();
+    }
+
+    /**
+     * @param name
+     * @see org.mule.module.ldap.api.LDAPEntryAttributes#loadAttribute(java.lang.String)
+     */
+    @Override
+    protected void loadAttribute(String name)
+    {
+        if (source != null)
+        {
+            // Removed before converting it, as adding it looks it up again
+            Attribute attribute = source.remove(name);
+            if (source.size() == 0)
+            {
+                source = null;
+            }
+            if (attribute != null)
+            {
+                convert(attribute);
+            }
+        }
+    }
+
+    /**
+     * @see org.mule.module.ldap.api.LDAPEntryAttributes#loadAttributes()
+     */
+    @Override
+    protected void loadAttributes()
+    {
+        if (source != null)
+        {
+            Attributes pending = source;
+            source = null;
+            try
+            {
+                for (NamingEnumeration<? extends Attribute> attrs = pending.getAll(); attrs.hasMore();)
+                {
+                    convert(attrs.next());
+                }
+            }
+            catch (NamingException nex)
+            {
+                throw new IllegalStateException("Could not read LDAP entry attributes.", nex);
+            }
+        }
+    }
+
+    private void convert(Attribute attribute)
+    {
+        try
+        {
+            LDAPJNDIUtils.addAttribute(this, attribute);
+        }
+        catch (NamingException nex)
+        {
+            throw new IllegalStateException("Could not read LDAP entry attribute " + attribute.getID() + ".", nex);
+        }
+    }
+}
@@ -24,10 +24,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mule.module.ldap.api.LDAPEntry;
 import org.mule.module.ldap.api.LDAPException;
-import org.mule.module.ldap.api.LDAPResultSet;
 import org.mule.module.ldap.api.LDAPSearchControls;
+import org.mule.module.ldap.api.stats.PagedSearchStatistics;
 
-public class PagedLDAPResultSet implements LDAPResultSet
+public class PagedLDAPResultSet implements DnLDAPResultSet
 {
     protected final Log logger = LogFactory.getLog(getClass());
 
@@ -36,15 +36,29 @@ public class PagedLDAPResultSet implements LDAPResultSet
     private Object[] filterArgs;
     private LdapContext conn;
     private LDAPSearchControls controls;
+    private LDAPJNDIContextPool pool;
+    private LdapContext pooledConn;
     
     private NamingEnumeration<SearchResult> entries = null;
     
     private byte[] cookie = null;
     
+    private PagedSearchStatistics statistics = null;
+    private long pagesFetched = 1;
+    private long entriesFetched = 0;
+    
     /**
      * 
      */
     public PagedLDAPResultSet(String baseDn, String filter, Object[] filterArgs, LdapContext conn, LDAPSearchControls controls, NamingEnumeration<SearchResult> entries)
+    {
+        this(baseDn, filter, filterArgs, conn, controls, entries, null, null);
+    }
+
+    /**
+     * 
+     */
+    public PagedLDAPResultSet(String baseDn, String filter, Object[] filterArgs, LdapContext conn, LDAPSearchControls controls, NamingEnumeration<SearchResult> entries, LDAPJNDIContextPool pool, LdapContext pooledConn)
     {
         this.baseDn = baseDn;
         this.filter = filter;
@@ -52,6 +66,8 @@ public class PagedLDAPResultSet implements LDAPResultSet
         this.controls = controls;
         this.conn = conn;
         this.entries = entries;
+        this.pool = pool;
+        this.pooledConn = pooledConn;
     }
     
     /**
@@ -61,6 +77,12 @@ public class PagedLDAPResultSet implements LDAPResultSet
     @Override
     public void close() throws LDAPException
     {
+        if(this.statistics != null)
+        {
+            this.statistics.record(pagesFetched, entriesFetched);
+            this.statistics = null;
+        }
+        
         try
         {
             closeResultSet();
@@ -80,8 +102,23 @@ public class PagedLDAPResultSet implements LDAPResultSet
                 finally
                 {
                     this.conn = null;
+                    releasePooledConnection();
                 }
             }
+            else
+            {
+                releasePooledConnection();
+            }
+        }
+    }
+
+    private void releasePooledConnection()
+    {
+        if(this.pool != null)
+        {
+            this.pool.release(this.pooledConn);
+            this.pool = null;
+            this.pooledConn = null;
         }
     }
 
@@ -123,12 +160,41 @@ public class PagedLDAPResultSet implements LDAPResultSet
                 {
                     entryDn += "," + baseDn;
                 }
-                return LDAPJNDIUtils.buildEntry(entryDn, searchResult.getAttributes());
+                entriesFetched++;
+                return this.controls.isLazyAttributes() ? LDAPJNDIUtils.buildLazyEntry(entryDn, searchResult.getAttributes()) : LDAPJNDIUtils.buildEntry(entryDn, searchResult.getAttributes());
+            }
+        }
+        throw new NoSuchElementException();
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.jndi.DnLDAPResultSet#nextDn()
+     */
+    @Override
+    public String nextDn() throws LDAPException
+    {
+        if(hasNext()) // Force navigating to next page
+        {
+            SearchResult searchResult = this.entries.nextElement();
+            if (searchResult != null)
+            {
+                entriesFetched++;
+                return searchResult.isRelative() ? searchResult.getName() + "," + baseDn : searchResult.getName();
             }
         }
         throw new NoSuchElementException();
     }
 
+    /**
+     * @param statistics Where the amount of pages and entries fetched is recorded when this result set is closed.
+     */
+    public void setStatistics(PagedSearchStatistics statistics)
+    {
+        this.statistics = statistics;
+    }
+
     private void getNextPage() throws LDAPException
     {
         try
@@ -144,6 +210,7 @@ public class PagedLDAPResultSet implements LDAPResultSet
             {
                 this.entries = this.conn.search(baseDn, filter, LDAPJNDIUtils.buildSearchControls(controls));
             }
+            pagesFetched++;
         }
         catch(NamingException nex)
         {
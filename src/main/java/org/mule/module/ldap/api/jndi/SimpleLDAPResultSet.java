@@ -22,25 +22,39 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mule.module.ldap.api.LDAPEntry;
 import org.mule.module.ldap.api.LDAPException;
-import org.mule.module.ldap.api.LDAPResultSet;
 import org.mule.module.ldap.api.LDAPSearchControls;
 
-public class SimpleLDAPResultSet implements LDAPResultSet
+public class SimpleLDAPResultSet implements DnLDAPResultSet
 {
     protected final Log logger = LogFactory.getLog(getClass());
 
     private NamingEnumeration<SearchResult> entries = null;
     private String baseDn = null;
     private LDAPSearchControls controls = null;
+    private LdapContext conn = null;
+    private LDAPJNDIContextPool pool = null;
+    private LdapContext pooledConn = null;
     
     /**
      * 
      */
     public SimpleLDAPResultSet(String baseDn, LdapContext conn, LDAPSearchControls controls, NamingEnumeration<SearchResult> entries)
+    {
+        this(baseDn, conn, controls, entries, null, null);
+    }
+
+    /**
+     * 
+     */
+    public SimpleLDAPResultSet(String baseDn, LdapContext conn, LDAPSearchControls controls, NamingEnumeration<SearchResult> entries, LDAPJNDIContextPool pool, LdapContext pooledConn)
     {
         this.entries = entries;
         this.baseDn = baseDn;
         this.controls = controls;
+        // Contexts created with request controls (for example for sorting) are owned by the result set
+        this.conn = pooledConn != null && conn != pooledConn ? conn : null;
+        this.pool = pool;
+        this.pooledConn = pooledConn;
     }
 
     /**
@@ -84,7 +98,7 @@ public class SimpleLDAPResultSet implements LDAPResultSet
             {
                 entryDn += "," + baseDn;
             }
-            return LDAPJNDIUtils.buildEntry(entryDn, searchResult.getAttributes());
+            return this.controls.isLazyAttributes() ? LDAPJNDIUtils.buildLazyEntry(entryDn, searchResult.getAttributes()) : LDAPJNDIUtils.buildEntry(entryDn, searchResult.getAttributes());
         }
         else
         {
@@ -92,6 +106,25 @@ public class SimpleLDAPResultSet implements LDAPResultSet
         }
     }
 
+    /**
+     * 
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.jndi.DnLDAPResultSet#nextDn()
+     */
+    @Override
+    public String nextDn() throws LDAPException
+    {
+        SearchResult searchResult = this.entries.nextElement();
+        if (searchResult != null)
+        {
+            return searchResult.isRelative() ? searchResult.getName() + "," + baseDn : searchResult.getName();
+        }
+        else
+        {
+            throw new NoSuchElementException();
+        }
+    }
 
     /**
      * @throws LDAPException
@@ -114,6 +147,27 @@ public class SimpleLDAPResultSet implements LDAPResultSet
         finally
         {
             this.entries = null;
+            if(this.conn != null)
+            {
+                try
+                {
+                    this.conn.close();
+                }
+                catch(NamingException nex)
+                {
+                    logger.warn("Could not close search connection.", nex);
+                }
+                finally
+                {
+                    this.conn = null;
+                }
+            }
+            if(this.pool != null)
+            {
+                this.pool.release(this.pooledConn);
+                this.pool = null;
+                this.pooledConn = null;
+            }
         }
     }
 
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.naming.ldap.BasicControl;
+
+/**
+ * Virtual list view request control (draft-ietf-ldapext-ldapv3-vlv) selecting a window of the
+ * sorted search results by offset. It must be sent together with a server side sort control.
+ * <p/>
+ * <pre>
+ * VirtualListViewRequest ::= SEQUENCE {
+ *     beforeCount    INTEGER (0..maxInt),
+ *     afterCount     INTEGER (0..maxInt),
+ *     target CHOICE {
+ *         byOffset [0] SEQUENCE {
+ *             offset          INTEGER (1 .. maxInt),
+ *             contentCount    INTEGER (0 .. maxInt) },
+ *         greaterThanOrEqual [1] AssertionValue },
+ *     contextID      OCTET STRING OPTIONAL }
+ * </pre>
+ *
+ * @author mariano
+ */
+public class VirtualListViewControl extends BasicControl
+{
+    private static final long serialVersionUID = -2871426183461502718L;
+
+    public static final String OID = "2.16.840.1.113730.3.4.9";
+
+    private static final int SEQUENCE_TAG = 0x30;
+    private static final int INTEGER_TAG = 0x02;
+    private static final int OCTET_STRING_TAG = 0x04;
+    private static final int BY_OFFSET_TAG = 0xA0;
+
+    /**
+     * @param offset Position (starting at 1) of the first entry of the window.
+     * @param count Amount of entries of the window.
+     * @param contextId Context returned by the server in the previous response or null.
+     */
+    public VirtualListViewControl(long offset, int count, byte[] contextId)
+    {
+        super(OID, CRITICAL, encode(offset, count, contextId));
+    }
+
+    private static byte[] encode(long offset, int count, byte[] contextId)
+    {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        writeInteger(target, offset);
+        // The content count is unknown, so the server uses its own estimate (offset is absolute)
+        writeInteger(target, 0);
+
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        writeInteger(request, 0);
+        writeInteger(request, count - 1);
+        writeElement(request, BY_OFFSET_TAG, target.toByteArray());
+        if (contextId != null)
+        {
+            writeElement(request, OCTET_STRING_TAG, contextId);
+        }
+
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        writeElement(value, SEQUENCE_TAG, request.toByteArray());
+        return value.toByteArray();
+    }
+
+    private static void writeInteger(ByteArrayOutputStream out, long value)
+    {
+        int length = 1;
+        while (length < 8 && (value >> (length * 8 - 1)) != 0 && (value >> (length * 8 - 1)) != -1)
+        {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[length - 1 - i] = (byte) (value >> (i * 8));
+        }
+        writeElement(out, INTEGER_TAG, bytes);
+    }
+
+    private static void writeElement(ByteArrayOutputStream out, int tag, byte[] content)
+    {
+        out.write(tag);
+        if (content.length < 0x80)
+        {
+            out.write(content.length);
+        }
+        else
+        {
+            int lengthBytes = content.length > 0xFFFFFF ? 4 : content.length > 0xFFFF ? 3 : content.length > 0xFF ? 2 : 1;
+            out.write(0x80 | lengthBytes);
+            for (int i = lengthBytes - 1; i >= 0; i--)
+            {
+                out.write(content.length >> (i * 8));
+            }
+        }
+        out.write(content, 0, content.length);
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPException;
+import org.mule.module.ldap.api.LDAPResultSet;
+import org.mule.module.ldap.api.LDAPSearchControls;
+
+/**
+ * Reads a window of sorted search results (see {@link LDAPSearchControls#getOffset()} and
+ * {@link LDAPSearchControls#getWindowSize()}) using the virtual list view control, so the skipped
+ * entries are never sent by the LDAP server. The window is requested in chunks of the search page
+ * size.
+ *
+ * @author mariano
+ */
+public class VirtualListViewLDAPResultSet implements LDAPResultSet
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    private String baseDn;
+    private String filter;
+    private LdapContext conn;
+    private LDAPSearchControls controls;
+    private LDAPJNDIContextPool pool;
+    private LdapContext pooledConn;
+
+    private Control sortControl;
+    private int chunkSize;
+    private long position;
+    private long remaining;
+    private byte[] contextId = null;
+    private boolean lastChunk = false;
+    private Iterator<SearchResult> entries = null;
+
+    /**
+     * @param baseDn
+     * @param filter
+     * @param conn Context owned by this result set.
+     * @param controls Search controls with the order by, offset and window size.
+     * @param pool The pool <i>pooledConn</i> was borrowed from or null if the connection is not pooled.
+     * @param pooledConn The pooled connection that should be given back to the pool when the result set is closed.
+     * @throws LDAPException
+     */
+    public VirtualListViewLDAPResultSet(String baseDn, String filter, LdapContext conn, LDAPSearchControls controls, LDAPJNDIContextPool pool, LdapContext pooledConn) throws LDAPException
+    {
+        this.baseDn = baseDn;
+        this.filter = filter;
+        this.conn = conn;
+        this.pool = pool;
+        this.pooledConn = pooledConn;
+        this.position = controls.getOffset() + 1;
+        this.remaining = controls.getWindowSize() > 0 ? controls.getWindowSize() : -1;
+        if (controls.getMaxResults() > 0)
+        {
+            long available = Math.max(controls.getMaxResults() - controls.getOffset(), 0);
+            this.remaining = this.remaining < 0 ? available : Math.min(this.remaining, available);
+        }
+        this.chunkSize = controls.isPagingEnabled() ? controls.getPageSize() : DEFAULT_CHUNK_SIZE;
+
+        // Paging and virtual list view controls cannot be combined and each chunk is already limited
+        this.controls = new LDAPSearchControls(controls);
+        this.controls.setPageSize(0);
+        this.controls.setMaxResults(0);
+        try
+        {
+            this.sortControl = LDAPJNDIUtils.buildSortControl(controls.getSortKeys());
+        }
+        catch (IOException ex)
+        {
+            throw new LDAPException("Could not create sort control", ex);
+        }
+    }
+
+    /**
+     * Requests the first chunk of the window.
+     *
+     * @return False if the LDAP server could not provide the window (for example because it has no
+     *         virtual list view index for the search), in which case this result set should be closed.
+     * @throws NamingException
+     * @throws LDAPException
+     */
+    boolean start() throws NamingException, LDAPException
+    {
+        VirtualListViewResponseControl response = fetchNextChunk();
+        if (response != null && response.getResult() != VirtualListViewResponseControl.SUCCESS)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Virtual list view request for " + filter + " under " + baseDn + " failed with result code " + response.getResult());
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private VirtualListViewResponseControl fetchNextChunk() throws NamingException, LDAPException
+    {
+        int count = remaining < 0 ? chunkSize : (int) Math.min(chunkSize, remaining);
+        if (count <= 0)
+        {
+            lastChunk = true;
+            entries = null;
+            return null;
+        }
+
+        conn.setRequestControls(new Control[] {sortControl, new VirtualListViewControl(position, count, contextId)});
+        List<SearchResult> chunk = new ArrayList<SearchResult>(count);
+        NamingEnumeration<SearchResult> results = conn.search(baseDn, filter, LDAPJNDIUtils.buildSearchControls(controls));
+        try
+        {
+            while (results.hasMore())
+            {
+                chunk.add(results.next());
+            }
+        }
+        finally
+        {
+            results.close();
+        }
+
+        VirtualListViewResponseControl response = VirtualListViewResponseControl.find(conn.getResponseControls());
+        if (response == null)
+        {
+            throw new LDAPException("LDAP server did not return the virtual list view response control");
+        }
+        if (response.getResult() == VirtualListViewResponseControl.SUCCESS)
+        {
+            contextId = response.getContextId();
+            // If the offset is beyond the end of the list the server returns the last entries instead
+            int skip = (int) Math.min(Math.max(position - response.getTargetPosition(), 0), chunk.size());
+            lastChunk = chunk.size() < count || skip > 0;
+            position = response.getTargetPosition() + chunk.size();
+            entries = chunk.subList(skip, chunk.size()).iterator();
+        }
+        return response;
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#hasNext()
+     */
+    @Override
+    public boolean hasNext() throws LDAPException
+    {
+        try
+        {
+            while (entries != null && !entries.hasNext() && !lastChunk)
+            {
+                VirtualListViewResponseControl response = fetchNextChunk();
+                if (response != null && response.getResult() != VirtualListViewResponseControl.SUCCESS)
+                {
+                    throw new LDAPException("Virtual list view request failed with result code " + response.getResult());
+                }
+            }
+            return entries != null && entries.hasNext() && remaining != 0;
+        }
+        catch (NamingException nex)
+        {
+            throw LDAPException.create(nex);
+        }
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#next()
+     */
+    @Override
+    public LDAPEntry next() throws LDAPException
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        SearchResult searchResult = entries.next();
+        if (remaining > 0)
+        {
+            remaining--;
+        }
+        String entryDn = searchResult.getName();
+        if (searchResult.isRelative())
+        {
+            entryDn += "," + baseDn;
+        }
+        return controls.isLazyAttributes() ? LDAPJNDIUtils.buildLazyEntry(entryDn, searchResult.getAttributes()) : LDAPJNDIUtils.buildEntry(entryDn, searchResult.getAttributes());
+    }
+
+    /**
+     * @return
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#getAllEntries()
+     */
+    @Override
+    public List<LDAPEntry> getAllEntries() throws LDAPException
+    {
+        List<LDAPEntry> allEntries = new ArrayList<LDAPEntry>();
+        while (hasNext())
+        {
+            allEntries.add(next());
+        }
+        return allEntries;
+    }
+
+    /**
+     * @throws LDAPException
+     * @see org.mule.module.ldap.api.LDAPResultSet#close()
+     */
+    @Override
+    public void close() throws LDAPException
+    {
+        entries = null;
+        try
+        {
+            if (conn != null)
+            {
+                conn.close();
+            }
+        }
+        catch (NamingException nex)
+        {
+            throw LDAPException.create(nex);
+        }
+        finally
+        {
+            conn = null;
+            if (pool != null)
+            {
+                pool.release(pooledConn);
+                pool = null;
+                pooledConn = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import javax.naming.ldap.Control;
+
+import org.mule.module.ldap.api.LDAPException;
+
+/**
+ * Virtual list view response control (draft-ietf-ldapext-ldapv3-vlv) returned by the LDAP server
+ * after a search with a {@link VirtualListViewControl}.
+ * <p/>
+ * <pre>
+ * VirtualListViewResponse ::= SEQUENCE {
+ *     targetPosition    INTEGER (0 .. maxInt),
+ *     contentCount      INTEGER (0 .. maxInt),
+ *     virtualListViewResult ENUMERATED { ... },
+ *     contextID         OCTET STRING OPTIONAL }
+ * </pre>
+ *
+ * @author mariano
+ */
+public class VirtualListViewResponseControl
+{
+    public static final String OID = "2.16.840.1.113730.3.4.10";
+
+    public static final int SUCCESS = 0;
+
+    private final long targetPosition;
+    private final long contentCount;
+    private final int result;
+    private final byte[] contextId;
+
+    private final byte[] value;
+    private int position = 0;
+
+    /**
+     * @param encodedValue BER encoded value of the response control.
+     * @throws LDAPException If the value cannot be decoded.
+     */
+    public VirtualListViewResponseControl(byte[] encodedValue) throws LDAPException
+    {
+        this.value = encodedValue;
+        try
+        {
+            int end = readHeader(0x30);
+            end += position;
+            this.targetPosition = readInteger(0x02);
+            this.contentCount = readInteger(0x02);
+            this.result = (int) readInteger(0x0A);
+            if (position < end)
+            {
+                int length = readHeader(0x04);
+                this.contextId = new byte[length];
+                System.arraycopy(value, position, this.contextId, 0, length);
+            }
+            else
+            {
+                this.contextId = null;
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException ex)
+        {
+            throw new LDAPException("Invalid virtual list view response control", ex);
+        }
+    }
+
+    /**
+     * @param controls Response controls of a search.
+     * @return The virtual list view response control or null if the controls do not include it.
+     * @throws LDAPException
+     */
+    public static VirtualListViewResponseControl find(Control[] controls) throws LDAPException
+    {
+        if (controls != null)
+        {
+            for (Control control : controls)
+            {
+                if (OID.equals(control.getID()))
+                {
+                    return new VirtualListViewResponseControl(control.getEncodedValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    private int readHeader(int expectedTag) throws LDAPException
+    {
+        int tag = value[position++] & 0xFF;
+        if (tag != expectedTag)
+        {
+            throw new LDAPException("Invalid virtual list view response control. Unexpected tag " + tag);
+        }
+        int length = value[position++] & 0xFF;
+        if ((length & 0x80) != 0)
+        {
+            int lengthBytes = length & 0x7F;
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++)
+            {
+                length = (length << 8) | (value[position++] & 0xFF);
+            }
+        }
+        return length;
+    }
+
+    private long readInteger(int expectedTag) throws LDAPException
+    {
+        int length = readHeader(expectedTag);
+        // Two's complement big endian
+        long integer = value[position] < 0 ? -1 : 0;
+        for (int i = 0; i < length; i++)
+        {
+            integer = (integer << 8) | (value[position++] & 0xFF);
+        }
+        return integer;
+    }
+
+    /**
+     * @return Position (starting at 1) of the first entry returned.
+     */
+    public long getTargetPosition()
+    {
+        return targetPosition;
+    }
+
+    /**
+     * @return The server estimate of the amount of entries of the whole list.
+     */
+    public long getContentCount()
+    {
+        return contentCount;
+    }
+
+    /**
+     * @return Result code of the virtual list view operation ({@link #SUCCESS} or a LDAP result code).
+     */
+    public int getResult()
+    {
+        return result;
+    }
+
+    /**
+     * @return Context that should be sent in the next request or null.
+     */
+    public byte[] getContextId()
+    {
+        return contextId;
+    }
+}
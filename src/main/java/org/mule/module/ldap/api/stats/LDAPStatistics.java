@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Statistics of all the connections of a configuration. There is a single instance per name
+ * (see {@link #getInstance(String)}), which is published in the platform MBean server as:
+ * <ul>
+ *    <li><i>org.mule.module.ldap:type=Operation,config=&lt;name&gt;,operation=&lt;operation&gt;</i>: one per operation (see {@link OperationStatisticsMXBean}).</li>
+ *    <li><i>org.mule.module.ldap:type=Pool,config=&lt;name&gt;</i>: see {@link PoolStatisticsMXBean}.</li>
+ *    <li><i>org.mule.module.ldap:type=PagedSearch,config=&lt;name&gt;</i>: see {@link PagedSearchStatisticsMXBean}.</li>
+ *    <li><i>org.mule.module.ldap:type=Server,config=&lt;name&gt;,url=&lt;url&gt;</i>: one per server when several servers are configured (see {@link ServerStatisticsMXBean}).</li>
+ * </ul>
+ * 
+ * @author mariano
+ */
+public class LDAPStatistics
+{
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final String JMX_DOMAIN = "org.mule.module.ldap";
+
+    private static final ConcurrentMap<String, LDAPStatistics> INSTANCES = new ConcurrentHashMap<String, LDAPStatistics>();
+
+    private final String name;
+    private final ConcurrentMap<String, OperationStatistics> operations = new ConcurrentHashMap<String, OperationStatistics>();
+    private final ConcurrentMap<String, ServerStatistics> servers = new ConcurrentHashMap<String, ServerStatistics>();
+    private final PoolStatistics pool = new PoolStatistics();
+    private final PagedSearchStatistics pagedSearch = new PagedSearchStatistics();
+    private final List<ObjectName> registered = new ArrayList<ObjectName>();
+    private int references = 0;
+
+    private LDAPStatistics(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @param name Name of the configuration.
+     * @return The statistics of the configuration. They are published in JMX the first time they are requested.
+     */
+    public static LDAPStatistics getInstance(String name)
+    {
+        LDAPStatistics statistics = INSTANCES.get(name);
+        if (statistics == null)
+        {
+            LDAPStatistics newStatistics = new LDAPStatistics(name);
+            statistics = INSTANCES.putIfAbsent(name, newStatistics);
+            if (statistics == null)
+            {
+                statistics = newStatistics;
+                statistics.register("type=Pool,config=" + ObjectName.quote(name), statistics.pool);
+                statistics.register("type=PagedSearch,config=" + ObjectName.quote(name), statistics.pagedSearch);
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Same as {@link #getInstance(String)} but the statistics are kept published until each
+     * connection that acquired them calls {@link #release()}.
+     * 
+     * @param name Name of the configuration.
+     * @return The statistics of the configuration.
+     */
+    public static LDAPStatistics acquire(String name)
+    {
+        synchronized (INSTANCES)
+        {
+            LDAPStatistics statistics = getInstance(name);
+            statistics.references++;
+            return statistics;
+        }
+    }
+
+    /**
+     * Gives back statistics obtained with {@link #acquire(String)}. Once they are released by all
+     * the connections that acquired them, they are removed from JMX (see {@link #dispose(String)}).
+     */
+    public void release()
+    {
+        synchronized (INSTANCES)
+        {
+            if (references > 0)
+            {
+                references--;
+                if (references == 0 && INSTANCES.get(name) == this)
+                {
+                    dispose(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the statistics of a configuration from JMX.
+     * 
+     * @param name
+     */
+    public static void dispose(String name)
+    {
+        LDAPStatistics statistics = INSTANCES.remove(name);
+        if (statistics != null)
+        {
+            statistics.unregister();
+        }
+    }
+
+    /**
+     * @param operation
+     * @param nanos Duration of the operation.
+     * @param errorType Simple class name of the exception thrown by the operation or null if it succeeded.
+     */
+    public void recordOperation(String operation, long nanos, String errorType)
+    {
+        getOperation(operation).record(nanos, errorType);
+    }
+
+    public OperationStatistics getOperation(String operation)
+    {
+        OperationStatistics statistics = operations.get(operation);
+        if (statistics == null)
+        {
+            OperationStatistics newStatistics = new OperationStatistics(operation);
+            statistics = operations.putIfAbsent(operation, newStatistics);
+            if (statistics == null)
+            {
+                statistics = newStatistics;
+                register("type=Operation,config=" + ObjectName.quote(name) + ",operation=" + ObjectName.quote(operation), statistics);
+            }
+        }
+        return statistics;
+    }
+
+    public ServerStatistics getServer(String url)
+    {
+        ServerStatistics statistics = servers.get(url);
+        if (statistics == null)
+        {
+            ServerStatistics newStatistics = new ServerStatistics(url);
+            statistics = servers.putIfAbsent(url, newStatistics);
+            if (statistics == null)
+            {
+                statistics = newStatistics;
+                register("type=Server,config=" + ObjectName.quote(name) + ",url=" + ObjectName.quote(url), statistics);
+            }
+        }
+        return statistics;
+    }
+
+    public PoolStatistics getPool()
+    {
+        return pool;
+    }
+
+    public PagedSearchStatistics getPagedSearch()
+    {
+        return pagedSearch;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    private void register(String properties, Object mbean)
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":" + properties);
+            try
+            {
+                server.registerMBean(mbean, objectName);
+            }
+            catch (InstanceAlreadyExistsException ex)
+            {
+                // Left by a previous deployment of the application
+                server.unregisterMBean(objectName);
+                server.registerMBean(mbean, objectName);
+            }
+            synchronized (registered)
+            {
+                registered.add(objectName);
+            }
+        }
+        catch (Exception ex)
+        {
+            logger.warn("Could not publish LDAP statistics in JMX: " + properties, ex);
+        }
+    }
+
+    private void unregister()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registered)
+        {
+            for (ObjectName objectName : registered)
+            {
+                try
+                {
+                    server.unregisterMBean(objectName);
+                }
+                catch (Exception ex)
+                {
+                    logger.debug("Could not unregister " + objectName, ex);
+                }
+            }
+            registered.clear();
+        }
+    }
+}
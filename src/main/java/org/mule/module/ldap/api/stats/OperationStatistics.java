@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count, errors (by exception type) and latency of a LDAP operation.
+ * 
+ * @author mariano
+ */
+public class OperationStatistics implements OperationStatisticsMXBean
+{
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong(0);
+    private final ConcurrentMap<String, AtomicLong> errorsByType = new ConcurrentHashMap<String, AtomicLong>();
+
+    public OperationStatistics(String operation)
+    {
+        this.operation = operation;
+    }
+
+    /**
+     * @param nanos Duration of the operation.
+     * @param errorType Simple class name of the exception thrown by the operation or null if it succeeded.
+     */
+    public void record(long nanos, String errorType)
+    {
+        latency.record(nanos / 1000L);
+        if (errorType != null)
+        {
+            errors.incrementAndGet();
+            AtomicLong typeCount = errorsByType.get(errorType);
+            if (typeCount == null)
+            {
+                AtomicLong newCount = new AtomicLong(0);
+                typeCount = errorsByType.putIfAbsent(errorType, newCount);
+                if (typeCount == null)
+                {
+                    typeCount = newCount;
+                }
+            }
+            typeCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    @Override
+    public long getCount()
+    {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrorCount()
+    {
+        return errors.get();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCountByType()
+    {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : errorsByType.entrySet())
+        {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    @Override
+    public double getMeanLatency()
+    {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getMaxLatency()
+    {
+        return latency.getMax();
+    }
+
+    @Override
+    public long getLatency50thPercentile()
+    {
+        return latency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLatency90thPercentile()
+    {
+        return latency.getValueAtPercentile(90);
+    }
+
+    @Override
+    public long getLatency99thPercentile()
+    {
+        return latency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLatency999thPercentile()
+    {
+        return latency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public void reset()
+    {
+        latency.reset();
+        errors.set(0);
+        errorsByType.clear();
+    }
+}
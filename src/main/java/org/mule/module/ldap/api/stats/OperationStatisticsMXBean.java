@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import java.util.Map;
+
+/**
+ * JMX view of the statistics of a LDAP operation. Latencies are in microseconds.
+ * 
+ * @author mariano
+ */
+public interface OperationStatisticsMXBean
+{
+    String getOperation();
+
+    long getCount();
+
+    long getErrorCount();
+
+    Map<String, Long> getErrorCountByType();
+
+    double getMeanLatency();
+
+    long getMaxLatency();
+
+    long getLatency50thPercentile();
+
+    long getLatency90thPercentile();
+
+    long getLatency99thPercentile();
+
+    long getLatency999thPercentile();
+
+    void reset();
+}
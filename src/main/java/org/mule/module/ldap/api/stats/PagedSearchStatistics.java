@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pages and entries fetched by paged searches. A search is recorded when its result set is closed.
+ * 
+ * @author mariano
+ */
+public class PagedSearchStatistics implements PagedSearchStatisticsMXBean
+{
+    private final AtomicLong searches = new AtomicLong(0);
+    private final AtomicLong pages = new AtomicLong(0);
+    private final AtomicLong entries = new AtomicLong(0);
+
+    /**
+     * @param pagesFetched
+     * @param entriesFetched
+     */
+    public void record(long pagesFetched, long entriesFetched)
+    {
+        searches.incrementAndGet();
+        pages.addAndGet(pagesFetched);
+        entries.addAndGet(entriesFetched);
+    }
+
+    @Override
+    public long getSearchCount()
+    {
+        return searches.get();
+    }
+
+    @Override
+    public long getPagesFetched()
+    {
+        return pages.get();
+    }
+
+    @Override
+    public long getEntriesFetched()
+    {
+        return entries.get();
+    }
+
+    @Override
+    public double getAverageEntriesPerPage()
+    {
+        long fetched = pages.get();
+        return fetched > 0 ? (double) entries.get() / fetched : 0;
+    }
+
+    @Override
+    public double getAveragePagesPerSearch()
+    {
+        long count = searches.get();
+        return count > 0 ? (double) pages.get() / count : 0;
+    }
+
+    @Override
+    public void reset()
+    {
+        searches.set(0);
+        pages.set(0);
+        entries.set(0);
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+/**
+ * JMX view of the paged searches of a configuration.
+ * 
+ * @author mariano
+ */
+public interface PagedSearchStatisticsMXBean
+{
+    long getSearchCount();
+
+    long getPagesFetched();
+
+    long getEntriesFetched();
+
+    double getAverageEntriesPerPage();
+
+    double getAveragePagesPerSearch();
+
+    void reset();
+}
@@ -0,0 +1,25 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+/**
+ * Current state of a connection pool.
+ * 
+ * @author mariano
+ */
+public interface PoolMetrics
+{
+    int getActiveCount();
+
+    int getIdleCount();
+
+    int getWaitersCount();
+
+    int getMaxTotal();
+}
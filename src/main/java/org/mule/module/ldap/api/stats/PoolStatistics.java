@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gauges and borrow wait times of the connection pools of a configuration.
+ * 
+ * @author mariano
+ */
+public class PoolStatistics implements PoolStatisticsMXBean
+{
+    private final Map<PoolMetrics, Boolean> pools = Collections.synchronizedMap(new WeakHashMap<PoolMetrics, Boolean>());
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final AtomicLong timeouts = new AtomicLong(0);
+    private final AtomicLong lastWarmUpTime = new AtomicLong(-1L);
+
+    public void addPool(PoolMetrics pool)
+    {
+        pools.put(pool, Boolean.TRUE);
+    }
+
+    public void removePool(PoolMetrics pool)
+    {
+        pools.remove(pool);
+    }
+
+    /**
+     * @param nanos Time waited for a connection.
+     * @param timeout Whether no connection was obtained.
+     */
+    public void recordBorrow(long nanos, boolean timeout)
+    {
+        borrowWait.record(nanos / 1000L);
+        if (timeout)
+        {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param millis Time taken to open and validate the initial connections of a pool.
+     */
+    public void recordWarmUp(long millis)
+    {
+        lastWarmUpTime.set(millis);
+    }
+
+    @Override
+    public int getPoolCount()
+    {
+        return getPools().size();
+    }
+
+    @Override
+    public int getActiveCount()
+    {
+        int active = 0;
+        for (PoolMetrics pool : getPools())
+        {
+            active += pool.getActiveCount();
+        }
+        return active;
+    }
+
+    @Override
+    public int getIdleCount()
+    {
+        int idle = 0;
+        for (PoolMetrics pool : getPools())
+        {
+            idle += pool.getIdleCount();
+        }
+        return idle;
+    }
+
+    @Override
+    public int getWaitersCount()
+    {
+        int waiters = 0;
+        for (PoolMetrics pool : getPools())
+        {
+            waiters += pool.getWaitersCount();
+        }
+        return waiters;
+    }
+
+    @Override
+    public int getMaxTotal()
+    {
+        int maxTotal = 0;
+        for (PoolMetrics pool : getPools())
+        {
+            maxTotal += pool.getMaxTotal();
+        }
+        return maxTotal;
+    }
+
+    @Override
+    public long getBorrowCount()
+    {
+        return borrowWait.getCount();
+    }
+
+    @Override
+    public long getBorrowTimeoutCount()
+    {
+        return timeouts.get();
+    }
+
+    @Override
+    public double getMeanBorrowWait()
+    {
+        return borrowWait.getMean();
+    }
+
+    @Override
+    public long getMaxBorrowWait()
+    {
+        return borrowWait.getMax();
+    }
+
+    @Override
+    public long getBorrowWait99thPercentile()
+    {
+        return borrowWait.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLastWarmUpTime()
+    {
+        return lastWarmUpTime.get();
+    }
+
+    @Override
+    public void reset()
+    {
+        borrowWait.reset();
+        timeouts.set(0);
+    }
+
+    private List<PoolMetrics> getPools()
+    {
+        synchronized (pools)
+        {
+            return new ArrayList<PoolMetrics>(pools.keySet());
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+/**
+ * JMX view of the connection pools of a configuration. Gauges are the sum of all the pools
+ * (there is a pool per connection identity). Wait times are in microseconds and warm-up
+ * times (opening and validating the initial connections of a pool) in milliseconds.
+ * 
+ * @author mariano
+ */
+public interface PoolStatisticsMXBean
+{
+    int getPoolCount();
+
+    int getActiveCount();
+
+    int getIdleCount();
+
+    int getWaitersCount();
+
+    int getMaxTotal();
+
+    long getBorrowCount();
+
+    long getBorrowTimeoutCount();
+
+    double getMeanBorrowWait();
+
+    long getMaxBorrowWait();
+
+    long getBorrowWait99thPercentile();
+
+    long getLastWarmUpTime();
+
+    void reset();
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Requests, ejections and state of a LDAP server of a configuration.
+ * 
+ * @author mariano
+ */
+public class ServerStatistics implements ServerStatisticsMXBean
+{
+    private final String url;
+    private final Map<ServerMetrics, Boolean> servers = Collections.synchronizedMap(new WeakHashMap<ServerMetrics, Boolean>());
+    private final AtomicLong requests = new AtomicLong(0);
+    private final AtomicLong ejections = new AtomicLong(0);
+    private final AtomicLong readmissions = new AtomicLong(0);
+
+    public ServerStatistics(String url)
+    {
+        this.url = url;
+    }
+
+    public void addServer(ServerMetrics server)
+    {
+        servers.put(server, Boolean.TRUE);
+    }
+
+    public void removeServer(ServerMetrics server)
+    {
+        servers.remove(server);
+    }
+
+    public void recordRequest()
+    {
+        requests.incrementAndGet();
+    }
+
+    public void recordEjection()
+    {
+        ejections.incrementAndGet();
+    }
+
+    public void recordReadmission()
+    {
+        readmissions.incrementAndGet();
+    }
+
+    @Override
+    public String getUrl()
+    {
+        return url;
+    }
+
+    /**
+     * @return false if any of the connection identities ejected the server.
+     */
+    @Override
+    public boolean isAvailable()
+    {
+        for (ServerMetrics server : getServers())
+        {
+            if (!server.isAvailable())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getOutstandingCount()
+    {
+        int outstanding = 0;
+        for (ServerMetrics server : getServers())
+        {
+            outstanding += server.getOutstandingCount();
+        }
+        return outstanding;
+    }
+
+    @Override
+    public long getRequestCount()
+    {
+        return requests.get();
+    }
+
+    @Override
+    public long getEjectionCount()
+    {
+        return ejections.get();
+    }
+
+    @Override
+    public long getReadmissionCount()
+    {
+        return readmissions.get();
+    }
+
+    @Override
+    public void reset()
+    {
+        requests.set(0);
+        ejections.set(0);
+        readmissions.set(0);
+    }
+
+    private List<ServerMetrics> getServers()
+    {
+        synchronized (servers)
+        {
+            return new ArrayList<ServerMetrics>(servers.keySet());
+        }
+    }
+}
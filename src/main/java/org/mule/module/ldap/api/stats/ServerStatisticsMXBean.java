@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+/**
+ * JMX view of a LDAP server when several servers are configured. The outstanding count is the sum
+ * of the connections to the server borrowed by all the connection identities.
+ * 
+ * @author mariano
+ */
+public interface ServerStatisticsMXBean
+{
+    String getUrl();
+
+    boolean isAvailable();
+
+    int getOutstandingCount();
+
+    long getRequestCount();
+
+    long getEjectionCount();
+
+    long getReadmissionCount();
+
+    void reset();
+}
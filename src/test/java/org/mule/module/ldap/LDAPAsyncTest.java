@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPConnection;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPResultSet;
+import org.mule.module.ldap.api.LDAPSearchControls;
+import org.mule.module.ldap.api.NameNotFoundException;
+
+public class LDAPAsyncTest extends AbstractLDAPConnectorTest
+{
+    private LDAPConnection connection;
+
+    /**
+     * 
+     */
+    public LDAPAsyncTest()
+    {
+    }
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "exists-mule-config.xml";
+    }
+
+    @Before
+    public void openConnection() throws Exception
+    {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put(LDAPConnection.MAX_POOL_CONNECTIONS_ATTR, "4");
+        connection = LDAPConnection.getConnection("jndi", "ldap://localhost:" + LDAP_PORT + "/", LDAPConnection.SIMPLE_AUTHENTICATION, 1, 4, 0, "ignore", conf);
+        connection.bind("uid=admin,ou=people,dc=mulesoft,dc=org", "admin");
+    }
+
+    @After
+    public void closeConnection() throws Exception
+    {
+        if (connection != null)
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception
+    {
+        List<Future<LDAPEntry>> lookups = new ArrayList<Future<LDAPEntry>>();
+        for (int i = 1; i <= 5; i++)
+        {
+            lookups.add(connection.lookupAsync("uid=user" + i + ",ou=people,dc=mulesoft,dc=org"));
+        }
+
+        for (int i = 1; i <= 5; i++)
+        {
+            assertEquals("user" + i, lookups.get(i - 1).get().getAttribute("uid").getValue());
+        }
+    }
+
+    @Test
+    public void testLookupFailure() throws Exception
+    {
+        Future<LDAPEntry> lookup = connection.lookupAsync("uid=userXXX,ou=people,dc=mulesoft,dc=org");
+        try
+        {
+            lookup.get();
+            fail("ExecutionException expected");
+        }
+        catch (ExecutionException ex)
+        {
+            assertEquals(NameNotFoundException.class, ex.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testSearch() throws Exception
+    {
+        LDAPSearchControls controls = new LDAPSearchControls();
+        controls.setScope(LDAPSearchControls.ONELEVEL_SCOPE);
+        LDAPResultSet result = connection.searchAsync("ou=people,dc=mulesoft,dc=org", "(uid=user*)", controls).get();
+        try
+        {
+            assertTrue(result.getAllEntries().size() >= 5);
+        }
+        finally
+        {
+            result.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentPartitionedSearchesWithSmallPool() throws Exception
+    {
+        Map<String, String> conf = new HashMap<String, String>();
+        final LDAPConnection smallPool = LDAPConnection.getConnection("jndi", "ldap://localhost:" + LDAP_PORT + "/", LDAPConnection.SIMPLE_AUTHENTICATION, 1, 2, 0, "ignore", conf);
+        smallPool.bind("uid=admin,ou=people,dc=mulesoft,dc=org", "admin");
+        ExecutorService searches = Executors.newFixedThreadPool(2);
+        try
+        {
+            Callable<Integer> search = new Callable<Integer>()
+            {
+                @Override
+                public Integer call() throws Exception
+                {
+                    LDAPSearchControls controls = new LDAPSearchControls();
+                    controls.setScope(LDAPSearchControls.ONELEVEL_SCOPE);
+                    controls.setPageSize(1);
+                    List<String> shards = Arrays.asList("uid=user1", "uid=user2", "uid=user3", "uid=user4", "uid=user5");
+                    LDAPResultSet result = smallPool.partitionedSearch(Collections.singletonList("ou=people,dc=mulesoft,dc=org"), "(uid=user*)", shards, false, controls, 5);
+                    int count = 0;
+                    try
+                    {
+                        while (result.hasNext())
+                        {
+                            // Needs a connection while the partitions are still being read
+                            LDAPEntry entry = result.next();
+                            assertEquals(entry.getDn(), smallPool.lookup(entry.getDn()).getDn());
+                            count++;
+                        }
+                    }
+                    finally
+                    {
+                        result.close();
+                    }
+                    return count;
+                }
+            };
+
+            Future<Integer> first = searches.submit(search);
+            Future<Integer> second = searches.submit(search);
+            assertEquals(Integer.valueOf(5), first.get(30, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(5), second.get(30, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            searches.shutdownNow();
+            smallPool.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPChangeRecord;
+import org.mule.module.ldap.api.LDAPChangeResult;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPModification;
+import org.mule.module.ldap.api.LDAPSingleValueEntryAttribute;
+import org.mule.module.ldap.api.LDIFImportResult;
+import org.mule.module.ldap.api.NameNotFoundException;
+import org.mule.util.IOUtils;
+
+public class LDAPBatchTest extends AbstractLDAPConnectorTest
+{
+
+    /**
+     * 
+     */
+    public LDAPBatchTest()
+    {
+    }
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "batch-mule-config.xml";
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchAddReportsEachResult() throws Exception
+    {
+        List<Object> entries = new ArrayList<Object>();
+        for (int i = 1; i <= 10; i++)
+        {
+            entries.add(buildEntry("batchuser" + i));
+        }
+        // Already exists
+        entries.add(buildEntry("user1"));
+        
+        List<LDAPChangeResult> results = (List<LDAPChangeResult>) runFlow("testBatchAddFlow", entries);
+        
+        assertEquals(11, results.size());
+        for (int i = 0; i < 10; i++)
+        {
+            assertEquals(i, results.get(i).getIndex());
+            assertTrue(results.get(i).isSuccess());
+            assertEquals("uid=batchuser" + (i + 1) + ",ou=people,dc=mulesoft,dc=org", results.get(i).getDn());
+        }
+        assertFalse(results.get(10).isSuccess());
+        assertEquals("NameAlreadyBoundException", results.get(10).getExceptionType());
+        
+        LDAPEntry added = (LDAPEntry) runFlow("testLookupFlow", "uid=batchuser10,ou=people,dc=mulesoft,dc=org");
+        assertEquals("Batch User batchuser10", added.getAttribute("cn").getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchChanges() throws Exception
+    {
+        List<Object> changes = new ArrayList<Object>();
+        changes.add(LDAPChangeRecord.add(buildEntry("batchchange1")));
+        
+        List<LDAPModification> modifications = new ArrayList<LDAPModification>();
+        modifications.add(new LDAPModification(LDAPModification.REPLACE_ATTRIBUTE, new LDAPSingleValueEntryAttribute("sn", "Modified")));
+        // Same DN, so it is applied after the add
+        changes.add(LDAPChangeRecord.modify("uid=batchchange1,ou=people,dc=mulesoft,dc=org", modifications));
+        
+        changes.add(LDAPChangeRecord.add(buildEntry("batchchange2")));
+        changes.add(LDAPChangeRecord.delete("uid=batchchange2,ou=people,dc=mulesoft,dc=org"));
+        changes.add(LDAPChangeRecord.delete("uid=notexistinguser,ou=notexistingou,dc=mulesoft,dc=org"));
+        
+        List<LDAPChangeResult> results = (List<LDAPChangeResult>) runFlow("testBatchChangesFlow", changes);
+
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertTrue(results.get(2).isSuccess());
+        assertTrue(results.get(3).isSuccess());
+        assertFalse(results.get(4).isSuccess());
+        assertEquals(NameNotFoundException.class, results.get(4).getException().getClass());
+        
+        LDAPEntry modified = (LDAPEntry) runFlow("testLookupFlow", "uid=batchchange1,ou=people,dc=mulesoft,dc=org");
+        assertEquals("Modified", modified.getAttribute("sn").getValue());
+        
+        runFlowWithPayloadAndExpectException("testLookupFlow", NameNotFoundException.class, "uid=batchchange2,ou=people,dc=mulesoft,dc=org");
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchDeleteByDn() throws Exception
+    {
+        List<Object> entries = new ArrayList<Object>();
+        entries.add(buildEntry("batchdelete1"));
+        entries.add(buildEntry("batchdelete2"));
+        runFlow("testBatchAddFlow", entries);
+        
+        List<Object> dns = new ArrayList<Object>();
+        dns.add("uid=batchdelete1,ou=people,dc=mulesoft,dc=org");
+        dns.add("uid=batchdelete2,ou=people,dc=mulesoft,dc=org");
+        List<LDAPChangeResult> results = (List<LDAPChangeResult>) runFlow("testBatchDeleteFlow", dns);
+        
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        runFlowWithPayloadAndExpectException("testLookupFlow", NameNotFoundException.class, "uid=batchdelete1,ou=people,dc=mulesoft,dc=org");
+    }
+    
+    @Test
+    public void testImportLdif() throws Exception
+    {
+        String file = new File(getClass().getResource("/import.ldif").toURI()).getAbsolutePath();
+        
+        LDIFImportResult result = (LDIFImportResult) runFlow("testImportLdifFlow", file);
+        
+        assertEquals(9, result.getRecordsRead());
+        assertEquals(6, result.getApplied());
+        assertEquals(3, result.getRejected());
+        assertEquals(1, result.getDeferred());
+        
+        LDAPEntry deferred = (LDAPEntry) runFlow("testLookupFlow", "uid=imported1,ou=imported,ou=people,dc=mulesoft,dc=org");
+        assertEquals("Imported One", deferred.getAttribute("cn").getValue());
+        LDAPEntry modified = (LDAPEntry) runFlow("testLookupFlow", "uid=imported2,ou=imported,ou=people,dc=mulesoft,dc=org");
+        assertEquals("Imported Two", modified.getAttribute("cn").getValue());
+        assertEquals("Modified", modified.getAttribute("sn").getValue());
+        runFlow("testLookupFlow", "uid=imported4,ou=imported,ou=people,dc=mulesoft,dc=org");
+        runFlowWithPayloadAndExpectException("testLookupFlow", NameNotFoundException.class, "uid=imported3,ou=imported,ou=people,dc=mulesoft,dc=org");
+        
+        String rejects = IOUtils.toString(new FileInputStream(new File(System.getProperty("java.io.tmpdir"), "ldap-import-rejects.ldif")), "UTF-8");
+        assertTrue(rejects.contains("# line 14: NameAlreadyBoundException"));
+        assertTrue(rejects.contains("dn: uid=user1,ou=people,dc=mulesoft,dc=org\nchangetype: add\n"));
+        assertTrue(rejects.contains("# cn: No DN\n"));
+        assertTrue(rejects.contains("dn: uid=notexisting,ou=people,dc=mulesoft,dc=org\nchangetype: delete\n"));
+    }
+    
+    private LDAPEntry buildEntry(String uid) throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=" + uid + ",ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("uid", uid);
+        entry.addAttribute("cn", "Batch User " + uid);
+        entry.addAttribute("sn", "User");
+        entry.addAttribute("userPassword", uid);
+        entry.addAttribute("objectclass", new String[] {"top", "person", "organizationalPerson", "inetOrgPerson"});
+        return entry;
+    }
+}
@@ -9,6 +9,7 @@
 package org.mule.module.ldap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -120,7 +121,34 @@ public class LDAPBindTest extends AbstractLDAPConnectorTest
             assertEquals(ConnectionException.class, ex.getClass());
             assertEquals(ConnectionExceptionCode.INCORRECT_CREDENTIALS,((ConnectionException) ex).getCode());
         }
-    }      
-}
+    }
+
+    @Test
+    public void testVerifyCredentials() throws Exception
+    {
+        assertTrue((Boolean) runFlow("testVerifyCredentials", credentials("uid=user1,ou=people,dc=mulesoft,dc=org", "user1")));
+        assertFalse((Boolean) runFlow("testVerifyCredentials", credentials("uid=user2,ou=people,dc=mulesoft,dc=org", "invalidPassword")));
+        assertFalse((Boolean) runFlow("testVerifyCredentials", credentials("uid=userX,ou=people,dc=mulesoft,dc=org", "passwordX")));
+        assertTrue((Boolean) runFlow("testVerifyCredentials", credentials("uid=user2,ou=people,dc=mulesoft,dc=org", "user2")));
+
+        // The config identity is still used by the other operations
+        LDAPEntry result = (LDAPEntry) runFlow("testConfigBind", null);
+        assertEquals("admin", result.getAttribute("uid").getValue());
+    }
 
+    @Test
+    public void testAnonymousVerifyCredentials() throws Exception
+    {
+        assertTrue((Boolean) runFlow("testAnonymousVerifyCredentials", credentials("uid=user3,ou=people,dc=mulesoft,dc=org", "user3")));
+        assertFalse((Boolean) runFlow("testAnonymousVerifyCredentials", credentials("uid=user3,ou=people,dc=mulesoft,dc=org", "user1")));
+        assertTrue((Boolean) runFlow("testAnonymousVerifyCredentials", credentials("uid=user1,ou=people,dc=mulesoft,dc=org", "user1")));
+    }
 
+    private Map<String, Object> credentials(String dn, String password)
+    {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("authDn", dn);
+        params.put("authPassword", password);
+        return params;
+    }
+}
@@ -8,7 +8,18 @@
 
 package org.mule.module.ldap;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Hashtable;
+
+import javax.naming.Context;
+
 import org.junit.Test;
+import org.mule.module.ldap.api.LDAPException;
+import org.mule.module.ldap.api.jndi.LDAPJNDIConnection;
+import org.mule.module.ldap.api.jndi.LDAPJNDIContextPool;
 
 public class LDAPConfigTest extends AbstractLDAPConnectorTest
 {
@@ -37,6 +48,46 @@ public class LDAPConfigTest extends AbstractLDAPConnectorTest
         
         System.out.println(o);
     }
-}
 
+    @Test
+    public void testPoolWarmUp() throws Exception
+    {
+        LDAPJNDIContextPool pool = new LDAPJNDIContextPool(buildEnvironment("ldap://localhost:" + LDAP_PORT + "/"), 4, 8, 0, 0);
+        pool.start();
+        try
+        {
+            assertEquals(4, pool.getIdleCount());
+            assertTrue(pool.getWarmUpTime() >= 0);
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testPoolWarmUpFailure() throws Exception
+    {
+        LDAPJNDIContextPool pool = new LDAPJNDIContextPool(buildEnvironment("ldap://localhost:1/"), 4, 8, 0, 0);
+        try
+        {
+            pool.start();
+            fail("Connections should not be opened");
+        }
+        catch (LDAPException ex)
+        {
+            assertEquals(0, pool.getIdleCount());
+        }
+    }
 
+    private Hashtable<String, String> buildEnvironment(String url)
+    {
+        Hashtable<String, String> env = new Hashtable<String, String>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, LDAPJNDIConnection.DEFAULT_INITIAL_CONTEXT_FACTORY);
+        env.put(Context.PROVIDER_URL, url);
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=admin,ou=people,dc=mulesoft,dc=org");
+        env.put(Context.SECURITY_CREDENTIALS, "admin");
+        return env;
+    }
+}
@@ -8,11 +8,23 @@
 
 package org.mule.module.ldap;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
+import org.mule.module.ldap.api.LDAPConnection;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPMultiValueEntryAttribute;
+import org.mule.module.ldap.api.LDAPSingleValueEntryAttribute;
 import org.mule.module.ldap.api.NameNotFoundException;
+import org.mule.module.ldap.api.jndi.LDAPJNDIConnection;
 
 public class LDAPExistsTest extends AbstractLDAPConnectorTest
 {
@@ -47,6 +59,129 @@ public class LDAPExistsTest extends AbstractLDAPConnectorTest
         
         assertFalse(result);
     }
-}
 
+    @Test
+    public void testCachedExistsIsInvalidatedOnDelete() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=cached,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute(new LDAPMultiValueEntryAttribute("objectclass", new Object[] {"top", "person", "organizationalPerson", "inetOrgPerson"}));
+        entry.addAttribute(new LDAPSingleValueEntryAttribute("uid", "cached"));
+        entry.addAttribute(new LDAPSingleValueEntryAttribute("cn", "Cached User"));
+        entry.addAttribute(new LDAPSingleValueEntryAttribute("sn", "User"));
+        
+        LDAPJNDIConnection connection = openCachedConnection();
+        try
+        {
+            connection.addEntry(entry);
+            assertNotNull(connection.lookup(entry.getDn()));
+            // Second time the entry is retrieved from the cache
+            assertNotNull(connection.lookup(entry.getDn()));
+            assertEquals(1, connection.getEntryCache().getHits());
+            assertEquals(1, connection.getEntryCache().size());
+            
+            connection.deleteEntry(entry.getDn());
+            assertEquals(0, connection.getEntryCache().size());
+            
+            try
+            {
+                connection.lookup(entry.getDn());
+                fail("Deleted entry should not be found");
+            }
+            catch (NameNotFoundException ex)
+            {
+                // Expected
+            }
+            assertEquals(1, connection.getEntryCache().getHits());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
 
+    @Test
+    public void testCachedNotExists() throws Exception
+    {
+        String dn = "uid=userXXX,ou=people,dc=mulesoft,dc=org";
+        LDAPJNDIConnection connection = openCachedConnection();
+        try
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                try
+                {
+                    connection.lookup(dn);
+                    fail("Entry should not be found");
+                }
+                catch (NameNotFoundException ex)
+                {
+                    // Expected
+                }
+            }
+            // The second lookup is answered by the cache without reaching the LDAP server
+            assertEquals(1, connection.getEntryCache().getMisses());
+            assertEquals(1, connection.getEntryCache().getHits());
+            assertEquals(1, connection.getEntryCache().size());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+    
+    @Test
+    public void testCacheIsSharedByConnectionsWithSameIdentity() throws Exception
+    {
+        String dn = "uid=shared,ou=people,dc=mulesoft,dc=org";
+        LDAPJNDIConnection reader = openCachedConnection();
+        LDAPJNDIConnection writer = openCachedConnection();
+        try
+        {
+            assertSame(reader.getEntryCache(), writer.getEntryCache());
+            try
+            {
+                reader.lookup(dn);
+                fail("Entry should not be found");
+            }
+            catch (NameNotFoundException ex)
+            {
+                // Expected. It is cached that the entry does not exist.
+            }
+
+            LDAPEntry entry = new LDAPEntry(dn);
+            entry.addAttribute(new LDAPMultiValueEntryAttribute("objectclass", new Object[] {"top", "person", "organizationalPerson", "inetOrgPerson"}));
+            entry.addAttribute(new LDAPSingleValueEntryAttribute("uid", "shared"));
+            entry.addAttribute(new LDAPSingleValueEntryAttribute("cn", "Shared User"));
+            entry.addAttribute(new LDAPSingleValueEntryAttribute("sn", "User"));
+            writer.addEntry(entry);
+
+            // The entry added through the other connection is not hidden by the cached miss
+            assertEquals("Shared User", reader.lookup(dn).getAttribute("cn").getValue());
+
+            writer.deleteEntry(dn);
+            try
+            {
+                reader.lookup(dn);
+                fail("Deleted entry should not be found");
+            }
+            catch (NameNotFoundException ex)
+            {
+                // Expected
+            }
+        }
+        finally
+        {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    private LDAPJNDIConnection openCachedConnection() throws Exception
+    {
+        Map<String, String> conf = new HashMap<String, String>();
+        conf.put(LDAPConnection.CACHE_TTL_ATTR, "60000");
+        LDAPJNDIConnection connection = (LDAPJNDIConnection) LDAPConnection.getConnection("jndi", "ldap://localhost:" + LDAP_PORT + "/", LDAPConnection.SIMPLE_AUTHENTICATION, conf);
+        connection.bind("uid=admin,ou=people,dc=mulesoft,dc=org", "admin");
+        return connection;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPChangeRecord;
+import org.mule.module.ldap.api.LDAPChangeResult;
+import org.mule.module.ldap.api.LDAPEntry;
+
+public class LDAPGroupMembershipTest extends AbstractLDAPConnectorTest
+{
+    private static final String USER1 = "uid=user1,ou=people,dc=mulesoft,dc=org";
+    private static final String USERS = "cn=Users,ou=groups,dc=mulesoft,dc=org";
+
+    /**
+     *
+     */
+    public LDAPGroupMembershipTest()
+    {
+    }
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "group-membership-mule-config.xml";
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testNestedGroupsWithCycle() throws Exception
+    {
+        // Users <- Level1 <- Level2 <- Level3 <- Level2 (cycle)
+        List<Object> groups = new ArrayList<Object>();
+        groups.add(LDAPChangeRecord.add(buildGroup("Level1", USERS)));
+        groups.add(LDAPChangeRecord.add(buildGroup("Level2", groupDn("Level1"))));
+        groups.add(LDAPChangeRecord.add(buildGroup("Level3", groupDn("Level2"))));
+        addGroups(groups);
+        runFlow("testAddGroupsFlow", modifyMembers("Level2", groupDn("Level1"), groupDn("Level3")));
+
+        List<String> result = (List<String>) runFlow("testGroupMembershipFlow", USER1);
+
+        assertEquals(4, result.size());
+        assertEquals(USERS.toLowerCase(), result.get(0).toLowerCase());
+        assertEquals(groupDn("Level1").toLowerCase(), result.get(1).toLowerCase());
+        assertEquals(groupDn("Level2").toLowerCase(), result.get(2).toLowerCase());
+        assertEquals(groupDn("Level3").toLowerCase(), result.get(3).toLowerCase());
+
+        result = (List<String>) runFlow("testGroupMembershipMaxDepthFlow", USER1);
+        assertEquals(2, result.size());
+
+        result = (List<String>) runFlow("testGroupMembershipFlow", "uid=user5,ou=people,dc=mulesoft,dc=org");
+        assertTrue(result.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testMemoizedGroups() throws Exception
+    {
+        List<Object> groups = new ArrayList<Object>();
+        groups.add(LDAPChangeRecord.add(buildGroup("Memoized1", "uid=user2,ou=people,dc=mulesoft,dc=org")));
+        groups.add(LDAPChangeRecord.add(buildGroup("Memoized2", groupDn("Memoized1"))));
+        addGroups(groups);
+
+        List<String> result = (List<String>) runFlow("testCachedGroupMembershipFlow", "uid=user2,ou=people,dc=mulesoft,dc=org");
+        assertTrue(contains(result, groupDn("Memoized2")));
+
+        runFlow("testDeleteFlow", groupDn("Memoized2"));
+
+        // Still memoized
+        result = (List<String>) runFlow("testCachedGroupMembershipFlow", "uid=user2,ou=people,dc=mulesoft,dc=org");
+        assertTrue(contains(result, groupDn("Memoized2")));
+
+        result = (List<String>) runFlow("testGroupMembershipFlow", "uid=user2,ou=people,dc=mulesoft,dc=org");
+        assertFalse(contains(result, groupDn("Memoized2")));
+        assertTrue(contains(result, groupDn("Memoized1")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addGroups(List<Object> groups) throws Exception
+    {
+        for (LDAPChangeResult result : (List<LDAPChangeResult>) runFlow("testAddGroupsFlow", groups))
+        {
+            assertTrue(result.toString(), result.isSuccess());
+        }
+    }
+
+    private List<Object> modifyMembers(String cn, String... members) throws Exception
+    {
+        List<Object> changes = new ArrayList<Object>();
+        changes.add(LDAPChangeRecord.modify(buildGroup(cn, members)));
+        return changes;
+    }
+
+    private LDAPEntry buildGroup(String cn, String... members) throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry(groupDn(cn));
+        entry.addAttribute("cn", cn);
+        entry.addAttribute("member", members);
+        entry.addAttribute("objectclass", new String[] {"top", "groupOfNames"});
+        return entry;
+    }
+
+    private String groupDn(String cn)
+    {
+        return "cn=" + cn + ",ou=groups,dc=mulesoft,dc=org";
+    }
+
+    private boolean contains(List<String> dns, String dn)
+    {
+        for (String candidate : dns)
+        {
+            if (candidate.equalsIgnoreCase(dn))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
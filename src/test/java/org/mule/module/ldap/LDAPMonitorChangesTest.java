@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.MuleMessage;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.module.ldap.api.LDAPChangeRecord;
+import org.mule.module.ldap.api.LDAPChangeResult;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPModification;
+import org.mule.module.ldap.api.LDAPSingleValueEntryAttribute;
+
+public class LDAPMonitorChangesTest extends AbstractLDAPConnectorTest
+{
+    private static final BlockingQueue<MuleMessage> CHANGES = new LinkedBlockingQueue<MuleMessage>();
+    private static final String USER5 = "uid=user5,ou=people,dc=mulesoft,dc=org";
+    private static final String MONITORED = "uid=monitored,ou=people,dc=mulesoft,dc=org";
+    private static final String RENAMED = "uid=renamed,ou=people,dc=mulesoft,dc=org";
+
+    /**
+     *
+     */
+    public LDAPMonitorChangesTest()
+    {
+    }
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "monitor-changes-mule-config.xml";
+    }
+
+    @Test
+    public void testChanges() throws Exception
+    {
+        waitForMonitor();
+
+        LDAPEntry entry = new LDAPEntry(MONITORED);
+        entry.addAttribute("uid", "monitored");
+        entry.addAttribute("cn", "Monitored User");
+        entry.addAttribute("sn", "User");
+        entry.addAttribute("objectclass", new String[] {"top", "person", "organizationalPerson", "inetOrgPerson"});
+
+        List<Object> changes = new ArrayList<Object>();
+        changes.add(LDAPChangeRecord.add(entry));
+        changes.add(describe(MONITORED, "changed"));
+        changes.add(LDAPChangeRecord.modrdn(MONITORED, RENAMED));
+        changes.add(LDAPChangeRecord.delete(RENAMED));
+        applyChanges(changes);
+
+        LDAPChangeRecord change = nextChange("add", MONITORED);
+        assertEquals("monitored", change.getEntry().getAttribute("uid").getValue());
+
+        change = nextChange("modify", MONITORED);
+        assertEquals("changed", change.getEntry().getAttribute("description").getValue());
+
+        change = nextChange("modrdn", MONITORED);
+        assertEquals(RENAMED.toLowerCase(), change.getNewDn().toLowerCase());
+        assertEquals("renamed", change.getEntry().getAttribute("uid").getValue());
+
+        change = nextChange("delete", RENAMED);
+        assertNull(change.getEntry());
+
+        assertNull(CHANGES.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    /*
+     * The source starts in background, so user5 is modified until its change is received
+     */
+    private void waitForMonitor() throws Exception
+    {
+        for (int i = 0; i < 50; i++)
+        {
+            List<Object> changes = new ArrayList<Object>();
+            changes.add(describe(USER5, "attempt " + i));
+            applyChanges(changes);
+
+            if (CHANGES.poll(200, TimeUnit.MILLISECONDS) != null)
+            {
+                Thread.sleep(200);
+                CHANGES.clear();
+                return;
+            }
+        }
+        throw new AssertionError("Change monitor did not start");
+    }
+
+    private LDAPChangeRecord nextChange(String changeType, String dn) throws Exception
+    {
+        MuleMessage message = CHANGES.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No " + changeType + " change received", message);
+        assertEquals(changeType, message.getInboundProperty("ldap.changeType"));
+        assertEquals(dn.toLowerCase(), ((String) message.getInboundProperty("ldap.dn")).toLowerCase());
+
+        LDAPChangeRecord change = (LDAPChangeRecord) message.getPayload();
+        assertEquals(changeType, change.getChangeTypeName());
+        return change;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyChanges(List<Object> changes) throws Exception
+    {
+        for (LDAPChangeResult result : (List<LDAPChangeResult>) runFlow("testBatchFlow", changes))
+        {
+            assertTrue(result.toString(), result.isSuccess());
+        }
+    }
+
+    private LDAPChangeRecord describe(String dn, String description)
+    {
+        List<LDAPModification> modifications = new ArrayList<LDAPModification>();
+        modifications.add(new LDAPModification(LDAPModification.REPLACE_ATTRIBUTE, new LDAPSingleValueEntryAttribute("description", description)));
+        return LDAPChangeRecord.modify(dn, modifications);
+    }
+
+    /**
+     * Collects the changes processed by the monitor flow.
+     */
+    public static class ChangeCollector implements MessageProcessor
+    {
+        @Override
+        public MuleEvent process(MuleEvent event) throws MuleException
+        {
+            CHANGES.add(event.getMessage());
+            return event;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.stats.LDAPStatistics;
+import org.mule.module.ldap.api.stats.OperationStatistics;
+
+public class LDAPReplicaTest extends AbstractLDAPConnectorTest
+{
+    private static final long REPLICA_TIMEOUT = 10000L;
+
+    /**
+     *
+     */
+    public LDAPReplicaTest()
+    {
+    }
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "replica-mule-config.xml";
+    }
+
+    @Test
+    public void testReadsFromReplica() throws Exception
+    {
+        waitUntilReplicated("uid=user1,ou=people,dc=mulesoft,dc=org", "User One");
+
+        OperationStatistics lookups = LDAPStatistics.getInstance("replicaTest").getOperation("lookup");
+        OperationStatistics searches = LDAPStatistics.getInstance("replicaTest").getOperation("search");
+        long lookupCount = lookups.getCount();
+        long searchCount = searches.getCount();
+
+        LDAPEntry entry = (LDAPEntry) runFlow("testLookupFlow", "uid=user2,ou=people,dc=mulesoft,dc=org");
+        assertEquals("User Two", entry.getAttribute("cn").getValue());
+
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> result = (List<LDAPEntry>) runFlow("testSearchFlow", "(&(objectClass=person)(cn=user t*))");
+        assertEquals(2, result.size());
+
+        assertEquals(lookupCount, lookups.getCount());
+        assertEquals(searchCount, searches.getCount());
+
+        // Not evaluated by the replica
+        runFlow("testSearchFlow", "(uid>=user4)");
+        assertEquals(searchCount + 1, searches.getCount());
+    }
+
+    @Test
+    public void testModifiedEntryIsReadFromServer() throws Exception
+    {
+        waitUntilReplicated("uid=user1,ou=people,dc=mulesoft,dc=org", "User One");
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("dn", "uid=user5,ou=people,dc=mulesoft,dc=org");
+        params.put("attributeName", "cn");
+        params.put("attributeValue", "User Five Modified");
+        LDAPEntry entry = (LDAPEntry) runFlow("testModifyFlow", params);
+        assertEquals("User Five Modified", entry.getAttribute("cn").getValue());
+
+        waitUntilReplicated("uid=user5,ou=people,dc=mulesoft,dc=org", "User Five Modified");
+    }
+
+    /*
+     * Waits until a lookup of the entry returns the expected cn without reaching the server
+     */
+    private void waitUntilReplicated(String dn, String cn) throws Exception
+    {
+        OperationStatistics lookups = LDAPStatistics.getInstance("replicaTest").getOperation("lookup");
+        long deadline = System.currentTimeMillis() + REPLICA_TIMEOUT;
+        while (System.currentTimeMillis() < deadline)
+        {
+            long count = lookups.getCount();
+            LDAPEntry entry = (LDAPEntry) runFlow("testLookupFlow", dn);
+            if (count == lookups.getCount())
+            {
+                assertEquals(cn, entry.getAttribute("cn").getValue());
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("Entry " + dn + " was not replicated");
+    }
+}
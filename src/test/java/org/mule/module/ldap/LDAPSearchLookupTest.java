@@ -9,18 +9,30 @@
 package org.mule.module.ldap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Test;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.module.ldap.api.LDAPAttributeValueIterator;
 import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.LDAPResultSetIterator;
+import org.mule.util.IOUtils;
+import org.mule.util.StringUtils;
 
 public class LDAPSearchLookupTest extends AbstractLDAPConnectorTest
 {
+    private static volatile LDAPResultSetIterator lastIterator;
 
     /**
      * 
@@ -70,6 +82,142 @@ public class LDAPSearchLookupTest extends AbstractLDAPConnectorTest
         assertEquals(2, result.size());
     }
     
+    @Test
+    public void testSearchWithArguments() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> result = (List<LDAPEntry>) runFlow("testSearchWithArgumentsFlow", "user3");
+
+        assertEquals(1, result.size());
+        assertEquals("user3", result.get(0).getAttribute("uid").getValue());
+
+        // The argument is escaped so it is not a wildcard nor can it add conditions
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> none = (List<LDAPEntry>) runFlow("testSearchWithArgumentsFlow", "user*");
+        assertEquals(0, none.size());
+
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> injected = (List<LDAPEntry>) runFlow("testSearchWithArgumentsFlow", "x)(|(uid=*)");
+        assertEquals(0, injected.size());
+    }
+
+    @Test
+    public void testStreamingSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> result = (List<LDAPEntry>) runFlow("testStreamingSearchFlow", "(uid=user*)");
+        List<String> uids = new ArrayList<String>();
+
+        for(LDAPEntry entry : result)
+        {
+            uids.add((String) entry.getAttribute("uid").getValue());
+        }
+
+        assertEquals(5, uids.size());
+        assertEquals(5, lastIterator.getCount());
+        assertTrue(uids.contains("user1"));
+        assertTrue(uids.contains("user5"));
+        assertTrue(lastIterator.isClosed());
+    }
+    
+    @Test
+    public void testPartialStreamingSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> result = (List<LDAPEntry>) runFlow("testPartialStreamingSearchFlow", "(uid=user*)");
+
+        assertEquals(1, result.size());
+        assertEquals(1, lastIterator.getCount());
+        assertTrue(lastIterator.isClosed());
+    }
+    
+    @Test
+    public void testLazyStreamingSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> entries = (List<LDAPEntry>) runFlow("testLazyStreamingSearchFlow", "(uid=user1)");
+
+        assertEquals(1, entries.size());
+        assertEquals("user1", entries.get(0).getAttribute("UID").getValue());
+        assertEquals("User One", entries.get(0).toMap().get("cn"));
+    }
+    
+    @Test
+    public void testExportLdif() throws Exception
+    {
+        File file = File.createTempFile("ldap-export-", ".ldif.gz");
+        file.deleteOnExit();
+        
+        Long exported = (Long) runFlow("testExportLdifFlow", file.getAbsolutePath());
+        
+        assertEquals(Long.valueOf(5), exported);
+        String ldif = IOUtils.toString(new GZIPInputStream(new FileInputStream(file)), "UTF-8");
+        assertTrue(ldif.startsWith("version: 1\n\ndn: "));
+        assertTrue(ldif.contains("uid: user1\n"));
+        assertTrue(ldif.contains("cn: User Five\n"));
+        assertEquals(5, StringUtils.countMatches(ldif, "\ndn: "));
+    }
+    
+    @Test
+    public void testStreamAttributeValues() throws Exception
+    {
+        LDAPAttributeValueIterator values = (LDAPAttributeValueIterator) runFlow("testStreamAttributeValuesFlow", "cn=Users,ou=groups,dc=mulesoft,dc=org");
+        List<String> members = new ArrayList<String>();
+        
+        for(Object value : values)
+        {
+            members.add(((String) value).toLowerCase());
+        }
+        
+        assertEquals(2, members.size());
+        assertTrue(members.contains("uid=user1,ou=people,dc=mulesoft,dc=org"));
+        assertTrue(members.contains("uid=user2,ou=people,dc=mulesoft,dc=org"));
+        assertEquals(2, values.getCount());
+    }
+    
+    @Test
+    public void testStreamMissingAttributeValues() throws Exception
+    {
+        LDAPAttributeValueIterator values = (LDAPAttributeValueIterator) runFlow("testStreamAttributeValuesFlow", "uid=user1,ou=people,dc=mulesoft,dc=org");
+        
+        assertFalse(values.hasNext());
+    }
+    
+    @Test
+    public void testPartitionedSearchByChildren() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> result = (List<LDAPEntry>) runFlow("testPartitionedSearchByChildrenFlow", "(uid=user*)");
+        List<String> uids = new ArrayList<String>();
+
+        for(LDAPEntry entry : result)
+        {
+            uids.add((String) entry.getAttribute("uid").getValue());
+        }
+
+        assertEquals(5, uids.size());
+        assertTrue(uids.contains("user1"));
+        assertTrue(uids.contains("user5"));
+    }
+    
+    @Test
+    public void testPartitionedSearchByShards() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<LDAPEntry> result = (List<LDAPEntry>) runFlow("testPartitionedSearchByShardsFlow", "(uid=user*)");
+        List<String> uids = new ArrayList<String>();
+
+        for(LDAPEntry entry : result)
+        {
+            uids.add((String) entry.getAttribute("uid").getValue());
+        }
+
+        assertEquals(3, uids.size());
+        assertEquals("user5", uids.get(0));
+        assertEquals("user4", uids.get(1));
+        assertEquals("user3", uids.get(2));
+    }
+    
     @Test
     public void testPagedResultSearch() throws Exception
     {
@@ -90,6 +238,51 @@ public class LDAPSearchLookupTest extends AbstractLDAPConnectorTest
         }
     }
     
+    @Test
+    public void testSortedPagedResultSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<Object> result = (List<Object>) runFlow("testSortedPagedResultSearchFlow", "(uid=user*)");
+
+        assertEquals(5, result.size());
+        assertEquals("User Two", result.get(0));
+        assertEquals("User Three", result.get(1));
+        assertEquals("User One", result.get(2));
+        assertEquals("User Four", result.get(3));
+        assertEquals("User Five", result.get(4));
+    }
+    
+    @Test
+    public void testSortedOffsetPagedResultSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<Object> result = (List<Object>) runFlow("testSortedOffsetPagedResultSearchFlow", "(uid=user*)");
+
+        assertEquals(2, result.size());
+        assertEquals("User Three", result.get(0));
+        assertEquals("User Four", result.get(1));
+    }
+    
+    @Test
+    public void testOffsetPagedResultSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<Object> result = (List<Object>) runFlow("testOffsetPagedResultSearchFlow", "(uid=user*)");
+
+        assertEquals(2, result.size());
+    }
+    
+    @Test
+    public void testPrefetchPagedResultSearch() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        List<Object> result = (List<Object>) runFlow("testPrefetchPagedResultSearchFlow", "(uid=user*)");
+
+        assertEquals(5, result.size());
+        assertTrue(result.contains("User One"));
+        assertTrue(result.contains("User Five"));
+    }
+    
     @Test
     public void testPagedResultSearchAsync() throws Exception
     {
@@ -99,6 +292,38 @@ public class LDAPSearchLookupTest extends AbstractLDAPConnectorTest
         //assertEquals(0, result.size());
     }
     
+    /**
+     * Reads all the entries of the result set iterator processed by the flow.
+     */
+    public static class EntryCollector implements MessageProcessor
+    {
+        @Override
+        public MuleEvent process(MuleEvent event) throws MuleException
+        {
+            lastIterator = (LDAPResultSetIterator) event.getMessage().getPayload();
+            List<LDAPEntry> entries = new ArrayList<LDAPEntry>();
+            for(LDAPEntry entry : lastIterator)
+            {
+                entries.add(entry);
+            }
+            event.getMessage().setPayload(entries);
+            return event;
+        }
+    }
+    
+    /**
+     * Reads only the first entry of the result set iterator processed by the flow.
+     */
+    public static class FirstEntryCollector implements MessageProcessor
+    {
+        @Override
+        public MuleEvent process(MuleEvent event) throws MuleException
+        {
+            lastIterator = (LDAPResultSetIterator) event.getMessage().getPayload();
+            List<LDAPEntry> entries = new ArrayList<LDAPEntry>();
+            entries.add(lastIterator.next());
+            event.getMessage().setPayload(entries);
+            return event;
+        }
+    }
 }
-
-
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+
+import org.apache.directory.server.core.schema.SchemaInterceptor;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPEntry;
+import org.mule.module.ldap.api.jndi.LDAPJNDIConnection;
+import org.mule.module.ldap.api.jndi.LDAPJNDIServerSet;
+import org.mule.module.ldap.api.stats.LDAPStatistics;
+import org.mule.module.ldap.api.stats.ServerStatistics;
+import org.mule.util.FileUtils;
+import org.springframework.security.ldap.server.ApacheDSContainer;
+
+public class LDAPServerSetTest extends AbstractLDAPConnectorTest
+{
+    private static final String PRIMARY_URL = "ldap://localhost:" + LDAP_PORT + "/";
+    private static final String REPLICA_URL = "ldap://localhost:10390/";
+    private static final String UNREACHABLE_URL = "ldap://localhost:1/";
+
+    private static ApacheDSContainer replica;
+
+    /**
+     *
+     */
+    public LDAPServerSetTest()
+    {
+    }
+
+    @BeforeClass
+    public static void startReplica() throws Exception
+    {
+        File workingDirectory = new File(System.getProperty("java.io.tmpdir") + File.separator + "ldap-connector-junit-replica");
+        FileUtils.deleteDirectory(workingDirectory);
+
+        // Same entries as the primary server, but changes are not replicated
+        replica = new ApacheDSContainer("dc=mulesoft,dc=org", "classpath:test-server.ldif");
+        replica.setWorkingDirectory(workingDirectory);
+        replica.setPort(10390);
+        replica.getService().setAllowAnonymousAccess(true);
+        replica.getService().setAccessControlEnabled(true);
+        replica.getService().setShutdownHookEnabled(true);
+        replica.getService().getInterceptors().add(new SchemaInterceptor());
+        replica.afterPropertiesSet();
+    }
+
+    @AfterClass
+    public static void stopReplica() throws Exception
+    {
+        if (replica != null)
+        {
+            replica.stop();
+        }
+    }
+
+    @Override
+    protected String getConfigResources()
+    {
+        return "server-set-mule-config.xml";
+    }
+
+    @Test
+    public void testReadsAreBalanced() throws Exception
+    {
+        LDAPStatistics statistics = LDAPStatistics.getInstance("serverSetTest");
+        long primaryRequests = statistics.getServer(PRIMARY_URL).getRequestCount();
+        long replicaRequests = statistics.getServer(REPLICA_URL).getRequestCount();
+
+        for (int i = 0; i < 10; i++)
+        {
+            LDAPEntry entry = (LDAPEntry) runFlow("testLookupFlow", "uid=user1,ou=people,dc=mulesoft,dc=org");
+            assertEquals("user1", entry.getAttribute("uid").getValue());
+        }
+
+        assertEquals(5, statistics.getServer(PRIMARY_URL).getRequestCount() - primaryRequests);
+        assertEquals(5, statistics.getServer(REPLICA_URL).getRequestCount() - replicaRequests);
+
+        ServerStatistics unreachable = statistics.getServer(UNREACHABLE_URL);
+        assertFalse(unreachable.isAvailable());
+        assertTrue(unreachable.getEjectionCount() > 0);
+        assertEquals(0, unreachable.getRequestCount());
+    }
+
+    @Test
+    public void testWritesGoToPrimary() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=serverSetUser,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("uid", "serverSetUser");
+        entry.addAttribute("cn", "Server Set User");
+        entry.addAttribute("sn", "User");
+        entry.addAttribute("objectclass", new String[] {"top", "person", "organizationalPerson", "inetOrgPerson"});
+        runFlow("testAddFlow", entry);
+
+        assertTrue(exists(PRIMARY_URL, entry.getDn()));
+        assertFalse(exists(REPLICA_URL, entry.getDn()));
+    }
+
+    @Test
+    public void testEjectAndReadmit() throws Exception
+    {
+        LDAPJNDIServerSet serverSet = new LDAPJNDIServerSet(Arrays.asList(REPLICA_URL, PRIMARY_URL, UNREACHABLE_URL), buildEnvironment(), 1, 2, 0, 0, LDAPJNDIServerSet.LEAST_OUTSTANDING, 0);
+        serverSet.start();
+        try
+        {
+            LDAPJNDIServerSet.Server replicaServer = serverSet.getServers().get(0);
+            LDAPJNDIServerSet.Server primaryServer = serverSet.getServers().get(1);
+            assertFalse(serverSet.getServers().get(2).isAvailable());
+
+            // Writes go to the first server
+            LdapContext write = serverSet.borrow(true);
+            assertEquals(1, replicaServer.getOutstandingCount());
+
+            // Reads go to the server with less outstanding requests
+            LdapContext read = serverSet.borrow(false);
+            assertEquals(1, primaryServer.getOutstandingCount());
+            serverSet.release(read);
+
+            // A connection failure ejects the server
+            serverSet.invalidate(write);
+            assertFalse(replicaServer.isAvailable());
+            assertEquals(1, replicaServer.getEjectionCount());
+            write = serverSet.borrow(true);
+            assertNotNull(write.getAttributes("uid=user1,ou=people,dc=mulesoft,dc=org"));
+            assertEquals(1, primaryServer.getOutstandingCount());
+            serverSet.release(write);
+
+            serverSet.checkHealth();
+            assertTrue(replicaServer.isAvailable());
+            assertFalse(serverSet.getServers().get(2).isAvailable());
+        }
+        finally
+        {
+            serverSet.close();
+        }
+    }
+
+    private boolean exists(String url, String dn) throws Exception
+    {
+        Hashtable<String, String> env = buildEnvironment();
+        env.put(Context.PROVIDER_URL, url);
+        LdapContext ctx = new InitialLdapContext(env, null);
+        try
+        {
+            ctx.getAttributes(dn);
+            return true;
+        }
+        catch (NameNotFoundException ex)
+        {
+            return false;
+        }
+        finally
+        {
+            ctx.close();
+        }
+    }
+
+    private Hashtable<String, String> buildEnvironment()
+    {
+        Hashtable<String, String> env = new Hashtable<String, String>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, LDAPJNDIConnection.DEFAULT_INITIAL_CONTEXT_FACTORY);
+        env.put(Context.PROVIDER_URL, PRIMARY_URL);
+        env.put(Context.SECURITY_AUTHENTICATION, "simple");
+        env.put(Context.SECURITY_PRINCIPAL, "uid=admin,ou=people,dc=mulesoft,dc=org");
+        env.put(Context.SECURITY_CREDENTIALS, "admin");
+        return env;
+    }
+}
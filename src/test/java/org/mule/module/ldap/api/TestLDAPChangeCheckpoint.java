@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Test;
+
+public class TestLDAPChangeCheckpoint
+{
+
+    /**
+     *
+     */
+    public TestLDAPChangeCheckpoint()
+    {
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception
+    {
+        File file = File.createTempFile("ldap-checkpoint", ".properties");
+        file.delete();
+        try
+        {
+            LDAPChangeCheckpoint checkpoint = new LDAPChangeCheckpoint(file, "modifyTimestamp");
+            checkpoint.load();
+            assertNull(checkpoint.getValue());
+            assertEquals("(&(objectClass=person)(modifyTimestamp=*))", checkpoint.buildFilter("objectClass=person"));
+
+            LDAPEntry user1 = buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "modifyTimestamp", "20121010101010Z");
+            LDAPEntry user2 = buildEntry("uid=user2,ou=people,dc=mulesoft,dc=org", "modifyTimestamp", "20121010101010Z");
+            assertTrue(checkpoint.isChanged(user1));
+            checkpoint.advance(user1);
+            checkpoint.store();
+
+            // Same mark, but only user1 was processed
+            checkpoint = new LDAPChangeCheckpoint(file, "modifyTimestamp");
+            checkpoint.load();
+            assertEquals("20121010101010Z", checkpoint.getValue());
+            assertEquals("(&(objectClass=person)(modifyTimestamp>=20121010101010Z))", checkpoint.buildFilter("(objectClass=person)"));
+            assertFalse(checkpoint.isChanged(buildEntry("UID=User1, ou=People,dc=mulesoft,dc=org", "modifyTimestamp", "20121010101010Z")));
+            assertTrue(checkpoint.isChanged(user2));
+            assertFalse(checkpoint.isChanged(buildEntry("uid=user3,ou=people,dc=mulesoft,dc=org", "modifyTimestamp", "20121010101009Z")));
+            assertFalse(checkpoint.isChanged(new LDAPEntry("uid=user4,ou=people,dc=mulesoft,dc=org")));
+
+            checkpoint.advance(user2);
+            checkpoint.advance(buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "modifyTimestamp", "20121010101011Z"));
+            checkpoint.store();
+
+            checkpoint.load();
+            assertEquals("20121010101011Z", checkpoint.getValue());
+            assertFalse(checkpoint.isChanged(user2));
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+
+            try
+            {
+                new LDAPChangeCheckpoint(file, "entryCSN").load();
+                fail("Checkpoint of another attribute");
+            }
+            catch (LDAPException ex)
+            {
+                // Expected
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testNumericMark() throws Exception
+    {
+        LDAPChangeCheckpoint checkpoint = new LDAPChangeCheckpoint(new File("unused"), "uSNChanged:integerOrderingMatch");
+        assertEquals("uSNChanged:integerOrderingMatch", checkpoint.getOrderBy());
+
+        checkpoint.advance(buildEntry("cn=a,dc=org", "uSNChanged", "9"));
+        assertTrue(checkpoint.isChanged(buildEntry("cn=b,dc=org", "uSNChanged", "10")));
+        checkpoint.advance(buildEntry("cn=b,dc=org", "uSNChanged", "10"));
+        assertFalse(checkpoint.isChanged(buildEntry("cn=c,dc=org", "uSNChanged", "9")));
+        assertEquals("(uSNChanged>=10)", checkpoint.buildFilter(""));
+    }
+
+    @Test
+    public void testEscapedMark() throws Exception
+    {
+        LDAPChangeCheckpoint checkpoint = new LDAPChangeCheckpoint(new File("unused"), "description");
+        checkpoint.advance(buildEntry("cn=a,dc=org", "description", "a*(b)\\"));
+        assertEquals("(description>=a\\2a\\28b\\29\\5c)", checkpoint.buildFilter(null));
+
+        try
+        {
+            new LDAPChangeCheckpoint(new File("unused"), "-modifyTimestamp");
+            fail("Marks must be sorted in ascending order");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+    }
+
+    private LDAPEntry buildEntry(String dn, String attribute, String value) throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry(dn);
+        entry.addAttribute(attribute, value);
+        return entry;
+    }
+}
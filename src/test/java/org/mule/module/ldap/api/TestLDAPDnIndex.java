@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLDAPDnIndex
+{
+
+    /**
+     *
+     */
+    public TestLDAPDnIndex()
+    {
+    }
+
+    @Test
+    public void testContains() throws Exception
+    {
+        LDAPDnIndex index = new LDAPDnIndex(new LDAPMultiValueEntryAttribute("member", new Object[] {
+            "uid=user1, ou=people, dc=mulesoft, dc=org",
+            "UID=User2,ou=People,dc=mulesoft,dc=org",
+            "cn=Admins,ou=groups,dc=mulesoft,dc=org",
+            "cn=Smith\\, John,ou=people,dc=mulesoft,dc=org",
+            "uid=user1,ou=people,dc=mulesoft,dc=org",
+            "not-a-dn",
+            Integer.valueOf(1)}));
+
+        assertEquals(4, index.size());
+        assertTrue(index.contains("uid=user1,ou=people,dc=mulesoft,dc=org"));
+        assertTrue(index.contains("uid=user2, ou=people, dc=mulesoft, dc=org"));
+        assertTrue(index.contains("CN=admins,OU=groups,DC=mulesoft,DC=org"));
+        assertTrue(index.contains("cn=smith\\, john, ou=people, dc=mulesoft, dc=org"));
+        assertTrue(index.contains("cn=\"Smith, John\",ou=people,dc=mulesoft,dc=org"));
+        assertFalse(index.contains("uid=user3,ou=people,dc=mulesoft,dc=org"));
+        assertFalse(index.contains("uid=user1,ou=groups,dc=mulesoft,dc=org"));
+        assertFalse(index.contains("cn=smith"));
+        assertFalse(index.contains("not-a-dn"));
+        assertFalse(index.contains(null));
+    }
+
+    @Test
+    public void testNormalizedDn() throws Exception
+    {
+        // Plain DNs skip LdapName, but must be normalized the same way
+        assertEquals("uid=user1,ou=people,dc=mulesoft,dc=org", LDAPUtils.normalizeDn(" UID = User1 , ou=People,dc=mulesoft,dc=org "));
+        assertEquals("cn=smith\\, john,ou=people", LDAPUtils.normalizeDn("cn=Smith\\, John, ou=People"));
+        assertEquals("cn=a+uid=b,dc=org", LDAPUtils.normalizeDn("uid=B+cn=A,dc=org"));
+        assertEquals("", LDAPUtils.normalizeDn(""));
+        assertNull(LDAPUtils.parseNormalizedDn("not-a-dn"));
+        assertNull(LDAPUtils.parseNormalizedDn("uid=user1,people"));
+        assertNull(LDAPUtils.parseNormalizedDn("=user1"));
+    }
+}
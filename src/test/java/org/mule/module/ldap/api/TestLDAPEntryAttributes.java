@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestLDAPEntryAttributes
+{
+
+    /**
+     *
+     */
+    public TestLDAPEntryAttributes()
+    {
+    }
+
+    @Test
+    public void testCaseInsensitiveLookup() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=user1,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("cn", "User One");
+        entry.addAttribute("objectClass", Arrays.asList((Object) "top", "person"));
+
+        assertEquals("User One", entry.getAttribute("CN").getValue());
+        assertEquals("top", entry.getAttribute("objectclass").getValue());
+        assertEquals(Arrays.asList("top", "person"), entry.getAttribute("OBJECTCLASS").getValues());
+        assertTrue(entry.getAttribute("objectClass").isMultiValued());
+        assertFalse(entry.getAttribute("cn").isMultiValued());
+        assertNull(entry.getAttribute("sn"));
+        assertNull(entry.getAttribute(null));
+    }
+
+    @Test
+    public void testReplaceKeepsPosition() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=user1,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("uid", "user1");
+        entry.addAttribute("cn", "User One");
+        entry.addAttribute("mail", "user1@mulesoft.com");
+        entry.addAttribute(new LDAPSingleValueEntryAttribute("CN", "Changed"));
+
+        assertEquals(3, entry.getAttributeCount());
+        assertEquals("Changed", entry.getAttribute("cn").getValue());
+        assertEquals("CN", entry.getAttributes().getName(1));
+    }
+
+    @Test
+    public void testViewsWriteThrough() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=user1,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("cn", "User One");
+        entry.addAttribute("mail", new Object[] {"user1@mulesoft.com"});
+
+        ((LDAPSingleValueEntryAttribute) entry.getAttribute("cn")).setValue("Changed");
+        ((LDAPMultiValueEntryAttribute) entry.getAttribute("mail")).addValue("user1@mulesource.com");
+
+        assertEquals("Changed", entry.getAttribute("cn").getValue());
+        assertEquals(2, entry.getAttribute("mail").getValues().size());
+    }
+
+    @Test
+    public void testIterationOrderAndRemove() throws Exception
+    {
+        LDAPEntryAttributes attributes = new LDAPEntryAttributes();
+        for (int i = 0; i < 20; i++)
+        {
+            attributes.addSingleValueAttribute("attribute" + i, "value" + i);
+        }
+
+        int i = 0;
+        for (Iterator<LDAPEntryAttribute> it = attributes.attributes(); it.hasNext(); i++)
+        {
+            LDAPEntryAttribute attribute = it.next();
+            assertEquals("attribute" + i, attribute.getName());
+            if (i % 2 == 0)
+            {
+                it.remove();
+            }
+        }
+        assertEquals(20, i);
+        assertEquals(10, attributes.getCount());
+        assertEquals("attribute1", attributes.getName(0));
+        assertEquals("value19", attributes.getValue("ATTRIBUTE19"));
+        assertEquals(-1, attributes.indexOf("attribute18"));
+    }
+
+    @Test
+    public void testNamesAreShared() throws Exception
+    {
+        LDAPEntryAttributes attributes1 = new LDAPEntryAttributes();
+        LDAPEntryAttributes attributes2 = new LDAPEntryAttributes();
+        attributes1.addSingleValueAttribute(new String("telephoneNumber"), "1");
+        attributes2.addSingleValueAttribute(new String("telephoneNumber"), "2");
+
+        assertSame(attributes1.getName(0), attributes2.getName(0));
+    }
+
+    @Test
+    public void testCustomAttributesAreKept() throws Exception
+    {
+        LDAPEntryAttribute custom = new LDAPEntryAttribute("description")
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Object getValue()
+            {
+                return "custom";
+            }
+
+            @Override
+            public java.util.List<Object> getValues()
+            {
+                return Arrays.asList((Object) "custom");
+            }
+
+            @Override
+            public boolean isMultiValued()
+            {
+                return false;
+            }
+        };
+        LDAPEntry entry = new LDAPEntry("uid=user1,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute(custom);
+
+        assertSame(custom, entry.getAttribute("DESCRIPTION"));
+        assertEquals("custom", entry.toMap().get("description"));
+    }
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=user1,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("cn", "User One");
+        entry.addAttribute("objectClass", new Object[] {"top", "person"});
+        entry.addAttribute("jpegPhoto", new byte[] {1, 2, 3});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(entry);
+        out.close();
+        LDAPEntry copy = (LDAPEntry) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Map<String, Object> map = copy.toMap();
+        assertEquals(4, map.size());
+        assertEquals("User One", copy.getAttribute("cn").getValue());
+        assertEquals(Arrays.asList("top", "person"), copy.getAttribute("objectclass").getValues());
+        assertEquals(3, ((byte[]) copy.getAttribute("jpegphoto").getValue()).length);
+        assertSame(entry.getAttributes().getName(0), copy.getAttributes().getName(0));
+    }
+}
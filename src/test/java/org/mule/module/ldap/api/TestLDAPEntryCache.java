@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class TestLDAPEntryCache
+{
+
+    /**
+     * 
+     */
+    public TestLDAPEntryCache()
+    {
+    }
+
+    @Test
+    public void testNormalizedDn() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, true);
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+
+        LDAPEntry entry = cache.get("UID=user1, ou=People,dc=mulesoft,dc=org", null);
+        assertNotNull(entry);
+        assertEquals("User One", entry.getAttribute("cn").getValue());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testAttributesAreCachedSeparately() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, true);
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", new String[] {"cn", "uid"}, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+
+        assertNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+        assertNotNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", new String[] {"UID", "cn"}));
+    }
+
+    @Test
+    public void testReturnedEntriesAreCopies() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, true);
+        LDAPEntry original = buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One");
+        cache.put(original.getDn(), null, original);
+        ((LDAPSingleValueEntryAttribute) original.getAttribute("cn")).setValue("Changed");
+
+        LDAPEntry cached = cache.get(original.getDn(), null);
+        assertEquals("User One", cached.getAttribute("cn").getValue());
+        ((LDAPSingleValueEntryAttribute) cached.getAttribute("cn")).setValue("Changed again");
+        assertEquals("User One", cache.get(original.getDn(), null).getAttribute("cn").getValue());
+    }
+
+    @Test
+    public void testExpiration() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(50, 10, 0, true);
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+        assertNotNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 3, 0, true);
+        for (int i = 1; i <= 3; i++)
+        {
+            cache.put("uid=user" + i + ",ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user" + i + ",ou=people,dc=mulesoft,dc=org", "User " + i));
+        }
+        // user1 becomes the most recently used one, so user2 is evicted
+        assertNotNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+        cache.put("uid=user4,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user4,ou=people,dc=mulesoft,dc=org", "User 4"));
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("uid=user2,ou=people,dc=mulesoft,dc=org", null));
+        assertNotNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+        assertNotNull(cache.get("uid=user3,ou=people,dc=mulesoft,dc=org", null));
+        assertNotNull(cache.get("uid=user4,ou=people,dc=mulesoft,dc=org", null));
+    }
+
+    @Test
+    public void testSizeBoundedEviction() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 0, 1, true);
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, true);
+        cache.putNotFound("uid=missing,ou=people,dc=mulesoft,dc=org", null, "Entry not found");
+
+        try
+        {
+            cache.get("uid=missing,ou=people,dc=mulesoft,dc=org", null);
+            fail("NameNotFoundException expected");
+        }
+        catch (NameNotFoundException ex)
+        {
+            assertEquals("Entry not found", ex.getMessage());
+        }
+
+        cache.invalidate("uid=missing,ou=people,dc=mulesoft,dc=org");
+        assertNull(cache.get("uid=missing,ou=people,dc=mulesoft,dc=org", null));
+    }
+
+    @Test
+    public void testNegativeCachingDisabled() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, false);
+        cache.putNotFound("uid=missing,ou=people,dc=mulesoft,dc=org", null, "Entry not found");
+
+        assertNull(cache.get("uid=missing,ou=people,dc=mulesoft,dc=org", null));
+    }
+
+    @Test
+    public void testInvalidateSubtree() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, true);
+        cache.put("ou=people,dc=mulesoft,dc=org", null, buildEntry("ou=people,dc=mulesoft,dc=org", null));
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", new String[] {"cn"}, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+        cache.put("ou=groups,dc=mulesoft,dc=org", null, buildEntry("ou=groups,dc=mulesoft,dc=org", null));
+
+        cache.invalidateSubtree("ou=People,dc=mulesoft,dc=org");
+
+        assertEquals(1, cache.size());
+        assertNull(cache.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+        assertNull(cache.get("ou=people,dc=mulesoft,dc=org", null));
+        assertNotNull(cache.get("ou=groups,dc=mulesoft,dc=org", null));
+    }
+
+    @Test
+    public void testEntriesInvalidatedWhileReadingAreNotCached() throws Exception
+    {
+        LDAPEntryCache cache = new LDAPEntryCache(60000, 10, 0, true);
+        long generation = cache.getGeneration();
+        cache.invalidate("uid=user1,ou=people,dc=mulesoft,dc=org");
+        cache.invalidateSubtree("ou=groups,dc=mulesoft,dc=org");
+
+        cache.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"), generation);
+        cache.putNotFound("cn=admins,ou=groups,dc=mulesoft,dc=org", null, "Not found", generation);
+        cache.put("uid=user2,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user2,ou=people,dc=mulesoft,dc=org", "User Two"), generation);
+
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("uid=user2,ou=people,dc=mulesoft,dc=org", null));
+
+        generation = cache.getGeneration();
+        cache.clear();
+        cache.put("uid=user2,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user2,ou=people,dc=mulesoft,dc=org", "User Two"), generation);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSharedCache() throws Exception
+    {
+        String key = "ldap://localhost/|simple:uid=shared-cache";
+        LDAPEntryCache first = LDAPEntryCache.acquire(key, 60000, 10, 0, true);
+        LDAPEntryCache second = LDAPEntryCache.acquire(key, 60000, 10, 0, true);
+        LDAPEntryCache otherSettings = LDAPEntryCache.acquire(key, 1000, 10, 0, true);
+        assertSame(first, second);
+        assertNotSame(first, otherSettings);
+        otherSettings.release();
+
+        first.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+        second.invalidate("uid=user1,ou=people,dc=mulesoft,dc=org");
+        assertNull(first.get("uid=user1,ou=people,dc=mulesoft,dc=org", null));
+
+        first.put("uid=user1,ou=people,dc=mulesoft,dc=org", null, buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "User One"));
+        first.release();
+        // Still acquired by the second connection
+        assertEquals(1, second.size());
+
+        second.release();
+        assertEquals(0, second.size());
+        LDAPEntryCache third = LDAPEntryCache.acquire(key, 60000, 10, 0, true);
+        assertNotSame(second, third);
+        third.release();
+    }
+
+    private LDAPEntry buildEntry(String dn, String cn)
+    {
+        LDAPEntry entry = new LDAPEntry(dn);
+        if (cn != null)
+        {
+            entry.addAttribute(new LDAPSingleValueEntryAttribute("cn", cn));
+        }
+        entry.addAttribute(new LDAPMultiValueEntryAttribute("objectclass", new Object[] {"top", "person"}));
+        return entry;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class TestLDAPFilter
+{
+
+    /**
+     *
+     */
+    public TestLDAPFilter()
+    {
+    }
+
+    @Test
+    public void testParse() throws Exception
+    {
+        LDAPFilter filter = LDAPFilter.parse("(&(objectClass=person)(|(uid={0})(mail={1}))(!(cn=a*b*c)))");
+        assertEquals(LDAPFilter.AND, filter.getType());
+        assertEquals(2, filter.getArgumentCount());
+        assertEquals("(&(objectClass=person)(|(uid={0})(mail={1}))(!(cn=a*b*c)))", filter.toString());
+
+        LDAPFilter.Composite and = (LDAPFilter.Composite) filter;
+        assertEquals(3, and.getFilters().size());
+        assertEquals(LDAPFilter.OR, and.getFilters().get(1).getType());
+
+        LDAPFilter.Assertion substrings = (LDAPFilter.Assertion) ((LDAPFilter.Not) and.getFilters().get(2)).getFilter();
+        assertEquals(LDAPFilter.SUBSTRINGS, substrings.getType());
+        assertEquals("cn", substrings.getAttribute());
+        assertEquals("a", substrings.getInitial().getString(null));
+        assertEquals(1, substrings.getAny().size());
+        assertEquals("c", substrings.getFinal().getString(null));
+
+        LDAPFilter present = LDAPFilter.parse("mail=*");
+        assertEquals(LDAPFilter.PRESENT, present.getType());
+        assertEquals("(mail=*)", present.toString());
+
+        LDAPFilter.Assertion extensible = (LDAPFilter.Assertion) LDAPFilter.parse("(ou:dn:caseExactMatch:=People)");
+        assertEquals(LDAPFilter.EXTENSIBLE, extensible.getType());
+        assertEquals("ou", extensible.getAttribute());
+        assertTrue(extensible.isDnAttributes());
+        assertEquals("caseExactMatch", extensible.getMatchingRule());
+
+        LDAPFilter.Assertion escaped = (LDAPFilter.Assertion) LDAPFilter.parse("(cn=Lu\\c4\\8di\\c4\\87 \\28\\2a\\29)");
+        assertTrue(escaped.getValue().isLiteral());
+        assertEquals("Lu\u010di\u0107 (*)", escaped.getValue().getString(null));
+        assertEquals("(cn=Lu\u010di\u0107 \\28\\2a\\29)", escaped.toString());
+    }
+
+    @Test
+    public void testFormat() throws Exception
+    {
+        LDAPFilter filter = LDAPFilter.parse("(&(uid={0})(cn=*{1}*))");
+        assertEquals("(&(uid=user1)(cn=*User*))", filter.format(new Object[] {"user1", "User"}));
+        assertEquals("(&(uid=\\2a\\29\\28uid=admin\\29\\28x\\5c)(cn=*\\2a*))", filter.format(new Object[] {"*)(uid=admin)(x\\", "*"}));
+        assertEquals("(&(uid=\\01\\ff)(cn=*1*))", filter.format(new Object[] {new byte[] {1, (byte) 0xff}, 1}));
+
+        try
+        {
+            filter.format(new Object[] {"user1"});
+            fail("Missing argument");
+        }
+        catch (InvalidFilterException ex)
+        {
+            // Expected
+        }
+
+        try
+        {
+            filter.format(new Object[] {"user1", null});
+            fail("Null argument");
+        }
+        catch (InvalidFilterException ex)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testInvalidFilters() throws Exception
+    {
+        String[] invalid = {"", "(cn=a", "(cn=a))", "(&)x", "(=a)", "(cn=\\2)", "(cn=\\zz)", "(cn=a)(cn=b)"};
+        for (String filter : invalid)
+        {
+            try
+            {
+                LDAPFilter.parse(filter);
+                fail("Filter should be invalid: " + filter);
+            }
+            catch (InvalidFilterException ex)
+            {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testCompileIsCached() throws Exception
+    {
+        LDAPFilter filter = LDAPFilter.compile("(uid={0})");
+        assertSame(filter, LDAPFilter.compile("(uid={0})"));
+        assertFalse(filter == LDAPFilter.parse("(uid={0})"));
+        assertTrue(LDAPFilter.getCacheSize() <= LDAPFilter.MAX_CACHED_FILTERS);
+
+        for (int i = 0; i < LDAPFilter.MAX_CACHED_FILTERS + 10; i++)
+        {
+            LDAPFilter.compile("(uid=user" + i + ")");
+        }
+        assertEquals(LDAPFilter.MAX_CACHED_FILTERS, LDAPFilter.getCacheSize());
+    }
+}
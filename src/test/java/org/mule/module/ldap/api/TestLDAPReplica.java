@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestLDAPReplica
+{
+    private static final String BASE_DN = "ou=people,dc=mulesoft,dc=org";
+
+    /**
+     *
+     */
+    public TestLDAPReplica()
+    {
+    }
+
+    @Test
+    public void testLookup() throws Exception
+    {
+        LDAPReplica replica = new LDAPReplica(BASE_DN, "uid", "modifyTimestamp");
+        assertNull(replica.lookup("uid=user1," + BASE_DN, null));
+
+        replica.load(buildPeople());
+        assertTrue(replica.isLoaded());
+        assertEquals(4, replica.size());
+        assertEquals("20121010101012Z", replica.getHighWaterMark());
+
+        LDAPEntry entry = replica.lookup("UID=User1, ou=People,dc=mulesoft,dc=org", null);
+        assertEquals("User One", entry.getAttribute("cn").getValue());
+        assertNull(entry.getAttribute("modifyTimestamp"));
+
+        entry = replica.lookup("uid=user1," + BASE_DN, new String[] {"uid"});
+        assertEquals(1, entry.getAttributeCount());
+
+        // Returned entries are copies
+        entry.addAttribute("cn", "Changed");
+        assertEquals("User One", replica.lookup("uid=user1," + BASE_DN, null).getAttribute("cn").getValue());
+
+        try
+        {
+            replica.lookup("uid=nobody," + BASE_DN, null);
+            fail("Entry does not exist");
+        }
+        catch (NameNotFoundException ex)
+        {
+            // Expected
+        }
+
+        // Outside the subtree or attributes that were never replicated
+        assertNull(replica.lookup("cn=group1,ou=groups,dc=mulesoft,dc=org", null));
+        assertNull(replica.lookup("uid=user1," + BASE_DN, new String[] {"createTimestamp"}));
+        assertNull(replica.lookup("uid=user1," + BASE_DN, new String[] {"+"}));
+    }
+
+    @Test
+    public void testSearch() throws Exception
+    {
+        LDAPReplica replica = new LDAPReplica(BASE_DN, "uid mail:hash cn:sorted", "modifyTimestamp");
+        replica.load(buildPeople());
+
+        assertEquals(Arrays.asList("user2"), uids(replica.search(BASE_DN, "(uid=USER2)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Arrays.asList("user1", "user3"), uids(replica.search(BASE_DN, "(&(objectClass=person)(|(uid={0})(uid={1})))", new Object[] {"user1", "user3"}, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Arrays.asList("user2", "user3"), uids(replica.search(BASE_DN, "(cn=user  t*)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Arrays.asList("user1", "user3"), uids(replica.search(BASE_DN, "(cn=*r*e)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Arrays.asList("user1", "user3"), uids(replica.search(BASE_DN, "(mail=*)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Arrays.asList("user2"), uids(replica.search(BASE_DN, "(&(uid=*)(!(mail=*)))", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Collections.emptyList(), uids(replica.search(BASE_DN, "(uid=\\2a)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+
+        // Scope
+        assertEquals(4, replica.search(BASE_DN, "(objectClass=*)", null, controls(LDAPSearchControls.SUBTREE_SCOPE)).size());
+        assertEquals(2, replica.search(BASE_DN, "(objectClass=*)", null, controls(LDAPSearchControls.ONELEVEL_SCOPE)).size());
+        assertEquals(1, replica.search(BASE_DN, "(objectClass=*)", null, controls(LDAPSearchControls.OBJECT_SCOPE)).size());
+
+        // Order, maximum amount of results and attributes
+        LDAPSearchControls controls = controls(LDAPSearchControls.SUBTREE_SCOPE);
+        controls.setOrderBy("-uid");
+        controls.setMaxResults(2);
+        controls.setAttributesToReturn(new String[] {"uid", "mail"});
+        List<LDAPEntry> result = replica.search(BASE_DN, "(uid=user*)", null, controls);
+        assertEquals(2, result.size());
+        assertEquals("user3", result.get(0).getAttribute("uid").getValue());
+        assertEquals("user2", result.get(1).getAttribute("uid").getValue());
+        assertNotNull(result.get(0).getAttribute("mail"));
+        assertNull(result.get(0).getAttribute("cn"));
+
+        // Searches that must be performed on the server
+        assertNull(replica.search(BASE_DN, "(uid>=user2)", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+        assertNull(replica.search(BASE_DN, "(cn:caseExactMatch:=User One)", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+        assertNull(replica.search(BASE_DN, "(memberOf=*)", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+        assertNull(replica.search(BASE_DN, "(uid={0})", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+        assertNull(replica.search(BASE_DN, "(uid=user1", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+        assertNull(replica.search("dc=mulesoft,dc=org", "(uid=user1)", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+
+        try
+        {
+            replica.search("ou=missing," + BASE_DN, "(uid=user1)", null, controls(LDAPSearchControls.SUBTREE_SCOPE));
+            fail("Base DN does not exist");
+        }
+        catch (NameNotFoundException ex)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRefresh() throws Exception
+    {
+        LDAPReplica replica = new LDAPReplica(BASE_DN, "uid", "modifyTimestamp");
+        replica.load(buildPeople());
+        assertEquals("(modifyTimestamp>=20121010101012Z)", replica.getChangesFilter());
+
+        // Entries modified through the connection are read from the server until the next refresh
+        long generation = replica.beginRefresh();
+        replica.invalidate("uid=user1," + BASE_DN);
+        assertNull(replica.lookup("uid=user1," + BASE_DN, null));
+        assertNotNull(replica.lookup("uid=user2," + BASE_DN, null));
+        assertNull(replica.search(BASE_DN, "(uid=user2)", null, controls(LDAPSearchControls.SUBTREE_SCOPE)));
+
+        replica.update(resultSet(buildEntry("user1", "User One Modified", "one@mulesoft.org", "20121010101015Z")));
+        assertEquals(Arrays.asList("uid=user4,ou=people,dc=mulesoft,dc=org"), replica.retain(resultSet(
+            new LDAPEntry(BASE_DN), new LDAPEntry("uid=user1," + BASE_DN), new LDAPEntry("uid=user2," + BASE_DN), new LDAPEntry("uid=user4," + BASE_DN))));
+        replica.update(resultSet(buildEntry("user4", "User Four", null, null)));
+
+        // Invalidated after the refresh began
+        assertNull(replica.lookup("uid=user1," + BASE_DN, null));
+        replica.endRefresh(generation);
+        assertNull(replica.lookup("uid=user1," + BASE_DN, null));
+        replica.endRefresh(replica.beginRefresh());
+
+        assertEquals("User One Modified", replica.lookup("uid=user1," + BASE_DN, null).getAttribute("cn").getValue());
+        assertEquals("20121010101015Z", replica.getHighWaterMark());
+        assertEquals(Arrays.asList("user1", "user2", "user4"), uids(replica.search(BASE_DN, "(uid=*)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        assertEquals(Collections.emptyList(), uids(replica.search(BASE_DN, "(uid=user3)", null, controls(LDAPSearchControls.SUBTREE_SCOPE))));
+        try
+        {
+            replica.lookup("uid=user3,ou=admins," + BASE_DN, null);
+            fail("Entry was deleted");
+        }
+        catch (NameNotFoundException ex)
+        {
+            // Expected
+        }
+
+        replica.invalidateSubtree("dc=mulesoft,dc=org");
+        assertNull(replica.lookup("uid=user2," + BASE_DN, null));
+        replica.endRefresh(replica.beginRefresh());
+        assertNotNull(replica.lookup("uid=user2," + BASE_DN, null));
+        assertTrue(replica.getHits() > 0);
+        assertTrue(replica.getMisses() > 0);
+
+        try
+        {
+            new LDAPReplica(BASE_DN, "uid:btree", "modifyTimestamp");
+            fail("Invalid index type");
+        }
+        catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRefreshWithoutReconcile() throws Exception
+    {
+        LDAPReplica replica = new LDAPReplica(BASE_DN, "uid", "modifyTimestamp");
+        replica.load(buildPeople());
+        assertTrue(replica.getLastReconcileTime() > 0);
+        assertFalse(replica.hasStaleSubtrees());
+
+        // Deleted and modified through the connection: only these entries are read again
+        replica.invalidate("uid=user1," + BASE_DN);
+        replica.invalidate("uid=user2," + BASE_DN);
+        long generation = replica.beginRefresh();
+        List<String> stale = replica.getStaleDns();
+        Collections.sort(stale);
+        assertEquals(Arrays.asList("uid=user1," + BASE_DN, "uid=user2," + BASE_DN), stale);
+        replica.update(resultSet(buildEntry("user1", "User One Modified", "one@mulesoft.org", "20121010101015Z")));
+        replica.remove("uid=user2," + BASE_DN);
+        replica.endRefresh(generation);
+
+        assertTrue(replica.getStaleDns().isEmpty());
+        assertTrue(replica.getLastRefreshTime() > 0);
+        assertEquals("User One Modified", replica.lookup("uid=user1," + BASE_DN, null).getAttribute("cn").getValue());
+        try
+        {
+            replica.lookup("uid=user2," + BASE_DN, null);
+            fail("Entry was deleted");
+        }
+        catch (NameNotFoundException ex)
+        {
+            // Expected
+        }
+
+        replica.invalidateSubtree(BASE_DN);
+        assertTrue(replica.hasStaleSubtrees());
+    }
+
+    @Test
+    public void testSharedReplica() throws Exception
+    {
+        String key = "ldap://localhost/|simple:uid=shared-replica";
+        LDAPReplica first = LDAPReplica.acquire(key, BASE_DN, "uid", "modifyTimestamp");
+        LDAPReplica second = LDAPReplica.acquire(key, "ou=People, dc=mulesoft,dc=org", "uid", "modifyTimestamp");
+        LDAPReplica otherIndexes = LDAPReplica.acquire(key, BASE_DN, "uid cn", "modifyTimestamp");
+        assertSame(first, second);
+        assertNotSame(first, otherIndexes);
+        otherIndexes.release();
+
+        first.release();
+        assertSame(second, LDAPReplica.acquire(key, BASE_DN, "uid", "modifyTimestamp"));
+        second.release();
+        second.release();
+        LDAPReplica third = LDAPReplica.acquire(key, BASE_DN, "uid", "modifyTimestamp");
+        assertNotSame(second, third);
+        third.release();
+    }
+
+    private LDAPResultSet buildPeople() throws Exception
+    {
+        LDAPEntry people = new LDAPEntry(BASE_DN);
+        people.addAttribute("objectClass", Arrays.asList((Object) "top", "organizationalUnit"));
+        people.addAttribute("ou", "people");
+
+        LDAPEntry user3 = buildEntry("user3", "User Three", "three@mulesoft.org", "20121010101012Z");
+        user3.setDn("uid=user3,ou=admins," + BASE_DN);
+        return resultSet(people,
+                         buildEntry("user1", "User One", "one@mulesoft.org", "20121010101010Z"),
+                         buildEntry("user2", "User  Two", null, "20121010101011Z"),
+                         user3);
+    }
+
+    private LDAPEntry buildEntry(String uid, String cn, String mail, String modifyTimestamp) throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("uid=" + uid + "," + BASE_DN);
+        entry.addAttribute("objectClass", Arrays.asList((Object) "top", "person", "inetOrgPerson"));
+        entry.addAttribute("uid", uid);
+        entry.addAttribute("cn", cn);
+        if (mail != null)
+        {
+            entry.addAttribute("mail", mail);
+        }
+        if (modifyTimestamp != null)
+        {
+            entry.addAttribute("modifyTimestamp", modifyTimestamp);
+        }
+        return entry;
+    }
+
+    private LDAPResultSet resultSet(LDAPEntry... entries)
+    {
+        return new ListLDAPResultSet(new ArrayList<LDAPEntry>(Arrays.asList(entries)));
+    }
+
+    private LDAPSearchControls controls(int scope)
+    {
+        LDAPSearchControls controls = new LDAPSearchControls();
+        controls.setScope(scope);
+        return controls;
+    }
+
+    private List<String> uids(List<LDAPEntry> entries)
+    {
+        List<String> uids = new ArrayList<String>();
+        for (LDAPEntry entry : entries)
+        {
+            uids.add((String) entry.getAttribute("uid").getValue());
+        }
+        Collections.sort(uids);
+        return uids;
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestLDIFReader
+{
+
+    /**
+     *
+     */
+    public TestLDIFReader()
+    {
+    }
+
+    @Test
+    public void testContentRecords() throws Exception
+    {
+        LDIFReader reader = reader("version: 1\n" +
+                                   "# A comment that is\n" +
+                                   "  folded\n" +
+                                   "dn: uid=user1,ou=people,\n" +
+                                   " dc=mulesoft,dc=org\n" +
+                                   "uid: user1\n" +
+                                   "objectClass: top\n" +
+                                   "objectClass: person\n" +
+                                   "cn:: TWFyw61h\n" +
+                                   "jpegPhoto:: AQIDBA==\n" +
+                                   "description:\n" +
+                                   "\n" +
+                                   "\n" +
+                                   "dn: uid=user2,ou=people,dc=mulesoft,dc=org\n" +
+                                   "uid: user2\n");
+
+        LDAPChangeRecord first = reader.read();
+        assertEquals(LDAPChangeRecord.ADD, first.getChangeType());
+        assertEquals("uid=user1,ou=people,dc=mulesoft,dc=org", first.getDn());
+        assertEquals(4, reader.getRecordLineNumber());
+        LDAPEntry entry = first.getEntry();
+        assertEquals("user1", entry.getAttribute("uid").getValue());
+        assertEquals(2, entry.getAttribute("objectClass").getValues().size());
+        assertEquals("Mar\u00eda", entry.getAttribute("cn").getValue());
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, (byte[]) entry.getAttribute("jpegPhoto").getValue());
+        assertEquals("", entry.getAttribute("description").getValue());
+
+        LDAPChangeRecord second = reader.read();
+        assertEquals("uid=user2,ou=people,dc=mulesoft,dc=org", second.getDn());
+        assertEquals(14, reader.getRecordLineNumber());
+
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    @Test
+    public void testChangeRecords() throws Exception
+    {
+        LDIFReader reader = reader("dn: uid=user1,ou=people,dc=mulesoft,dc=org\n" +
+                                   "changetype: modify\n" +
+                                   "add: mail\n" +
+                                   "mail: user1@mulesoft.org\n" +
+                                   "mail: user.one@mulesoft.org\n" +
+                                   "-\n" +
+                                   "replace: sn\n" +
+                                   "sn: One\n" +
+                                   "-\n" +
+                                   "delete: description\n" +
+                                   "-\n" +
+                                   "\n" +
+                                   "dn: uid=user2,ou=people,dc=mulesoft,dc=org\n" +
+                                   "control: 1.2.840.113556.1.4.805 true\n" +
+                                   "changetype: delete\n" +
+                                   "\n" +
+                                   "dn: uid=user3,ou=people,dc=mulesoft,dc=org\n" +
+                                   "changetype: modrdn\n" +
+                                   "newrdn: uid=user33\n" +
+                                   "deleteoldrdn: 1\n" +
+                                   "\n" +
+                                   "dn: uid=user4,ou=people,dc=mulesoft,dc=org\n" +
+                                   "changetype: moddn\n" +
+                                   "newrdn: uid=user4\n" +
+                                   "deleteoldrdn: 1\n" +
+                                   "newsuperior: ou=groups,dc=mulesoft,dc=org\n" +
+                                   "\n" +
+                                   "dn: uid=user5,ou=people,dc=mulesoft,dc=org\n" +
+                                   "changetype: add\n" +
+                                   "uid: user5\n");
+
+        LDAPChangeRecord modify = reader.read();
+        assertEquals(LDAPChangeRecord.MODIFY, modify.getChangeType());
+        List<LDAPModification> modifications = modify.getModifications();
+        assertEquals(3, modifications.size());
+        assertEquals(LDAPModification.ADD_ATTRIBUTE, modifications.get(0).getOperation());
+        assertEquals("mail", modifications.get(0).getAttribute().getName());
+        assertEquals(2, modifications.get(0).getAttribute().getValues().size());
+        assertEquals(LDAPModification.REPLACE_ATTRIBUTE, modifications.get(1).getOperation());
+        assertEquals("One", modifications.get(1).getAttribute().getValues().get(0));
+        assertEquals(LDAPModification.REMOVE_ATTRIBUTE, modifications.get(2).getOperation());
+        assertTrue(modifications.get(2).getAttribute().getValues().isEmpty());
+
+        LDAPChangeRecord delete = reader.read();
+        assertEquals(LDAPChangeRecord.DELETE, delete.getChangeType());
+        assertEquals("uid=user2,ou=people,dc=mulesoft,dc=org", delete.getDn());
+
+        LDAPChangeRecord modrdn = reader.read();
+        assertEquals(LDAPChangeRecord.MODRDN, modrdn.getChangeType());
+        assertEquals("uid=user33,ou=people,dc=mulesoft,dc=org", modrdn.getNewDn());
+
+        LDAPChangeRecord moddn = reader.read();
+        assertEquals(LDAPChangeRecord.MODRDN, moddn.getChangeType());
+        assertEquals("uid=user4,ou=groups,dc=mulesoft,dc=org", moddn.getNewDn());
+
+        LDAPChangeRecord add = reader.read();
+        assertEquals(LDAPChangeRecord.ADD, add.getChangeType());
+        assertEquals("user5", add.getEntry().getAttribute("uid").getValue());
+
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testInvalidRecords() throws Exception
+    {
+        LDIFReader reader = reader("uid: user1\n" +
+                                   "\n" +
+                                   "dn: uid=user2,ou=people,dc=mulesoft,dc=org\n" +
+                                   "changetype: rename\n" +
+                                   "\n" +
+                                   "dn: uid=user3,ou=people,dc=mulesoft,dc=org\n" +
+                                   "uid: user3\n");
+        try
+        {
+            reader.read();
+            fail("The record has no dn");
+        }
+        catch (LDAPException ex)
+        {
+            assertTrue(ex.getMessage().startsWith("Invalid LDIF record at line 1."));
+            assertEquals("uid: user1", reader.getRecordLines().get(0));
+        }
+        try
+        {
+            reader.read();
+            fail("The change type is not supported");
+        }
+        catch (LDAPException ex)
+        {
+            assertTrue(ex.getMessage().startsWith("Invalid LDIF record at line 3."));
+        }
+
+        // The following records can still be read
+        assertEquals("uid=user3,ou=people,dc=mulesoft,dc=org", reader.read().getDn());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+        {
+            value.append((char) ('a' + i % 26));
+        }
+        LDAPEntry entry = new LDAPEntry("cn=Mar\u00eda,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("cn", "Mar\u00eda");
+        entry.addAttribute("description", value.toString());
+        entry.addAttribute("jpegPhoto", new byte[] {0, (byte) 0xFF, 10});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LDIFWriter writer = new LDIFWriter(out);
+        writer.writeVersion();
+        writer.writeComment("Exported\nentries");
+        writer.write(entry);
+        writer.write(LDAPChangeRecord.modrdn(entry.getDn(), "cn=Maria,ou=groups,dc=mulesoft,dc=org"));
+        writer.close();
+
+        LDIFReader reader = new LDIFReader(new ByteArrayInputStream(out.toByteArray()));
+        LDAPEntry read = reader.read().getEntry();
+        assertEquals(entry.getDn(), read.getDn());
+        assertEquals("Mar\u00eda", read.getAttribute("cn").getValue());
+        assertEquals(value.toString(), read.getAttribute("description").getValue());
+        assertArrayEquals(new byte[] {0, (byte) 0xFF, 10}, (byte[]) read.getAttribute("jpegPhoto").getValue());
+
+        LDAPChangeRecord modrdn = reader.read();
+        assertEquals(LDAPChangeRecord.MODRDN, modrdn.getChangeType());
+        assertEquals("cn=Maria,ou=groups,dc=mulesoft,dc=org", modrdn.getNewDn());
+        assertNull(reader.read());
+    }
+
+    private LDIFReader reader(String ldif) throws Exception
+    {
+        return new LDIFReader(new ByteArrayInputStream(ldif.getBytes("UTF-8")), 16);
+    }
+}
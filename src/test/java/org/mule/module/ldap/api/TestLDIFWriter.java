@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestLDIFWriter
+{
+
+    /**
+     *
+     */
+    public TestLDIFWriter()
+    {
+    }
+
+    @Test
+    public void testEntries() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LDIFWriter writer = new LDIFWriter(out);
+        writer.writeVersion();
+        writer.write(buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", "user1"));
+        writer.write(buildEntry("uid=user2,ou=people,dc=mulesoft,dc=org", "user2"));
+        writer.close();
+
+        assertEquals("version: 1\n" +
+                     "\n" +
+                     "dn: uid=user1,ou=people,dc=mulesoft,dc=org\n" +
+                     "uid: user1\n" +
+                     "objectClass: top\n" +
+                     "objectClass: person\n" +
+                     "description:\n" +
+                     "\n" +
+                     "dn: uid=user2,ou=people,dc=mulesoft,dc=org\n" +
+                     "uid: user2\n" +
+                     "objectClass: top\n" +
+                     "objectClass: person\n" +
+                     "description:\n", out.toString("US-ASCII"));
+        assertEquals(2, writer.getEntriesWritten());
+    }
+
+    @Test
+    public void testBase64Values() throws Exception
+    {
+        LDAPEntry entry = new LDAPEntry("cn=Mar\u00eda,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("jpegPhoto", new byte[] {1, 2, 3, 4});
+        entry.addAttribute("description", " leading space");
+        entry.addAttribute("cn", "Mar\u00eda");
+
+        assertEquals("dn:: Y249TWFyw61hLG91PXBlb3BsZSxkYz1tdWxlc29mdCxkYz1vcmc=\n" +
+                     "jpegPhoto:: AQIDBA==\n" +
+                     "description:: IGxlYWRpbmcgc3BhY2U=\n" +
+                     "cn:: TWFyw61h\n", write(entry, 16));
+    }
+
+    @Test
+    public void testLineFolding() throws Exception
+    {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+        {
+            value.append((char) ('a' + i % 26));
+        }
+        LDAPEntry entry = new LDAPEntry("uid=user1,ou=people,dc=mulesoft,dc=org");
+        entry.addAttribute("description", value.toString());
+
+        // A small buffer forces flushing in the middle of the lines
+        String ldif = write(entry, 10);
+        String[] lines = ldif.split("\n");
+        assertEquals(4, lines.length);
+        for (String line : lines)
+        {
+            assertTrue(line.length() <= LDIFWriter.MAX_LINE_LENGTH);
+        }
+        assertTrue(lines[2].startsWith(" "));
+
+        StringBuilder unfolded = new StringBuilder();
+        for (int i = 1; i < lines.length; i++)
+        {
+            unfolded.append(i > 1 ? lines[i].substring(1) : lines[i]);
+        }
+        assertEquals("description: " + value, unfolded.toString());
+    }
+
+    @Test
+    public void testChangeRecords() throws Exception
+    {
+        List<LDAPModification> modifications = new ArrayList<LDAPModification>();
+        modifications.add(new LDAPModification(LDAPModification.ADD_ATTRIBUTE, new LDAPSingleValueEntryAttribute("mail", "user1@mulesoft.org")));
+        modifications.add(new LDAPModification(LDAPModification.REMOVE_ATTRIBUTE, new LDAPMultiValueEntryAttribute("description")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LDIFWriter writer = new LDIFWriter(out);
+        writer.writeComment("line 3: failed");
+        writer.write(LDAPChangeRecord.modify("uid=user1,ou=people,dc=mulesoft,dc=org", modifications));
+        writer.write(LDAPChangeRecord.delete("uid=user2,ou=people,dc=mulesoft,dc=org"));
+        writer.writeComment("line 9: failed");
+        writer.write(LDAPChangeRecord.modrdn("uid=user3,ou=people,dc=mulesoft,dc=org", "uid=user33,ou=people,dc=mulesoft,dc=org"));
+        writer.close();
+
+        assertEquals("# line 3: failed\n" +
+                     "dn: uid=user1,ou=people,dc=mulesoft,dc=org\n" +
+                     "changetype: modify\n" +
+                     "add: mail\n" +
+                     "mail: user1@mulesoft.org\n" +
+                     "-\n" +
+                     "delete: description\n" +
+                     "-\n" +
+                     "\n" +
+                     "dn: uid=user2,ou=people,dc=mulesoft,dc=org\n" +
+                     "changetype: delete\n" +
+                     "\n" +
+                     "# line 9: failed\n" +
+                     "dn: uid=user3,ou=people,dc=mulesoft,dc=org\n" +
+                     "changetype: modrdn\n" +
+                     "newrdn: uid=user33\n" +
+                     "deleteoldrdn: 1\n" +
+                     "newsuperior: ou=people,dc=mulesoft,dc=org\n", out.toString("US-ASCII"));
+        assertEquals(3, writer.getEntriesWritten());
+    }
+
+    @Test
+    public void testSafeStrings() throws Exception
+    {
+        assertTrue(LDIFWriter.isSafeString("User One"));
+        assertTrue(LDIFWriter.isSafeString("a:b<c"));
+        assertFalse(LDIFWriter.isSafeString(":value"));
+        assertFalse(LDIFWriter.isSafeString("<value"));
+        assertFalse(LDIFWriter.isSafeString("trailing "));
+        assertFalse(LDIFWriter.isSafeString("line\nbreak"));
+        assertFalse(LDIFWriter.isSafeString("\u00f1"));
+    }
+
+    private LDAPEntry buildEntry(String dn, String uid)
+    {
+        LDAPEntry entry = new LDAPEntry(dn);
+        entry.addAttribute("uid", uid);
+        entry.addAttribute("objectClass", new Object[] {"top", "person"});
+        entry.addAttribute("description", "");
+        return entry;
+    }
+
+    private String write(LDAPEntry entry, int bufferSize) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LDIFWriter writer = new LDIFWriter(out, bufferSize);
+        writer.write(entry);
+        writer.close();
+        return out.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestMergingLDAPResultSet
+{
+
+    /**
+     * 
+     */
+    public TestMergingLDAPResultSet()
+    {
+    }
+
+    @Test
+    public void testUnorderedMerge() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            AtomicInteger closed = new AtomicInteger(0);
+            MergingLDAPResultSet result = new MergingLDAPResultSet(buildPartitions(4, 30, closed), null, 0, 2, 0, 5);
+            result.start(executor);
+            
+            Set<String> dns = new HashSet<String>();
+            while(result.hasNext())
+            {
+                assertTrue(dns.add(result.next().getDn()));
+            }
+            
+            assertEquals(120, dns.size());
+            result.close();
+            Thread.sleep(200);
+            assertEquals(4, closed.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOrderedMergeWithMaxResults() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            AtomicInteger closed = new AtomicInteger(0);
+            MergingLDAPResultSet result = new MergingLDAPResultSet(buildPartitions(3, 1000, closed), new LDAPEntryComparator("employeeNumber:integerOrderingMatch"), 10, 1, 100, 5);
+            result.start(executor);
+            
+            List<LDAPEntry> entries = result.getAllEntries();
+            
+            assertEquals(10, entries.size());
+            // Partitions hold numbers i, i + 3, i + 6, ...
+            for(int i = 0; i < entries.size(); i++)
+            {
+                assertEquals(String.valueOf(i), entries.get(i).getAttribute("employeeNumber").getValue());
+            }
+            assertFalse(result.hasNext());
+            
+            Thread.sleep(500);
+            assertEquals(3, closed.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWorkersAreLimitedByParallelism() throws Exception
+    {
+        final AtomicInteger workers = new AtomicInteger(0);
+        ExecutorService executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>())
+        {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task)
+            {
+                workers.incrementAndGet();
+            }
+        };
+        try
+        {
+            AtomicInteger closed = new AtomicInteger(0);
+            MergingLDAPResultSet result = new MergingLDAPResultSet(buildPartitions(50, 4, closed), new LDAPEntryComparator("employeeNumber:integerOrderingMatch"), 0, 2, 100, 5);
+            result.start(executor);
+            
+            List<LDAPEntry> entries = result.getAllEntries();
+            
+            assertEquals(200, entries.size());
+            assertEquals("199", entries.get(199).getAttribute("employeeNumber").getValue());
+            assertEquals(2, workers.get());
+            assertEquals(50, closed.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPartitionFailure() throws Exception
+    {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try
+        {
+            List<Callable<LDAPResultSet>> partitions = buildPartitions(2, 10, new AtomicInteger(0));
+            partitions.add(new Callable<LDAPResultSet>()
+            {
+                @Override
+                public LDAPResultSet call() throws Exception
+                {
+                    throw new NameNotFoundException("No such object");
+                }
+            });
+            MergingLDAPResultSet result = new MergingLDAPResultSet(partitions, null, 0, 3, 0, 100);
+            result.start(executor);
+            
+            try
+            {
+                result.getAllEntries();
+                fail("Partition failure should be propagated");
+            }
+            catch(NameNotFoundException ex)
+            {
+                // Expected
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    private List<Callable<LDAPResultSet>> buildPartitions(final int count, final int entriesPerPartition, final AtomicInteger closed)
+    {
+        List<Callable<LDAPResultSet>> partitions = new ArrayList<Callable<LDAPResultSet>>();
+        for(int i = 0; i < count; i++)
+        {
+            final int partition = i;
+            partitions.add(new Callable<LDAPResultSet>()
+            {
+                @Override
+                public LDAPResultSet call() throws Exception
+                {
+                    return new PartitionResultSet(partition, count, entriesPerPartition, closed);
+                }
+            });
+        }
+        return partitions;
+    }
+    
+    private static class PartitionResultSet implements LDAPResultSet
+    {
+        private final int partition;
+        private final int partitions;
+        private final int total;
+        private final AtomicInteger closed;
+        private int read = 0;
+        
+        PartitionResultSet(int partition, int partitions, int total, AtomicInteger closed)
+        {
+            this.partition = partition;
+            this.partitions = partitions;
+            this.total = total;
+            this.closed = closed;
+        }
+        
+        @Override
+        public void close() throws LDAPException
+        {
+            closed.incrementAndGet();
+        }
+
+        @Override
+        public LDAPEntry next() throws LDAPException
+        {
+            int number = partition + partitions * read++;
+            LDAPEntry entry = new LDAPEntry("uid=user" + number + ",ou=people,dc=mulesoft,dc=org");
+            entry.addAttribute("employeeNumber", String.valueOf(number));
+            return entry;
+        }
+
+        @Override
+        public boolean hasNext() throws LDAPException
+        {
+            return read < total;
+        }
+
+        @Override
+        public List<LDAPEntry> getAllEntries() throws LDAPException
+        {
+            List<LDAPEntry> all = new ArrayList<LDAPEntry>();
+            while(hasNext())
+            {
+                all.add(next());
+            }
+            return all;
+        }
+    }
+}
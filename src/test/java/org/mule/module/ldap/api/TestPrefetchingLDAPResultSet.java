@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class TestPrefetchingLDAPResultSet
+{
+
+    /**
+     * 
+     */
+    public TestPrefetchingLDAPResultSet()
+    {
+    }
+
+    @Test
+    public void testPrefetchKeepsOrder() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            CountingResultSet source = new CountingResultSet(25, -1);
+            PrefetchingLDAPResultSet result = new PrefetchingLDAPResultSet(source, 4, 2);
+            result.start(executor);
+            
+            int count = 0;
+            while(result.hasNext())
+            {
+                assertEquals("uid=user" + count + ",ou=people,dc=mulesoft,dc=org", result.next().getDn());
+                count++;
+            }
+            
+            assertEquals(25, count);
+            result.close();
+            assertTrue(source.closed);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPrefetchIsBounded() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            CountingResultSet source = new CountingResultSet(1000, -1);
+            PrefetchingLDAPResultSet result = new PrefetchingLDAPResultSet(source, 10, 3);
+            result.start(executor);
+            
+            assertTrue(result.hasNext());
+            Thread.sleep(300);
+            
+            // Current page + 3 queued pages + the page being filled
+            assertTrue(source.read <= 50);
+            assertEquals(3, result.getPrefetchedPagesCount());
+            
+            result.close();
+            assertTrue(source.closed);
+            assertFalse(result.hasNext());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsPropagated() throws Exception
+    {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            PrefetchingLDAPResultSet result = new PrefetchingLDAPResultSet(new CountingResultSet(100, 7), 5, 2);
+            result.start(executor);
+            
+            int count = 0;
+            try
+            {
+                while(result.hasNext())
+                {
+                    result.next();
+                    count++;
+                }
+                fail("Failure reading entries should be propagated");
+            }
+            catch(LDAPException ex)
+            {
+                assertEquals(5, count);
+            }
+            result.close();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static class CountingResultSet implements LDAPResultSet
+    {
+        private final int total;
+        private final int failAt;
+        private volatile int read = 0;
+        private volatile boolean closed = false;
+        
+        CountingResultSet(int total, int failAt)
+        {
+            this.total = total;
+            this.failAt = failAt;
+        }
+        
+        @Override
+        public void close() throws LDAPException
+        {
+            closed = true;
+        }
+
+        @Override
+        public LDAPEntry next() throws LDAPException
+        {
+            if(read == failAt)
+            {
+                throw new LDAPException("Connection lost");
+            }
+            return new LDAPEntry("uid=user" + (read++) + ",ou=people,dc=mulesoft,dc=org");
+        }
+
+        @Override
+        public boolean hasNext() throws LDAPException
+        {
+            return !closed && read < total;
+        }
+
+        @Override
+        public List<LDAPEntry> getAllEntries() throws LDAPException
+        {
+            List<LDAPEntry> all = new ArrayList<LDAPEntry>();
+            while(hasNext())
+            {
+                all.add(next());
+            }
+            return all;
+        }
+    }
+}
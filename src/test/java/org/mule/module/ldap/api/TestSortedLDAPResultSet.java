@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestSortedLDAPResultSet
+{
+
+    /**
+     * 
+     */
+    public TestSortedLDAPResultSet()
+    {
+    }
+
+    @Test
+    public void testParseSortKeys()
+    {
+        List<LDAPSortKey> keys = LDAPSortKey.parse(" sn, -cn:caseExactOrderingMatch ,+uid");
+
+        assertEquals(3, keys.size());
+        assertEquals("sn", keys.get(0).getAttributeName());
+        assertFalse(keys.get(0).isReverseOrder());
+        assertEquals("cn", keys.get(1).getAttributeName());
+        assertTrue(keys.get(1).isReverseOrder());
+        assertEquals("caseExactOrderingMatch", keys.get(1).getMatchingRule());
+        assertEquals("uid", keys.get(2).getAttributeName());
+        assertFalse(keys.get(2).isReverseOrder());
+    }
+
+    @Test
+    public void testInMemorySort() throws Exception
+    {
+        SortedLDAPResultSet result = new SortedLDAPResultSet(new ListResultSet(buildEntries(50)), new LDAPEntryComparator("-employeeNumber:integerOrderingMatch"), 100);
+        List<LDAPEntry> entries = result.getAllEntries();
+        
+        assertEquals(0, result.getSpilledRunsCount());
+        assertEquals(50, entries.size());
+        for(int i = 0; i < entries.size(); i++)
+        {
+            assertEquals(String.valueOf(49 - i), entries.get(i).getAttribute("employeeNumber").getValue());
+        }
+        result.close();
+    }
+
+    @Test
+    public void testExternalSort() throws Exception
+    {
+        // More runs than the merge fan in, so intermediate merges are performed
+        int total = SortedLDAPResultSet.MAX_MERGE_FAN_IN * 3 + 5;
+        SortedLDAPResultSet result = new SortedLDAPResultSet(new ListResultSet(buildEntries(total)), new LDAPEntryComparator("employeeNumber:integerOrderingMatch"), 2);
+        
+        int count = 0;
+        while(result.hasNext())
+        {
+            assertEquals(String.valueOf(count), result.next().getAttribute("employeeNumber").getValue());
+            count++;
+        }
+        
+        assertEquals(total, count);
+        result.close();
+        assertEquals(0, result.getSpilledRunsCount());
+    }
+
+    @Test
+    public void testMissingValuesSortLast() throws Exception
+    {
+        List<LDAPEntry> source = buildEntries(3);
+        source.add(1, new LDAPEntry("uid=nonumber,ou=people,dc=mulesoft,dc=org"));
+        
+        List<LDAPEntry> entries = new SortedLDAPResultSet(new ListResultSet(source), new LDAPEntryComparator("employeeNumber"), 0).getAllEntries();
+        
+        assertEquals(4, entries.size());
+        assertEquals("uid=nonumber,ou=people,dc=mulesoft,dc=org", entries.get(3).getDn());
+    }
+    
+    private List<LDAPEntry> buildEntries(int count)
+    {
+        List<LDAPEntry> entries = new ArrayList<LDAPEntry>(count);
+        for(int i = 0; i < count; i++)
+        {
+            LDAPEntry entry = new LDAPEntry("uid=user" + i + ",ou=people,dc=mulesoft,dc=org");
+            entry.addAttribute("uid", "user" + i);
+            entry.addAttribute("employeeNumber", String.valueOf(i));
+            entries.add(entry);
+        }
+        Collections.shuffle(entries, new Random(count));
+        return entries;
+    }
+    
+    private static class ListResultSet implements LDAPResultSet
+    {
+        private Iterator<LDAPEntry> entries;
+        
+        ListResultSet(List<LDAPEntry> entries)
+        {
+            this.entries = entries.iterator();
+        }
+        
+        @Override
+        public void close() throws LDAPException
+        {
+            entries = null;
+        }
+
+        @Override
+        public LDAPEntry next() throws LDAPException
+        {
+            return entries.next();
+        }
+
+        @Override
+        public boolean hasNext() throws LDAPException
+        {
+            return entries != null && entries.hasNext();
+        }
+
+        @Override
+        public List<LDAPEntry> getAllEntries() throws LDAPException
+        {
+            List<LDAPEntry> all = new ArrayList<LDAPEntry>();
+            while(hasNext())
+            {
+                all.add(next());
+            }
+            return all;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.ldap.LdapContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPException;
+
+public class TestLDAPJNDIContextPool
+{
+
+    /**
+     *
+     */
+    public TestLDAPJNDIContextPool()
+    {
+    }
+
+    @Test
+    public void testBorrowBlocksAtMaxTotal() throws Exception
+    {
+        FakeServer server = FakeServer.create("blocks-at-max-total");
+        final ManualClockPool pool = new ManualClockPool(server, 0, 2, 0, 0);
+        pool.start();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            LdapContext first = pool.borrow();
+            pool.borrow();
+            Future<LdapContext> waiting = executor.submit(new Callable<LdapContext>()
+            {
+                @Override
+                public LdapContext call() throws Exception
+                {
+                    return pool.borrow();
+                }
+            });
+
+            while (pool.getWaitersCount() == 0)
+            {
+                Thread.yield();
+            }
+            assertFalse(waiting.isDone());
+            assertEquals(2, server.getOpened());
+
+            pool.release(first);
+            assertSame(first, waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(2, pool.getActiveCount());
+            assertEquals(2, server.getOpened());
+        }
+        finally
+        {
+            executor.shutdownNow();
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    @Test
+    public void testBorrowTimeout() throws Exception
+    {
+        FakeServer server = FakeServer.create("borrow-timeout");
+        ManualClockPool pool = new ManualClockPool(server, 0, 1, 50, 0);
+        pool.start();
+        try
+        {
+            pool.borrow();
+            try
+            {
+                pool.borrow();
+                fail("Borrowing from an exhausted pool should time out");
+            }
+            catch (LDAPException ex)
+            {
+                assertTrue(ex.getMessage().startsWith("Timeout waiting for an idle connection"));
+            }
+            assertEquals(0, pool.getWaitersCount());
+            assertEquals(1, pool.getActiveCount());
+        }
+        finally
+        {
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    @Test
+    public void testValidationDiscardsBrokenContext() throws Exception
+    {
+        FakeServer server = FakeServer.create("validation");
+        ManualClockPool pool = new ManualClockPool(server, 1, 2, 0, 0);
+        pool.start();
+        try
+        {
+            LdapContext broken = pool.borrow();
+            int brokenId = server.idOf(broken);
+            pool.release(broken);
+            server.breakAll();
+            pool.advance(LDAPJNDIContextPool.VALIDATION_BYPASS_WINDOW + 1);
+
+            LdapContext context = pool.borrow();
+            assertNotSame(broken, context);
+            assertTrue(server.isClosed(brokenId));
+            assertFalse(server.isClosed(server.idOf(context)));
+            assertEquals(2, server.getOpened());
+            assertEquals(0, pool.getIdleCount());
+        }
+        finally
+        {
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    @Test
+    public void testRecentlyReturnedContextIsNotValidated() throws Exception
+    {
+        FakeServer server = FakeServer.create("validation-bypass");
+        ManualClockPool pool = new ManualClockPool(server, 1, 2, 0, 0);
+        pool.start();
+        try
+        {
+            LdapContext context = pool.borrow();
+            pool.release(context);
+            int validations = server.getValidations();
+
+            assertSame(context, pool.borrow());
+            assertEquals(validations, server.getValidations());
+        }
+        finally
+        {
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception
+    {
+        FakeServer server = FakeServer.create("invalidate");
+        ManualClockPool pool = new ManualClockPool(server, 0, 1, 50, 0);
+        pool.start();
+        try
+        {
+            LdapContext context = pool.borrow();
+            int id = server.idOf(context);
+            pool.invalidate(context);
+            assertTrue(server.isClosed(id));
+            assertEquals(0, pool.getActiveCount());
+            assertEquals(0, pool.getIdleCount());
+
+            // The slot was freed, so there is no timeout
+            LdapContext other = pool.borrow();
+            assertNotSame(context, other);
+
+            // Releasing an invalidated context does not give it back to the pool
+            pool.release(context);
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(1, pool.getActiveCount());
+        }
+        finally
+        {
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception
+    {
+        FakeServer server = FakeServer.create("idle-eviction");
+        ManualClockPool pool = new ManualClockPool(server, 1, 3, 0, 1000);
+        pool.start();
+        try
+        {
+            List<LdapContext> contexts = new ArrayList<LdapContext>();
+            for (int i = 0; i < 3; i++)
+            {
+                contexts.add(pool.borrow());
+            }
+            int lastId = server.idOf(contexts.get(2));
+            for (LdapContext context : contexts)
+            {
+                pool.release(context);
+            }
+            assertEquals(0, pool.evict());
+
+            pool.advance(1001);
+            assertEquals(2, pool.evict());
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(2, server.getClosed());
+            // Only the most recently returned context is kept
+            assertFalse(server.isClosed(lastId));
+        }
+        finally
+        {
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    @Test
+    public void testBorrowKeepsMinIdle() throws Exception
+    {
+        FakeServer server = FakeServer.create("keeps-min-idle");
+        ManualClockPool pool = new ManualClockPool(server, 2, 4, 0, 50);
+        pool.start();
+        try
+        {
+            pool.advance(100);
+            LdapContext context = pool.borrow();
+            // The context handed out was idle for too long, but it was needed to keep the other one open
+            assertEquals(1, pool.getIdleCount());
+            assertEquals(0, server.getClosed());
+            pool.release(context);
+            assertEquals(2, pool.getIdleCount());
+        }
+        finally
+        {
+            pool.close();
+            FakeServer.remove(server);
+        }
+    }
+
+    /*
+     * Pool whose time only moves forward when the test says so.
+     */
+    private static class ManualClockPool extends LDAPJNDIContextPool
+    {
+        private volatile long now = 1000000L;
+
+        ManualClockPool(FakeServer server, int minIdle, int maxTotal, long maxWait, long idleTimeout)
+        {
+            super(server.getEnvironment(), minIdle, maxTotal, maxWait, idleTimeout);
+        }
+
+        void advance(long millis)
+        {
+            now += millis;
+        }
+
+        @Override
+        long currentTimeMillis()
+        {
+            return now;
+        }
+    }
+
+    /*
+     * Keeps track of the contexts created by FakeContextFactory for a provider URL.
+     */
+    private static class FakeServer
+    {
+        private static final Map<String, FakeServer> SERVERS = new ConcurrentHashMap<String, FakeServer>();
+
+        private final String url;
+        private final List<FakeContext> contexts = new ArrayList<FakeContext>();
+        private int validations = 0;
+
+        private FakeServer(String url)
+        {
+            this.url = url;
+        }
+
+        static FakeServer create(String name)
+        {
+            FakeServer server = new FakeServer("fake://" + name);
+            SERVERS.put(server.url, server);
+            return server;
+        }
+
+        static void remove(FakeServer server)
+        {
+            SERVERS.remove(server.url);
+        }
+
+        static FakeServer get(String url)
+        {
+            return SERVERS.get(url);
+        }
+
+        Hashtable<String, String> getEnvironment()
+        {
+            Hashtable<String, String> env = new Hashtable<String, String>();
+            env.put(Context.INITIAL_CONTEXT_FACTORY, FakeContextFactory.class.getName());
+            env.put(Context.PROVIDER_URL, url);
+            return env;
+        }
+
+        synchronized LdapContext open()
+        {
+            FakeContext handler = new FakeContext(this, contexts.size());
+            contexts.add(handler);
+            return (LdapContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {LdapContext.class}, handler);
+        }
+
+        synchronized void validated()
+        {
+            validations++;
+        }
+
+        synchronized void breakAll()
+        {
+            for (FakeContext context : contexts)
+            {
+                context.broken = true;
+            }
+        }
+
+        synchronized int getOpened()
+        {
+            return contexts.size();
+        }
+
+        synchronized int getClosed()
+        {
+            int closed = 0;
+            for (FakeContext context : contexts)
+            {
+                if (context.closed)
+                {
+                    closed++;
+                }
+            }
+            return closed;
+        }
+
+        synchronized int getValidations()
+        {
+            return validations;
+        }
+
+        /*
+         * The pool hands out InitialLdapContext instances, which delegate to the fake ones.
+         */
+        int idOf(LdapContext context) throws NamingException
+        {
+            return (Integer) context.getEnvironment().get(FakeContext.ID);
+        }
+
+        synchronized boolean isClosed(int id)
+        {
+            return contexts.get(id).closed;
+        }
+    }
+
+    private static class FakeContext implements InvocationHandler
+    {
+        static final String ID = "fake.context.id";
+
+        private final FakeServer server;
+        private final int id;
+        private volatile boolean broken = false;
+        private volatile boolean closed = false;
+
+        FakeContext(FakeServer server, int id)
+        {
+            this.server = server;
+            this.id = id;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            if ("equals".equals(name))
+            {
+                return proxy == args[0];
+            }
+            else if ("hashCode".equals(name))
+            {
+                return System.identityHashCode(proxy);
+            }
+            else if ("toString".equals(name))
+            {
+                return "FakeContext" + id + "@" + server.url;
+            }
+            else if ("getEnvironment".equals(name))
+            {
+                Hashtable<String, Object> environment = new Hashtable<String, Object>();
+                environment.put(ID, id);
+                return environment;
+            }
+            else if ("close".equals(name))
+            {
+                closed = true;
+                return null;
+            }
+            else if ("getAttributes".equals(name))
+            {
+                server.validated();
+                if (broken || closed)
+                {
+                    throw new NamingException("Connection closed");
+                }
+                return new BasicAttributes(true);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Creates the contexts of the {@link FakeServer} registered for the provider URL.
+     */
+    public static class FakeContextFactory implements InitialContextFactory
+    {
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException
+        {
+            FakeServer server = FakeServer.get((String) environment.get(Context.PROVIDER_URL));
+            if (server == null)
+            {
+                throw new NamingException("Unknown server " + environment.get(Context.PROVIDER_URL));
+            }
+            return server.open();
+        }
+    }
+}
@@ -8,13 +8,22 @@
 
 package org.mule.module.ldap.api.jndi;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
 
 import org.junit.Test;
+import org.mule.module.ldap.api.LDAPEntry;
 
 public class TestLDAPJNDIUtils
 {
@@ -47,6 +56,81 @@ public class TestLDAPJNDIUtils
         assertFalse(LDAPJNDIUtils.containsDnValue("not-a-dn", dns));
         
     }
-}
 
+    @Test
+    public void testContainsDnValueAfterValuesChange()
+    {
+        final String dn1 = "uid=user1, ou=people, dc=mulesoft, dc=org";
+        final String dn2 = "uid=user2, ou=people, dc=mulesoft, dc=org";
+        final String dn3 = "uid=user3, ou=people, dc=mulesoft, dc=org";
+
+        final List<Object> dns = new ArrayList<Object>();
+        dns.add(dn1);
+        dns.add(dn2);
+
+        assertTrue(LDAPJNDIUtils.containsDnValue(dn2, dns));
+        assertFalse(LDAPJNDIUtils.containsDnValue(dn3, dns));
+
+        dns.add(dn3);
+        assertTrue(LDAPJNDIUtils.containsDnValue(dn3, dns));
+
+        dns.set(1, "uid=user4, ou=people, dc=mulesoft, dc=org");
+        assertFalse(LDAPJNDIUtils.containsDnValue(dn2, dns));
+        assertTrue(LDAPJNDIUtils.containsDnValue("uid=user4,ou=people,dc=mulesoft,dc=org", dns));
+
+        final List<Object> others = new ArrayList<Object>();
+        others.add(dn2);
+        assertTrue(LDAPJNDIUtils.containsDnValue(dn2, others));
+        assertFalse(LDAPJNDIUtils.containsDnValue(dn2, dns));
+    }
+
+    @Test
+    public void testLazyEntryConvertsRequestedAttributes() throws Exception
+    {
+        LDAPEntry entry = LDAPJNDIUtils.buildLazyEntry("uid=user1,ou=people,dc=mulesoft,dc=org", buildAttributes());
+        LazyLDAPEntryAttributes attributes = (LazyLDAPEntryAttributes) entry.getAttributes();
+
+        assertEquals("User One", entry.getAttribute("CN").getValue());
+        assertEquals(2, attributes.getPendingCount());
+        assertNull(entry.getAttribute("sn"));
+        assertEquals(2, attributes.getPendingCount());
+
+        assertEquals(Arrays.asList("top", "person"), entry.getAttribute("objectclass").getValues());
+        assertEquals(1, attributes.getPendingCount());
+    }
+
+    @Test
+    public void testLazyEntryConvertsAllAttributes() throws Exception
+    {
+        LDAPEntry lazy = LDAPJNDIUtils.buildLazyEntry("uid=user1,ou=people,dc=mulesoft,dc=org", buildAttributes());
+        LDAPEntry eager = LDAPJNDIUtils.buildEntry("uid=user1,ou=people,dc=mulesoft,dc=org", buildAttributes());
+
+        lazy.getAttribute("uid");
+        Map<String, Object> map = lazy.toMap();
+        assertEquals(eager.toMap(), map);
+        assertEquals(0, ((LazyLDAPEntryAttributes) lazy.getAttributes()).getPendingCount());
+        assertEquals(3, lazy.getAttributeCount());
+    }
 
+    @Test
+    public void testLazyEntryAddedAttributesAreNotOverwritten() throws Exception
+    {
+        LDAPEntry entry = LDAPJNDIUtils.buildLazyEntry("uid=user1,ou=people,dc=mulesoft,dc=org", buildAttributes());
+        entry.addAttribute("cn", "Changed");
+
+        assertEquals(3, entry.getAttributeCount());
+        assertEquals("Changed", entry.getAttribute("cn").getValue());
+    }
+
+    private Attributes buildAttributes()
+    {
+        Attributes attributes = new BasicAttributes(true);
+        attributes.put("uid", "user1");
+        attributes.put("cn", "User One");
+        BasicAttribute objectClass = new BasicAttribute("objectClass");
+        objectClass.add("top");
+        objectClass.add("person");
+        attributes.put(objectClass);
+        return attributes;
+    }
+}
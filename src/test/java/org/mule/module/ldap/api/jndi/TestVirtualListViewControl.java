@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.jndi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+
+import org.junit.Test;
+import org.mule.module.ldap.api.LDAPException;
+
+public class TestVirtualListViewControl
+{
+
+    /**
+     *
+     */
+    public TestVirtualListViewControl()
+    {
+    }
+
+    @Test
+    public void testEncodeRequest() throws Exception
+    {
+        VirtualListViewControl control = new VirtualListViewControl(501, 100, null);
+        assertEquals(VirtualListViewControl.OID, control.getID());
+        assertTrue(control.isCritical());
+        assertArrayEquals(bytes(0x30, 0x0F, 0x02, 0x01, 0x00, 0x02, 0x01, 0x63, 0xA0, 0x07, 0x02, 0x02, 0x01, 0xF5, 0x02, 0x01, 0x00), control.getEncodedValue());
+
+        control = new VirtualListViewControl(128, 1, new byte[] {0x0A, 0x0B});
+        assertArrayEquals(bytes(0x30, 0x13, 0x02, 0x01, 0x00, 0x02, 0x01, 0x00, 0xA0, 0x07, 0x02, 0x02, 0x00, 0x80, 0x02, 0x01, 0x00, 0x04, 0x02, 0x0A, 0x0B), control.getEncodedValue());
+    }
+
+    @Test
+    public void testDecodeResponse() throws Exception
+    {
+        VirtualListViewResponseControl response = new VirtualListViewResponseControl(bytes(0x30, 0x0F, 0x02, 0x02, 0x01, 0xF5, 0x02, 0x02, 0x03, 0xE8, 0x0A, 0x01, 0x00, 0x04, 0x02, 0x0A, 0x0B));
+        assertEquals(501, response.getTargetPosition());
+        assertEquals(1000, response.getContentCount());
+        assertEquals(VirtualListViewResponseControl.SUCCESS, response.getResult());
+        assertArrayEquals(new byte[] {0x0A, 0x0B}, response.getContextId());
+
+        response = VirtualListViewResponseControl.find(new Control[] {
+            new BasicControl("1.2.840.113556.1.4.474"),
+            new BasicControl(VirtualListViewResponseControl.OID, false, bytes(0x30, 0x09, 0x02, 0x01, 0x00, 0x02, 0x01, 0x00, 0x0A, 0x01, 0x3D))});
+        assertEquals(61, response.getResult());
+        assertNull(response.getContextId());
+
+        assertNull(VirtualListViewResponseControl.find(null));
+
+        try
+        {
+            new VirtualListViewResponseControl(bytes(0x30, 0x09, 0x02, 0x01));
+            fail("Truncated value");
+        }
+        catch (LDAPException ex)
+        {
+            // Expected
+        }
+    }
+
+    private byte[] bytes(int... values)
+    {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
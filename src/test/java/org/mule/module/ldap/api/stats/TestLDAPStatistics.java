@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.ldap.api.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class TestLDAPStatistics
+{
+
+    /**
+     * 
+     */
+    public TestLDAPStatistics()
+    {
+    }
+
+    @Test
+    public void testHistogramBuckets()
+    {
+        for (long value = 0; value < 1000000; value += 7)
+        {
+            int index = LatencyHistogram.indexOf(value);
+            long highest = LatencyHistogram.highestValueOf(index);
+            assertTrue(highest >= value);
+            // Relative error is bounded
+            assertTrue(highest - value <= Math.max(value / 32, 0));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testHistogramPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertEquals(500, histogram.getValueAtPercentile(50), 500 / 32);
+        assertEquals(990, histogram.getValueAtPercentile(99), 990 / 32);
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testOperationErrorsByType()
+    {
+        OperationStatistics statistics = new OperationStatistics("lookup");
+        statistics.record(2000000L, null);
+        statistics.record(1000000L, "NameNotFoundException");
+        statistics.record(1000000L, "NameNotFoundException");
+        statistics.record(1000000L, "CommunicationException");
+
+        assertEquals(4, statistics.getCount());
+        assertEquals(3, statistics.getErrorCount());
+        assertEquals(Long.valueOf(2), statistics.getErrorCountByType().get("NameNotFoundException"));
+        assertEquals(Long.valueOf(1), statistics.getErrorCountByType().get("CommunicationException"));
+        assertEquals(2000, statistics.getMaxLatency());
+    }
+
+    @Test
+    public void testPublishedInJmx() throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName lookup = new ObjectName(LDAPStatistics.JMX_DOMAIN + ":type=Operation,config=" + ObjectName.quote("testConf") + ",operation=" + ObjectName.quote("lookup"));
+        ObjectName pool = new ObjectName(LDAPStatistics.JMX_DOMAIN + ":type=Pool,config=" + ObjectName.quote("testConf"));
+
+        LDAPStatistics statistics = LDAPStatistics.getInstance("testConf");
+        try
+        {
+            statistics.recordOperation("lookup", 1000L, null);
+
+            assertTrue(server.isRegistered(pool));
+            assertEquals(Long.valueOf(1), server.getAttribute(lookup, "Count"));
+            assertEquals(Long.valueOf(0), server.getAttribute(lookup, "ErrorCount"));
+        }
+        finally
+        {
+            LDAPStatistics.dispose("testConf");
+        }
+        assertFalse(server.isRegistered(lookup));
+        assertFalse(server.isRegistered(pool));
+    }
+
+    @Test
+    public void testReleasedByAllConnections() throws Exception
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pool = new ObjectName(LDAPStatistics.JMX_DOMAIN + ":type=Pool,config=" + ObjectName.quote("sharedConf"));
+
+        LDAPStatistics first = LDAPStatistics.acquire("sharedConf");
+        LDAPStatistics second = LDAPStatistics.acquire("sharedConf");
+        assertSame(first, second);
+
+        first.release();
+        assertTrue(server.isRegistered(pool));
+        assertSame(second, LDAPStatistics.getInstance("sharedConf"));
+
+        second.release();
+        assertFalse(server.isRegistered(pool));
+        assertNotSame(second, LDAPStatistics.acquire("sharedConf"));
+        LDAPStatistics.dispose("sharedConf");
+    }
+}